@@ -187,6 +187,62 @@ class Conformance(object):
             raise Exception("get_test_log failed - HTTP {:d} {}".format(response.status_code, response.content))
         return response.json()
 
+    async def get_test_summary(self, module_id):
+        api_url = '{0}api/info/{1}/summary'.format(self.api_url_base, module_id)
+        response = self.httpclient.get(api_url)
+
+        if response.status_code != 200:
+            raise Exception("get_test_summary failed - HTTP {:d} {}".format(response.status_code, response.content))
+        return response.json()
+
+    async def run_plan(self, plan_id, parallel=None, modules=None):
+        """ Ask the server to run the plan's modules (all of them, or just those named in 'modules') """
+        api_url = '{0}api/plan/{1}/run'.format(self.api_url_base, plan_id)
+        payload = {}
+        if parallel != None:
+            payload['parallel'] = parallel
+        if modules != None:
+            payload['module'] = modules
+        response = self.httpclient.post(api_url, params=payload)
+
+        if response.status_code != 201:
+            raise Exception("run_plan failed - HTTP {:d} {}".format(response.status_code, response.content))
+        return response.json()
+
+    async def get_plan_run(self, plan_id):
+        api_url = '{0}api/plan/{1}/run'.format(self.api_url_base, plan_id)
+        response = self.httpclient.get(api_url)
+
+        if response.status_code != 200:
+            raise Exception("get_plan_run failed - HTTP {:d} {}".format(response.status_code, response.content))
+        return response.json()
+
+    async def cancel_plan_run(self, plan_id):
+        api_url = '{0}api/plan/{1}/run'.format(self.api_url_base, plan_id)
+        response = self.httpclient.delete(api_url)
+
+        if response.status_code != 200:
+            raise Exception("cancel_plan_run failed - HTTP {:d} {}".format(response.status_code, response.content))
+        return response.json()
+
+    async def wait_for_plan_run(self, plan_id, timeout=7200):
+        """ Wait for a run started by run_plan to finish, printing each module's progress; returns the final state """
+        timeout_at = time.time() + timeout
+        reported = {}
+        while True:
+            run = await self.get_plan_run(plan_id)
+            for module in run['modules']:
+                progress = (module['state'], module['status'])
+                if reported.get(module['index']) != progress:
+                    reported[module['index']] = progress
+                    print("module {} ({}) is {} {}".format(module['testModule'], module['testId'], module['state'], module['status'] or ''))
+            if run['finished'] != None:
+                return run
+            if time.time() > timeout_at:
+                await self.cancel_plan_run(plan_id)
+                raise Exception("Timed out waiting for run of plan {} to finish".format(plan_id))
+            await asyncio.sleep(2)
+
     async def start_test(self, module_id):
         api_url = '{0}api/runner/{1}'.format(self.api_url_base, module_id)
         response = self.httpclient.post(api_url)
@@ -134,10 +134,13 @@ async def run_test_plan(test_plan_obj, config_file, output_dir, client_certs):
     print('Created test plan, new id: {}'.format(plan_id))
     print('{}plan-detail.html?plan={}'.format(api_url_base, plan_id))
     print('{:d} modules to test:\n{}\n'.format(len(plan_modules), '\n'.join(mod['testModule'] for mod in plan_modules)))
-    queue = asyncio.Queue()
-    for moduledict in plan_modules:
-        queue.put_nowait(run_test_module(moduledict, plan_id, test_info, test_time_taken, variant, op_plan, plan_results, output_dir, brazil_client_scope, parsed_config, client_certs))
-    await run_queue(queue, parallel_jobs)
+    if args.server_side and op_plan is None and not any(is_client_test_with_external_client(mod['testModule']) for mod in plan_modules):
+        await run_test_plan_on_server(test_plan_info, plan_modules, test_info, test_time_taken, parallel_jobs)
+    else:
+        queue = asyncio.Queue()
+        for moduledict in plan_modules:
+            queue.put_nowait(run_test_module(moduledict, plan_id, test_info, test_time_taken, variant, op_plan, plan_results, output_dir, brazil_client_scope, parsed_config, client_certs))
+        await run_queue(queue, parallel_jobs)
 
     overall_time = time.time() - overall_start_time
     if output_dir != None:
@@ -158,6 +161,38 @@ async def run_test_plan(test_plan_obj, config_file, output_dir, client_certs):
     return plan_results
 
 
+def is_client_test_with_external_client(module):
+    return re.match(r'fapi-rw-id2-client-.*', module) or re.match(r'fapi1-advanced-final-client-.*', module)
+
+
+async def run_test_plan_on_server(test_plan_info, plan_modules, test_info, test_time_taken, parallel_jobs):
+    """ Let the server run the plan's modules (see PlanExecutor), then fetch the results of each """
+    plan_id = test_plan_info['id']
+    module_names = sorted(set(mod['testModule'] for mod in plan_modules))
+    print('{}: running plan on the server, up to {:d} modules at once'.format(plan_id, parallel_jobs))
+    await conformance.run_plan(plan_id, parallel_jobs, module_names)
+    run = await conformance.wait_for_plan_run(plan_id)
+
+    for module in run['modules']:
+        moduledict = test_plan_info['modules'][module['index']]
+        if moduledict not in plan_modules:
+            # another variant of a selected module
+            continue
+        module_with_variants = get_string_name_for_module_with_variant(moduledict)
+        if module['error'] != None:
+            print('Test {} {} failed to run to completion: {}'.format(module_with_variants, module['testId'], module['error']))
+        module_id = module['testId']
+        if module_id == None:
+            continue
+        module_info = {'id': module_id}
+        test_info[module_with_variants] = module_info
+        if module['started'] != None and module['finished'] != None:
+            test_time_taken[module_id] = (datetime.datetime.fromisoformat(module['finished'].replace('Z', '+00:00')) -
+                                          datetime.datetime.fromisoformat(module['started'].replace('Z', '+00:00'))).total_seconds()
+        module_info['info'] = await conformance.get_module_info(module_id)
+        module_info['summary'] = await conformance.get_test_summary(module_id)
+
+
 async def run_test_module(moduledict, plan_id, test_info, test_time_taken, variant, op_plan, plan_results, output_dir, brazil_client_scope, parsed_config, client_certs):
     module=moduledict['testModule']
     module_with_variants = get_string_name_for_module_with_variant(moduledict)
@@ -208,8 +243,7 @@ async def run_test_module(moduledict, plan_id, test_info, test_time_taken, varia
                 else:
                     # the 'client' is our own OP tests
                     plan_results.extend(await run_test_plan({"test":op_plan}, op_plan["config_file"], output_dir, client_certs))
-            elif re.match(r'fapi-rw-id2-client-.*', module) or \
-                re.match(r'fapi1-advanced-final-client-.*', module):
+            elif is_client_test_with_external_client(module):
                 print("FAPI client test: " + module + " " + json.dumps(variant))
                 if brazil_client_scope:
                     os.environ['BRAZIL_CLIENT_SCOPE'] = brazil_client_scope
@@ -270,7 +304,7 @@ async def run_test_module(moduledict, plan_id, test_info, test_time_taken, varia
     if module_id != '':
         test_time_taken[module_id] = time.time() - test_start_time
         module_info['info'] = await conformance.get_module_info(module_id)
-        module_info['logs'] = await conformance.get_test_log(module_id)
+        module_info['summary'] = await conformance.get_test_summary(module_id)
 
 
 # from http://stackoverflow.com/a/26445590/3191896 and https://gist.github.com/Jossef/0ee20314577925b4027f
@@ -372,7 +406,7 @@ def show_plan_results(plan_result, analyzed_result):
         module_info = test_info[module_name]
         module_id = module_info['id']
         info = module_info['info']
-        logs = module_info['logs']
+        summary = module_info['summary']
 
         status_coloured = info['status']
 
@@ -398,7 +432,7 @@ def show_plan_results(plan_result, analyzed_result):
 
         counts = result['counts']
         print('Test {} {} {} - result {}. {:d} log entries - {:d} SUCCESS {:d} FAILURE, {:d} WARNING, {:.1f} seconds'.
-              format(module_name, module_id, status_coloured, result_coloured, len(logs),
+              format(module_name, module_id, status_coloured, result_coloured, summary['entries'],
                      counts['SUCCESS'], counts['FAILURE'], counts['WARNING'], test_time))
 
         summary_unexpected_failures_test_module(result, test_name, module_id)
@@ -482,7 +516,7 @@ def analyze_plan_results(plan_result, expected_failures_list, expected_skips_lis
         module_info = test_info[module_name_with_variant]
         module_id = module_info['id']
         info = module_info['info']
-        logs = module_info['logs']
+        summary = module_info['summary']
         variant = module_info['info']['variant']
 
         if module in untested_test_modules:
@@ -494,7 +528,7 @@ def analyze_plan_results(plan_result, expected_failures_list, expected_skips_lis
             info['result'] = 'UNKNOWN'
 
         test_name = info['testName']
-        result = analyze_result_logs(module_id, test_name, variant, info['result'], plan_result, logs, expected_failures_list, expected_skips_list, counts_unexpected)
+        result = analyze_result_logs(module_id, test_name, variant, info['result'], plan_result, summary, expected_failures_list, expected_skips_list, counts_unexpected)
 
         log_detail_link = '{}log-detail.html?log={}'.format(api_url_base, module_id)
         test_result = {'test_name': test_name, 'variant': variant, 'log_detail_link': log_detail_link, 'test_result': result}
@@ -529,8 +563,12 @@ def analyze_plan_results(plan_result, expected_failures_list, expected_skips_lis
 #   'unexpected_warnings': list all unexpected warnings condition
 #   'expected_warnings_did_not_happen': list all expected warnings condition did not happen
 #   'counts': contains number of success condition, number of warning condition and number of failure condition
-def analyze_result_logs(module_id, test_name, variant, test_result, plan_result, logs, expected_failures_list, expected_skips_list, counts_unexpected):
+def analyze_result_logs(module_id, test_name, variant, test_result, plan_result, summary, expected_failures_list, expected_skips_list, counts_unexpected):
+    # summary is from /api/info/<id>/summary, which the server keeps up to date as the test logs, so the (possibly very
+    # large) log doesn't need to be downloaded
     counts = {'SUCCESS': 0, 'WARNING': 0, 'FAILURE': 0}
+    for k in counts:
+        counts[k] = summary['results'].get(k, 0)
     expected_failures = []
     unexpected_failures = []
     expected_failures_did_not_happen = []
@@ -576,68 +614,53 @@ def analyze_result_logs(module_id, test_name, variant, test_result, plan_result,
     test_expected_failures = list(filter(is_expected_for_this_test, expected_failures_list))
     test_expected_skips = list(filter(is_expected_for_this_test, expected_skips_list))
 
-    block_names = {}
-    block_msg = ''
-    for log_entry in logs:
-        if ('startBlock' in log_entry and log_entry['startBlock'] == True and log_entry['src'] == '-START-BLOCK-'):
-            block_names[log_entry['blockId']] = log_entry['msg']
-            continue
-        if 'result' not in log_entry:
-            continue
+    # each condition appears once per block it failed in, however many times it failed there
+    conditions = [('FAILURE', c) for c in summary['failures']] + [('WARNING', c) for c in summary['warnings']]
+    for log_result, condition in conditions:
+        block_msg = condition['block']
+        if block_msg is None:
+            # A blockId was seen without a block start: this shouldn't happen.
+            # We don't have a sensible value for block_msg at this point, so log the error and stop analyzing this test.
+            print(failure('Unknown block ID in results for condition: {}'.format(condition['src'])))
+            print('See {}log-detail.html?log={}'.format(api_url_base, module_id))
+            break
 
-        if ('blockId' in log_entry):
-            blockId = log_entry['blockId']
-            if blockId in block_names:
-                block_msg = block_names[blockId]
-            else:
-                # A new blockId was seen without a block start: this shouldn't happen.
-                # We don't have a sensible value for block_msg at this point, so log the error and stop analyzing this test.
-                print(failure('Unknown block ID in results: {}'.format(blockId)))
-                print('See {}log-detail.html?log={}'.format(api_url_base, module_id))
-                print('Log entry: {}'.format(log_entry))
-                break
-        else:
-            block_msg = ''
-
-        log_result = log_entry['result']  # contains WARNING/FAILURE/INFO/etc
-        if log_result in counts:
-            counts[log_result] += 1
-            log_entry_exist_in_expected_list = False
-            for expected_failure_obj in test_expected_failures:
-                expected_condition = expected_failure_obj['condition']
-                expected_block = expected_failure_obj['current-block']
-                expected_result = expected_failure_obj['expected-result']
-
-                if ((expected_block == block_msg or expected_block == '*')
-                    and expected_condition == log_entry['src']):
-
-                    # check and list all expected failure
-                    if (log_result == 'FAILURE' and expected_result == 'failure'):
-                        expected_failures.append({'current_block': block_msg, 'src': log_entry['src']})
-                        counts_unexpected['EXPECTED_FAILURES'] += 1
-
-                    # check and list all expected warning
-                    elif (log_result == 'WARNING' and expected_result == 'warning'):
-                        expected_warnings.append({'current_block': block_msg, 'src': log_entry['src']})
-                        counts_unexpected['EXPECTED_WARNINGS'] += 1
-
-                    # this wasn't an expected failure after all
-                    else:
-                        continue
+        log_entry_exist_in_expected_list = False
+        for expected_failure_obj in test_expected_failures:
+            expected_condition = expected_failure_obj['condition']
+            expected_block = expected_failure_obj['current-block']
+            expected_result = expected_failure_obj['expected-result']
+
+            if ((expected_block == block_msg or expected_block == '*')
+                and expected_condition == condition['src']):
 
-                    log_entry_exist_in_expected_list = True
-                    expected_failure_obj['__used'] = True
-                    break
+                # check and list all expected failure
+                if (log_result == 'FAILURE' and expected_result == 'failure'):
+                    expected_failures.append({'current_block': block_msg, 'src': condition['src']})
+                    counts_unexpected['EXPECTED_FAILURES'] += 1
+
+                # check and list all expected warning
+                elif (log_result == 'WARNING' and expected_result == 'warning'):
+                    expected_warnings.append({'current_block': block_msg, 'src': condition['src']})
+                    counts_unexpected['EXPECTED_WARNINGS'] += 1
+
+                # this wasn't an expected failure after all
+                else:
+                    continue
+
+                log_entry_exist_in_expected_list = True
+                expected_failure_obj['__used'] = True
+                break
 
-            # list all the unexpected failures/warnings of a test module
-            if log_entry_exist_in_expected_list == False:
-                if log_result == 'FAILURE':
-                    unexpected_failures.append({'current_block': block_msg, 'src': log_entry['src']})
-                    counts_unexpected['UNEXPECTED_FAILURES'] += 1
+        # list all the unexpected failures/warnings of a test module
+        if log_entry_exist_in_expected_list == False:
+            if log_result == 'FAILURE':
+                unexpected_failures.append({'current_block': block_msg, 'src': condition['src']})
+                counts_unexpected['UNEXPECTED_FAILURES'] += 1
 
-                if log_result == 'WARNING':
-                    unexpected_warnings.append({'current_block': block_msg, 'src': log_entry['src']})
-                    counts_unexpected['UNEXPECTED_WARNINGS'] += 1
+            if log_result == 'WARNING':
+                unexpected_warnings.append({'current_block': block_msg, 'src': condition['src']})
+                counts_unexpected['UNEXPECTED_WARNINGS'] += 1
 
     # list all the expected failures/warnings did not happen for a test module
     for expected_failure_obj in test_expected_failures:
@@ -876,6 +899,7 @@ def parser_args_cli():
     parser.add_argument('--export-dir', help='Directory to save exported results into', default=None)
     parser.add_argument('--no-parallel', help='Disable parallel running of tests', action='store_true')
     parser.add_argument('--no-parallel-for-no-alias', help='Disable parallel running of tests with no alias', action='store_true')
+    parser.add_argument('--server-side', help='Let the server run the modules of plans that don\'t need a client to be run (POST /api/plan/{id}/run) rather than creating and polling each test', action='store_true')
     parser.add_argument('--show-untested-test-modules', help='Flag to require show or do not show test modules which were untested', default='')
     parser.add_argument('--verbose', help='Print out details of unexpected failures/warnings including a template for the expected failures file, and print details of expected failures/warnings that do not happen', action='store_true')
     parser.add_argument('--expected-failures-file', help='Json configuration file name which records a list of expected failures/warnings', default='')
@@ -7,6 +7,7 @@ import net.openid.conformance.info.TestPlanService;
 import net.openid.conformance.logging.EventLog;
 import net.openid.conformance.token.TokenService;
 import net.openid.conformance.ui.ServerInfoTemplate;
+import net.openid.conformance.util.JsonSchemaRegistry;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bson.Document;
 import org.slf4j.LoggerFactory;
@@ -68,6 +69,11 @@ public class Application {
 		}
 	}
 
+	@EventListener(ApplicationReadyEvent.class)
+	public void preloadJsonSchemas() {
+		JsonSchemaRegistry.preload();
+	}
+
 	private static String getMongoDBVersion(MongoDatabase adminDb) {
 		Document command = new Document("buildInfo", 1);
 		Document result = adminDb.runCommand(command);
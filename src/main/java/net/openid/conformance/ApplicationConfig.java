@@ -1,14 +1,22 @@
 package net.openid.conformance;
 
 import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.openid.conformance.frontchannel.BrowserPool;
+import net.openid.conformance.logging.AsyncDBEventLog;
+import net.openid.conformance.logging.DBEventLog;
+import net.openid.conformance.logging.EventLog;
 import net.openid.conformance.logging.GsonArrayToBsonArrayConverter;
 import net.openid.conformance.logging.GsonObjectToBsonDocumentConverter;
 import net.openid.conformance.logging.GsonPrimitiveToBsonValueConverter;
 import net.openid.conformance.runner.InMemoryTestRunnerSupport;
+import net.openid.conformance.runner.MongoTestRunnerSupport;
 import net.openid.conformance.runner.TestRunnerSupport;
 import net.openid.conformance.security.KeyManager;
 import net.openid.conformance.ui.ServerInfoTemplate;
+import net.openid.conformance.util.KeyPool;
 import net.openid.conformance.variant.VariantConverters;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -36,10 +44,25 @@ public class ApplicationConfig {
 	}
 
 	@Bean
-	public TestRunnerSupport testRunnerSupport() {
+	public TestRunnerSupport testRunnerSupport(@Value("${fintechlabs.cluster.enabled:false}") boolean clustered) {
+		// when several nodes share the database, each one records which tests it is running there so that requests
+		// for a test can be forwarded to the node running it
+		if (clustered) {
+			return new MongoTestRunnerSupport();
+		}
 		return new InMemoryTestRunnerSupport();
 	}
 
+	@Bean
+	public EventLog eventLog(@Value("${fintechlabs.eventlog.async:true}") boolean async) {
+		// the async version writes log entries in batches in the background, so that tests don't have to wait for
+		// a database round trip every time they log something
+		if (async) {
+			return new AsyncDBEventLog();
+		}
+		return new DBEventLog();
+	}
+
 	@Bean
 	public MongoCustomConversions mongoCustomConversions() {
 		List<Converter<?, ?>> converters = Lists.newArrayList(
@@ -55,6 +78,31 @@ public class ApplicationConfig {
 		return new KeyManager();
 	}
 
+	@Bean
+	public KeyPool keyPool(@Value("${fintechlabs.key_pool.size:8}") int size, MeterRegistry meterRegistry) {
+		// conditions take keys from the pool directly, this just configures it and gets the slow RSA keys generated
+		// before the first test needs them
+		KeyPool keyPool = KeyPool.getInstance();
+		keyPool.setSize(size);
+		keyPool.registerMetrics(meterRegistry);
+		keyPool.prefillRSA(2048);
+		return keyPool;
+	}
+
+	@Bean
+	public BrowserPool browserPool(@Value("${fintechlabs.browser_pool.size:4}") int size,
+		@Value("${fintechlabs.browser_pool.max_active:16}") int maxActive,
+		MeterRegistry meterRegistry) {
+		// BrowserControl uses the pool directly, this just configures it and gets some browsers created before the
+		// first test needs one
+		BrowserPool browserPool = BrowserPool.getInstance();
+		browserPool.setSize(size);
+		browserPool.setMaxActive(maxActive);
+		browserPool.registerMetrics(meterRegistry);
+		browserPool.prefill();
+		return browserPool;
+	}
+
 	@Bean
 	public ServerInfoTemplate serverInfoTemplate() {
 		return new ServerInfoTemplate();
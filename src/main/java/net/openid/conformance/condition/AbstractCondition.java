@@ -7,7 +7,9 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import net.openid.conformance.condition.util.HttpClientCache;
 import net.openid.conformance.condition.util.MtlsKeystoreBuilder;
+import net.openid.conformance.condition.util.PlanFetchCache;
 import net.openid.conformance.logging.LoggingRequestInterceptor;
 import net.openid.conformance.logging.TestInstanceEventLog;
 import net.openid.conformance.testmodule.DataUtils;
@@ -17,8 +19,10 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.hc.client5.http.classic.HttpClient;
 import org.apache.hc.client5.http.config.ConnectionConfig;
 import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
 import org.apache.hc.client5.http.impl.io.BasicHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
 import org.apache.hc.client5.http.socket.PlainConnectionSocketFactory;
 import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
@@ -26,9 +30,11 @@ import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
 import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
 import org.apache.hc.core5.http.config.Registry;
 import org.apache.hc.core5.http.config.RegistryBuilder;
+import org.apache.hc.core5.util.TimeValue;
 import org.apache.hc.core5.util.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.http.converter.HttpMessageConverter;
@@ -40,7 +46,6 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.io.IOException;
-import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
@@ -86,35 +91,35 @@ public abstract class AbstractCondition implements Condition, DataUtils {
 	@Override
 	public void execute(Environment env) {
 		try {
-			Method eval = this.getClass().getMethod("evaluate", Environment.class);
-			PreEnvironment pre = eval.getAnnotation(PreEnvironment.class);
-			if (pre != null) {
-				for (String req : pre.required()) {
-					if (!env.containsObject(req)) {
-						logger.info(testId + ": [pre] Test condition " + this.getClass().getSimpleName() + " failure, couldn't find object in environment: " + req);
-						log.log(this.getMessage(), args(
-							"msg", "Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find required object in environment before evaluation: " + req,
-							"expected", req,
-							"result", ConditionResult.FAILURE,
-							"mapped", env.isKeyShadowed(req) ? env.getEffectiveKey(req) : null,
-							"requirements", this.getRequirements()
-							// TODO: log the environment here?
-						));
-						throw alreadyLoggedPrePostError("[pre] Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find object in environment: " + req);
-					}
+			ConditionDescriptor descriptor = ConditionDescriptor.forClass(this.getClass());
+			if (!descriptor.hasEvaluateMethod()) {
+				throw new NoSuchMethodException("evaluate");
+			}
+			for (String req : descriptor.getPreRequired()) {
+				if (!env.containsObject(req)) {
+					logger.info(testId + ": [pre] Test condition " + this.getClass().getSimpleName() + " failure, couldn't find object in environment: " + req);
+					log.log(this.getMessage(), args(
+						"msg", "Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find required object in environment before evaluation: " + req,
+						"expected", req,
+						"result", ConditionResult.FAILURE,
+						"mapped", env.isKeyShadowed(req) ? env.getEffectiveKey(req) : null,
+						"requirements", this.getRequirements()
+						// TODO: log the environment here?
+					));
+					throw alreadyLoggedPrePostError("[pre] Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find object in environment: " + req);
 				}
-				for (String s : pre.strings()) {
-					if (env.getString(s) == null) {
-						logger.info(testId + ": [pre] Test condition " + this.getClass().getSimpleName() + " failure, couldn't find string in environment: " + s);
-						log.log(this.getMessage(), args(
-							"msg", "Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find required string in environment before evaluation: " + s,
-							"expected", s,
-							"result", ConditionResult.FAILURE,
-							"requirements", this.getRequirements()
-							// TODO: log the environment here?
-						));
-						throw alreadyLoggedPrePostError("[pre] Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find string in environment: " + s);
-					}
+			}
+			for (String s : descriptor.getPreStrings()) {
+				if (env.getString(s) == null) {
+					logger.info(testId + ": [pre] Test condition " + this.getClass().getSimpleName() + " failure, couldn't find string in environment: " + s);
+					log.log(this.getMessage(), args(
+						"msg", "Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find required string in environment before evaluation: " + s,
+						"expected", s,
+						"result", ConditionResult.FAILURE,
+						"requirements", this.getRequirements()
+						// TODO: log the environment here?
+					));
+					throw alreadyLoggedPrePostError("[pre] Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find string in environment: " + s);
 				}
 			}
 
@@ -131,34 +136,31 @@ public abstract class AbstractCondition implements Condition, DataUtils {
 			}
 
 			// check the environment to make sure the condition did what it claimed to
-			PostEnvironment post = eval.getAnnotation(PostEnvironment.class);
-			if (post != null) {
-				for (String req : post.required()) {
-					if (!env.containsObject(req)) {
-						logger.info(testId + ": [post] Test condition " + this.getClass().getSimpleName() + " failure, couldn't find object in environment: " + req);
-						log.log(this.getMessage(), args(
-							"msg", "Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find required object in environment after evaluation: " + req,
-							"expected", req,
-							"result", ConditionResult.FAILURE,
-							"mapped", env.isKeyShadowed(req) ? env.getEffectiveKey(req) : null,
-							"requirements", this.getRequirements()
-							// TODO: log the environment here?
-						));
-						throw alreadyLoggedPrePostError("[post] Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find object in environment: " + req);
-					}
+			for (String req : descriptor.getPostRequired()) {
+				if (!env.containsObject(req)) {
+					logger.info(testId + ": [post] Test condition " + this.getClass().getSimpleName() + " failure, couldn't find object in environment: " + req);
+					log.log(this.getMessage(), args(
+						"msg", "Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find required object in environment after evaluation: " + req,
+						"expected", req,
+						"result", ConditionResult.FAILURE,
+						"mapped", env.isKeyShadowed(req) ? env.getEffectiveKey(req) : null,
+						"requirements", this.getRequirements()
+						// TODO: log the environment here?
+					));
+					throw alreadyLoggedPrePostError("[post] Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find object in environment: " + req);
 				}
-				for (String s : post.strings()) {
-					if (env.getString(s) == null) {
-						logger.info(testId + ": [post] Test condition " + this.getClass().getSimpleName() + " failure, couldn't find string in environment: " + s);
-						log.log(this.getMessage(), args(
-							"msg", "Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find required string in environment after evaluation: " + s,
-							"expected", s,
-							"result", ConditionResult.FAILURE,
-							"requirements", this.getRequirements()
-							// TODO: log the environment here?
-						));
-						throw alreadyLoggedPrePostError("[post] Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find string in environment: " + s);
-					}
+			}
+			for (String s : descriptor.getPostStrings()) {
+				if (env.getString(s) == null) {
+					logger.info(testId + ": [post] Test condition " + this.getClass().getSimpleName() + " failure, couldn't find string in environment: " + s);
+					log.log(this.getMessage(), args(
+						"msg", "Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find required string in environment after evaluation: " + s,
+						"expected", s,
+						"result", ConditionResult.FAILURE,
+						"requirements", this.getRequirements()
+						// TODO: log the environment here?
+					));
+					throw alreadyLoggedPrePostError("[post] Something unexpected happened (this could be caused by something you did wrong, or it may be an issue in the test suite - please review the instructions and your configuration, if you still see a problem please contact " + SUPPORT_EMAIL + " with the full details) - couldn't find string in environment: " + s);
 				}
 			}
 		} catch (NoSuchMethodException e) {
@@ -304,7 +306,7 @@ public abstract class AbstractCondition implements Condition, DataUtils {
 	private JsonObject getJsonObjectWithRequirements(JsonObject in, boolean alwaysCopy) {
 		boolean addRequirements = !getRequirements().isEmpty() && !in.has("requirements");
 		JsonObject jsonObject = alwaysCopy || addRequirements ?
-			JsonParser.parseString(in.toString()).getAsJsonObject() // don't modify the underlying object, round-trip to get a copy
+			shallowCopy(in) // don't modify the underlying object
 			: in;
 		if(addRequirements) {
 			JsonArray arr = new JsonArray();
@@ -316,6 +318,20 @@ public abstract class AbstractCondition implements Condition, DataUtils {
 		return jsonObject;
 	}
 
+	/**
+	 * Copy the top level of a JsonObject, so fields can be added to it without changing the original.
+	 *
+	 * The values are shared with the original; the event log converts them as they are logged and doesn't modify them,
+	 * so there's no need to pay for a deep copy of (for example) a large HTTP response.
+	 */
+	private static JsonObject shallowCopy(JsonObject in) {
+		JsonObject copy = new JsonObject();
+		for (Map.Entry<String, JsonElement> entry : in.entrySet()) {
+			copy.add(entry.getKey(), entry.getValue());
+		}
+		return copy;
+	}
+
 	/**
 	 * Returns the same or a copy of the JsonObject with requirements.
 	 * @param in JsonObject to add requirements
@@ -408,7 +424,7 @@ public abstract class AbstractCondition implements Condition, DataUtils {
 	}
 
 	protected void log(String msg, JsonObject in) {
-		JsonObject copy = JsonParser.parseString(in.toString()).getAsJsonObject(); // don't modify the underlying object, round-trip to get a copy
+		JsonObject copy = shallowCopy(in); // don't modify the underlying object
 		copy.addProperty("msg", msg);
 		log(copy);
 	}
@@ -619,8 +635,38 @@ public abstract class AbstractCondition implements Condition, DataUtils {
 
 	/*
 	 * Create an HTTP Client for use in calling outbound to other services
+	 *
+	 * The client is new and has a single connection of its own, so every call made with it starts with a new TCP
+	 * connection and full TLS handshake. Most conditions should use createRestTemplate(), which reuses the test's
+	 * connections.
 	 */
 	protected HttpClient createHttpClient(Environment env, boolean restrictAllowedTLSVersions)
+		throws CertificateException, InvalidKeySpecException, NoSuchAlgorithmException,
+				KeyStoreException, IOException, UnrecoverableKeyException, KeyManagementException {
+		return buildHttpClient(env, restrictAllowedTLSVersions, false);
+	}
+
+	/*
+	 * Get the test's HTTP Client for the MTLS identity in the environment, creating it if needed
+	 *
+	 * The client is shared by all the conditions in the test, keeping connections open (and TLS sessions available
+	 * for resumption) between calls. It's closed when the test stops.
+	 */
+	private HttpClient getPooledHttpClient(Environment env, boolean restrictAllowedTLSVersions)
+		throws CertificateException, InvalidKeySpecException, NoSuchAlgorithmException,
+				KeyStoreException, IOException, UnrecoverableKeyException, KeyManagementException {
+
+		JsonObject mtls = env.getObject("mutual_tls_authentication");
+
+		CloseableHttpClient httpClient = HttpClientCache.get(testId, mtls, restrictAllowedTLSVersions);
+		if (httpClient == null) {
+			httpClient = HttpClientCache.add(testId, mtls, restrictAllowedTLSVersions,
+				buildHttpClient(env, restrictAllowedTLSVersions, true));
+		}
+		return httpClient;
+	}
+
+	private CloseableHttpClient buildHttpClient(Environment env, boolean restrictAllowedTLSVersions, boolean pooled)
 		throws CertificateException, InvalidKeySpecException, NoSuchAlgorithmException,
 				KeyStoreException, IOException, UnrecoverableKeyException, KeyManagementException {
 
@@ -668,22 +714,39 @@ public abstract class AbstractCondition implements Condition, DataUtils {
 			.register("http", new PlainConnectionSocketFactory())
 			.build();
 
-		BasicHttpClientConnectionManager ccm = new BasicHttpClientConnectionManager(registry);
 		int timeout = 60; // seconds
-		ccm.setConnectionConfig(ConnectionConfig.custom()
+		ConnectionConfig.Builder connectionConfig = ConnectionConfig.custom()
 			.setConnectTimeout(Timeout.ofSeconds(timeout))
 			.setSocketTimeout(Timeout.ofSeconds(timeout))
-			.setTimeToLive(Timeout.ofSeconds(timeout))
-			.build());
+			.setTimeToLive(Timeout.ofSeconds(timeout));
 
+		if (pooled) {
+			// retries are disabled, so check connections that have been idle are still open before reusing them
+			connectionConfig.setValidateAfterInactivity(TimeValue.ofSeconds(1));
 
-		builder.setConnectionManager(ccm);
+			PoolingHttpClientConnectionManager ccm = new PoolingHttpClientConnectionManager(registry);
+			ccm.setDefaultConnectionConfig(connectionConfig.build());
+			ccm.setDefaultMaxPerRoute(10);
+			ccm.setMaxTotal(20);
+			builder.setConnectionManager(ccm);
+
+			// the client is already specific to one MTLS identity, so connections can be reused regardless of the
+			// client certificate they were set up with
+			builder.disableConnectionState();
+
+			// cookies set by one call must not be sent by the next, as they would be with a new client each time
+			builder.disableCookieManagement();
+		} else {
+			BasicHttpClientConnectionManager ccm = new BasicHttpClientConnectionManager(registry);
+			ccm.setConnectionConfig(connectionConfig.build());
+			builder.setConnectionManager(ccm);
+		}
 
 		builder.disableRedirectHandling();
 
 		builder.disableAutomaticRetries();
 
-		HttpClient httpClient = builder.build();
+		CloseableHttpClient httpClient = builder.build();
 		return httpClient;
 	}
 
@@ -692,7 +755,29 @@ public abstract class AbstractCondition implements Condition, DataUtils {
 	}
 
 	protected RestTemplate createRestTemplate(Environment env, boolean restrictAllowedTLSVersions) throws UnrecoverableKeyException, KeyManagementException, CertificateException, InvalidKeySpecException, NoSuchAlgorithmException, KeyStoreException, IOException {
-		HttpClient httpClient = createHttpClient(env, restrictAllowedTLSVersions);
+		return createRestTemplate(env, restrictAllowedTLSVersions, requiresFreshConnection());
+	}
+
+	/**
+	 * Conditions that check how the server handles the TLS connection itself (e.g. that it rejects a call without a
+	 * client certificate) override this, so that what they see isn't the result of a connection set up by an earlier
+	 * condition.
+	 *
+	 * @return true if createRestTemplate() should always make a new connection
+	 */
+	protected boolean requiresFreshConnection() {
+		return false;
+	}
+
+	/**
+	 * @param freshConnection if true, the call is made over a new connection with a full TLS handshake, rather than
+	 *                        reusing one of the test's connections; for conditions that check connection or TLS
+	 *                        behaviour
+	 */
+	protected RestTemplate createRestTemplate(Environment env, boolean restrictAllowedTLSVersions, boolean freshConnection) throws UnrecoverableKeyException, KeyManagementException, CertificateException, InvalidKeySpecException, NoSuchAlgorithmException, KeyStoreException, IOException {
+		HttpClient httpClient = freshConnection
+			? createHttpClient(env, restrictAllowedTLSVersions)
+			: getPooledHttpClient(env, restrictAllowedTLSVersions);
 
 		RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
 
@@ -715,6 +800,22 @@ public abstract class AbstractCondition implements Condition, DataUtils {
 		return restTemplate;
 	}
 
+	/**
+	 * GET a document that doesn't change during a test plan (e.g. a discovery document or JWKS), possibly reusing the
+	 * response another test in the same plan fetched; see PlanFetchCache. A cached response doesn't appear in the log
+	 * as an HTTP request, so it's logged here instead.
+	 */
+	protected ResponseEntity<String> getWithPlanFetchCache(RestTemplate restTemplate, String url, HttpHeaders headers) {
+		PlanFetchCache.Fetch fetch = PlanFetchCache.get(testId, restTemplate, url, headers);
+		if (fetch.isFromCache()) {
+			log("Using the response from " + url + " that was fetched earlier in this test plan",
+				args("url", url,
+					"fetched_at", fetch.cachedAt().toString(),
+					"revalidated_with_server", fetch.revalidated()));
+		}
+		return fetch.response();
+	}
+
 	/**
 	 * Setup a TCP connection to the given host/port
 	 *
@@ -0,0 +1,138 @@
+package net.openid.conformance.condition;
+
+import net.openid.conformance.testmodule.Environment;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * What we need to know about a condition class to create and run it, worked out once per class rather than every time
+ * the condition is called.
+ *
+ * Test modules call conditions many thousands of times per test, and each call used to look up the constructor, the
+ * evaluate method and its @PreEnvironment/@PostEnvironment annotations by reflection.
+ */
+public final class ConditionDescriptor {
+
+	private static final String[] NONE = new String[0];
+
+	private static final ClassValue<ConditionDescriptor> descriptors = new ClassValue<>() {
+		@Override
+		protected ConditionDescriptor computeValue(Class<?> type) {
+			return new ConditionDescriptor(type);
+		}
+	};
+
+	private final Class<?> conditionClass;
+
+	// null if the class can't be constructed; constructorError says why
+	private final MethodHandle constructor;
+	private final ReflectiveOperationException constructorError;
+
+	private final boolean hasEvaluateMethod;
+
+	private final String[] preRequired;
+	private final String[] preStrings;
+	private final String[] postRequired;
+	private final String[] postStrings;
+
+	private ConditionDescriptor(Class<?> conditionClass) {
+		this.conditionClass = conditionClass;
+
+		MethodHandle handle = null;
+		ReflectiveOperationException error = null;
+		try {
+			handle = MethodHandles.lookup()
+				.unreflectConstructor(conditionClass.getDeclaredConstructor())
+				.asType(MethodType.methodType(Condition.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			error = e;
+		} catch (IllegalArgumentException | SecurityException e) {
+			// report these the same way as the class having no usable constructor
+			error = new InstantiationException(e.getMessage());
+		}
+		this.constructor = handle;
+		this.constructorError = error;
+
+		Method evaluate = null;
+		try {
+			evaluate = conditionClass.getMethod("evaluate", Environment.class);
+		} catch (NoSuchMethodException e) {
+			// reported when the condition is executed
+		}
+		this.hasEvaluateMethod = evaluate != null;
+
+		PreEnvironment pre = evaluate != null ? evaluate.getAnnotation(PreEnvironment.class) : null;
+		this.preRequired = pre != null ? pre.required() : NONE;
+		this.preStrings = pre != null ? pre.strings() : NONE;
+
+		PostEnvironment post = evaluate != null ? evaluate.getAnnotation(PostEnvironment.class) : null;
+		this.postRequired = post != null ? post.required() : NONE;
+		this.postStrings = post != null ? post.strings() : NONE;
+	}
+
+	public static ConditionDescriptor forClass(Class<?> conditionClass) {
+		return descriptors.get(conditionClass);
+	}
+
+	/**
+	 * Create a new instance of the condition, using its no-argument constructor
+	 *
+	 * @throws InvocationTargetException if the constructor throws an exception
+	 */
+	@SuppressWarnings("PMD.AvoidCatchingThrowable") // invokeExact() is declared to throw Throwable
+	public Condition newInstance() throws ReflectiveOperationException {
+		if (constructor == null) {
+			throw constructorError;
+		}
+		try {
+			return (Condition) constructor.invokeExact();
+		} catch (Throwable t) {
+			// match Constructor.newInstance()
+			throw new InvocationTargetException(t);
+		}
+	}
+
+	public Class<?> getConditionClass() {
+		return conditionClass;
+	}
+
+	public boolean hasEvaluateMethod() {
+		return hasEvaluateMethod;
+	}
+
+	/**
+	 * The objects that must be in the environment before evaluation, from @PreEnvironment. The returned array must not
+	 * be modified.
+	 */
+	public String[] getPreRequired() {
+		return preRequired;
+	}
+
+	/**
+	 * The strings that must be in the environment before evaluation, from @PreEnvironment. The returned array must not
+	 * be modified.
+	 */
+	public String[] getPreStrings() {
+		return preStrings;
+	}
+
+	/**
+	 * The objects that must be in the environment after evaluation, from @PostEnvironment. The returned array must not
+	 * be modified.
+	 */
+	public String[] getPostRequired() {
+		return postRequired;
+	}
+
+	/**
+	 * The strings that must be in the environment after evaluation, from @PostEnvironment. The returned array must not
+	 * be modified.
+	 */
+	public String[] getPostStrings() {
+		return postStrings;
+	}
+}
@@ -11,14 +11,12 @@ import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKSet;
 import com.nimbusds.jose.jwk.KeyType;
 import com.nimbusds.jose.jwk.KeyUse;
-import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
 import com.nimbusds.jose.jwk.gen.JWKGenerator;
-import com.nimbusds.jose.jwk.gen.OctetKeyPairGenerator;
-import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
 import net.openid.conformance.condition.AbstractCondition;
 import net.openid.conformance.condition.PostEnvironment;
 import net.openid.conformance.testmodule.Environment;
 import net.openid.conformance.util.JWKUtil;
+import net.openid.conformance.util.KeyPool;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -134,12 +132,11 @@ public class OIDCCGenerateServerJWKs extends AbstractCondition {
 		for(int i=0; i<keyCount; i++) {
 			JWKGenerator<? extends JWK> jwkGenerator = null;
 			if (KeyType.EC.equals(keyType)) {
-				jwkGenerator = new ECKeyGenerator(curveForECKeys);
-				jwkGenerator.provider(BouncyCastleProviderSingleton.getInstance());
+				jwkGenerator = KeyPool.ecKeyGenerator(curveForECKeys, BouncyCastleProviderSingleton.getInstance());
 			} else if (KeyType.RSA.equals(keyType)) {
-				jwkGenerator = new RSAKeyGenerator(rsaKeySize);
+				jwkGenerator = KeyPool.rsaKeyGenerator(rsaKeySize);
 			} else if (KeyType.OKP.equals(keyType)) {
-				jwkGenerator = new OctetKeyPairGenerator(edCurve);
+				jwkGenerator = KeyPool.octetKeyPairGenerator(edCurve);
 			}
 			if(keyUse!=null) {
 				jwkGenerator.keyUse(keyUse);
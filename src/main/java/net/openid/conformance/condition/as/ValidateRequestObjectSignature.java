@@ -4,17 +4,10 @@ import com.google.gson.JsonObject;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSVerifier;
-import com.nimbusds.jose.crypto.Ed25519Verifier;
-import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
-import com.nimbusds.jose.jwk.AsymmetricJWK;
-import com.nimbusds.jose.jwk.Curve;
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKSet;
-import com.nimbusds.jose.jwk.OctetKeyPair;
-import com.nimbusds.jose.jwk.SecretJWK;
 import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
 import com.nimbusds.jose.jwk.source.JWKSource;
-import com.nimbusds.jose.proc.JWSVerifierFactory;
 import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jose.proc.SimpleSecurityContext;
 import com.nimbusds.jwt.SignedJWT;
@@ -24,9 +17,9 @@ import net.openid.conformance.condition.PreEnvironment;
 import net.openid.conformance.extensions.AlternateJWSVerificationKeySelector;
 import net.openid.conformance.testmodule.Environment;
 import net.openid.conformance.testmodule.OIDFJSON;
+import net.openid.conformance.util.JWKCache;
 import net.openid.conformance.util.JWKUtil;
 
-import java.security.KeyPair;
 import java.text.ParseException;
 import java.util.List;
 
@@ -43,7 +36,7 @@ public class ValidateRequestObjectSignature extends AbstractCondition {
 		try {
 
 			SignedJWT jwt = SignedJWT.parse(requestObject);
-			JWKSet jwkSet = JWKSet.parse(clientJwks.toString());
+			JWKSet jwkSet = JWKCache.parseJWKSet(clientJwks.toString());
 
 			JsonObject client = env.getObject("client");
 			if(client.has("request_object_signing_alg")) {
@@ -70,29 +63,12 @@ public class ValidateRequestObjectSignature extends AbstractCondition {
 				throw error("Could not find any keys that can be used to verify this signature",
 					args("requestObject", requestObject, "clientJwks", clientJwks));
 			}
-			JWSVerifierFactory factory = new DefaultJWSVerifierFactory();
 
 			JWKSet newJwkSet = new JWKSet(jwkKeys);
 			JsonObject publicJwks = JWKUtil.getPublicJwksAsJsonObject(newJwkSet);
 
 			for(JWK jwkKey : jwkKeys) {
-				JWSVerifier verifier = null;
-				try {
-					if (jwkKey instanceof OctetKeyPair) {
-						OctetKeyPair publicKey = OctetKeyPair.parse(jwkKey.toPublicJWK().toString());
-						if (Curve.Ed25519.equals(publicKey.getCurve())) {
-							verifier = new Ed25519Verifier(publicKey);
-						}  // else Unsupported Curve, throw exception?
-					} else if (jwkKey instanceof AsymmetricJWK asyncJwkKey) {
-						KeyPair keyPair = asyncJwkKey.toKeyPair();
-						verifier = factory.createJWSVerifier(jwt.getHeader(), keyPair.getPublic());
-					} else if (jwkKey instanceof SecretJWK secretJwkKey) {
-						verifier = factory.createJWSVerifier(jwt.getHeader(), secretJwkKey.toSecretKey());
-					}
-				}
-				catch(JOSEException e) {
-
-				}
+				JWSVerifier verifier = JWKCache.getVerifier(jwt.getHeader().getAlgorithm(), jwkKey);
 				if(verifier != null) {
 					if (jwt.verify(verifier)) {
 						String alg = jwt.getHeader().getAlgorithm().getName();
@@ -7,11 +7,9 @@ import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.jwk.Curve;
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.KeyUse;
-import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
 import com.nimbusds.jose.jwk.gen.JWKGenerator;
-import com.nimbusds.jose.jwk.gen.OctetKeyPairGenerator;
-import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
 import net.openid.conformance.condition.AbstractCondition;
+import net.openid.conformance.util.KeyPool;
 
 public abstract class AbstractGenerateKey extends AbstractCondition {
 	public static final int RSA_KEY_SIZE = 2048;
@@ -25,13 +23,13 @@ public abstract class AbstractGenerateKey extends AbstractCondition {
 		JWKGenerator<? extends JWK> generator;
 		switch (alg) {
 			case "ES256":
-				generator = new ECKeyGenerator(Curve.P_256).algorithm(JWSAlgorithm.ES256);
+				generator = KeyPool.ecKeyGenerator(Curve.P_256).algorithm(JWSAlgorithm.ES256);
 				break;
 			case "EdDSA":
-				generator = new OctetKeyPairGenerator(Curve.Ed25519).algorithm(JWSAlgorithm.EdDSA);
+				generator = KeyPool.octetKeyPairGenerator(Curve.Ed25519).algorithm(JWSAlgorithm.EdDSA);
 				break;
 			case "PS256":
-				generator = new RSAKeyGenerator(RSA_KEY_SIZE).algorithm(JWSAlgorithm.PS256);
+				generator = KeyPool.rsaKeyGenerator(RSA_KEY_SIZE).algorithm(JWSAlgorithm.PS256);
 				break;
 			default:
 				throw error("Failed to generate key for alg", args("alg", alg));
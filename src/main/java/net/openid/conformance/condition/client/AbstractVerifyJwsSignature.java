@@ -6,28 +6,21 @@ import com.nimbusds.jose.Algorithm;
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.JWSVerifier;
-import com.nimbusds.jose.crypto.Ed25519Verifier;
 import com.nimbusds.jose.crypto.MACVerifier;
-import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
-import com.nimbusds.jose.jwk.AsymmetricJWK;
-import com.nimbusds.jose.jwk.Curve;
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKSet;
 import com.nimbusds.jose.jwk.KeyType;
 import com.nimbusds.jose.jwk.KeyUse;
-import com.nimbusds.jose.jwk.OctetKeyPair;
-import com.nimbusds.jose.jwk.SecretJWK;
 import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
 import com.nimbusds.jose.jwk.source.JWKSource;
-import com.nimbusds.jose.proc.JWSVerifierFactory;
 import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jose.proc.SimpleSecurityContext;
 import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jwt.SignedJWT;
 import net.openid.conformance.condition.AbstractCondition;
 import net.openid.conformance.extensions.AlternateJWSVerificationKeySelector;
+import net.openid.conformance.util.JWKCache;
 
-import java.security.KeyPair;
 import java.text.ParseException;
 import java.util.List;
 
@@ -37,7 +30,7 @@ public abstract class AbstractVerifyJwsSignature extends AbstractCondition {
 		try {
 			// translate stored items into nimbus objects
 			SignedJWT jwt = SignedJWT.parse(token);
-			JWKSet jwkSet = JWKSet.parse(publicJwks.toString());
+			JWKSet jwkSet = JWKCache.parseJWKSet(publicJwks.toString());
 			JWKSet jwkSetWithKeyValid = null;
 
 			JWSHeader header = jwt.getHeader();
@@ -71,9 +64,10 @@ public abstract class AbstractVerifyJwsSignature extends AbstractCondition {
 						}
 
 						key = jwkKey;
-						if (verifySignature(jwt, new JWKSet(jwkKey))) {
+						JWKSet candidate = new JWKSet(jwkKey);
+						if (verifySignature(jwt, candidate)) {
 							// save key which is able to verify
-							jwkSetWithKeyValid = new JWKSet(jwkKey);
+							jwkSetWithKeyValid = candidate;
 							break;
 						} else {
 							throw error("Unable to verify "+tokenName+" signature based on "+jwksName+" key with the correct kid, kty that also matches (or does not have) alg/x5t#S256/'use':'sig'", args("jwks", publicJwks, "kid", headerKeyID, "alg", headerAlg, "kty", headerKty, tokenName, token));
@@ -96,9 +90,10 @@ public abstract class AbstractVerifyJwsSignature extends AbstractCondition {
 					}
 
 					key = jwkKey;
-					if (verifySignature(jwt, new JWKSet(jwkKey))) {
+					JWKSet candidate = new JWKSet(jwkKey);
+					if (verifySignature(jwt, candidate)) {
 						// save key which is able to verify
-						jwkSetWithKeyValid = new JWKSet(jwkKey);
+						jwkSetWithKeyValid = candidate;
 						validSignature = true;
 						break;
 					}
@@ -154,25 +149,9 @@ public abstract class AbstractVerifyJwsSignature extends AbstractCondition {
 		AlternateJWSVerificationKeySelector<SecurityContext> selector = new AlternateJWSVerificationKeySelector<>(jwt.getHeader().getAlgorithm(), jwkSource);
 
 		List<JWK> jwkKeys = selector.selectJWSJwks(jwt.getHeader(), context);
-		JWSVerifierFactory factory = new DefaultJWSVerifierFactory();
 
 		for(JWK jwkKey : jwkKeys) {
-			JWSVerifier verifier = null;
-			try {
-				if (jwkKey instanceof OctetKeyPair) {
-					OctetKeyPair publicKey = OctetKeyPair.parse(jwkKey.toPublicJWK().toString());
-					if (Curve.Ed25519.equals(publicKey.getCurve())) {
-						verifier = new Ed25519Verifier(publicKey);
-					}  // else Unsupported Curve, throw exception?
-				} else if (jwkKey instanceof AsymmetricJWK asyncJwkKey) {
-					KeyPair keyPair = asyncJwkKey.toKeyPair();
-					verifier = factory.createJWSVerifier(jwt.getHeader(), keyPair.getPublic());
-				} else if (jwkKey instanceof SecretJWK secretJwkKey) {
-					verifier = factory.createJWSVerifier(jwt.getHeader(), secretJwkKey.toSecretKey());
-				}
-			} catch (JOSEException | ParseException e) {
-
-			}
+			JWSVerifier verifier = JWKCache.getVerifier(jwt.getHeader().getAlgorithm(), jwkKey);
 			if (verifier != null) {
 				if (jwt.verify(verifier)) {
 					return true;
@@ -12,6 +12,11 @@ public class CallClientConfigurationEndpointAllowingTLSFailure extends CallClien
 
 	public static final String RESPONSE_SSL_ERROR_KEY = "client_configuration_endpoint_response_ssl_error";
 
+	@Override
+	protected boolean requiresFreshConnection() {
+		return true;
+	}
+
 	@Override
 	protected boolean allowJsonParseFailure() {
 		// as a special case, we allow a html error as TLS failures may be handled by an inflexible TLS terminator
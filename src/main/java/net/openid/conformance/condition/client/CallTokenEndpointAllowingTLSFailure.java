@@ -11,6 +11,11 @@ import java.net.SocketException;
 
 public class CallTokenEndpointAllowingTLSFailure extends CallTokenEndpointAndReturnFullResponse {
 
+	@Override
+	protected boolean requiresFreshConnection() {
+		return true;
+	}
+
 	@Override
 	@PreEnvironment(required = { "server", "token_endpoint_request_form_parameters" })
 	// token_endpoint_response_ssl_error should be present in PostEnvironment, but no annotation for that currently
@@ -4,25 +4,16 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWEAlgorithm;
 import com.nimbusds.jose.jwk.Curve;
-import com.nimbusds.jose.jwk.ECKey;
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.KeyUse;
-import com.nimbusds.jose.jwk.RSAKey;
 import net.openid.conformance.condition.AbstractCondition;
 import net.openid.conformance.condition.PreEnvironment;
 import net.openid.conformance.testmodule.Environment;
 import net.openid.conformance.testmodule.OIDFJSON;
-
-import java.security.InvalidAlgorithmParameterException;
-import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
-import java.security.interfaces.ECPrivateKey;
-import java.security.interfaces.ECPublicKey;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
+import net.openid.conformance.util.KeyPool;
 
 public class CreateClientEncryptionKeyIfMissing extends AbstractCondition {
 
@@ -58,7 +49,7 @@ public class CreateClientEncryptionKeyIfMissing extends AbstractCondition {
 
 		try {
 			jwk = createJwkForAlg(alg);
-		} catch (NoSuchAlgorithmException | InvalidAlgorithmParameterException e) {
+		} catch (JOSEException e) {
 			throw error("Failed to create key", e);
 		}
 
@@ -69,30 +60,20 @@ public class CreateClientEncryptionKeyIfMissing extends AbstractCondition {
 		return env;
 	}
 
-	private JWK createJwkForAlg(String alg) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+	private JWK createJwkForAlg(String alg) throws JOSEException {
 		JWK jwk;
 		JWEAlgorithm jweAlgorithm = JWEAlgorithm.parse(alg);
 
 		if (JWEAlgorithm.Family.RSA.contains(jweAlgorithm)) {
-			KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
-			gen.initialize(2048);
-			KeyPair keyPair = gen.generateKeyPair();
-
-			jwk = new RSAKey.Builder((RSAPublicKey)keyPair.getPublic())
-				.privateKey((RSAPrivateKey)keyPair.getPrivate())
+			jwk = KeyPool.rsaKeyGenerator(2048)
 				.keyUse(KeyUse.ENCRYPTION)
 				.algorithm(jweAlgorithm)
-				.build();
+				.generate();
 		} else if (JWEAlgorithm.Family.ECDH_ES.contains(jweAlgorithm)) {
-			KeyPairGenerator gen = KeyPairGenerator.getInstance("EC");
-			gen.initialize(Curve.P_256.toECParameterSpec());
-			KeyPair keyPair = gen.generateKeyPair();
-
-			 jwk = new ECKey.Builder(Curve.P_256, (ECPublicKey) keyPair.getPublic())
-				.privateKey((ECPrivateKey) keyPair.getPrivate())
-				 .keyUse(KeyUse.ENCRYPTION)
-				 .algorithm(jweAlgorithm)
-				.build();
+			jwk = KeyPool.ecKeyGenerator(Curve.P_256)
+				.keyUse(KeyUse.ENCRYPTION)
+				.algorithm(jweAlgorithm)
+				.generate();
 
 		} else {
 			throw error("Not sure what kind of key to create for '%s' - please provide an encryption key in the test configuration.".formatted(alg));
@@ -9,10 +9,7 @@ import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.jwk.Curve;
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.KeyUse;
-import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
 import com.nimbusds.jose.jwk.gen.JWKGenerator;
-import com.nimbusds.jose.jwk.gen.OctetKeyPairGenerator;
-import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
 import com.nimbusds.jose.util.Base64URL;
 import net.openid.conformance.condition.AbstractCondition;
 import net.openid.conformance.condition.PostEnvironment;
@@ -22,6 +19,7 @@ import net.openid.conformance.sequence.AbstractConditionSequence;
 import net.openid.conformance.sequence.client.CreateDpopProofSteps;
 import net.openid.conformance.testmodule.Environment;
 import net.openid.conformance.testmodule.OIDFJSON;
+import net.openid.conformance.util.KeyPool;
 import org.apache.commons.lang3.RandomStringUtils;
 
 import java.net.URI;
@@ -341,13 +339,13 @@ public class Fapi2DPoPNegativeConditions {
 			JWKGenerator<? extends JWK> generator;
 			switch (dpopSigningAlg) {
 				case "ES256":
-					generator = new ECKeyGenerator(Curve.P_256).algorithm(JWSAlgorithm.ES256);
+					generator = KeyPool.ecKeyGenerator(Curve.P_256).algorithm(JWSAlgorithm.ES256);
 					break;
 				case "EdDSA":
-					generator = new OctetKeyPairGenerator(Curve.Ed25519).algorithm(JWSAlgorithm.EdDSA);
+					generator = KeyPool.octetKeyPairGenerator(Curve.Ed25519).algorithm(JWSAlgorithm.EdDSA);
 					break;
 				case "PS256":
-					generator = new RSAKeyGenerator(AbstractGenerateClientJWKs.DEFAULT_KEY_SIZE).algorithm(JWSAlgorithm.PS256);
+					generator = KeyPool.rsaKeyGenerator(AbstractGenerateClientJWKs.DEFAULT_KEY_SIZE).algorithm(JWSAlgorithm.PS256);
 					break;
 				default:
 					throw error("Failed to generate key for alg", args("alg", dpopSigningAlg));
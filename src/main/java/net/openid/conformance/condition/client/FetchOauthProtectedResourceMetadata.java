@@ -8,6 +8,7 @@ import net.openid.conformance.condition.AbstractCondition;
 import net.openid.conformance.condition.PostEnvironment;
 import net.openid.conformance.condition.PreEnvironment;
 import net.openid.conformance.testmodule.Environment;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestClientException;
@@ -38,7 +39,7 @@ public class FetchOauthProtectedResourceMetadata extends AbstractCondition {
 			try {
 				RestTemplate restTemplate = createRestTemplate(env);
 
-				ResponseEntity<String> oauthProtectedResourceMetadataResponse = restTemplate.getForEntity(oauthResourceMedatataUrl, String.class);
+				ResponseEntity<String> oauthProtectedResourceMetadataResponse = getWithPlanFetchCache(restTemplate, oauthResourceMedatataUrl, new HttpHeaders());
 				if (!HttpStatus.OK.equals(oauthProtectedResourceMetadataResponse.getStatusCode())) {
 					throw error("Protected OAuth resource metadata could not be fetched", args("status_code", oauthProtectedResourceMetadataResponse.getStatusCode().value()));
 				}
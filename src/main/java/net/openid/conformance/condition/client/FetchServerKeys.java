@@ -8,6 +8,7 @@ import net.openid.conformance.condition.AbstractCondition;
 import net.openid.conformance.condition.PostEnvironment;
 import net.openid.conformance.condition.PreEnvironment;
 import net.openid.conformance.testmodule.Environment;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
@@ -36,7 +37,7 @@ public class FetchServerKeys extends AbstractCondition {
 			try {
 				RestTemplate restTemplate = createRestTemplate(env);
 
-				String jwkString = restTemplate.getForObject(jwksUri, String.class);
+				String jwkString = getWithPlanFetchCache(restTemplate, jwksUri, new HttpHeaders()).getBody();
 
 				log("Found JWK set string", args("jwk_string", jwkString));
 
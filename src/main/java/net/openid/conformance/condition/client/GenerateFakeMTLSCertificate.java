@@ -1,9 +1,11 @@
 package net.openid.conformance.condition.client;
 
 import com.google.gson.JsonObject;
+import com.nimbusds.jose.JOSEException;
 import net.openid.conformance.condition.PostEnvironment;
 import net.openid.conformance.condition.PreEnvironment;
 import net.openid.conformance.testmodule.Environment;
+import net.openid.conformance.util.KeyPool;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.x509.X509Extension;
 import org.bouncycastle.asn1.x509.X509Extensions;
@@ -13,7 +15,6 @@ import org.bouncycastle.x509.extension.AuthorityKeyIdentifierStructure;
 
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PublicKey;
@@ -47,18 +48,16 @@ public class GenerateFakeMTLSCertificate extends AbstractFAPIBrazilExtractCertif
 	public Environment evaluate(Environment env) {
 		var extensionOidsNotToCopy = new HashSet<String>();
 
-		KeyPairGenerator generator;
+		// both keys are throwaway, so can come from the pool
+		KeyPair kp;
+		KeyPair cakp;
 		try {
-			generator = KeyPairGenerator.getInstance("RSA");
-			generator.initialize(2048);
-		} catch (NoSuchAlgorithmException e) {
+			kp = KeyPool.getInstance().takeRSAKey(2048).toKeyPair();
+			cakp = KeyPool.getInstance().takeRSAKey(2048).toKeyPair();
+		} catch (JOSEException e) {
 			throw error(e.getMessage(), e);
 		}
 
-		KeyPair kp = generator.generateKeyPair();
-
-		KeyPair cakp = generator.generateKeyPair();
-
 		PublicKey newPubKey = kp.getPublic();
 
 		String certString = env.getString("mutual_tls_authentication", "cert");
@@ -8,7 +8,7 @@ import net.openid.conformance.condition.AbstractCondition;
 import net.openid.conformance.condition.PostEnvironment;
 import net.openid.conformance.condition.PreEnvironment;
 import net.openid.conformance.testmodule.Environment;
-import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
@@ -59,7 +59,7 @@ public class GetDynamicServerConfiguration extends AbstractCondition {
 			String jsonString;
 			try {
 				RestTemplate restTemplate = createRestTemplate(env);
-				ResponseEntity<String> response = restTemplate.exchange(discoveryUrl, HttpMethod.GET, null, String.class);
+				ResponseEntity<String> response = getWithPlanFetchCache(restTemplate, discoveryUrl, new HttpHeaders());
 				JsonObject responseInfo = convertResponseForEnvironment("discovery", response);
 
 				env.putObject("discovery_endpoint_response", responseInfo);
@@ -47,7 +47,8 @@ public class UnregisterDynamicallyRegisteredClientExpectingFailure extends Abstr
 
 		try {
 
-			RestTemplate restTemplate = createRestTemplate(env);
+			// a failure setting up the connection is what this condition looks for, so it mustn't reuse one
+			RestTemplate restTemplate = createRestTemplate(env, true, true);
 			restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
 				@Override
 				public boolean hasError(ClientHttpResponse response) throws IOException {
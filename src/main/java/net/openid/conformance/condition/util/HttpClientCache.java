@@ -0,0 +1,99 @@
+package net.openid.conformance.condition.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.hash.Hashing;
+import com.google.gson.JsonObject;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.io.CloseMode;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Holds the outbound HTTP clients used by the conditions for each running test.
+ *
+ * Reusing a client lets a test reuse its connections (and TLS sessions) for the many calls it makes to the same
+ * server, instead of every call paying for a new TCP and TLS handshake and re-parsing the MTLS keys. Clients are
+ * kept per test, MTLS identity and TLS version restriction, so a test never shares connections with another test, nor
+ * uses a connection that was set up with a different client certificate.
+ *
+ * Clients are closed when the test stops, or if they're not used for a while (e.g. a condition ran after the test
+ * stopped).
+ */
+public class HttpClientCache {
+
+	private static final Duration IDLE_TIMEOUT = Duration.ofMinutes(10);
+
+	private static final Cache<Key, CloseableHttpClient> clients = CacheBuilder.newBuilder()
+		.expireAfterAccess(IDLE_TIMEOUT)
+		.removalListener((RemovalListener<Key, CloseableHttpClient>) notification -> notification.getValue().close(CloseMode.GRACEFUL))
+		.build();
+
+	private HttpClientCache() {
+	}
+
+	/**
+	 * @param mtls the 'mutual_tls_authentication' object from the environment, or null if there isn't one
+	 * @return the cached client, or null if there isn't one yet
+	 */
+	public static CloseableHttpClient get(String testId, JsonObject mtls, boolean restrictAllowedTLSVersions) {
+		return clients.getIfPresent(new Key(testId, mtls, restrictAllowedTLSVersions));
+	}
+
+	/**
+	 * Add a newly created client to the cache.
+	 *
+	 * @return the client to use; if another thread added a client for the same key first, this closes the new client
+	 * and returns the existing one
+	 */
+	public static CloseableHttpClient add(String testId, JsonObject mtls, boolean restrictAllowedTLSVersions, CloseableHttpClient client) {
+		CloseableHttpClient existing = clients.asMap().putIfAbsent(new Key(testId, mtls, restrictAllowedTLSVersions), client);
+		if (existing != null) {
+			client.close(CloseMode.GRACEFUL);
+			return existing;
+		}
+		return client;
+	}
+
+	/**
+	 * Close all the clients for a test
+	 */
+	public static void evict(String testId) {
+		clients.asMap().keySet().removeIf(key -> Objects.equals(key.testId, testId));
+		clients.cleanUp();
+	}
+
+	private static class Key {
+		private final String testId;
+		private final String mtlsHash;
+		private final boolean restrictAllowedTLSVersions;
+
+		Key(String testId, JsonObject mtls, boolean restrictAllowedTLSVersions) {
+			this.testId = testId;
+			// the hash covers the certificate, key and ca, so any change to them gets a new client
+			this.mtlsHash = mtls == null ? "" : Hashing.sha256().hashString(mtls.toString(), StandardCharsets.UTF_8).toString();
+			this.restrictAllowedTLSVersions = restrictAllowedTLSVersions;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key key)) {
+				return false;
+			}
+			return restrictAllowedTLSVersions == key.restrictAllowedTLSVersions
+				&& Objects.equals(testId, key.testId)
+				&& mtlsHash.equals(key.mtlsHash);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(testId, mtlsHash, restrictAllowedTLSVersions);
+		}
+	}
+}
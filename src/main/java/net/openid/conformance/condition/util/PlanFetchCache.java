@@ -0,0 +1,207 @@
+package net.openid.conformance.condition.util;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares the responses from fetching documents that don't change between the tests in a plan (discovery documents,
+ * JWKS etc), so that each test in the plan doesn't have to fetch them from the server again.
+ *
+ * Responses are only shared between tests in the same plan, and only for tests that have been registered with the
+ * cache (see TestRunner, which only does so if the cache is enabled). A cached response is used until it expires
+ * according to its Cache-Control header (or DEFAULT_MAX_AGE if it doesn't have one), after which it's revalidated with
+ * the server if it had an ETag or Last-Modified header, or fetched again if not. Responses marked no-store are never
+ * cached.
+ */
+public class PlanFetchCache {
+
+	public static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(5);
+
+	// an upper limit regardless of what the server says; plans rarely take longer than this
+	private static final Duration MAX_LIFETIME = Duration.ofHours(2);
+
+	private static final Map<String, String> planIdsByTestId = new ConcurrentHashMap<>();
+
+	// tests that don't use the cache because they change the documents it holds, e.g. by rotating keys
+	private static final Map<String, String> planIdsByUncachedTestId = new ConcurrentHashMap<>();
+
+	private static final Cache<Key, CachedResponse> responses = CacheBuilder.newBuilder()
+		.expireAfterWrite(MAX_LIFETIME)
+		.maximumSize(1000)
+		.build();
+
+	private PlanFetchCache() {
+	}
+
+	/**
+	 * Let the given test use (and add to) the responses cached for its plan
+	 */
+	public static void registerTest(String testId, String planId) {
+		planIdsByTestId.put(testId, planId);
+	}
+
+	/**
+	 * Register a test that doesn't use the cache because it expects documents to change while it runs (see
+	 * DisablePlanFetchCache). Everything cached for its plan is removed now, and again when the test is unregistered,
+	 * so that neither it nor the later tests in the plan get a response from before the change.
+	 */
+	public static void registerUncachedTest(String testId, String planId) {
+		planIdsByUncachedTestId.put(testId, planId);
+		evictPlan(planId);
+	}
+
+	public static void unregisterTest(String testId) {
+		planIdsByTestId.remove(testId);
+		String uncachedPlanId = planIdsByUncachedTestId.remove(testId);
+		if (uncachedPlanId != null) {
+			evictPlan(uncachedPlanId);
+		}
+	}
+
+	/**
+	 * Remove everything cached for a plan
+	 */
+	public static void evictPlan(String planId) {
+		responses.asMap().keySet().removeIf(key -> key.planId.equals(planId));
+	}
+
+	/**
+	 * Make a GET request, using the cached response from an earlier test in the same plan if there is one and it's
+	 * still valid. If the test isn't registered with the cache, this just makes the request.
+	 */
+	public static Fetch get(String testId, RestTemplate restTemplate, String url, HttpHeaders requestHeaders) {
+		String planId = testId == null ? null : planIdsByTestId.get(testId);
+		if (planId == null) {
+			return new Fetch(restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(requestHeaders), String.class), null, false);
+		}
+
+		Key key = new Key(planId, url, requestHeaders);
+		CachedResponse cached = responses.getIfPresent(key);
+		Instant now = Instant.now();
+		if (cached != null && now.isBefore(cached.expires)) {
+			return new Fetch(cached.response, cached.fetched, false);
+		}
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.addAll(requestHeaders);
+		if (cached != null) {
+			String etag = cached.response.getHeaders().getETag();
+			long lastModified = cached.response.getHeaders().getLastModified();
+			if (etag != null) {
+				headers.setIfNoneMatch(etag);
+			}
+			if (lastModified != -1) {
+				headers.setIfModifiedSince(lastModified);
+			}
+		}
+
+		ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+		if (cached != null && response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+			responses.put(key, new CachedResponse(cached.response, cached.fetched, expiry(response.getHeaders(), now)));
+			return new Fetch(cached.response, cached.fetched, true);
+		}
+
+		if (response.getStatusCode().isSameCodeAs(HttpStatus.OK) && !hasDirective(response.getHeaders(), "no-store")) {
+			responses.put(key, new CachedResponse(response, now, expiry(response.getHeaders(), now)));
+		} else {
+			responses.invalidate(key);
+		}
+		return new Fetch(response, null, false);
+	}
+
+	private static Instant expiry(HttpHeaders headers, Instant now) {
+		if (hasDirective(headers, "no-cache")) {
+			return now;
+		}
+		for (String directive : directives(headers)) {
+			if (directive.startsWith("max-age=")) {
+				try {
+					return now.plusSeconds(Long.parseLong(directive.substring("max-age=".length())));
+				} catch (NumberFormatException e) {
+					// invalid, so ignore it
+				}
+			}
+		}
+		return now.plus(DEFAULT_MAX_AGE);
+	}
+
+	private static boolean hasDirective(HttpHeaders headers, String name) {
+		for (String directive : directives(headers)) {
+			if (directive.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String[] directives(HttpHeaders headers) {
+		String cacheControl = Strings.nullToEmpty(headers.getCacheControl());
+		String[] directives = cacheControl.toLowerCase(Locale.ROOT).split(",");
+		for (int i = 0; i < directives.length; i++) {
+			directives[i] = directives[i].trim();
+		}
+		return directives;
+	}
+
+	/**
+	 * The result of a fetch
+	 *
+	 * @param response the response
+	 * @param cachedAt when the response was fetched from the server, if it came from the cache; null if it was fetched
+	 *                 from the server just now
+	 * @param revalidated true if the server was asked if the cached response was still valid, and said that it was
+	 */
+	public record Fetch(ResponseEntity<String> response, Instant cachedAt, boolean revalidated) {
+
+		public boolean isFromCache() {
+			return cachedAt != null;
+		}
+	}
+
+	private record CachedResponse(ResponseEntity<String> response, Instant fetched, Instant expires) {
+	}
+
+	private static class Key {
+		private final String planId;
+		private final String url;
+		private final HttpHeaders requestHeaders;
+
+		Key(String planId, String url, HttpHeaders requestHeaders) {
+			this.planId = planId;
+			this.url = url;
+			// e.g. a different Accept header may get a different response
+			this.requestHeaders = new HttpHeaders();
+			this.requestHeaders.addAll(requestHeaders);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key key)) {
+				return false;
+			}
+			return planId.equals(key.planId) && url.equals(key.url) && requestHeaders.equals(key.requestHeaders);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(planId, url, requestHeaders);
+		}
+	}
+}
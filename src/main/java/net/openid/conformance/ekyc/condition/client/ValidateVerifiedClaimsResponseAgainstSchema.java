@@ -3,7 +3,6 @@ package net.openid.conformance.ekyc.condition.client;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.networknt.schema.ValidationMessage;
 import net.openid.conformance.condition.PreEnvironment;
 import net.openid.conformance.testmodule.Environment;
@@ -32,16 +31,17 @@ public class ValidateVerifiedClaimsResponseAgainstSchema extends AbstractValidat
 			throw error("Could not find verified_claims");
 		}
 		//we add the outer {"verified_claims":...} here
-		String claimsJson = "{\"verified_claims\":" + claimsElement.toString() + "}";
+		JsonObject claims = new JsonObject();
+		claims.add("verified_claims", claimsElement);
 		try {
-			Set<ValidationMessage> errors = checkResponseSchema(claimsJson);
+			Set<ValidationMessage> errors = checkResponseSchema(claims);
 			if (!errors.isEmpty()) {
 				JsonArray jsonErrors = new JsonArray();
 				for (ValidationMessage error: errors) {
 					jsonErrors.add(error.toString());
 				}
 				throw error("Failed to validate verified_claims against schema",
-					args("verified_claims", JsonParser.parseString(claimsJson),
+					args("verified_claims", claims,
 						"errors", jsonErrors));
 			}
 		} catch (IOException e) {
@@ -0,0 +1,110 @@
+package net.openid.conformance.export;
+
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import jakarta.annotation.PostConstruct;
+import net.openid.conformance.info.DBTestPlanService;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsCriteria;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Service
+public class DBRenderedExportCache implements RenderedExportCache {
+
+	// rendered logs can be larger than a mongodb document, so they're kept in their own GridFS bucket
+	public static final String BUCKET = "EXPORT_CACHE";
+
+	private static final Logger logger = LoggerFactory.getLogger(DBRenderedExportCache.class);
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	private GridFsTemplate gridFsTemplate;
+
+	@Value("${fintechlabs.version}")
+	private String version;
+
+	@PostConstruct
+	public void createGridFsTemplate() {
+		gridFsTemplate = new GridFsTemplate(mongoTemplate.getMongoDatabaseFactory(), mongoTemplate.getConverter(), BUCKET);
+		removeUnusableExports();
+	}
+
+	/**
+	 * Nothing ever asks for an export rendered by a different version of the suite (the version is part of the key),
+	 * or one of a plan that no longer exists, so they're removed at startup
+	 */
+	void removeUnusableExports() {
+		try {
+			// stored before the version was recorded, or by another version
+			gridFsTemplate.delete(Query.query(GridFsCriteria.whereMetaData("version").ne(version)));
+
+			List<String> planIds = mongoTemplate.getCollection(BUCKET + ".files")
+				.distinct("metadata.planId", String.class)
+				.into(new ArrayList<>());
+			if (planIds.isEmpty()) {
+				return;
+			}
+			Set<String> existingPlanIds = new HashSet<>();
+			mongoTemplate.getCollection(DBTestPlanService.COLLECTION)
+				.find(Filters.in("_id", planIds))
+				.projection(Projections.include("_id"))
+				.forEach(plan -> existingPlanIds.add(plan.getString("_id")));
+			planIds.removeAll(existingPlanIds);
+			if (!planIds.isEmpty()) {
+				gridFsTemplate.delete(Query.query(GridFsCriteria.whereMetaData("planId").in(planIds)));
+			}
+		} catch (RuntimeException e) {
+			// they'll be tried again at the next startup
+			logger.warn("Failed to remove unused rendered exports", e);
+		}
+	}
+
+	@Override
+	public SignedHtml get(String key) {
+		GridFSFile file = gridFsTemplate.findOne(Query.query(GridFsCriteria.whereFilename().is(key)));
+		if (file == null || file.getMetadata() == null) {
+			return null;
+		}
+
+		try (InputStream in = gridFsTemplate.getResource(file).getInputStream()) {
+			return new SignedHtml(in.readAllBytes(), file.getMetadata().getString("signature"));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void put(String key, String planId, SignedHtml html) {
+		// if the same export is rendered twice at once it may be stored twice, which is harmless
+		try {
+			gridFsTemplate.store(new ByteArrayInputStream(html.html()), key, "text/html",
+				new Document("planId", planId).append("signature", html.signature()).append("version", version));
+		} catch (RuntimeException e) {
+			// it'll just be rendered again next time
+			logger.warn("Failed to store rendered export for plan " + planId, e);
+		}
+	}
+
+	@Override
+	public void invalidatePlan(String planId) {
+		gridFsTemplate.delete(Query.query(GridFsCriteria.whereMetaData("planId").is(planId)));
+	}
+}
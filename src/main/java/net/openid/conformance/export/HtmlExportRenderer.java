@@ -2,6 +2,7 @@ package net.openid.conformance.export;
 
 import com.google.gson.Gson;
 import net.openid.conformance.CollapsingGsonHttpMessageConverter;
+import net.openid.conformance.info.ImageService;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -21,6 +22,9 @@ public class HtmlExportRenderer {
 	@Value("${fintechlabs.base_url}")
 	private String suiteBaseUrl;
 
+	@Autowired
+	private ImageService imageService;
+
 	private Gson gson;
 	private String planTemplateName = "self-contained-export/plan.html";
 	private String testTemplateName = "self-contained-export/test.html";
@@ -62,7 +66,7 @@ public class HtmlExportRenderer {
 		thymleafContext.setVariable("helper", helper);
 
 		for(Document testResult : helper.getTestResults()){
-			LogEntryHelper logEntryHelper = new LogEntryHelper(testResult, gson);
+			LogEntryHelper logEntryHelper = new LogEntryHelper(inlineImage(testResult), gson);
 			helper.addLogEntryHelper(logEntryHelper);
 		}
 		StringWriter writer = new StringWriter();
@@ -73,11 +77,22 @@ public class HtmlExportRenderer {
 	public String createHtmlForLogEntry(Document logEntry) {
 		Context thymleafContext = new Context();
 		thymleafContext.setLocale(Locale.ENGLISH);
-		LogEntryHelper item = new LogEntryHelper(logEntry, gson);
+		LogEntryHelper item = new LogEntryHelper(inlineImage(logEntry), gson);
 		thymleafContext.setVariable("item", item);
 		StringWriter writer = new StringWriter();
 		exportRenderingTemplateEngine.process(logEntryTemplateName, thymleafContext, writer);
 		return writer.toString();
 	}
 
+	/**
+	 * Uploaded images are stored outside the log, but the export has to be self-contained, so replace the reference
+	 * with the image itself. This is done as each entry is rendered, so only one image is loaded at a time.
+	 */
+	private Document inlineImage(Document logEntry) {
+		if (imageService == null) {
+			return logEntry;
+		}
+		return imageService.inlineImage(logEntry);
+	}
+
 }
@@ -0,0 +1,125 @@
+package net.openid.conformance.export;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.openid.conformance.security.KeyManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders and signs the HTML versions of test logs for exports.
+ *
+ * A plan export contains the HTML for every module in the plan, and rendering a long log takes a while, so the logs
+ * are rendered on a small shared pool while the zip is being written rather than one after another. The logs of an
+ * immutable plan can't change, so what's rendered for them is kept in the RenderedExportCache and reused by later
+ * downloads (e.g. each time the certification package is prepared).
+ */
+@Service
+public class HtmlExportService {
+
+	@Autowired
+	private HtmlExportRenderer htmlExportRenderer;
+
+	@Autowired
+	private KeyManager keyManager;
+
+	@Autowired
+	private RenderedExportCache renderedExportCache;
+
+	@Value("${fintechlabs.export.render_threads:4}")
+	private int renderThreads = 4;
+
+	private ExecutorService executor;
+
+	@PostConstruct
+	public void startExecutor() {
+		executor = Executors.newFixedThreadPool(renderThreads, new ThreadFactoryBuilder()
+			.setNameFormat("export-render-%d")
+			.setDaemon(true)
+			.build());
+	}
+
+	@PreDestroy
+	public void stopExecutor() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the number of logs that are rendered at once; callers writing a zip shouldn't queue up many more than
+	 *         this, as each rendered log is held in memory until it has been written
+	 */
+	public int getRenderThreads() {
+		return renderThreads;
+	}
+
+	/**
+	 * The key a test's rendered log is cached under. The export includes who it was exported by, the url of the suite
+	 * it was exported from and the suite version (and the templates may change between versions), so these are part
+	 * of the key.
+	 */
+	public static String cacheKey(String testId, boolean publicOnly, Map<String, String> exportedBy, String exportedFrom, String version) {
+		String key = String.join("\n", testId, String.valueOf(publicOnly),
+			exportedBy == null ? "" : exportedBy.get("sub"),
+			exportedBy == null ? "" : exportedBy.get("iss"),
+			exportedFrom == null ? "" : exportedFrom,
+			version);
+		return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+	}
+
+	/**
+	 * Render a test's log in the background
+	 *
+	 * @param export the log to render; the results must already have been checked for access, as this isn't run on
+	 *               the request thread
+	 * @param planId the plan the test belongs to
+	 * @param cacheKey see cacheKey(), or null if the result must not be cached (i.e. the plan isn't immutable)
+	 */
+	public Future<SignedHtml> renderTestLog(TestExportInfo export, String planId, String cacheKey) {
+		return executor.submit(() -> {
+			if (cacheKey != null) {
+				SignedHtml cached = renderedExportCache.get(cacheKey);
+				if (cached != null) {
+					return cached;
+				}
+			}
+
+			SignedHtml html = sign(htmlExportRenderer.createHtmlForTestLogs(export));
+
+			if (cacheKey != null) {
+				renderedExportCache.put(cacheKey, planId, html);
+			}
+			return html;
+		});
+	}
+
+	/**
+	 * Render a test's log on the current thread, without caching
+	 */
+	public SignedHtml renderTestLog(TestExportInfo export) throws GeneralSecurityException {
+		return sign(htmlExportRenderer.createHtmlForTestLogs(export));
+	}
+
+	private SignedHtml sign(String html) throws GeneralSecurityException {
+		byte[] htmlBytes = html.getBytes(StandardCharsets.UTF_8);
+
+		Signature signature = Signature.getInstance("SHA1withRSA");
+		signature.initSign(keyManager.getSigningPrivateKey());
+		signature.update(htmlBytes);
+
+		return new SignedHtml(htmlBytes, Base64.getUrlEncoder().encodeToString(signature.sign()));
+	}
+}
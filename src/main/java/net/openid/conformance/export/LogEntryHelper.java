@@ -26,7 +26,7 @@ public class LogEntryHelper {
 	public static final Set<String> visibleFields = Set.of(
 		"_id",
 		"_class",	//old test results contain _class elements with 'com.mongodb.BasicDBObject' values
-		"msg", "src", "time", "result", "requirements", "upload",
+		"msg", "src", "time", "seq", "result", "requirements", "upload", "img_hash",
 		"testOwner", "testId", "http", "blockId", "startBlock");
 
 	public static final Map<String, String> specLinks;
@@ -0,0 +1,27 @@
+package net.openid.conformance.export;
+
+public interface RenderedExportCache {
+
+	/**
+	 * @param key see HtmlExportService.cacheKey()
+	 * @return the previously stored export, or null if there isn't one
+	 */
+	SignedHtml get(String key);
+
+	/**
+	 * Store a rendered export. Only exports that can't change should be stored, i.e. those of immutable plans.
+	 *
+	 * @param key see HtmlExportService.cacheKey()
+	 * @param planId the plan the export belongs to
+	 * @param html the rendered export
+	 */
+	void put(String key, String planId, SignedHtml html);
+
+	/**
+	 * Remove all the stored exports for a plan; called whenever the plan's publish or immutable status changes
+	 *
+	 * @param planId
+	 */
+	void invalidatePlan(String planId);
+
+}
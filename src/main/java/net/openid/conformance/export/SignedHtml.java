@@ -0,0 +1,10 @@
+package net.openid.conformance.export;
+
+/**
+ * An HTML export and its signature, ready to be written into a zip
+ *
+ * @param html the UTF-8 encoded HTML
+ * @param signature base64url encoded SHA1withRSA signature of the html, made with the suite's signing key
+ */
+public record SignedHtml(byte[] html, String signature) {
+}
@@ -1,7 +1,6 @@
 package net.openid.conformance.export;
 
 import java.util.Date;
-import java.util.List;
 import java.util.Map;
 @SuppressWarnings("rawtypes")
 public class TestExportInfo {
@@ -10,9 +9,13 @@ public class TestExportInfo {
 	private Map<String, String> exportedBy;
 	private String exportedVersion;
 	private Object testInfo;
-	private List results;
+	/**
+	 * Usually a lazy database query rather than a list, so a test's log entries are only loaded as they are written
+	 * out; may be iterated more than once.
+	 */
+	private Iterable results;
 
-	public TestExportInfo(String baseUrl, Map<String, String> principal, String version, Object testInfo, List testResults) {
+	public TestExportInfo(String baseUrl, Map<String, String> principal, String version, Object testInfo, Iterable testResults) {
 		this.exportedAt = new Date();
 		this.exportedFrom = baseUrl;
 		this.exportedBy = principal;
@@ -62,11 +65,11 @@ public class TestExportInfo {
 		this.testInfo = testInfo;
 	}
 
-	public List getResults() {
+	public Iterable getResults() {
 		return results;
 	}
 
-	public void setResults(List results) {
+	public void setResults(Iterable results) {
 		this.results = results;
 	}
 }
@@ -27,7 +27,7 @@ public class TestHelper {
 	private Document testInfoDocument;
 	private TestInfo testInfoObject;
 	private PublicTestInfo publicTestInfo;
-	private List<Document> testResults;
+	private Iterable<Document> testResults;
 	private List<LogEntryHelper> logEntryHelpers = new ArrayList<>();
 
 	private List<String> failures = new ArrayList<>();
@@ -57,7 +57,7 @@ public class TestHelper {
 		} else {
 			throw new RuntimeException("Unexpected testInfo object type: " + export.getTestInfo().getClass());
 		}
-		this.testResults = (List<Document>)export.getResults();
+		this.testResults = (Iterable<Document>)export.getResults();
 		for(Document resultDoc : this.testResults) {
 			String resultStr = resultDoc.getString("result");
 			if("INFO".equals(resultStr)) {
@@ -133,12 +133,12 @@ public class TestHelper {
 		return formatted;
 	}
 
-	public List<Document> getTestResults()
+	public Iterable<Document> getTestResults()
 	{
 		return testResults;
 	}
 
-	public void setTestResults(List<Document> testResults)
+	public void setTestResults(Iterable<Document> testResults)
 	{
 		this.testResults = testResults;
 	}
@@ -200,6 +200,7 @@ import net.openid.conformance.variant.VariantSetup;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -738,21 +739,15 @@ public abstract class AbstractFAPICIBAID1 extends AbstractTestModule {
 		verifyTokenEndpointResponseIsPendingOrSlowDown();
 		eventLog.endBlock();
 
-		long delaySeconds = 5;
 		Integer interval = env.getInteger("backchannel_authentication_endpoint_response", "interval");
-		if (interval != null && interval > 5) {
-			// ignore intervals lower than 5; we don't want to fill the log or exhaust our retries too quickly
-			delaySeconds = interval;
-		}
-
-		try {
-			Thread.sleep(delaySeconds * 1000);
-		} catch (InterruptedException e) {
-			throw new TestFailureException(getId(), "Thread.sleep threw exception: " + e.getMessage());
-		}
+		// ignore intervals lower than 5; we don't want to fill the log or exhaust our retries too quickly
+		long delaySeconds = interval != null && interval > 5 ? interval : 5;
 
 		// call token endpoint again and perform same checks exactly as above - but avoiding letting the request expire
+		continueAfter(delaySeconds, () -> callTokenEndpointExpectingPendingAgain(delaySeconds));
+	}
 
+	private void callTokenEndpointExpectingPendingAgain(long delaySeconds) {
 		eventLog.startBlock(currentClientString() + "Call token endpoint expecting pending (second time)");
 		callTokenEndpointForCibaGrant();
 		verifyTokenEndpointResponseIsPendingOrSlowDown();
@@ -762,19 +757,32 @@ public abstract class AbstractFAPICIBAID1 extends AbstractTestModule {
 		// slow_down: the interval MUST be increased by at least 5 seconds for this and all subsequent requests
 		// delaySeconds is as interval
 		if (!Strings.isNullOrEmpty(tokenEndpointError) && tokenEndpointError.equals("slow_down")) {
-			delaySeconds = delaySeconds + 5;
-
-			try {
-				Thread.sleep(delaySeconds * 1000L);
-			} catch (InterruptedException e) {
-				throw new TestFailureException(getId(), "Thread.sleep threw exception: " + e.getMessage());
-			}
+			long slowDownDelaySeconds = delaySeconds + 5;
+			continueAfter(slowDownDelaySeconds, () -> {
+				callAutomatedEndpoint();
+				waitForAuthenticationToComplete(slowDownDelaySeconds);
+			});
+			return;
 		}
 
 		callAutomatedEndpoint();
 
 		waitForAuthenticationToComplete(delaySeconds);
+	}
 
+	/**
+	 * Wait without holding the lock or a thread, then carry on with the rest of the test
+	 *
+	 * The test is WAITING in between, and RUNNING again when the continuation is called. The continuation must be the
+	 * last thing the caller does.
+	 */
+	protected void continueAfter(long delaySeconds, Runnable continuation) {
+		setStatus(Status.WAITING);
+		getTestExecutionManager().schedule(Duration.ofSeconds(delaySeconds), () -> {
+			setStatus(Status.RUNNING);
+			continuation.run();
+			return "done";
+		});
 	}
 
 	protected void performAuthorizationRequest() {
@@ -814,17 +822,16 @@ public abstract class AbstractFAPICIBAID1 extends AbstractTestModule {
 	}
 
 	protected void waitForPollingAuthenticationToComplete(long delaySeconds) {
-		for (int attempts = 0; attempts < 20; attempts++) {
-			// poll the token endpoint
+		pollTokenEndpoint(delaySeconds, 0);
+	}
 
-			setStatus(Status.WAITING);
-			try {
-				Thread.sleep(delaySeconds * 1000);
-			} catch (InterruptedException e) {
-				throw new TestFailureException(getId(), "Thread.sleep threw exception: " + e.getMessage());
-			}
-			setStatus(Status.RUNNING);
+	private void pollTokenEndpoint(long delaySeconds, int attempts) {
+		if (attempts >= 20) {
+			// we never moved out of pending and hence could not complete the test, test fails
+			throw new TestFailureException(getId(), "User did not authenticate before timeout");
+		}
 
+		continueAfter(delaySeconds, () -> {
 			eventLog.startBlock(currentClientString() + "Polling token endpoint waiting for user to authenticate");
 			callTokenEndpointForCibaGrant();
 			eventLog.endBlock();
@@ -835,13 +842,8 @@ public abstract class AbstractFAPICIBAID1 extends AbstractTestModule {
 			}
 			verifyTokenEndpointResponseIsPendingOrSlowDown();
 
-			if (delaySeconds < 60) {
-				delaySeconds = Math.round(delaySeconds * 1.5);
-			}
-		}
-
-		// we never moved out of pending and hence could not complete the test, test fails
-		throw new TestFailureException(getId(), "User did not authenticate before timeout");
+			pollTokenEndpoint(delaySeconds < 60 ? Math.round(delaySeconds * 1.5) : delaySeconds, attempts + 1);
+		});
 	}
 
 	protected void performProfileAuthorizationEndpointSetup() {
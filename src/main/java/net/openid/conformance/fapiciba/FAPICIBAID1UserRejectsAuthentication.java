@@ -7,7 +7,6 @@ import net.openid.conformance.condition.client.ExpectAccessDeniedErrorFromTokenE
 import net.openid.conformance.condition.client.TellUserToRejectCIBAAuthentication;
 import net.openid.conformance.testmodule.PublishTestModule;
 import net.openid.conformance.testmodule.TestFailureException;
-import net.openid.conformance.testmodule.TestModule;
 import net.openid.conformance.variant.CIBAMode;
 
 @PublishTestModule(
@@ -50,15 +49,15 @@ public class FAPICIBAID1UserRejectsAuthentication extends AbstractFAPICIBAID1 {
 			return;
 		}
 
-		for (int attempts = 0; attempts < 20; attempts++) {
-			setStatus(TestModule.Status.WAITING);
-			try {
-				Thread.sleep(delaySeconds * 1000);
-			} catch (InterruptedException e) {
-				throw new TestFailureException(getId(), "Thread.sleep threw exception: " + e.getMessage());
-			}
-			setStatus(TestModule.Status.RUNNING);
+		pollTokenEndpointUntilRejected(delaySeconds, 0);
+	}
+
+	private void pollTokenEndpointUntilRejected(long delaySeconds, int attempts) {
+		if (attempts >= 20) {
+			throw new TestFailureException(getId(), "User did not reject authentication before timeout");
+		}
 
+		continueAfter(delaySeconds, () -> {
 			eventLog.startBlock(currentClientString() + "Polling token endpoint waiting for user to reject authentication");
 			callTokenEndpointForCibaGrant();
 			eventLog.endBlock();
@@ -81,13 +80,8 @@ public class FAPICIBAID1UserRejectsAuthentication extends AbstractFAPICIBAID1 {
 			}
 
 			// otherwise the response was pending/slowdown - try again
-
-			if (delaySeconds < 60) {
-				delaySeconds = Math.round(delaySeconds * 1.5);
-			}
-		}
-
-		throw new TestFailureException(getId(), "User did not reject authentication before timeout");
+			pollTokenEndpointUntilRejected(delaySeconds < 60 ? Math.round(delaySeconds * 1.5) : delaySeconds, attempts + 1);
+		});
 	}
 
 	@Override
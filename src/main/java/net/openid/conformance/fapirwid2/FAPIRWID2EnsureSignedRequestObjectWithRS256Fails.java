@@ -62,7 +62,7 @@ public class FAPIRWID2EnsureSignedRequestObjectWithRS256Fails extends AbstractFA
 	@Override
 	protected void createAuthorizationRequestObject() {
 		// create a copy of the jwks so we can restore the original one when creating any client assertion
-		env.putObject("client_jwks_rs256", env.getObject("client_jwks").deepCopy());
+		env.copyObject("client_jwks", "client_jwks_rs256");
 		env.mapKey("client_jwks", "client_jwks_rs256");
 		callAndStopOnFailure(ChangeClientJwksAlgToRS256.class, "FAPI-RW-8.6");
 
@@ -16,17 +16,23 @@ import org.htmlunit.BrowserVersion;
 import org.htmlunit.CookieManager;
 import org.htmlunit.DefaultPageCreator;
 import org.htmlunit.HttpMethod;
-import org.htmlunit.HttpWebConnection;
 import org.htmlunit.Page;
 import org.htmlunit.ScriptException;
+import org.htmlunit.StorageHolder;
 import org.htmlunit.WebClient;
+import org.htmlunit.WebConnection;
 import org.htmlunit.WebConsole;
 import org.htmlunit.WebRequest;
 import org.htmlunit.WebResponse;
 import org.htmlunit.WebWindow;
+import org.htmlunit.WebWindowEvent;
+import org.htmlunit.WebWindowListener;
 import org.htmlunit.html.HtmlPage;
 import org.htmlunit.javascript.JavaScriptErrorListener;
+import org.htmlunit.javascript.SilentJavaScriptErrorListener;
+import org.htmlunit.util.Cookie;
 import org.htmlunit.util.NameValuePair;
+import org.htmlunit.util.WebConnectionWrapper;
 import org.openqa.selenium.By;
 import org.openqa.selenium.JavascriptExecutor;
 import org.openqa.selenium.NoSuchElementException;
@@ -46,14 +52,18 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import java.util.regex.Pattern;
 
 public class BrowserControl implements DataUtils {
@@ -95,6 +105,9 @@ public class BrowserControl implements DataUtils {
 
 	 The second task clicks the "Do not remember this choice" radio button, and then clicks the authorize button which
 	 then should trigger the redirect from the server.
+
+	 A command set can also contain "javascript": false and/or "css": false, to turn off JavaScript or CSS processing in
+	 the browser for pages that don't need them; pages load faster and with far less memory without them.
 	 */
 
 	private static final Logger logger = LoggerFactory.getLogger(BrowserControl.class);
@@ -119,6 +132,10 @@ public class BrowserControl implements DataUtils {
 
 	private CookieManager cookieManager = new CookieManager(); // cookie manager, shared between all webrunners for this testmodule instance
 
+	// installed in the pooled browser while one of our webrunners is using it
+	private final WebConsole.Logger consoleLogger = new BrowserConsoleLogger();
+	private final JavaScriptErrorListener javaScriptErrorListener = new BrowserJavaScriptErrorListener();
+
 	public BrowserControl(JsonObject config, String testId, TestInstanceEventLog eventLog, TestExecutionManager executionManager, ImageService imageService) {
 		this.testId = testId;
 		this.eventLog = eventLog;
@@ -178,7 +195,9 @@ public class BrowserControl implements DataUtils {
 					limit--;
 					commands.addProperty("match-limit", limit);
 				}
-				WebRunner wr = new WebRunner(url, commands.getAsJsonArray("tasks"), placeholder, method);
+				boolean javascriptEnabled = !commands.has("javascript") || OIDFJSON.getBoolean(commands.get("javascript"));
+				boolean cssEnabled = !commands.has("css") || OIDFJSON.getBoolean(commands.get("css"));
+				WebRunner wr = new WebRunner(url, commands.getAsJsonArray("tasks"), placeholder, method, javascriptEnabled, cssEnabled);
 				executionManager.runInBackground(wr);
 				logger.debug(testId + ": WebRunner submitted to task executor for: " + url);
 
@@ -229,32 +248,53 @@ public class BrowserControl implements DataUtils {
 	 */
 	private class WebRunner implements Callable<String> {
 		private String url;
-		private ResponseCodeHtmlUnitDriver driver;
+		// null until a browser is available from the pool
+		private volatile ResponseCodeHtmlUnitDriver driver;
 		private JsonArray tasks;
 		private String currentTask;
 		private String currentCommand;
 		private String lastException;
 		private String placeholder;
 		private String method;
+		private boolean javascriptEnabled;
+		private boolean cssEnabled;
 
 		/**
 		 * @param url   url to go to
 		 * @param tasks {@link JsonArray} of commands to perform once we get to the page
 		 */
-		private WebRunner(String url, JsonArray tasks, String placeholder, String method) {
+		private WebRunner(String url, JsonArray tasks, String placeholder, String method, boolean javascriptEnabled, boolean cssEnabled) {
 			this.url = url;
 			this.tasks = tasks;
 			this.placeholder = placeholder;
 			this.method = method;
-
-			// each WebRunner gets it's own driver... that way two could run at the same time for the same test.
-			this.driver = new ResponseCodeHtmlUnitDriver();
+			this.javascriptEnabled = javascriptEnabled;
+			this.cssEnabled = cssEnabled;
 		}
 
 		@Override
 		public String call() {
+			// each WebRunner gets it's own driver... that way two could run at the same time for the same test.
+			BrowserPool pool = BrowserPool.getInstance();
+			long waitStart = System.nanoTime();
+			try {
+				this.driver = pool.acquire(BrowserControl.this, javascriptEnabled, cssEnabled);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				runners.remove(this);
+				throw new TestFailureException(testId, "Interrupted whilst waiting for a browser to become available", e);
+			}
+			long waitedMillis = Duration.ofNanos(System.nanoTime() - waitStart).toMillis();
+			if (waitedMillis >= 1000) {
+				eventLog.log("WebRunner", args(
+					"msg", "Waited for a scripted browser to become available, as the maximum number were already in use by other tests",
+					"waited_ms", waitedMillis
+				));
+			}
+
 			try {
 				logger.info(testId + ": Sending BrowserControl to: " + url);
+				long pageLoadStart = System.nanoTime();
 
 				if (Objects.equals(method, "POST")) {
 
@@ -292,6 +332,7 @@ public class BrowserControl implements DataUtils {
 					driver.get(url);
 
 				}
+				pool.recordPageLoad(Duration.ofNanos(System.nanoTime() - pageLoadStart));
 
 				eventLog.log("WebRunner", args(
 					"msg", "Scripted browser HTTP response",
@@ -419,7 +460,7 @@ public class BrowserControl implements DataUtils {
 				throw new TestFailureException(testId, "Web Runner Exception: " + e.getMessage(), e);
 			} finally {
 				runners.remove(this);
-				driver.close();
+				pool.release(driver);
 			}
 		}
 
@@ -647,10 +688,10 @@ public class BrowserControl implements DataUtils {
 		}
 	}
 
-	private class LoggingHttpWebConnection extends HttpWebConnection {
+	private class LoggingWebConnection extends WebConnectionWrapper {
 
-		public LoggingHttpWebConnection(WebClient webClient) {
-			super(webClient);
+		public LoggingWebConnection(WebConnection webConnection) {
+			super(webConnection);
 		}
 
 		/**
@@ -709,73 +750,291 @@ public class BrowserControl implements DataUtils {
 		}
 	}
 
+	private class BrowserConsoleLogger implements WebConsole.Logger {
+		private void internalLog(final Object message) {
+			if (verboseLogging) {
+				eventLog.log("BROWSER", String.valueOf(message));
+			}
+			logger.info(String.valueOf(message));
+		}
+
+		@Override
+		public void warn(final Object message) {
+			internalLog(message);
+		}
+
+		@Override
+		public boolean isErrorEnabled() {
+			return true;
+		}
+
+		@Override
+		public boolean isTraceEnabled() {
+			return true;
+		}
+
+		@Override
+		public void trace(final Object message) {
+			internalLog(message);
+		}
+
+		@Override
+		public boolean isDebugEnabled() {
+			return true;
+		}
+
+		@Override
+		public void info(final Object message) {
+			internalLog(message);
+		}
+
+		@Override
+		public boolean isWarnEnabled() {
+			return true;
+		}
+
+		@Override
+		public void error(final Object message) {
+			internalLog(message);
+		}
+
+		@Override
+		public void debug(final Object message) {
+			internalLog(message);
+		}
+
+		@Override
+		public boolean isInfoEnabled() {
+			return true;
+		}
+	}
+
+	private class BrowserJavaScriptErrorListener implements JavaScriptErrorListener {
+
+		@Override
+		public void scriptException(HtmlPage page, ScriptException scriptException) {
+			eventLog.log("BROWSER", args("msg", "Error during JavaScript execution", "detail", scriptException.toString()));
+		}
+
+		@Override
+		public void timeoutError(HtmlPage page, long allowedTime, long executionTime) {
+			eventLog.log("BROWSER", args("msg", "Timeout during JavaScript execution after "
+				+ executionTime + "ms; allowed only " + allowedTime + "ms"));
+
+		}
+
+		@Override
+		public void malformedScriptURL(HtmlPage page, String url, MalformedURLException malformedURLException) {
+			eventLog.log("BROWSER", args("msg", "Unable to build URL for script src tag [" + url + "]", "exception", malformedURLException.toString()));
+		}
+
+		@Override
+		public void loadScriptError(HtmlPage page, URL scriptUrl, Exception exception) {
+			eventLog.log("BROWSER", args("msg", "Error loading JavaScript from [" + scriptUrl + "].", "exception", exception.toString()));
+		}
+
+		@Override
+		public void warn(String message, String sourceName, int line, String lineSource, int lineOffset) {
+			final StringBuilder msg = new StringBuilder()
+				.append("warning: message=[").append(message)
+				.append("] sourceName=[").append(sourceName)
+				.append("] line=[").append(line)
+				.append("] lineSource=[").append(lineSource)
+				.append("] lineOffset=[").append(lineOffset)
+				.append("]");
+
+			eventLog.log("BROWSER", args("msg", msg.toString()));
+		}
+	}
+
+	/**
+	 * Passes everything through to the cookie manager of the test currently using the browser.
+	 *
+	 * HtmlUnit's http client holds on to the cookie manager the WebClient had when the client was created, so a pooled
+	 * browser keeps the same (instance of this) cookie manager for its whole life and the test's one is swapped in
+	 * behind it instead.
+	 */
+	@SuppressWarnings({"serial", "UnsynchronizedOverridesSynchronized"}) // the delegate does its own locking
+	private static class SwitchableCookieManager extends CookieManager {
+
+		private transient volatile CookieManager delegate = new CookieManager();
+
+		void setDelegate(CookieManager delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void setCookiesEnabled(boolean enabled) {
+			delegate.setCookiesEnabled(enabled);
+		}
+
+		@Override
+		public boolean isCookiesEnabled() {
+			return delegate.isCookiesEnabled();
+		}
+
+		@Override
+		public Set<Cookie> getCookies() {
+			return delegate.getCookies();
+		}
+
+		@Override
+		public boolean clearExpired(Date date) {
+			return delegate.clearExpired(date);
+		}
+
+		@Override
+		public Cookie getCookie(String name) {
+			return delegate.getCookie(name);
+		}
+
+		@Override
+		public void addCookie(Cookie cookie) {
+			delegate.addCookie(cookie);
+		}
+
+		@Override
+		public void removeCookie(Cookie cookie) {
+			delegate.removeCookie(cookie);
+		}
+
+		@Override
+		public void clearCookies() {
+			delegate.clearCookies();
+		}
+	}
+
 	/**
 	 * SubClass of {@link HtmlUnitDriver} to provide access to the response code of the last page we visited
+	 *
+	 * Drivers are kept in the {@link BrowserPool} and reused by other tests, so everything that belongs to the test
+	 * (cookies, local and session storage, logging, and whether JavaScript and CSS are enabled) is set by attach() and
+	 * removed again by reset().
 	 */
-	private class ResponseCodeHtmlUnitDriver extends HtmlUnitDriver {
+	static class ResponseCodeHtmlUnitDriver extends HtmlUnitDriver {
+
+		private final SwitchableCookieManager cookieManager = new SwitchableCookieManager();
+
+		// HtmlUnit's StorageHolder can't list what it holds, so keep track of the origins (which local storage is kept
+		// by) and top level windows (which session storage is kept by) that pages have been loaded into
+		private final Map<String, URL> storageOrigins = new ConcurrentHashMap<>();
+
+		private final Set<WebWindow> storageWindows = ConcurrentHashMap.newKeySet();
+
+		private final WebConnection defaultWebConnection;
+
+		private final WebConsole.Logger defaultConsoleLogger;
+
+		// the pool permit this driver is currently held under
+		private Semaphore permits;
 
 		public ResponseCodeHtmlUnitDriver() {
 			super(true);
-			final WebConsole console = getWebClient().getWebConsole();
-			console.setLogger(new WebConsole.Logger() {
-				private void internalLog(final Object message) {
-					if (verboseLogging) {
-						eventLog.log("BROWSER", String.valueOf(message));
-					}
-					logger.info(String.valueOf(message));
-				}
+			WebClient client = getWebClient();
+			defaultWebConnection = client.getWebConnection();
+			defaultConsoleLogger = client.getWebConsole().getLogger();
+			client.setCookieManager(cookieManager);
 
-				@Override
-				public void warn(final Object message) {
-					internalLog(message);
-				}
+			client.setPageCreator(new BrowserControlPageCreator());
 
-				@Override
-				public boolean isErrorEnabled() {
-					return true;
-				}
+			// Selenium / HtmlUnit's javascript engine barfs at a lot of modern
+			// javascript. However asking it to ignore the errors and carry on seems
+			// to result in a surprising amount of eventual success.
+			client.getOptions().setThrowExceptionOnScriptError(false);
 
-				@Override
-				public boolean isTraceEnabled() {
-					return true;
-				}
+			client.setJavaScriptErrorListener(new SilentJavaScriptErrorListener());
 
+			client.addWebWindowListener(new WebWindowListener() {
 				@Override
-				public void trace(final Object message) {
-					internalLog(message);
+				public void webWindowOpened(WebWindowEvent event) {
+					storageWindows.add(event.getWebWindow().getTopWindow());
 				}
 
 				@Override
-				public boolean isDebugEnabled() {
-					return true;
+				public void webWindowContentChanged(WebWindowEvent event) {
+					storageWindows.add(event.getWebWindow().getTopWindow());
+					Page page = event.getNewPage();
+					if (page != null && page.getUrl() != null) {
+						URL url = page.getUrl();
+						storageOrigins.putIfAbsent(url.getProtocol() + "://" + url.getHost(), url);
+					}
 				}
 
 				@Override
-				public void info(final Object message) {
-					internalLog(message);
+				public void webWindowClosed(WebWindowEvent event) {
+					// its session storage is removed by reset()
 				}
+			});
+		}
 
-				@Override
-				public boolean isWarnEnabled() {
-					return true;
-				}
+		/**
+		 * Hand the driver to a test
+		 */
+		void attach(BrowserControl owner, Semaphore permits, boolean javascriptEnabled, boolean cssEnabled) {
+			this.permits = permits;
+			WebClient client = getWebClient();
+			// use same cookie manager for all instances within this testmodule instance
+			// (cookie manager seems to be thread safe)
+			// This is necessary for OIDC prompt=login tests. It might make the results unpredictable if we are running
+			// multiple WebRunners within one test module instance at the same time, as the ordering of when cookies
+			// are set/read might differ between test runs.
+			cookieManager.setDelegate(owner.cookieManager);
+			client.getWebConsole().setLogger(owner.consoleLogger);
+			client.setJavaScriptErrorListener(owner.javaScriptErrorListener);
+			if (owner.verboseLogging) {
+				client.setWebConnection(owner.new LoggingWebConnection(defaultWebConnection));
+			}
+			client.getOptions().setJavaScriptEnabled(javascriptEnabled);
+			client.getOptions().setCssEnabled(cssEnabled);
+		}
 
-				@Override
-				public void error(final Object message) {
-					internalLog(message);
-				}
+		Semaphore getPermits() {
+			return permits;
+		}
 
-				@Override
-				public void debug(final Object message) {
-					internalLog(message);
-				}
+		/**
+		 * Detach the driver from the test that was using it and return it to the state it was created in
+		 *
+		 * @return false if the driver couldn't be reset, and so shouldn't be reused
+		 */
+		boolean reset() {
+			WebClient client = getWebClient();
+			if (client == null) {
+				// already quit
+				return false;
+			}
+			// detach first, so that nothing the pages do as they're unloaded ends up in the test
+			cookieManager.setDelegate(new CookieManager());
+			client.getWebConsole().setLogger(defaultConsoleLogger);
+			client.setJavaScriptErrorListener(new SilentJavaScriptErrorListener());
+			client.setWebConnection(defaultWebConnection);
+			client.getOptions().setJavaScriptEnabled(true);
+			client.getOptions().setCssEnabled(true);
 
-				@Override
-				public boolean isInfoEnabled() {
-					return true;
+			try {
+				List<String> handles = new ArrayList<>(getWindowHandles());
+				for (String handle : handles.subList(1, handles.size())) {
+					switchTo().window(handle);
+					close();
 				}
-			});
+				switchTo().window(handles.get(0));
+				get("about:blank");
+				client.getCache().clear();
 
+				StorageHolder storage = client.getStorageHolder();
+				for (URL origin : storageOrigins.values()) {
+					storage.getLocalStorage(origin).clear();
+				}
+				storageOrigins.clear();
+				for (WebWindow window : storageWindows) {
+					storage.getSessionStorage(window).clear();
+				}
+				storageWindows.clear();
+				return true;
+			} catch (RuntimeException e) {
+				logger.warn("Failed to reset browser for reuse", e);
+				return false;
+			}
 		}
 
 		public int getResponseCode() {
@@ -805,66 +1064,6 @@ public class BrowserControl implements DataUtils {
 		protected WebClient newWebClient(BrowserVersion version) {
 			return new WebClient(version);
 		}
-
-		@Override
-		protected WebClient modifyWebClient(WebClient client) {
-			client.setPageCreator(new BrowserControlPageCreator());
-			// use same cookie manager for all instances within this testmodule instance
-			// (cookie manager seems to be thread safe)
-			// This is necessary for OIDC prompt=login tests. It might make the results unpredictable if we are running
-			// multiple WebRunners within one test module instance at the same time, as the ordering of when cookies
-			// are set/read might differ between test runs.
-			client.setCookieManager(cookieManager);
-
-			// Selenium / HtmlUnit's javascript engine barfs at a lot of modern
-			// javascript. However asking it to ignore the errors and carry on seems
-			// to result in a surprising amount of eventual success.
-			client.getOptions().setThrowExceptionOnScriptError(false);
-
-			client.setJavaScriptErrorListener(new JavaScriptErrorListener() {
-
-				@Override
-				public void scriptException(HtmlPage page, ScriptException scriptException) {
-					eventLog.log("BROWSER", args("msg", "Error during JavaScript execution", "detail", scriptException.toString()));
-				}
-
-				@Override
-				public void timeoutError(HtmlPage page, long allowedTime, long executionTime) {
-					eventLog.log("BROWSER", args("msg", "Timeout during JavaScript execution after "
-						+ executionTime + "ms; allowed only " + allowedTime + "ms"));
-
-				}
-
-				@Override
-				public void malformedScriptURL(HtmlPage page, String url, MalformedURLException malformedURLException) {
-					eventLog.log("BROWSER", args("msg", "Unable to build URL for script src tag [" + url + "]", "exception", malformedURLException.toString()));
-				}
-
-				@Override
-				public void loadScriptError(HtmlPage page, URL scriptUrl, Exception exception) {
-					eventLog.log("BROWSER", args("msg", "Error loading JavaScript from [" + scriptUrl + "].", "exception", exception.toString()));
-				}
-
-				@Override
-				public void warn(String message, String sourceName, int line, String lineSource, int lineOffset) {
-					final StringBuilder msg = new StringBuilder()
-						.append("warning: message=[").append(message)
-						.append("] sourceName=[").append(sourceName)
-						.append("] line=[").append(line)
-						.append("] lineSource=[").append(lineSource)
-						.append("] lineOffset=[").append(lineOffset)
-						.append("]");
-
-					eventLog.log("BROWSER", args("msg", msg.toString()));
-				}
-			});
-
-			if (verboseLogging) {
-				client.setWebConnection(new LoggingHttpWebConnection(client));
-			}
-
-			return client;
-		}
 	}
 
 	/**
@@ -946,12 +1145,19 @@ public class BrowserControl implements DataUtils {
 		for (WebRunner wr : runners) {
 			JsonObject o = new JsonObject();
 			o.addProperty("url", wr.url);
-			o.addProperty("currentUrl", wr.driver.getCurrentUrl());
+			ResponseCodeHtmlUnitDriver driver = wr.driver;
+			if (driver == null) {
+				// still waiting for a browser from the pool
+				o.addProperty("currentTask", "Waiting for a browser to become available");
+				out.add(o);
+				continue;
+			}
+			o.addProperty("currentUrl", driver.getCurrentUrl());
 			o.addProperty("currentTask", wr.currentTask);
 			o.addProperty("currentCommand", wr.currentCommand);
-			o.addProperty("lastResponseCode", wr.driver.getResponseCode());
-			o.addProperty("lastResponseContentType", wr.driver.getResponseContentType());
-			o.addProperty("lastResponseContent", wr.driver.getResponseContent());
+			o.addProperty("lastResponseCode", driver.getResponseCode());
+			o.addProperty("lastResponseContentType", driver.getResponseContentType());
+			o.addProperty("lastResponseContent", driver.getResponseContent());
 			o.addProperty("lastException", wr.lastException);
 
 			out.add(o);
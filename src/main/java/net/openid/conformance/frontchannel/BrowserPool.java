@@ -0,0 +1,218 @@
+package net.openid.conformance.frontchannel;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The headless browsers used by {@link BrowserControl} to run the 'browser' commands in test configurations.
+ *
+ * Creating an HtmlUnit browser is expensive (each one has its own JavaScript engine, CSS parser and http connection
+ * pool), so browsers are returned to the pool once a WebRunner has finished with them and reused by later tests. A
+ * returned browser is reset first - its windows are closed, its cache is cleared and it is detached from the test's
+ * cookies and event log - so nothing carries over from one test to the next.
+ *
+ * The pool also limits how many browsers are in use at once across all tests; WebRunners that start when the limit
+ * has been reached wait (in the order they started) for another WebRunner to finish.
+ */
+public class BrowserPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(BrowserPool.class);
+
+	private static final BrowserPool INSTANCE = new BrowserPool(BrowserControl.ResponseCodeHtmlUnitDriver::new);
+
+	public static final int DEFAULT_SIZE = 4;
+
+	public static final int DEFAULT_MAX_ACTIVE = 16;
+
+	private final Supplier<BrowserControl.ResponseCodeHtmlUnitDriver> factory;
+
+	// most recently returned first, so the browsers that get reused are the ones whose caches etc are still warm
+	private final BlockingDeque<BrowserControl.ResponseCodeHtmlUnitDriver> idle = new LinkedBlockingDeque<>();
+
+	private final ExecutorService filler = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+		.setNameFormat("browser-pool-%d")
+		.setDaemon(true)
+		.setPriority(Thread.MIN_PRIORITY)
+		.build());
+
+	private final AtomicInteger active = new AtomicInteger();
+
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	private final AtomicLong created = new AtomicLong();
+
+	private final AtomicLong reused = new AtomicLong();
+
+	private volatile int size = DEFAULT_SIZE;
+
+	private volatile Semaphore permits = new Semaphore(DEFAULT_MAX_ACTIVE, true);
+
+	private volatile Timer waitTimer;
+
+	private volatile Timer pageLoadTimer;
+
+	BrowserPool(Supplier<BrowserControl.ResponseCodeHtmlUnitDriver> factory) {
+		this.factory = factory;
+	}
+
+	public static BrowserPool getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param size the number of idle browsers to keep for reuse; 0 means every WebRunner gets a new browser
+	 */
+	public void setSize(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * Should only be called before any browsers are in use.
+	 *
+	 * @param maxActive the number of browsers that can be in use at once; 0 means no limit
+	 */
+	public void setMaxActive(int maxActive) {
+		this.permits = new Semaphore(maxActive > 0 ? maxActive : Integer.MAX_VALUE, true);
+	}
+
+	public void registerMetrics(MeterRegistry registry) {
+		Gauge.builder("conformance.browser_pool.active", active, AtomicInteger::get)
+			.description("Headless browsers currently being used by a test")
+			.register(registry);
+		Gauge.builder("conformance.browser_pool.idle", this, BrowserPool::getIdleCount)
+			.description("Headless browsers ready to be reused")
+			.register(registry);
+		Gauge.builder("conformance.browser_pool.waiting", waiting, AtomicInteger::get)
+			.description("Browser automations waiting for a headless browser to become available")
+			.register(registry);
+		FunctionCounter.builder("conformance.browser_pool.created", created, AtomicLong::get)
+			.description("Headless browsers created")
+			.register(registry);
+		FunctionCounter.builder("conformance.browser_pool.reused", reused, AtomicLong::get)
+			.description("Headless browsers taken from the pool rather than created")
+			.register(registry);
+		waitTimer = Timer.builder("conformance.browser_pool.wait")
+			.description("Time spent waiting for a headless browser to become available")
+			.register(registry);
+		pageLoadTimer = Timer.builder("conformance.browser.page_load")
+			.description("Time taken for the headless browser to load and render the page it was sent to")
+			.register(registry);
+	}
+
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	public int getWaitingCount() {
+		return waiting.get();
+	}
+
+	public long getCreatedCount() {
+		return created.get();
+	}
+
+	public long getReusedCount() {
+		return reused.get();
+	}
+
+	/**
+	 * Create browsers in the background, so that they're ready before the first test needs one
+	 */
+	public void prefill() {
+		filler.execute(() -> {
+			try {
+				while (idle.size() < size) {
+					idle.offerLast(newDriver());
+				}
+			} catch (RuntimeException e) {
+				// WebRunners will create their own browsers instead
+				logger.error("Failed to create browser for pool", e);
+			}
+		});
+	}
+
+	/**
+	 * Get a browser for a WebRunner, waiting if the maximum number of browsers are already in use
+	 *
+	 * The browser must be given back by calling release() once the WebRunner has finished with it.
+	 */
+	BrowserControl.ResponseCodeHtmlUnitDriver acquire(BrowserControl owner, boolean javascriptEnabled, boolean cssEnabled) throws InterruptedException {
+		Semaphore semaphore = permits;
+		long start = System.nanoTime();
+		waiting.incrementAndGet();
+		try {
+			semaphore.acquire();
+		} finally {
+			waiting.decrementAndGet();
+		}
+		Timer timer = waitTimer;
+		if (timer != null) {
+			timer.record(Duration.ofNanos(System.nanoTime() - start));
+		}
+
+		try {
+			BrowserControl.ResponseCodeHtmlUnitDriver driver = idle.pollFirst();
+			if (driver != null) {
+				reused.incrementAndGet();
+			} else {
+				driver = newDriver();
+			}
+			driver.attach(owner, semaphore, javascriptEnabled, cssEnabled);
+			active.incrementAndGet();
+			return driver;
+		} catch (RuntimeException e) {
+			semaphore.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Give back a browser obtained from acquire()
+	 */
+	void release(BrowserControl.ResponseCodeHtmlUnitDriver driver) {
+		Semaphore semaphore = driver.getPermits();
+		active.decrementAndGet();
+		try {
+			if (driver.reset() && idle.size() < size) {
+				idle.offerFirst(driver);
+			} else {
+				driver.quit();
+			}
+		} catch (RuntimeException e) {
+			logger.warn("Failed to close browser", e);
+		} finally {
+			semaphore.release();
+		}
+	}
+
+	void recordPageLoad(Duration duration) {
+		Timer timer = pageLoadTimer;
+		if (timer != null) {
+			timer.record(duration);
+		}
+	}
+
+	private BrowserControl.ResponseCodeHtmlUnitDriver newDriver() {
+		created.incrementAndGet();
+		return factory.get();
+	}
+}
@@ -1,6 +1,8 @@
 package net.openid.conformance.info;
 
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.mongodb.client.gridfs.model.GridFSFile;
 import net.openid.conformance.condition.Condition;
 import net.openid.conformance.logging.DBEventLog;
 import net.openid.conformance.security.AuthenticationFacade;
@@ -12,8 +14,17 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsCriteria;
+import org.springframework.data.mongodb.gridfs.GridFsResource;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -31,6 +42,10 @@ public class DBImageService implements ImageService {
 	@Autowired
 	private AuthenticationFacade authenticationFacade;
 
+	// uploaded images are kept in GridFS, named by their sha-256 hash, with the log entries just referencing them
+	@Autowired
+	private GridFsTemplate gridFsTemplate;
+
 	// Create a Criteria with or without the security constraints as needed
 	private Criteria createCriteria(Criteria findTestId, Criteria additionalConstraints, boolean assumeAdmin) {
 		Criteria criteria = new Criteria();
@@ -131,4 +146,75 @@ public class DBImageService implements ImageService {
 			.sort(new Document("time", 1)));
 	}
 
+	@Override
+	public String storeImage(String encoded) {
+		// e.g. 'data:image/png;base64,iVBORw0KGgo...'
+		String contentType = encoded.substring("data:".length(), encoded.indexOf(';'));
+		byte[] image = Base64.getDecoder().decode(encoded.substring(encoded.indexOf(',') + 1));
+
+		String hash = Hashing.sha256().hashBytes(image).toString();
+
+		// if two copies of the same image are uploaded at once we may end up storing it twice, which is harmless
+		if (findImage(hash) == null) {
+			gridFsTemplate.store(new ByteArrayInputStream(image), hash, contentType);
+		}
+
+		return hash;
+	}
+
+	@Override
+	public GridFsResource getImage(String testId, String hash, boolean assumeAdmin) {
+		Criteria criteria = Criteria.where("testId").is(testId).and("img_hash").is(hash);
+		if (!assumeAdmin && !authenticationFacade.isAdmin()) {
+			criteria.and("testOwner").is(authenticationFacade.getPrincipal());
+		}
+
+		if (!mongoTemplate.exists(Query.query(criteria), DBEventLog.COLLECTION)) {
+			return null;
+		}
+
+		GridFSFile file = findImage(hash);
+		return file == null ? null : gridFsTemplate.getResource(file);
+	}
+
+	@Override
+	public String getImageAsDataUrl(String hash) {
+		GridFSFile file = findImage(hash);
+		if (file == null) {
+			return null;
+		}
+
+		GridFsResource resource = gridFsTemplate.getResource(file);
+		try (InputStream in = resource.getInputStream()) {
+			return "data:" + resource.getContentType() + ";base64," + Base64.getEncoder().encodeToString(in.readAllBytes());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public Document inlineImage(Document logEntry) {
+		String hash = logEntry.getString("img_hash");
+		if (hash == null) {
+			return logEntry;
+		}
+		Document copy = new Document(logEntry);
+		copy.put("img", getImageAsDataUrl(hash));
+		return copy;
+	}
+
+	@Override
+	public void deleteUnreferencedImages(Collection<String> hashes) {
+		for (String hash : hashes) {
+			// the same image may have been uploaded to other tests
+			if (!mongoTemplate.exists(Query.query(Criteria.where("img_hash").is(hash)), DBEventLog.COLLECTION)) {
+				gridFsTemplate.delete(Query.query(GridFsCriteria.whereFilename().is(hash)));
+			}
+		}
+	}
+
+	private GridFSFile findImage(String hash) {
+		return gridFsTemplate.findOne(Query.query(GridFsCriteria.whereFilename().is(hash)));
+	}
+
 }
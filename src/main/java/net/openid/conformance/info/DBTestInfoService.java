@@ -54,6 +54,12 @@ public class DBTestInfoService implements TestInfoService {
 	@Autowired
 	private TestPlanService testPlanService;
 
+	@Autowired
+	private ImageService imageService;
+
+	@Autowired
+	private TestResultSummaryService resultSummaryService;
+
 	@SuppressWarnings("CacheLoaderNull")
 	//Private cache for holding test owners without having to hit the db
 	LoadingCache<String, ImmutableMap<String, String>> testOwnerCache = CacheBuilder.newBuilder()
@@ -212,6 +218,10 @@ public class DBTestInfoService implements TestInfoService {
 		sortedMap.put("description", "text");
 
 		collection.createIndex(new Document(sortedMap));
+
+		// for fetching the lists a page at a time by cursor (see PaginationService)
+		collection.createIndex(new Document("started", -1).append("_id", -1));
+		collection.createIndex(new Document("owner", 1).append("started", -1).append("_id", -1));
 	}
 
 	@Override
@@ -224,8 +234,12 @@ public class DBTestInfoService implements TestInfoService {
 		}
 
 		Query query = new Query(criteria);
+		List<String> imageHashes = mongoTemplate.findDistinct(query, "img_hash", DBEventLog.COLLECTION, String.class);
+		List<String> testIds = mongoTemplate.findDistinct(query, "testId", COLLECTION, String.class);
 		DeleteResult testInfoDeleteResult = mongoTemplate.remove(query, COLLECTION);
 		DeleteResult logDeleteResult = mongoTemplate.remove(query, DBEventLog.COLLECTION);
+		imageService.deleteUnreferencedImages(imageHashes);
+		resultSummaryService.deleteSummaries(testIds);
 
 		return testInfoDeleteResult.wasAcknowledged() && logDeleteResult.wasAcknowledged();
 	}
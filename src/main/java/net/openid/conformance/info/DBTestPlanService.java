@@ -8,8 +8,10 @@ import com.google.gson.JsonParser;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.result.UpdateResult;
 import net.openid.conformance.CollapsingGsonHttpMessageConverter;
+import net.openid.conformance.export.RenderedExportCache;
 import net.openid.conformance.pagination.PaginationRequest;
 import net.openid.conformance.pagination.PaginationResponse;
+import net.openid.conformance.pagination.PaginationService;
 import net.openid.conformance.security.AuthenticationFacade;
 import net.openid.conformance.variant.VariantSelection;
 import org.bson.Document;
@@ -46,6 +48,12 @@ public class DBTestPlanService implements TestPlanService {
 	@Autowired
 	private AuthenticationFacade authenticationFacade;
 
+	@Autowired
+	private PaginationService paginationService;
+
+	@Autowired
+	private RenderedExportCache renderedExportCache;
+
 	private Gson gson = CollapsingGsonHttpMessageConverter.getDbObjectCollapsingGson();
 
 	/**
@@ -162,22 +170,17 @@ public class DBTestPlanService implements TestPlanService {
 
 		if (!authenticationFacade.isAdmin()) {
 			Map<String, String> owner = authenticationFacade.getPrincipal();
-			return page.getResponse(
-					p -> plans.findAllByOwner(owner, p),
-					(s, p) -> plans.findAllByOwnerSearch(owner, s, p));
+			return paginationService.getResponse(page, COLLECTION, Criteria.where("owner").is(owner), Plan.class);
 		} else {
-			return page.getResponse(
-					p -> plans.findAll(p),
-					(s, p) -> plans.findAllSearch(s, p));
+			return paginationService.getResponse(page, COLLECTION, null, Plan.class);
 		}
 	}
 
 	@Override
 	public PaginationResponse<PublicPlan> getPaginatedPublicPlans(PaginationRequest page) {
 
-		return page.getResponse(
-				p -> plans.findAllPublic(p),
-				(s, p) -> plans.findAllPublicSearch(s, p));
+		return paginationService.getResponse(page, COLLECTION,
+				Criteria.where("publish").in("summary", "everything"), PublicPlan.class);
 	}
 
 	@Override
@@ -217,6 +220,8 @@ public class DBTestPlanService implements TestPlanService {
 			return false;
 		}
 
+		renderedExportCache.invalidatePlan(id);
+
 		// We need to update all the latest test results (if possible) as well
 
 		// The goal of the mess below is to get the last value in each of the
@@ -279,6 +284,8 @@ public class DBTestPlanService implements TestPlanService {
 		if (result.getMatchedCount() == 0) {
 			return false;
 		}
+
+		renderedExportCache.invalidatePlan(id);
 		return true;
 	}
 
@@ -314,6 +321,10 @@ public class DBTestPlanService implements TestPlanService {
 		sortedMap.put("certificationProfileName", "text");
 
 		collection.createIndex(new Document(sortedMap));
+
+		// for fetching the lists a page at a time by cursor (see PaginationService)
+		collection.createIndex(new Document("started", -1).append("_id", -1));
+		collection.createIndex(new Document("owner", 1).append("started", -1).append("_id", -1));
 	}
 
 	@Override
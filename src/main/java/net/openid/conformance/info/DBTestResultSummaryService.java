@@ -0,0 +1,197 @@
+package net.openid.conformance.info;
+
+import net.openid.conformance.condition.Condition.ConditionResult;
+import net.openid.conformance.logging.DBEventLog;
+import net.openid.conformance.testmodule.TestModule.Status;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+@Service
+public class DBTestResultSummaryService implements TestResultSummaryService {
+
+	public static final String COLLECTION = "TEST_RESULT_SUMMARY";
+
+	// block ids are used in field names, so anything unexpected is ignored
+	private static final Pattern BLOCK_ID = Pattern.compile("[0-9a-zA-Z]{1,32}");
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Override
+	public void addLogEntries(String testId, List<Document> entries) {
+		if (entries.isEmpty()) {
+			return;
+		}
+		Update update = createUpdate(entries);
+		// $inc and $addToSet mean batches from different threads (or nodes) can't overwrite each other's changes
+		mongoTemplate.upsert(Query.query(Criteria.where("_id").is(testId)), update, COLLECTION);
+	}
+
+	/**
+	 * Work out the change to a test's summary for some log entries
+	 */
+	static Update createUpdate(List<Document> entries) {
+		Map<ConditionResult, Integer> counts = new EnumMap<>(ConditionResult.class);
+		Set<Document> failures = new LinkedHashSet<>();
+		Set<Document> warnings = new LinkedHashSet<>();
+		Map<String, Object> blocks = new LinkedHashMap<>();
+		Document lastBlock = null;
+
+		for (Document entry : entries) {
+			if (Boolean.TRUE.equals(entry.get("startBlock")) && entry.get("blockId") instanceof String blockId
+				&& BLOCK_ID.matcher(blockId).matches()) {
+				blocks.put(blockId, entry.get("msg"));
+				lastBlock = new Document("blockId", blockId)
+					.append("msg", entry.get("msg"))
+					.append("time", entry.get("time"));
+			}
+
+			ConditionResult result = toResult(entry.get("result"));
+			if (result == null) {
+				continue;
+			}
+			counts.merge(result, 1, Integer::sum);
+
+			if (result == ConditionResult.FAILURE) {
+				failures.add(condition(entry));
+			} else if (result == ConditionResult.WARNING) {
+				warnings.add(condition(entry));
+			}
+		}
+
+		Update update = new Update();
+		update.inc("entries", entries.size());
+		counts.forEach((result, count) -> update.inc("results." + result.name(), count));
+		if (!failures.isEmpty()) {
+			update.addToSet("failures").each(failures.toArray());
+		}
+		if (!warnings.isEmpty()) {
+			update.addToSet("warnings").each(warnings.toArray());
+		}
+		// the block names are kept so that the failures and warnings can be reported with the block they happened in
+		blocks.forEach((blockId, msg) -> update.set("blocks." + blockId, msg));
+		if (lastBlock != null) {
+			update.set("lastBlock", lastBlock);
+		}
+		update.set("updated", entries.get(entries.size() - 1).get("time"));
+		return update;
+	}
+
+	private static ConditionResult toResult(Object value) {
+		if (value == null) {
+			return null;
+		}
+		// only count the results the suite itself uses, as the name becomes part of a field path
+		for (ConditionResult result : ConditionResult.values()) {
+			if (result.name().equals(value.toString())) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	private static Document condition(Document entry) {
+		// sorted, as $addToSet only treats two entries as the same if the requirements are in the same order too
+		List<String> requirements = new ArrayList<>();
+		if (entry.get("requirements") instanceof Collection<?> collection) {
+			for (Object requirement : collection) {
+				requirements.add(String.valueOf(requirement));
+			}
+			requirements.sort(null);
+		}
+		return new Document("src", entry.get("src"))
+			.append("blockId", entry.get("blockId"))
+			.append("requirements", requirements);
+	}
+
+	@Override
+	public Document getSummary(String testId) {
+		return getSummaries(List.of(testId)).get(testId);
+	}
+
+	@Override
+	public Map<String, Document> getSummaries(Collection<String> testIds) {
+		Map<String, Document> summaries = new HashMap<>();
+		for (Document summary : mongoTemplate.find(Query.query(Criteria.where("_id").in(testIds)), Document.class, COLLECTION)) {
+			summaries.put(summary.getString("_id"), summary);
+		}
+		if (summaries.size() < testIds.size()) {
+			List<String> missing = new ArrayList<>(testIds);
+			missing.removeAll(summaries.keySet());
+			summaries.putAll(buildMissingSummaries(missing));
+		}
+		return summaries;
+	}
+
+	/**
+	 * Build the summaries of finished tests that don't have one (e.g. they ran before summaries were kept) from their
+	 * logs. Tests that are still running are left out, as the entries they're logging could be counted twice.
+	 */
+	private Map<String, Document> buildMissingSummaries(List<String> testIds) {
+		Query finished = Query.query(Criteria.where("_id").in(testIds)
+			.and("status").in(Status.FINISHED.name(), Status.INTERRUPTED.name()));
+		finished.fields().include("_id");
+
+		Map<String, Document> summaries = new HashMap<>();
+		for (Document testInfo : mongoTemplate.find(finished, Document.class, DBTestInfoService.COLLECTION)) {
+			String testId = testInfo.getString("_id");
+			Query log = Query.query(Criteria.where("testId").is(testId)).with(Sort.by("seq", "time"));
+			log.fields().include("startBlock", "blockId", "msg", "time", "result", "src", "requirements");
+			List<Document> entries = mongoTemplate.find(log, Document.class, DBEventLog.COLLECTION);
+			if (entries.isEmpty()) {
+				continue;
+			}
+
+			Document summary = toDocument(createUpdate(entries)).append("_id", testId);
+			try {
+				mongoTemplate.insert(summary, COLLECTION);
+			} catch (DuplicateKeyException e) {
+				// built by another request at the same time
+				summary = mongoTemplate.findById(testId, Document.class, COLLECTION);
+			}
+			summaries.put(testId, summary);
+		}
+		return summaries;
+	}
+
+	/**
+	 * @return the summary that applying the update to a test without one would give
+	 */
+	static Document toDocument(Update update) {
+		Document summary = new Document();
+		update.getUpdateObject().forEach((operator, fields) -> ((Document) fields).forEach((path, value) -> {
+			Object fieldValue = value instanceof Update.Modifier each ? List.of((Object[]) each.getValue()) : value;
+			// the field paths used are known to be safe to split; see createUpdate()
+			Document parent = summary;
+			String[] names = path.split("\\.");
+			for (int i = 0; i < names.length - 1; i++) {
+				parent = (Document) parent.computeIfAbsent(names[i], k -> new Document());
+			}
+			parent.put(names[names.length - 1], fieldValue);
+		}));
+		return summary;
+	}
+
+	@Override
+	public void deleteSummaries(List<String> testIds) {
+		mongoTemplate.remove(Query.query(Criteria.where("_id").in(testIds)), COLLECTION);
+	}
+}
@@ -1,7 +1,9 @@
 package net.openid.conformance.info;
 
 import org.bson.Document;
+import org.springframework.data.mongodb.gridfs.GridFsResource;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -39,4 +41,49 @@ public interface ImageService {
 	 *                    test module itself, not via the REST API.
 	 */
 	List<Document> getAllImagesForTestId(String testId, boolean assumeAdmin);
+
+	/**
+	 * Store an uploaded image outside the log
+	 *
+	 * Images are stored by the sha-256 hash of their content, so uploading the same image again doesn't store a
+	 * second copy. The log entry should hold the returned hash rather than the image.
+	 *
+	 * @param encoded the image as a 'data:' url, as uploaded by the user
+	 * @return the hash of the image
+	 */
+	String storeImage(String encoded);
+
+	/**
+	 * Get an image referenced by one of a test's log entries
+	 *
+	 * @param assumeAdmin If true, no access controls will be applied. Only set to true if being called from the
+	 *                    test module itself, or after the caller has checked the test is published.
+	 * @return the image, or null if the test has no such image or the user can't see the test
+	 */
+	GridFsResource getImage(String testId, String hash, boolean assumeAdmin);
+
+	/**
+	 * Get a stored image as a 'data:' url, for embedding in exports
+	 *
+	 * No access controls are applied; the caller must already have checked that the user can see a log entry
+	 * referencing the image.
+	 *
+	 * @return the image, or null if there's no image with the given hash
+	 */
+	String getImageAsDataUrl(String hash);
+
+	/**
+	 * Replace a log entry's reference to a stored image with the image itself (as a 'data:' url in 'img', the same as
+	 * entries logged before images were stored separately), so exports can be read offline.
+	 *
+	 * No access controls are applied; the caller must already have checked that the user can see the log entry.
+	 *
+	 * @return a copy of the entry with the image inlined, or the entry itself if it doesn't reference a stored image
+	 */
+	Document inlineImage(Document logEntry);
+
+	/**
+	 * Remove any of the given images that are no longer referenced by any log entry, e.g. after tests have been deleted
+	 */
+	void deleteUnreferencedImages(Collection<String> hashes);
 }
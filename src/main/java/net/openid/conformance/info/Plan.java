@@ -1,8 +1,7 @@
 package net.openid.conformance.info;
 
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
-import net.openid.conformance.logging.GsonObjectToBsonDocumentConverter;
+import net.openid.conformance.logging.GsonBsonEncoder;
 import net.openid.conformance.variant.VariantSelection;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.Indexed;
@@ -83,8 +82,7 @@ public class Plan {
 		this._id = id;
 		this.planName = planName;
 		this.variant = variant;
-		this.config = org.bson.Document.parse(new GsonBuilder().serializeNulls().create().toJson(
-				GsonObjectToBsonDocumentConverter.convertFieldsToStructure(config)));
+		this.config = GsonBsonEncoder.toDocument(config);
 		this.started = started.toString();
 		this.owner = owner;
 		this.description = description;
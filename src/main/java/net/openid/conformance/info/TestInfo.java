@@ -1,8 +1,7 @@
 package net.openid.conformance.info;
 
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
-import net.openid.conformance.logging.GsonObjectToBsonDocumentConverter;
+import net.openid.conformance.logging.GsonBsonEncoder;
 import net.openid.conformance.testmodule.TestModule.Status;
 import net.openid.conformance.variant.VariantSelection;
 import org.springframework.data.annotation.Id;
@@ -58,8 +57,7 @@ public class TestInfo {
 		this.testName = testName;
 		this.variant = variant;
 		this.started = started.toString();
-		this.config = org.bson.Document.parse(new GsonBuilder().serializeNulls().create().toJson(
-				GsonObjectToBsonDocumentConverter.convertFieldsToStructure(config)));
+		this.config = GsonBsonEncoder.toDocument(config);
 		this.description = description;
 		this.alias = alias;
 		this.owner = owner;
@@ -10,6 +10,8 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import net.openid.conformance.condition.AbstractCondition;
 import net.openid.conformance.security.AuthenticationFacade;
 import net.openid.conformance.testmodule.OIDFJSON;
+import net.openid.conformance.testmodule.TestModule.Status;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -22,7 +24,10 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -39,6 +44,9 @@ public class TestInfoApi {
 	@Autowired
 	private TestInfoService testInfoService;
 
+	@Autowired
+	private TestResultSummaryService resultSummaryService;
+
 	@GetMapping(value = "/info", produces = MediaType.APPLICATION_JSON_VALUE)
 	@Operation(summary = "Get information of all test module instances", description = "Will return all run test modules if user is admin role, otherwise only the logged in user's tests will be returned. This API is currently disabled due to performance concerns. If you have a need for it, please email details of your use case to " + AbstractCondition.SUPPORT_EMAIL)
 	@ApiResponses({
@@ -69,6 +77,48 @@ public class TestInfoApi {
 			@Parameter(description = "Id of test") @PathVariable String id,
 			@Parameter(description = "Published data only") @RequestParam(name = "public", defaultValue = "false") boolean publicOnly) {
 
+		Optional<?> testInfo = findTestInfo(id, publicOnly);
+		if (testInfo.isEmpty()) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		} else {
+			return new ResponseEntity<>(testInfo.get(), HttpStatus.OK);
+		}
+
+	}
+
+	@GetMapping(value = "/info/{id}/summary", produces = MediaType.APPLICATION_JSON_VALUE)
+	@Operation(summary = "Get a summary of the results of a test", description = "Returns the test's status and result, the number of log entries with each result, and the conditions that failed or gave warnings (with the block they were in, and the requirements they check). This is kept up to date whilst the test runs, and is much quicker to fetch than the full log. summaryAvailable is false if there is no summary yet (e.g. the test is running and hasn't logged anything), in which case the counts are all empty.")
+	@ApiResponses(value = {
+			@ApiResponse(responseCode = "200", description = "Retrieved successfully"),
+			@ApiResponse(responseCode = "404", description = "Couldn't find test information for provided testId")
+	})
+	public ResponseEntity<Object> getTestSummary(
+			@Parameter(description = "Id of test") @PathVariable String id,
+			@Parameter(description = "Published data only") @RequestParam(name = "public", defaultValue = "false") boolean publicOnly) {
+
+		Optional<?> testInfo = findTestInfo(id, publicOnly);
+		if (testInfo.isEmpty()) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+
+		Status status;
+		String result;
+		boolean summaryOnly;
+		if (testInfo.get() instanceof PublicTestInfo publicTestInfo) {
+			status = publicTestInfo.getStatus();
+			result = publicTestInfo.getResult();
+			summaryOnly = !"everything".equals(publicTestInfo.getPublish());
+		} else {
+			TestInfo info = (TestInfo) testInfo.get();
+			status = info.getStatus();
+			result = info.getResult();
+			summaryOnly = false;
+		}
+
+		return new ResponseEntity<>(summaryForApi(id, status, result, resultSummaryService.getSummary(id), summaryOnly), HttpStatus.OK);
+	}
+
+	private Optional<?> findTestInfo(String id, boolean publicOnly) {
 		Optional<?> testInfo = Optional.empty();
 		if (publicOnly) {
 			testInfo = testInfos.findByIdPublic(id);
@@ -80,12 +130,52 @@ public class TestInfoApi {
 				testInfo = testInfos.findByIdAndOwner(id, owner);
 			}
 		}
-		if (testInfo.isEmpty()) {
-			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-		} else {
-			return new ResponseEntity<>(testInfo.get(), HttpStatus.OK);
+		return testInfo;
+	}
+
+	/**
+	 * Convert a test's result summary into what the API returns
+	 *
+	 * @param summary see TestResultSummaryService; null if there isn't one (yet), in which case summaryAvailable is false
+	 *                and the counts are all empty
+	 * @param summaryOnly if true, the names of the blocks (which are only shown in the full log) are left out
+	 */
+	static Map<String, Object> summaryForApi(String testId, Status status, String result, Document summary, boolean summaryOnly) {
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("testId", testId);
+		map.put("status", status);
+		map.put("result", result);
+		map.put("summaryAvailable", summary != null);
+
+		if (summary == null) {
+			summary = new Document();
 		}
+		Document blocks = summary.get("blocks", new Document());
+		map.put("entries", summary.get("entries", 0));
+		map.put("results", summary.get("results", new Document()));
+		map.put("failures", conditionsForApi(summary.getList("failures", Document.class, List.of()), blocks, summaryOnly));
+		map.put("warnings", conditionsForApi(summary.getList("warnings", Document.class, List.of()), blocks, summaryOnly));
+		if (!summaryOnly) {
+			Document lastBlock = summary.get("lastBlock", Document.class);
+			map.put("lastBlock", lastBlock == null ? null : lastBlock.getString("msg"));
+		}
+		return map;
+	}
 
+	private static List<Map<String, Object>> conditionsForApi(List<Document> conditions, Document blocks, boolean summaryOnly) {
+		List<Map<String, Object>> list = new ArrayList<>();
+		for (Document condition : conditions) {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("src", condition.getString("src"));
+			if (!summaryOnly) {
+				// the same as the log viewer; entries outside any block are shown without a block name
+				String blockId = condition.getString("blockId");
+				map.put("block", blockId == null ? "" : blocks.getString(blockId));
+			}
+			map.put("requirements", condition.getList("requirements", String.class, List.of()));
+			list.add(map);
+		}
+		return list;
 	}
 
 	@PostMapping(value = "/info/{id}/publish", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
@@ -1,6 +1,8 @@
 package net.openid.conformance.info;
 
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -18,6 +20,7 @@ import net.openid.conformance.testmodule.OIDFJSON;
 import net.openid.conformance.variant.VariantSelection;
 import net.openid.conformance.variant.VariantService;
 import org.apache.commons.lang3.RandomStringUtils;
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -35,9 +38,11 @@ import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBo
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 @Controller
@@ -56,6 +61,15 @@ public class TestPlanApi implements DataUtils {
 	@Autowired
 	private VariantService variantService;
 
+	@Autowired
+	private TestInfoRepository testInfos;
+
+	@Autowired
+	private TestResultSummaryService resultSummaryService;
+
+	// the available plans can't change whilst the server is running, so only build the (large) list once
+	private final Supplier<JsonElement> availableTestPlans = Suppliers.memoize(this::buildAvailableTestPlans);
+
 	@PostMapping(value = "/plan", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
 	@Operation(summary = "Create test plan")
 	@ApiResponses(value = {
@@ -173,6 +187,80 @@ public class TestPlanApi implements DataUtils {
 		return new ResponseEntity<>(testPlanObj, HttpStatus.OK);
 	}
 
+	@GetMapping(value = "/plan/{id}/summary", produces = MediaType.APPLICATION_JSON_VALUE)
+	@Operation(summary = "Get a summary of the results of the latest test of each module in a plan", description = "The same as /api/info/{id}/summary for each module's latest test, along with the total number of log entries with each result across them. Modules that haven't been run have a null testId.")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Retrieved successfully"),
+		@ApiResponse(responseCode = "404", description = "Couldn't find test plan for provided plan Id")
+	})
+	public ResponseEntity<Object> getTestPlanSummary(
+		@Parameter(description = "Id of test plan") @PathVariable String id,
+		@Parameter(description = "Published data only") @RequestParam(name = "public", defaultValue = "false") boolean publicOnly) {
+
+		List<Plan.Module> modules;
+		boolean summaryOnly;
+		if (publicOnly) {
+			PublicPlan plan = planService.getPublicPlan(id);
+			if (plan == null) {
+				return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+			}
+			modules = plan.getModules();
+			summaryOnly = !"everything".equals(plan.getPublish());
+		} else {
+			Plan plan = planService.getTestPlan(id);
+			if (plan == null) {
+				return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+			}
+			modules = plan.getModules();
+			summaryOnly = false;
+		}
+
+		List<String> latestTestIds = new ArrayList<>();
+		for (Plan.Module module : modules) {
+			List<String> instances = module.getInstances();
+			if (instances != null && !instances.isEmpty()) {
+				latestTestIds.add(instances.get(instances.size() - 1));
+			}
+		}
+
+		// the user can see the plan, so they can see its tests; publishing a plan publishes its latest tests too
+		Map<String, TestInfo> testInfoById = new HashMap<>();
+		for (TestInfo testInfo : testInfos.findAllById(latestTestIds)) {
+			if (!publicOnly || testInfo.getPublish() != null) {
+				testInfoById.put(testInfo.getId(), testInfo);
+			}
+		}
+		Map<String, Document> summaries = resultSummaryService.getSummaries(testInfoById.keySet());
+
+		Map<String, Integer> totals = new TreeMap<>();
+		List<Map<String, Object>> moduleSummaries = new ArrayList<>();
+		for (Plan.Module module : modules) {
+			Map<String, Object> moduleSummary = new LinkedHashMap<>();
+			moduleSummary.put("testModule", module.getTestModule());
+			moduleSummary.put("variant", module.getVariant());
+
+			List<String> instances = module.getInstances();
+			TestInfo testInfo = instances == null || instances.isEmpty() ? null : testInfoById.get(instances.get(instances.size() - 1));
+			if (testInfo == null) {
+				moduleSummary.put("testId", null);
+			} else {
+				Document summary = summaries.get(testInfo.getId());
+				moduleSummary.putAll(TestInfoApi.summaryForApi(testInfo.getId(), testInfo.getStatus(), testInfo.getResult(), summary, summaryOnly));
+				if (summary != null) {
+					summary.get("results", new Document()).forEach((result, count) -> totals.merge(result, ((Number) count).intValue(), Integer::sum));
+				}
+			}
+			moduleSummaries.add(moduleSummary);
+		}
+
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("planId", id);
+		map.put("results", totals);
+		map.put("modules", moduleSummaries);
+
+		return new ResponseEntity<>(map, HttpStatus.OK);
+	}
+
 	@PostMapping(value = "/plan/{id}/publish", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
 	@Operation(summary = "Publish a test plan by plan Id")
 	@ApiResponses(value = {
@@ -251,6 +339,10 @@ public class TestPlanApi implements DataUtils {
 		@ApiResponse(responseCode = "200", description = "Retrieved successfully")
 	})
 	public ResponseEntity<Object> getAvailableTestPlans() {
+		return new ResponseEntity<>(availableTestPlans.get(), HttpStatus.OK);
+	}
+
+	private JsonElement buildAvailableTestPlans() {
 		Set<Map<String, ?>> available = variantService.getTestPlans().stream()
 			.map(e -> args(
 				"planName", e.info.testPlanName(),
@@ -264,7 +356,7 @@ public class TestPlanApi implements DataUtils {
 			))
 			.collect(Collectors.toSet());
 
-		return new ResponseEntity<>(available, HttpStatus.OK);
+		return CollapsingGsonHttpMessageConverter.getDbObjectCollapsingGson().toJsonTree(available);
 	}
 
 	@DeleteMapping(value = "/plan/{id}")
@@ -0,0 +1,43 @@
+package net.openid.conformance.info;
+
+import org.bson.Document;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small per-test document summarising what has been logged: how many entries there are with each result, which
+ * conditions failed or gave warnings (and the requirements they check), and the block the test is currently in.
+ *
+ * It's kept up to date as entries are written to the log, so that the results of a test or a whole plan can be found
+ * without reading through the test logs.
+ *
+ * None of these apply any access controls; callers must check the user can see the tests first.
+ */
+public interface TestResultSummaryService {
+
+	/**
+	 * Add log entries to a test's summary. Called by the event log after the entries have been written.
+	 *
+	 * @param testId the test the entries belong to
+	 * @param entries log entries, in the order they were logged
+	 */
+	void addLogEntries(String testId, List<Document> entries);
+
+	/**
+	 * A finished test that doesn't have a summary (e.g. because it ran before summaries were kept) has one built from
+	 * its log the first time it's asked for.
+	 *
+	 * @return the test's summary, or null if nothing has been logged for it yet (or it's still running and its summary
+	 * hasn't been written yet)
+	 */
+	Document getSummary(String testId);
+
+	/**
+	 * @return the summaries of the given tests, by test id; tests without a summary (see getSummary()) are left out
+	 */
+	Map<String, Document> getSummaries(Collection<String> testIds);
+
+	void deleteSummaries(List<String> testIds);
+}
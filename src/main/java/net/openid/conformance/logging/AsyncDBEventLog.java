@@ -0,0 +1,203 @@
+package net.openid.conformance.logging;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.model.InsertManyOptions;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An EventLog that converts entries on the calling thread but writes them to the database in the background.
+ *
+ * Entries are queued per test and written with ordered insertMany calls, so the order of the entries for any one
+ * test is preserved. At most one writer works on a test's queue at a time, but different tests are written in
+ * parallel.
+ *
+ * The total number of queued entries is bounded; once the bound is reached the logging thread writes out its own
+ * test's queue before returning, which throttles tests that are logging faster than the database can keep up.
+ *
+ * Test modules must call flush() before changing the test status, so that anything polling the status (e.g.
+ * run-test-plan.py) never sees a FINISHED test with entries still missing from the database.
+ */
+public class AsyncDBEventLog extends DBEventLog {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncDBEventLog.class);
+
+	@Value("${fintechlabs.eventlog.max_queued_entries:10000}")
+	private int maxQueuedEntries;
+
+	@Value("${fintechlabs.eventlog.max_batch_size:500}")
+	private int maxBatchSize;
+
+	@Value("${fintechlabs.eventlog.writer_threads:4}")
+	private int writerThreads;
+
+	private Semaphore queueCapacity;
+
+	private ExecutorService writers;
+
+	private final Map<String, TestQueue> queues = new ConcurrentHashMap<>();
+
+	private static class TestQueue {
+		private final Queue<Document> pending = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+		// held whilst entries are taken off 'pending' and written, so batches for a test never overtake each other
+		private final ReentrantLock writeLock = new ReentrantLock();
+	}
+
+	@PostConstruct
+	public void startWriters() {
+		queueCapacity = new Semaphore(maxQueuedEntries);
+		writers = Executors.newFixedThreadPool(writerThreads, new ThreadFactoryBuilder()
+			.setNameFormat("event-log-writer-%d")
+			.setDaemon(true)
+			.build());
+	}
+
+	@Override
+	protected void write(String testId, Document document) {
+		if (!queueCapacity.tryAcquire()) {
+			// too much is queued; apply backpressure by making the caller write out its own test's entries, followed
+			// by the new one
+			TestQueue queue = queues.computeIfAbsent(testId, k -> new TestQueue());
+			queue.writeLock.lock();
+			try {
+				drain(queue);
+				insertBatch(List.of(document));
+			} finally {
+				queue.writeLock.unlock();
+			}
+			return;
+		}
+
+		// added whilst the map holds the test's entry, so flush() can't remove the queue between it being looked up and
+		// the entry being added to it
+		TestQueue queue = queues.compute(testId, (k, q) -> {
+			TestQueue testQueue = q == null ? new TestQueue() : q;
+			testQueue.pending.add(document);
+			return testQueue;
+		});
+		if (queue.scheduled.compareAndSet(false, true)) {
+			writers.execute(() -> {
+				queue.scheduled.set(false);
+				drain(queue);
+			});
+		}
+	}
+
+	/**
+	 * Write out everything currently queued for a test, in order
+	 */
+	private void drain(TestQueue queue) {
+		queue.writeLock.lock();
+		try {
+			while (true) {
+				List<Document> batch = new ArrayList<>();
+				while (batch.size() < maxBatchSize && !queue.pending.isEmpty()) {
+					batch.add(queue.pending.poll());
+				}
+				if (batch.isEmpty()) {
+					break;
+				}
+				try {
+					insertBatch(batch);
+				} finally {
+					// the entries have left the queue whether or not they could be written
+					queueCapacity.release(batch.size());
+				}
+			}
+		} finally {
+			queue.writeLock.unlock();
+		}
+	}
+
+	private void insertBatch(List<Document> batch) {
+		List<Document> inserted = batch;
+		try {
+			mongoTemplate.getCollection(COLLECTION).insertMany(batch, new InsertManyOptions().ordered(true));
+		} catch (RuntimeException e) {
+			// e.g. a value that can't be encoded; write the entries one at a time so the others aren't lost with it
+			logger.warn("Failed to write " + batch.size() + " log entries starting with " + batch.get(0).get("_id")
+				+ ", writing them individually", e);
+			inserted = insertEach(batch);
+		}
+		if (!inserted.isEmpty()) {
+			// one update for the whole batch (which is always for a single test)
+			updateSummary(inserted.get(0).getString("testId"), inserted);
+		}
+	}
+
+	/**
+	 * @return the entries that are now in the database
+	 */
+	private List<Document> insertEach(List<Document> batch) {
+		List<Document> inserted = new ArrayList<>();
+		for (Document document : batch) {
+			try {
+				mongoTemplate.getCollection(COLLECTION).insertOne(document);
+				inserted.add(document);
+			} catch (MongoWriteException e) {
+				if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+					// written by the failed insertMany, before the entry it failed on
+					inserted.add(document);
+				} else {
+					logger.error("Failed to write log entry " + document.get("_id"), e);
+				}
+			} catch (RuntimeException e) {
+				logger.error("Failed to write log entry " + document.get("_id"), e);
+			}
+		}
+		return inserted;
+	}
+
+	@Override
+	public void flush(String testId) {
+		TestQueue queue = queues.get(testId);
+		if (queue == null) {
+			return;
+		}
+		queue.writeLock.lock();
+		try {
+			// keep going until the queue is empty when it's removed; entries are only added to a queue that's in the
+			// map (see write()), so nothing logged before the removal can be left behind. Any writer still scheduled
+			// for the queue then has nothing to do.
+			while (true) {
+				drain(queue);
+				if (queues.computeIfPresent(testId, (k, q) -> q.pending.isEmpty() ? null : q) == null) {
+					break;
+				}
+			}
+		} finally {
+			queue.writeLock.unlock();
+		}
+	}
+
+	@PreDestroy
+	public void flushAll() throws InterruptedException {
+		for (String testId : queues.keySet()) {
+			flush(testId);
+		}
+		writers.shutdown();
+		if (!writers.awaitTermination(30, TimeUnit.SECONDS)) {
+			logger.error("Timed out waiting for event log writers to finish");
+		}
+	}
+}
@@ -1,27 +1,37 @@
 package net.openid.conformance.logging;
 
 import com.google.gson.JsonObject;
-import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.client.MongoCollection;
+import net.openid.conformance.info.TestResultSummaryService;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.stereotype.Component;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
-@Component
 public class DBEventLog implements EventLog {
 
 	public static final String COLLECTION = "EVENT_LOG";
 
+	private static final Logger logger = LoggerFactory.getLogger(DBEventLog.class);
+
+	@Autowired
+	protected MongoTemplate mongoTemplate;
+
+	@Autowired
+	private LogEntryPublisher publisher;
+
 	@Autowired
-	private MongoTemplate mongoTemplate;
+	private TestResultSummaryService resultSummaryService;
 
 	@Override
-	public void log(String testId, String source, Map<String, String> owner, String msg) {
+	public Document log(String testId, String source, Map<String, String> owner, String msg) {
 
 		Document document = new Document()
 			.append("_id", testId + "-" + RandomStringUtils.randomAlphanumeric(32))
@@ -29,35 +39,82 @@ public class DBEventLog implements EventLog {
 			.append("src", source)
 			.append("testOwner", owner)
 			.append("time", new Date().getTime())
+			.append("seq", LogEntryPublisher.nextSequence())
 			.append("msg", msg);
 
-		mongoTemplate.insert(document, COLLECTION);
+		publishAndWrite(testId, document);
+		return document;
 	}
 
 	@Override
-	public void log(String testId, String source, Map<String, String> owner, JsonObject obj) {
+	public Document log(String testId, String source, Map<String, String> owner, JsonObject obj) {
 
-		Document dbObject = Document.parse(GsonObjectToBsonDocumentConverter.convertFieldsToStructure(obj).toString()); // don't touch the incoming object
+		Document dbObject = GsonBsonEncoder.toDocument(obj); // don't touch the incoming object
 		dbObject.append("_id", testId + "-" + RandomStringUtils.randomAlphanumeric(32));
 		dbObject.append("testId", testId);
 		dbObject.append("src", source);
 		dbObject.append("testOwner", owner);
 		dbObject.append("time", new Date().getTime());
+		dbObject.append("seq", LogEntryPublisher.nextSequence());
 
-		mongoTemplate.insert(dbObject, COLLECTION);
+		publishAndWrite(testId, dbObject);
+		return dbObject;
 	}
 
 	@Override
-	public void log(String testId, String source, Map<String, String> owner, Map<String, Object> map) {
+	public Document log(String testId, String source, Map<String, String> owner, Map<String, Object> map) {
+
+		// convert the values (JsonObjects, enums, etc) now rather than when the document is written, as the caller
+		// is free to modify the objects it passed in as soon as we return
+		Document document = new Document();
+		mongoTemplate.getConverter().write(GsonArrayToBsonArrayConverter.convertUnloggableValuesInMap(map), document); // this doesn't alter the incoming map
+		document.append("_id", testId + "-" + RandomStringUtils.randomAlphanumeric(32));
+		document.append("testId", testId);
+		document.append("src", source);
+		document.append("testOwner", owner);
+		document.append("time", new Date().getTime());
+		document.append("seq", LogEntryPublisher.nextSequence());
+
+		publishAndWrite(testId, document);
+		return document;
+	}
+
+	private void publishAndWrite(String testId, Document document) {
+		publisher.publish(testId, document);
+		write(testId, document);
+	}
+
+	/**
+	 * Persist a fully converted log entry.
+	 *
+	 * The default implementation inserts the document immediately on the calling thread. Implementations must call
+	 * updateSummary() once the entry has been written.
+	 *
+	 * @param testId the test the entry belongs to
+	 * @param document the entry; must not be modified after this call
+	 */
+	protected void write(String testId, Document document) {
+		mongoTemplate.insert(document, COLLECTION);
+		updateSummary(testId, List.of(document));
+	}
 
-		BasicDBObjectBuilder documentBuilder = BasicDBObjectBuilder.start(GsonArrayToBsonArrayConverter.convertUnloggableValuesInMap(map)) // this doesn't alter the incoming map
-			.add("_id", testId + "-" + RandomStringUtils.randomAlphanumeric(32))
-			.add("testId", testId)
-			.add("src", source)
-			.add("testOwner", owner)
-			.add("time", new Date().getTime());
+	/**
+	 * Add entries that have been written to the test's result summary
+	 *
+	 * @see TestResultSummaryService
+	 */
+	protected void updateSummary(String testId, List<Document> documents) {
+		try {
+			resultSummaryService.addLogEntries(testId, documents);
+		} catch (DataAccessException e) {
+			// the log itself is complete, so the test carries on
+			logger.error("Failed to update result summary for test " + testId, e);
+		}
+	}
 
-		mongoTemplate.insert(documentBuilder.get(), COLLECTION);
+	@Override
+	public void flush(String testId) {
+		// entries are written synchronously, so there's never anything pending
 	}
 
 	@Override
@@ -65,5 +122,6 @@ public class DBEventLog implements EventLog {
 		MongoCollection<Document> eventLogCollection = mongoTemplate.getCollection(COLLECTION);
 		eventLogCollection.createIndex(new Document("testId", 1));
 		eventLogCollection.createIndex(new Document("testOwner", 1));
+		eventLogCollection.createIndex(new Document("testId", 1).append("seq", 1));
 	}
 }
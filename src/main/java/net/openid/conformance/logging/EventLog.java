@@ -1,6 +1,7 @@
 package net.openid.conformance.logging;
 
 import com.google.gson.JsonObject;
+import org.bson.Document;
 
 import java.util.Map;
 
@@ -15,8 +16,9 @@ public interface EventLog {
 	 *            The owner of the test run
 	 * @param msg
 	 *            The message to log
+	 * @return the entry as it will be stored; must not be modified
 	 */
-	void log(String testId, String source, Map<String, String> owner, String msg);
+	Document log(String testId, String source, Map<String, String> owner, String msg);
 
 	/**
 	 * @param testId
@@ -27,8 +29,9 @@ public interface EventLog {
 	 *            The owner of the test run
 	 * @param obj
 	 *            The message to log
+	 * @return the entry as it will be stored; must not be modified
 	 */
-	void log(String testId, String source, Map<String, String> owner, JsonObject obj);
+	Document log(String testId, String source, Map<String, String> owner, JsonObject obj);
 
 	/**
 	 * @param testId
@@ -39,8 +42,17 @@ public interface EventLog {
 	 *            The owner of the test run
 	 * @param map
 	 *            The message to log
+	 * @return the entry as it will be stored; must not be modified
 	 */
-	void log(String testId, String source, Map<String, String> owner, Map<String, Object> map);
+	Document log(String testId, String source, Map<String, String> owner, Map<String, Object> map);
+
+	/**
+	 * Block until all entries previously logged for the test have been persisted
+	 *
+	 * @param testId
+	 *            The instance identifier of the test
+	 */
+	void flush(String testId);
 
 	/**
 	 * create indexes on EventLog
@@ -1,7 +1,5 @@
 package net.openid.conformance.logging;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
@@ -17,15 +15,12 @@ import java.util.Map;
 
 public class GsonArrayToBsonArrayConverter implements Converter<JsonArray, BsonArray> {
 
-	private Gson gson = new GsonBuilder().serializeNulls().create();
-
 	@Override
 	public BsonArray convert(JsonArray source) {
 		if (source == null) {
 			return null;
 		} else {
-			String json = gson.toJson(GsonObjectToBsonDocumentConverter.convertFieldsToStructure(source));
-			return BsonArray.parse(json);
+			return GsonBsonEncoder.toBsonArray(source);
 		}
 	}
 
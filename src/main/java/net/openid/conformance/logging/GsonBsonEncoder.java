@@ -0,0 +1,203 @@
+package net.openid.conformance.logging;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import net.openid.conformance.testmodule.OIDFJSON;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonWriter;
+import org.bson.Document;
+import org.bson.codecs.Encoder;
+import org.bson.codecs.EncoderContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes GSON JsonElements straight to a BsonWriter, without serializing them to a JSON string and parsing that back.
+ *
+ * Keys that mongo can't store are wrapped as follows:
+ *
+ *    "a.b": "foo"
+ *
+ *  becomes:
+ *
+ *    "__wrapped_key_element_XXXXXX": {
+ *      "key": "a.b",
+ *      "value": "foo"
+ *    }
+ *
+ * and JSON nulls are stored as {@link GsonObjectToBsonDocumentConverter#CONFORMANCE_SUITE_JSON_NULL_CONSTANT}.
+ *
+ * Numbers are written as the BSON type that parsing their JSON representation would give, so documents are the same as
+ * they were when they went via a string.
+ */
+public class GsonBsonEncoder implements Encoder<JsonElement> {
+
+	public static final String WRAPPED_KEY_PREFIX = "__wrapped_key_element_";
+
+	private static final Logger log = LoggerFactory.getLogger(GsonBsonEncoder.class);
+
+	private static final GsonBsonEncoder INSTANCE = new GsonBsonEncoder();
+
+	/**
+	 * Convert a JsonObject to a mongo Document, with the values as plain java objects (as Document.parse() would give).
+	 * The source object is not modified.
+	 *
+	 * This is the one route that doesn't go through a BsonWriter. Log entries have to be copied before the caller gets
+	 * control back, and the copy is then read as a Document (by LogEntryPublisher, the result summaries, and Spring
+	 * Data for TestInfo and Plan configs) long before the driver encodes it, so a codec that only ran at insert time
+	 * couldn't replace it; building the Document directly is what saves the BsonDocument step.
+	 */
+	public static Document toDocument(JsonObject source) {
+		return INSTANCE.convertObject(source);
+	}
+
+	public static BsonDocument toBsonDocument(JsonObject source) {
+		BsonDocument document = new BsonDocument();
+		INSTANCE.encode(new BsonDocumentWriter(document), source, EncoderContext.builder().build());
+		return document;
+	}
+
+	public static BsonArray toBsonArray(JsonArray source) {
+		// a BsonDocumentWriter can only write documents, so write the array as a field of one
+		BsonDocument holder = new BsonDocument();
+		BsonWriter writer = new BsonDocumentWriter(holder);
+		writer.writeStartDocument();
+		writer.writeName("array");
+		INSTANCE.writeElement(writer, source);
+		writer.writeEndDocument();
+		return holder.getArray("array");
+	}
+
+	@Override
+	public void encode(BsonWriter writer, JsonElement value, EncoderContext encoderContext) {
+		writeElement(writer, value);
+	}
+
+	@Override
+	public Class<JsonElement> getEncoderClass() {
+		return JsonElement.class;
+	}
+
+	private void writeElement(BsonWriter writer, JsonElement element) {
+		if (element.isJsonObject()) {
+			writeObject(writer, element.getAsJsonObject());
+		} else if (element.isJsonArray()) {
+			writer.writeStartArray();
+			for (JsonElement item : element.getAsJsonArray()) {
+				writeElement(writer, item);
+			}
+			writer.writeEndArray();
+		} else if (element.isJsonNull()) {
+			writer.writeString(GsonObjectToBsonDocumentConverter.CONFORMANCE_SUITE_JSON_NULL_CONSTANT);
+		} else {
+			writePrimitive(writer, element.getAsJsonPrimitive());
+		}
+	}
+
+	private void writeObject(BsonWriter writer, JsonObject object) {
+		writer.writeStartDocument();
+		for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+			String key = entry.getKey();
+			if (needsWrapping(key)) {
+				writer.writeName(wrapKey(key));
+				writer.writeStartDocument();
+				writer.writeString("key", key);
+				writer.writeName("value");
+				writeElement(writer, entry.getValue());
+				writer.writeEndDocument();
+			} else {
+				writer.writeName(key);
+				writeElement(writer, entry.getValue());
+			}
+		}
+		writer.writeEndDocument();
+	}
+
+	private void writePrimitive(BsonWriter writer, JsonPrimitive primitive) {
+		if (primitive.isBoolean()) {
+			writer.writeBoolean(OIDFJSON.getBoolean(primitive));
+		} else if (primitive.isNumber()) {
+			Number number = parseNumber(OIDFJSON.getNumber(primitive).toString());
+			if (number instanceof Integer i) {
+				writer.writeInt32(i);
+			} else if (number instanceof Long l) {
+				writer.writeInt64(l);
+			} else {
+				writer.writeDouble(number.doubleValue());
+			}
+		} else {
+			writer.writeString(OIDFJSON.getString(primitive));
+		}
+	}
+
+	// gives the same as writing the object and decoding the result with a DocumentCodec, without the intermediate BsonDocument
+	private Document convertObject(JsonObject object) {
+		Document document = new Document();
+		for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+			String key = entry.getKey();
+			if (needsWrapping(key)) {
+				document.append(wrapKey(key), new Document("key", key).append("value", convertElement(entry.getValue())));
+			} else {
+				document.append(key, convertElement(entry.getValue()));
+			}
+		}
+		return document;
+	}
+
+	private Object convertElement(JsonElement element) {
+		if (element.isJsonObject()) {
+			return convertObject(element.getAsJsonObject());
+		} else if (element.isJsonArray()) {
+			List<Object> list = new ArrayList<>();
+			for (JsonElement item : element.getAsJsonArray()) {
+				list.add(convertElement(item));
+			}
+			return list;
+		} else if (element.isJsonNull()) {
+			return GsonObjectToBsonDocumentConverter.CONFORMANCE_SUITE_JSON_NULL_CONSTANT;
+		}
+		JsonPrimitive primitive = element.getAsJsonPrimitive();
+		if (primitive.isBoolean()) {
+			return OIDFJSON.getBoolean(primitive);
+		} else if (primitive.isNumber()) {
+			return parseNumber(OIDFJSON.getNumber(primitive).toString());
+		} else {
+			return OIDFJSON.getString(primitive);
+		}
+	}
+
+	private static boolean needsWrapping(String key) {
+		return key.contains(".") || key.contains("$") || key.startsWith(WRAPPED_KEY_PREFIX);
+	}
+
+	private static String wrapKey(String key) {
+		String wrappedKey = WRAPPED_KEY_PREFIX + RandomStringUtils.randomAlphabetic(6);
+		log.info("Wrapped " + key + " as " + wrappedKey);
+		return wrappedKey;
+	}
+
+	private static Number parseNumber(String number) {
+		// the JSON parser picks the smallest of int32/int64 that fits an integer, and double for anything else
+		if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+			try {
+				long value = Long.parseLong(number);
+				if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+					return (int) value;
+				}
+				return value;
+			} catch (NumberFormatException e) {
+				// too big for an int64; store it as a double
+			}
+		}
+		return Double.parseDouble(number);
+	}
+}
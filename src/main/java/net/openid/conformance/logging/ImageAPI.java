@@ -7,7 +7,10 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import net.openid.conformance.info.ImageService;
+import net.openid.conformance.info.PublicTestInfo;
+import net.openid.conformance.info.TestInfoRepository;
 import net.openid.conformance.info.TestInfoService;
+import net.openid.conformance.info.TestResultSummaryService;
 import net.openid.conformance.runner.TestRunnerSupport;
 import net.openid.conformance.security.AuthenticationFacade;
 import net.openid.conformance.testmodule.TestModule;
@@ -17,7 +20,10 @@ import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.core.io.Resource;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -34,6 +40,8 @@ import java.util.Base64;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 @RequestMapping(value = "/api")
@@ -45,6 +53,9 @@ public class ImageAPI {
 	@Autowired
 	private TestInfoService testInfoService;
 
+	@Autowired
+	private TestInfoRepository testInfos;
+
 	@Autowired
 	private TestRunnerSupport testRunnerSupport;
 
@@ -54,6 +65,12 @@ public class ImageAPI {
 	@Autowired
 	private ImageService imageService;
 
+	@Autowired
+	private LogEntryPublisher publisher;
+
+	@Autowired
+	private TestResultSummaryService resultSummaryService;
+
 	@PostMapping(path = "/log/{id}/images")
 	@Operation(summary = "Upload image for a test log")
 	@ApiResponses(value = {
@@ -86,10 +103,17 @@ public class ImageAPI {
 				.append("testOwner", testOwner)
 				.append("src", "_image-api")
 				.append("time", new Date().getTime())
-				.append("msg", Strings.emptyToNull(description))
-				.append("img", encoded);
+				.append("seq", LogEntryPublisher.nextSequence())
+				.append("msg", Strings.emptyToNull(description));
+			document.putAll(storeImage(testId, encoded));
 
 			mongoTemplate.insert(document, DBEventLog.COLLECTION);
+			resultSummaryService.addLogEntries(testId, List.of(document));
+			publisher.publish(testId, document);
+			TestModule test = testRunnerSupport.getRunningTestById(testId);
+			if (test != null) {
+				test.getEventLog().addRecentEntry(document);
+			}
 
 			Document updated = mongoTemplate.findById(entryId, Document.class, DBEventLog.COLLECTION);
 
@@ -126,7 +150,10 @@ public class ImageAPI {
 				return response;
 			}
 
-			Map<String, Object> update = ImmutableMap.of("img", encoded, "updatedAt", new Date().getTime());
+			Map<String, Object> update = ImmutableMap.<String, Object>builder()
+				.putAll(storeImage(testId, encoded))
+				.put("updatedAt", new Date().getTime())
+				.build();
 
 			Document result = imageService.fillPlaceholder(testId, placeholder, update, false);
 
@@ -165,6 +192,53 @@ public class ImageAPI {
 
 	}
 
+	@GetMapping(path = "/log/{id}/images/{hash}")
+	@Operation(summary = "Get an image uploaded to a test log")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Retrieved successfully"),
+		@ApiResponse(responseCode = "304", description = "Image has not changed"),
+		@ApiResponse(responseCode = "404", description = "Couldn't find given image, or user is not allowed to see it")
+	})
+	public ResponseEntity<Resource> getImage(
+		@Parameter(description = "Id of test") @PathVariable(name = "id") String testId,
+		@Parameter(description = "Hash of image, as found in the log entry") @PathVariable String hash,
+		@Parameter(description = "Published data only") @RequestParam(name = "public", defaultValue = "false") boolean publicOnly) throws IOException {
+
+		GridFsResource image = null;
+		if (publicOnly) {
+			// images are only visible in published logs when everything is published
+			Optional<PublicTestInfo> testInfo = testInfos.findByIdPublic(testId);
+			if (testInfo.isPresent() && "everything".equals(testInfo.get().getPublish())) {
+				image = imageService.getImage(testId, hash, true);
+			}
+		} else {
+			image = imageService.getImage(testId, hash, false);
+		}
+
+		if (image == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+
+		// images are stored by the hash of their content so never change; spring replies with a 304 if the ETag matches
+		return ResponseEntity.ok()
+			.eTag(hash)
+			.cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable())
+			.contentType(MediaType.parseMediaType(image.getContentType()))
+			.contentLength(image.contentLength())
+			.body(image);
+	}
+
+	/**
+	 * Store an uploaded image, returning the fields that refer to it in the log entry
+	 */
+	private Map<String, Object> storeImage(String testId, String encoded) {
+		String hash = imageService.storeImage(encoded);
+		return ImmutableMap.of(
+			// used directly as the src of the image by the log viewer
+			"img", "/api/log/" + testId + "/images/" + hash,
+			"img_hash", hash);
+	}
+
 	/**
 	 * @param testId
 	 */
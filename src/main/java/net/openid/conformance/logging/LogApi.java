@@ -4,7 +4,9 @@ import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -12,17 +14,24 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import jakarta.servlet.http.HttpServletRequest;
 import net.openid.conformance.CollapsingGsonHttpMessageConverter;
 import net.openid.conformance.export.HtmlExportRenderer;
+import net.openid.conformance.export.HtmlExportService;
 import net.openid.conformance.export.PlanExportInfo;
+import net.openid.conformance.export.SignedHtml;
 import net.openid.conformance.export.TestExportInfo;
 import net.openid.conformance.export.TestHelper;
+import net.openid.conformance.info.DBTestInfoService;
+import net.openid.conformance.info.ImageService;
 import net.openid.conformance.info.Plan;
 import net.openid.conformance.info.PublicPlan;
 import net.openid.conformance.info.PublicTestInfo;
 import net.openid.conformance.info.TestInfo;
 import net.openid.conformance.info.TestInfoRepository;
 import net.openid.conformance.info.TestPlanService;
+import net.openid.conformance.info.TestResultSummaryService;
 import net.openid.conformance.pagination.PaginationRequest;
 import net.openid.conformance.pagination.PaginationResponse;
+import net.openid.conformance.pagination.PaginationService;
+import net.openid.conformance.runner.TestRunnerSupport;
 import net.openid.conformance.security.AuthenticationFacade;
 import net.openid.conformance.security.KeyManager;
 import net.openid.conformance.testmodule.TestModule;
@@ -43,11 +52,14 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -56,14 +68,19 @@ import java.security.Signature;
 import java.security.SignatureException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 @Controller
@@ -91,11 +108,29 @@ public class LogApi {
 	@Autowired
 	private HtmlExportRenderer htmlExportRenderer;
 
+	@Autowired
+	private HtmlExportService htmlExportService;
+
+	@Autowired
+	private ImageService imageService;
+
 	private Gson gson = CollapsingGsonHttpMessageConverter.getDbObjectCollapsingGson();
 
 	@Autowired
 	private TestPlanService planService;
 
+	@Autowired
+	private TestResultSummaryService resultSummaryService;
+
+	@Autowired
+	private LogStreamService logStreamService;
+
+	@Autowired
+	private PaginationService paginationService;
+
+	@Autowired
+	private TestRunnerSupport support;
+
 	@Value("${net.openid.conformance.logging.logapi.certification-package-failed-tests-exception-list}")
 	private String[] certificationPackageFailedTestExceptionList;
 
@@ -111,18 +146,14 @@ public class LogApi {
 		PaginationResponse<?> response;
 
 		if (publicOnly) {
-			response = page.getResponse(
-					p -> testInfos.findAllPublic(p),
-					(s, p) -> testInfos.findAllPublicSearch(s, p));
+			response = paginationService.getResponse(page, DBTestInfoService.COLLECTION,
+					Criteria.where("publish").in("summary", "everything"), PublicTestInfo.class);
 		} else if (authenticationFacade.isAdmin()) {
-			response = page.getResponse(
-					p -> testInfos.findAll(p),
-					(s, p) -> testInfos.findAllSearch(s, p));
+			response = paginationService.getResponse(page, DBTestInfoService.COLLECTION, null, TestInfo.class);
 		} else {
 			ImmutableMap<String, String> owner = authenticationFacade.getPrincipal();
-			response = page.getResponse(
-					p -> testInfos.findAllByOwner(owner, p),
-					(s, p) -> testInfos.findAllByOwnerSearch(owner, s, p));
+			response = paginationService.getResponse(page, DBTestInfoService.COLLECTION,
+					Criteria.where("owner").is(owner), TestInfo.class);
 		}
 
 		return new ResponseEntity<>(response, HttpStatus.OK);
@@ -143,6 +174,28 @@ public class LogApi {
 		return ResponseEntity.ok().body(results);
 	}
 
+	@GetMapping(value = "/log/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	@Operation(summary = "Stream test log of given testId", description = "Sends the test log as server-sent events, followed by new entries as they are logged. The id of each event can be passed back as 'after' (or the Last-Event-ID header) to resume the stream; entries logged shortly before that one may be sent again, and can be recognised by their _id.")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Stream opened successfully"),
+		@ApiResponse(responseCode = "404", description = "Couldn't find given test Id")
+	})
+	public ResponseEntity<SseEmitter> streamLogResults(
+		@Parameter(description = "Id of test") @PathVariable String id,
+		@Parameter(description = "Only send entries after the one with this sequence number") @RequestParam(required = false) Long after,
+		@Parameter(hidden = true) @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId,
+		@Parameter(description = "Published data only") @RequestParam(name = "public", defaultValue = "false") boolean publicOnly) {
+
+		Optional<?> testInfo = getTestInfo(publicOnly, id);
+		if (testInfo.isEmpty()) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+
+		boolean summaryOnly = testInfo.get() instanceof PublicTestInfo && !"everything".equals(((PublicTestInfo) testInfo.get()).getPublish());
+
+		return ResponseEntity.ok().body(logStreamService.openStream(id, lastEventId != null ? lastEventId : after, summaryOnly));
+	}
+
 	@GetMapping(value = "/log/export/{id}", produces = "application/zip")
 	@Operation(summary = "Export test log by test id")
 	@ApiResponses(value = {
@@ -152,7 +205,7 @@ public class LogApi {
 	public ResponseEntity<StreamingResponseBody> export(
 		@Parameter(description = "Id of test") @PathVariable String id,
 		@Parameter(description = "Published data only") @RequestParam(name = "public", defaultValue = "false") boolean publicOnly) {
-		List<Document> results = getTestResults(id, null, publicOnly);
+		Iterable<Document> results = findTestResults(id, null, publicOnly);
 
 		Optional<?> testInfo = getTestInfo(publicOnly, id);
 
@@ -239,7 +292,7 @@ public class LogApi {
 
 				String testId = instances.get(instances.size() - 1);
 
-				List<Document> results = getTestResults(testId, null, publicOnly);
+				Iterable<Document> results = findTestResults(testId, null, publicOnly);
 
 				Optional<?> testInfo = getTestInfo(publicOnly, testId);
 
@@ -297,6 +350,8 @@ public class LogApi {
 
 	protected void addFilesToZip(ZipArchiveOutputStream archiveOutputStream, String jsonFileName, String sigFileName, TestExportInfo export) throws Exception {
 
+		// the size isn't known up front as the log is written as it's read from the database; the zip stream records
+		// it after the data instead
 		ZipArchiveEntry testLog = new ZipArchiveEntry(jsonFileName);
 
 		Signature signature = Signature.getInstance("SHA1withRSA");
@@ -304,15 +359,13 @@ public class LogApi {
 
 		SignatureOutputStream signatureOutputStream = new SignatureOutputStream(archiveOutputStream, signature);
 
-		String json = gson.toJson(export);
-
-		testLog.setSize(json.getBytes().length);
 		archiveOutputStream.putArchiveEntry(testLog);
 
-		signatureOutputStream.write(json.getBytes());
+		JsonWriter jsonWriter = gson.newJsonWriter(new BufferedWriter(new OutputStreamWriter(signatureOutputStream, StandardCharsets.UTF_8)));
+		writeTestExport(jsonWriter, export);
 
-		signatureOutputStream.flush();
-		signatureOutputStream.close();
+		// flushes everything through to the archive entry; SignatureOutputStream leaves the archive stream open
+		jsonWriter.close();
 
 		archiveOutputStream.closeArchiveEntry();
 
@@ -329,6 +382,38 @@ public class LogApi {
 		archiveOutputStream.closeArchiveEntry();
 	}
 
+	/**
+	 * Writes the same json as gson.toJson(export), but one log entry at a time so only a single entry is ever in
+	 * memory.
+	 */
+	private void writeTestExport(JsonWriter jsonWriter, TestExportInfo export) throws IOException {
+		jsonWriter.beginObject();
+		writeJsonField(jsonWriter, "exportedAt", export.getExportedAt());
+		writeJsonField(jsonWriter, "exportedFrom", export.getExportedFrom());
+		writeJsonField(jsonWriter, "exportedBy", export.getExportedBy());
+		writeJsonField(jsonWriter, "exportedVersion", export.getExportedVersion());
+		writeJsonField(jsonWriter, "testInfo", export.getTestInfo());
+		jsonWriter.name("results");
+		jsonWriter.beginArray();
+		for (Object result : export.getResults()) {
+			// uploaded images are stored outside the log, but the export has to be readable offline; the image is
+			// only loaded as its entry is written
+			Object entry = result instanceof Document document ? imageService.inlineImage(document) : result;
+			gson.toJson(entry, entry.getClass(), jsonWriter);
+		}
+		jsonWriter.endArray();
+		jsonWriter.endObject();
+	}
+
+	private void writeJsonField(JsonWriter jsonWriter, String name, Object value) throws IOException {
+		jsonWriter.name(name);
+		if (value == null) {
+			jsonWriter.nullValue();
+		} else {
+			gson.toJson(value, value.getClass(), jsonWriter);
+		}
+	}
+
 	protected Optional<?> getTestInfo(boolean publicOnly, String testId) {
 		Optional<?> testInfo = Optional.empty();
 
@@ -345,14 +430,35 @@ public class LogApi {
 		return testInfo;
 	}
 
-	protected TestExportInfo putTestResultToExport(List<Document> results, Optional<?> testInfo) {
+	protected TestExportInfo putTestResultToExport(Iterable<Document> results, Optional<?> testInfo) {
 		TestExportInfo export = new TestExportInfo(baseUrl, authenticationFacade.getPrincipal(), version, testInfo.get(), results);
 
 		return export;
 	}
 
-	@SuppressWarnings("MixedMutabilityReturnType")
 	private List<Document> getTestResults(String id, Long since, boolean isPublic) {
+		if (!isPublic) {
+			// whilst the test is running on this server, the entries the log viewer is polling for are usually still
+			// held in memory; this checks the user can see the test
+			TestModule test = support.getRunningTestById(id);
+			if (test != null) {
+				List<Document> entries = test.getEventLog().getRecentEntries(since);
+				if (entries != null) {
+					return entries;
+				}
+			}
+		}
+		return Lists.newArrayList(findTestResults(id, since, isPublic));
+	}
+
+	/**
+	 * Build the query for a test's log entries.
+	 *
+	 * Nothing is read from the database until the result is iterated, so exports can write the entries out one at a
+	 * time rather than holding the whole log in memory. The access checks are done here, so this must be called on the
+	 * request thread even if the result is only iterated later.
+	 */
+	private Iterable<Document> findTestResults(String id, Long since, boolean isPublic) {
 		boolean summaryOnly;
 
 		if (isPublic) {
@@ -389,11 +495,11 @@ public class LogApi {
 				.include("time");
 		}
 
-		return Lists.newArrayList(mongoTemplate
+		return mongoTemplate
 			.getCollection(DBEventLog.COLLECTION)
 			.find(query.getQueryObject())
 			.projection(query.getFieldsObject())
-			.sort(new Document("time", 1)));
+			.sort(new Document("time", 1));
 	}
 
 	private static String variantSuffix(VariantSelection variant) {
@@ -477,6 +583,14 @@ public class LogApi {
 		}
 
 		List<String> failedTestExceptionList = Arrays.asList(certificationPackageFailedTestExceptionList);
+		List<String> latestTestIds = new ArrayList<>();
+		for (Plan.Module module : modules) {
+			List<String> instances = module.getInstances();
+			if (instances != null && !instances.isEmpty()) {
+				latestTestIds.add(instances.get(instances.size() - 1));
+			}
+		}
+		Map<String, Document> summaries = resultSummaryService.getSummaries(latestTestIds);
 		for (Plan.Module module : modules) {
 			String testModuleName = module.getTestModule();
 			List<String> instances = module.getInstances();
@@ -506,6 +620,18 @@ public class LogApi {
 						failedTestInfo.addProperty("testId", testId);
 						failedTestInfo.addProperty("status", status);
 						failedTestInfo.addProperty("result", result);
+						// the conditions that failed, so it's clear why without opening each log; left out if the test
+						// has no summary to find them in
+						Document summary = summaries.get(testId);
+						if (summary != null) {
+							Set<String> failures = new LinkedHashSet<>();
+							for (Document failure : summary.getList("failures", Document.class, List.of())) {
+								failures.add(failure.getString("src"));
+							}
+							JsonArray failuresArray = new JsonArray();
+							failures.forEach(failuresArray::add);
+							failedTestInfo.add("failures", failuresArray);
+						}
 						failedTests.add(testModuleName, failedTestInfo);
 					}
 				}
@@ -552,6 +678,7 @@ public class LogApi {
 
 		String planName = null;
 		VariantSelection variant = null;
+		Boolean immutable = null;
 
 		List<Plan.Module> modules = new ArrayList<>();
 
@@ -561,12 +688,17 @@ public class LogApi {
 			planName = plan.getPlanName();
 			variant = plan.getVariant();
 			modules = plan.getModules();
+			immutable = plan.getImmutable();
 		} else if (testPlan instanceof Plan plan) {
 			planName = plan.getPlanName();
 			variant = plan.getVariant();
 			modules = plan.getModules();
+			immutable = plan.getImmutable();
 		}
 
+		// the logs of an immutable plan can't change, so their rendered html can be kept for the next download
+		boolean cacheRenderedLogs = Boolean.TRUE.equals(immutable);
+
 		//plan summary page
 		PlanExportInfo planExportInfo = new PlanExportInfo(baseUrl, authenticationFacade.getPrincipal(), version, testPlan);
 
@@ -579,7 +711,7 @@ public class LogApi {
 
 				String testId = instances.get(instances.size() - 1);
 
-				List<Document> results = getTestResults(testId, null, publicOnly);
+				Iterable<Document> results = findTestResults(testId, null, publicOnly);
 
 				Optional<?> testInfo = getTestInfo(publicOnly, testId);
 
@@ -609,27 +741,28 @@ public class LogApi {
 					ZipArchiveOutputStream archiveOutputStream = new ZipArchiveOutputStream(out);
 					addPlanHTMLToZip(archiveOutputStream, testPlan, planExportInfo, htmlExportRenderer, addFolderForHtmlFiles, forCertification);
 
-					// add all test logs file of a test plan to zip
-					for (PlanExportInfo.TestExportInfoHolder testLogInfoExport : planExportInfo.getTestLogExports()) {
-
-						String htmlFileName = TestHelper.generateHtmlFileName(testLogInfoExport.getTestModuleName(), testLogInfoExport.getTestId());
-
-						String sigFileName = TestHelper.generateSigFileName(testLogInfoExport.getTestModuleName(), testLogInfoExport.getTestId());
-						if(addFolderForHtmlFiles){
-							htmlFileName = "test-logs/" + htmlFileName;
-							sigFileName = "test-logs/" + sigFileName;
+					// add all test logs file of a test plan to zip; the html is rendered in the background a few
+					// modules ahead of the one being written
+					Deque<RenderingTestLog> rendering = new ArrayDeque<>();
+					try {
+						for (PlanExportInfo.TestExportInfoHolder testLogInfoExport : planExportInfo.getTestLogExports()) {
+							String cacheKey = cacheRenderedLogs
+								? HtmlExportService.cacheKey(testLogInfoExport.getTestId(), publicOnly, planExportInfo.getExportedBy(),
+									testLogInfoExport.getExport().getExportedFrom(), version)
+								: null;
+							rendering.add(new RenderingTestLog(testLogInfoExport,
+								htmlExportService.renderTestLog(testLogInfoExport.getExport(), planId, cacheKey)));
+
+							if (rendering.size() > htmlExportService.getRenderThreads()) {
+								addTestLogToZip(archiveOutputStream, rendering.remove(), addFolderForHtmlFiles);
+							}
 						}
-
-						addHTMLFileToZip(archiveOutputStream, htmlFileName, sigFileName, testLogInfoExport.getExport(), htmlExportRenderer);
-
-						String jsonLogFilename = "test-log-"+testLogInfoExport.getTestModuleName()+"-" + testLogInfoExport.getTestId() + ".json";
-						String jsonLogSigFilename = "test-log-"+testLogInfoExport.getTestModuleName()+"-" + testLogInfoExport.getTestId() + ".json.sig";
-						if(addFolderForHtmlFiles){
-							jsonLogFilename = "test-logs/" + jsonLogFilename;
-							jsonLogSigFilename = "test-logs/" + jsonLogSigFilename;
+						while (!rendering.isEmpty()) {
+							addTestLogToZip(archiveOutputStream, rendering.remove(), addFolderForHtmlFiles);
 						}
-						addFilesToZip(archiveOutputStream, jsonLogFilename, jsonLogSigFilename, testLogInfoExport.getExport());
-
+					} finally {
+						// if writing failed, don't carry on rendering
+						rendering.forEach(r -> r.html().cancel(true));
 					}
 
 					if(certificationOfConformancePdf!=null && certificationOfConformancePdf.getSize()>0) {
@@ -738,33 +871,46 @@ public class LogApi {
 
 	}
 
-	protected void addHTMLFileToZip(ZipArchiveOutputStream archiveOutputStream, String htmlFileName, String sigFileName,
-									TestExportInfo export, HtmlExportRenderer htmlExportRenderer) throws Exception {
+	private record RenderingTestLog(PlanExportInfo.TestExportInfoHolder testLogInfoExport, Future<SignedHtml> html) {
+	}
 
-		ZipArchiveEntry testLog = new ZipArchiveEntry(htmlFileName);
+	private void addTestLogToZip(ZipArchiveOutputStream archiveOutputStream, RenderingTestLog rendering, boolean addFolderForHtmlFiles) throws Exception {
+		PlanExportInfo.TestExportInfoHolder testLogInfoExport = rendering.testLogInfoExport();
 
-		Signature signature = Signature.getInstance("SHA1withRSA");
-		signature.initSign(keyManager.getSigningPrivateKey());
+		String htmlFileName = TestHelper.generateHtmlFileName(testLogInfoExport.getTestModuleName(), testLogInfoExport.getTestId());
 
-		SignatureOutputStream signatureOutputStream = new SignatureOutputStream(archiveOutputStream, signature);
+		String sigFileName = TestHelper.generateSigFileName(testLogInfoExport.getTestModuleName(), testLogInfoExport.getTestId());
+		if(addFolderForHtmlFiles){
+			htmlFileName = "test-logs/" + htmlFileName;
+			sigFileName = "test-logs/" + sigFileName;
+		}
 
-		String html = htmlExportRenderer.createHtmlForTestLogs(export);
-		byte[] htmlBytes = html.getBytes(StandardCharsets.UTF_8);
+		addHTMLFileToZip(archiveOutputStream, htmlFileName, sigFileName, rendering.html().get());
 
-		testLog.setSize(htmlBytes.length);
-		archiveOutputStream.putArchiveEntry(testLog);
+		String jsonLogFilename = "test-log-"+testLogInfoExport.getTestModuleName()+"-" + testLogInfoExport.getTestId() + ".json";
+		String jsonLogSigFilename = "test-log-"+testLogInfoExport.getTestModuleName()+"-" + testLogInfoExport.getTestId() + ".json.sig";
+		if(addFolderForHtmlFiles){
+			jsonLogFilename = "test-logs/" + jsonLogFilename;
+			jsonLogSigFilename = "test-logs/" + jsonLogSigFilename;
+		}
+		addFilesToZip(archiveOutputStream, jsonLogFilename, jsonLogSigFilename, testLogInfoExport.getExport());
+	}
 
-		signatureOutputStream.write(htmlBytes);
+	protected void addHTMLFileToZip(ZipArchiveOutputStream archiveOutputStream, String htmlFileName, String sigFileName,
+									SignedHtml html) throws Exception {
 
-		signatureOutputStream.flush();
-		signatureOutputStream.close();
+		ZipArchiveEntry testLog = new ZipArchiveEntry(htmlFileName);
+
+		testLog.setSize(html.html().length);
+		archiveOutputStream.putArchiveEntry(testLog);
+
+		archiveOutputStream.write(html.html());
 
 		archiveOutputStream.closeArchiveEntry();
 
 		ZipArchiveEntry signatureFile = new ZipArchiveEntry(sigFileName);
 
-		byte[] src = signature.sign();
-		String encodedSignature = Base64.getUrlEncoder().encodeToString(src);
+		String encodedSignature = html.signature();
 		signatureFile.setSize(encodedSignature.getBytes().length);
 
 		archiveOutputStream.putArchiveEntry(signatureFile);
@@ -783,7 +929,7 @@ public class LogApi {
 	public ResponseEntity<StreamingResponseBody> exportTestHtml(
 		@Parameter(description = "Id of test") @PathVariable String id,
 		@Parameter(description = "Published data only") @RequestParam(name = "public", defaultValue = "false") boolean publicOnly) {
-		List<Document> results = getTestResults(id, null, publicOnly);
+		Iterable<Document> results = findTestResults(id, null, publicOnly);
 
 		Optional<?> testInfo = getTestInfo(publicOnly, id);
 
@@ -818,7 +964,7 @@ public class LogApi {
 
 					String sigFileName = TestHelper.generateSigFileName(testModuleNameFinal, id);
 
-					addHTMLFileToZip(archiveOutputStream, htmlFileName, sigFileName, export, htmlExportRenderer);
+					addHTMLFileToZip(archiveOutputStream, htmlFileName, sigFileName, htmlExportService.renderTestLog(export));
 
 					addFilesToZip(archiveOutputStream, "test-log-"+testModuleNameFinal+"-" + id + ".json",
 						"test-log-"+testModuleNameFinal+"-" + id + ".json.sig", export);
@@ -0,0 +1,66 @@
+package net.openid.conformance.logging;
+
+import org.bson.Document;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hands log entries to anyone watching a test in this JVM (e.g. the log streaming API) as they are logged, so they
+ * don't have to poll the database for new entries.
+ *
+ * Also hands out the 'seq' values stored in each log entry. These are (roughly) microseconds since the epoch, but
+ * are strictly increasing within this JVM, so unlike 'time' two entries for a test never share a value and they can
+ * be used to resume reading the log exactly where a client left off.
+ */
+@Component
+public class LogEntryPublisher {
+
+	private static final AtomicLong lastSequence = new AtomicLong();
+
+	private final Map<String, List<Consumer<Document>>> subscribers = new ConcurrentHashMap<>();
+
+	public static long nextSequence() {
+		long now = ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+		return lastSequence.updateAndGet(last -> Math.max(last + 1, now));
+	}
+
+	/**
+	 * Pass a newly logged entry to the subscribers for the test.
+	 *
+	 * Subscribers are called on the logging thread, so must not block.
+	 *
+	 * @param testId the test the entry belongs to
+	 * @param document the entry, which must not be modified by subscribers
+	 */
+	public void publish(String testId, Document document) {
+		List<Consumer<Document>> consumers = subscribers.get(testId);
+		if (consumers != null) {
+			for (Consumer<Document> consumer : consumers) {
+				consumer.accept(document);
+			}
+		}
+	}
+
+	/**
+	 * @return a Runnable that removes the subscription
+	 */
+	public Runnable subscribe(String testId, Consumer<Document> consumer) {
+		subscribers.compute(testId, (k, consumers) -> {
+			List<Consumer<Document>> updated = consumers == null ? new CopyOnWriteArrayList<>() : consumers;
+			updated.add(consumer);
+			return updated;
+		});
+		return () -> subscribers.computeIfPresent(testId, (k, consumers) -> {
+			consumers.remove(consumer);
+			return consumers.isEmpty() ? null : consumers;
+		});
+	}
+}
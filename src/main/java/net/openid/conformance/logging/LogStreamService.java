@@ -0,0 +1,344 @@
+package net.openid.conformance.logging;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import net.openid.conformance.CollapsingGsonHttpMessageConverter;
+import net.openid.conformance.info.TestInfo;
+import net.openid.conformance.info.TestInfoRepository;
+import net.openid.conformance.runner.TestRunnerSupport;
+import net.openid.conformance.testmodule.TestModule;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streams the log entries for a test to a client as server-sent events.
+ *
+ * The entries already in the database are sent first, followed by new entries as they're logged. If the test is
+ * running in this JVM, new entries come straight from the EventLog via LogEntryPublisher; otherwise the database is
+ * checked for new entries every second (change streams would need mongodb to be run as a replica set, which most
+ * installs of the suite don't do).
+ *
+ * The id of each event is the entry's 'seq', which the client can pass back (usually via the Last-Event-ID header
+ * that EventSource sends when it reconnects) to continue from where it left off.
+ *
+ * Sequence numbers are assigned when an entry is logged, but entries can reach the publisher and the database in a
+ * different order (several threads logging for one test, or the background writes of AsyncDBEventLog). So rather than
+ * treating everything below the highest 'seq' sent as already sent, each stream reads the database from REORDER_WINDOW
+ * before the highest, and skips the entries within that window it remembers sending. A client resuming a stream may
+ * therefore be sent again entries from just before the one it passes back; these can be recognised by their '_id' (the
+ * log viewer ignores entries it already has).
+ *
+ * Everything a stream does (reading the database and sending to the client, which blocks if the client is slow to
+ * read) runs in order on its own sequential executor, so a slow client or a long log only holds up its own stream.
+ * The shared timer only hands the polls and heartbeats over to the streams.
+ */
+@Component
+public class LogStreamService {
+
+	private static final Logger logger = LoggerFactory.getLogger(LogStreamService.class);
+
+	// browsers reconnect automatically when the stream is closed, so there's no need to keep them open forever
+	private static final Duration STREAM_TIMEOUT = Duration.ofMinutes(30);
+
+	private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+
+	private static final Duration POLL_INTERVAL = Duration.ofSeconds(1);
+
+	// if a client falls this far behind we drop the connection and let it catch up from the database when it reconnects
+	private static final int MAX_PENDING_ENTRIES = 1000;
+
+	// 'seq' is based on the time in microseconds, so this is how far out of order entries can arrive and still be sent;
+	// AsyncDBEventLog normally writes entries well within this
+	private static final long REORDER_WINDOW = TimeUnit.SECONDS.toMicros(10);
+
+	private static final List<String> SUMMARY_FIELDS = List.of("_id", "result", "testName", "testId", "src", "time", "seq");
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Autowired
+	private TestInfoRepository testInfos;
+
+	@Autowired
+	private TestRunnerSupport testRunnerSupport;
+
+	@Autowired
+	private EventLog eventLog;
+
+	@Autowired
+	private LogEntryPublisher publisher;
+
+	private final Gson gson = CollapsingGsonHttpMessageConverter.getDbObjectCollapsingGson();
+
+	// runs the streams' work; each stream runs its tasks one at a time, via a sequential executor
+	private final ExecutorService senders = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+		.setNameFormat("log-stream-%d")
+		.setDaemon(true)
+		.build());
+
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+		.setNameFormat("log-stream-timer-%d")
+		.setDaemon(true)
+		.build());
+
+	/**
+	 * Start streaming a test's log. The caller must already have checked the user is allowed to see the test.
+	 *
+	 * @param testId the test to stream
+	 * @param after only send entries with a 'seq' greater than this (or logged shortly before it); null to send the
+	 *              whole log
+	 * @param summaryOnly only send the fields included in a published summary
+	 */
+	public SseEmitter openStream(String testId, Long after, boolean summaryOnly) {
+		SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT.toMillis());
+		stream(testId, after, summaryOnly, emitter);
+		return emitter;
+	}
+
+	void stream(String testId, Long after, boolean summaryOnly, SseEmitter emitter) {
+		LogStream stream = new LogStream(testId, after, summaryOnly, emitter);
+		emitter.onCompletion(stream::close);
+		emitter.onTimeout(stream::close);
+		emitter.onError(e -> stream.close());
+		stream.sender.execute(stream::start);
+	}
+
+	private class LogStream {
+
+		private final String testId;
+		private final boolean summaryOnly;
+		private final SseEmitter emitter;
+
+		private final Executor sender = MoreExecutors.newSequentialExecutor(senders);
+
+		private final BlockingQueue<Document> pending = new LinkedBlockingQueue<>(MAX_PENDING_ENTRIES);
+		// set whilst a task is waiting for the sender, so a stream that's behind doesn't pile up more of them
+		private final AtomicBoolean sendScheduled = new AtomicBoolean(false);
+		private final AtomicBoolean pollScheduled = new AtomicBoolean(false);
+		private final AtomicBoolean heartbeatScheduled = new AtomicBoolean(false);
+
+		private volatile boolean closed = false;
+		private boolean backlogSent = false;
+		// the highest 'seq' sent (or passed by the client when resuming), and the ones sent within REORDER_WINDOW of it
+		private Long lastSequence;
+		private final NavigableSet<Long> sentSequences = new TreeSet<>();
+
+		private Runnable unsubscribe;
+		private ScheduledFuture<?> heartbeat;
+		private ScheduledFuture<?> poller;
+
+		LogStream(String testId, Long after, boolean summaryOnly, SseEmitter emitter) {
+			this.testId = testId;
+			this.lastSequence = after;
+			this.summaryOnly = summaryOnly;
+			this.emitter = emitter;
+		}
+
+		void start() {
+			try {
+				boolean local = testRunnerSupport.hasTestId(testId);
+				if (local) {
+					// subscribe before reading the database so nothing can fall between the two; anything that ends up
+					// in both is skipped based on 'seq'
+					unsubscribe = publisher.subscribe(testId, this::onEntry);
+					eventLog.flush(testId);
+				}
+
+				sendFromDatabase();
+				backlogSent = true;
+
+				if (!local) {
+					if (isFinished()) {
+						emitter.complete();
+						return;
+					}
+					poller = timer.scheduleWithFixedDelay(() -> runOnce(pollScheduled, this::poll),
+						POLL_INTERVAL.toMillis(), POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+				}
+				heartbeat = timer.scheduleWithFixedDelay(() -> runOnce(heartbeatScheduled, this::heartbeat),
+					HEARTBEAT_INTERVAL.toMillis(), HEARTBEAT_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+
+				sendPending();
+			} catch (IOException | RuntimeException e) {
+				fail(e);
+			}
+		}
+
+		private void onEntry(Document document) {
+			if (closed) {
+				return;
+			}
+			if (!pending.offer(document)) {
+				logger.info(testId + ": log stream client has fallen too far behind, closing the stream");
+				closed = true;
+				sender.execute(emitter::complete);
+				return;
+			}
+			runOnce(sendScheduled, () -> {
+				try {
+					sendPending();
+				} catch (IOException | RuntimeException e) {
+					fail(e);
+				}
+			});
+		}
+
+		/**
+		 * Run a task on the stream's sender, unless it's already waiting to run
+		 */
+		private void runOnce(AtomicBoolean scheduled, Runnable task) {
+			if (!closed && scheduled.compareAndSet(false, true)) {
+				sender.execute(() -> {
+					scheduled.set(false);
+					task.run();
+				});
+			}
+		}
+
+		private void sendPending() throws IOException {
+			if (!backlogSent) {
+				// start() will send these once the entries from the database are out
+				return;
+			}
+			while (!pending.isEmpty()) {
+				send(pending.poll());
+			}
+		}
+
+		private void sendFromDatabase() throws IOException {
+			Criteria criteria = Criteria.where("testId").is(testId);
+			Document sort;
+			if (lastSequence != null) {
+				// entries logged just before the last one sent may only just have reached the database; the ones that
+				// have already been sent are skipped by send()
+				criteria.and("seq").gt(lastSequence - REORDER_WINDOW);
+				sort = new Document("seq", 1);
+			} else {
+				// entries logged by older versions of the suite don't have 'seq'
+				sort = new Document("time", 1).append("seq", 1);
+			}
+			Query query = new Query(criteria);
+			if (summaryOnly) {
+				SUMMARY_FIELDS.forEach(f -> query.fields().include(f));
+			}
+			for (Document document : mongoTemplate.getCollection(DBEventLog.COLLECTION)
+				.find(query.getQueryObject())
+				.projection(query.getFieldsObject())
+				.sort(sort)) {
+				send(document);
+			}
+		}
+
+		private void send(Document document) throws IOException {
+			if (closed) {
+				return;
+			}
+			Long sequence = document.getLong("seq");
+			if (sequence != null) {
+				if (!sentSequences.add(sequence)) {
+					// already sent
+					return;
+				}
+				if (lastSequence == null || sequence > lastSequence) {
+					lastSequence = sequence;
+				}
+				// entries this far behind are no longer looked for, so there's no need to remember them
+				sentSequences.headSet(lastSequence - REORDER_WINDOW, true).clear();
+			}
+			Document entry = document;
+			if (summaryOnly) {
+				entry = new Document();
+				for (String field : SUMMARY_FIELDS) {
+					if (document.containsKey(field)) {
+						entry.append(field, document.get(field));
+					}
+				}
+			}
+			SseEmitter.SseEventBuilder event = SseEmitter.event().data(gson.toJson(entry));
+			if (sequence != null) {
+				event.id(sequence.toString());
+			}
+			emitter.send(event);
+		}
+
+		private void poll() {
+			try {
+				sendFromDatabase();
+			} catch (IOException | RuntimeException e) {
+				fail(e);
+			}
+		}
+
+		private void heartbeat() {
+			try {
+				if (isFinished()) {
+					// pick up anything logged as the test finished, then let the client know there's no more
+					if (unsubscribe == null) {
+						sendFromDatabase();
+					} else {
+						sendPending();
+					}
+					emitter.complete();
+					return;
+				}
+				// also lets us notice clients that have gone away
+				emitter.send(SseEmitter.event().comment("keepalive"));
+			} catch (IOException | RuntimeException e) {
+				fail(e);
+			}
+		}
+
+		private boolean isFinished() {
+			Optional<TestInfo> testInfo = testInfos.findById(testId);
+			if (testInfo.isEmpty()) {
+				return true;
+			}
+			TestModule.Status status = testInfo.get().getStatus();
+			return status == TestModule.Status.FINISHED || status == TestModule.Status.INTERRUPTED;
+		}
+
+		private void fail(Exception e) {
+			// usually just means the client went away
+			logger.debug(testId + ": log stream closed", e);
+			close();
+			emitter.completeWithError(e);
+		}
+
+		void close() {
+			closed = true;
+			if (unsubscribe != null) {
+				unsubscribe.run();
+			}
+			if (heartbeat != null) {
+				heartbeat.cancel(false);
+			}
+			if (poller != null) {
+				poller.cancel(false);
+			}
+		}
+	}
+}
@@ -4,14 +4,22 @@ import com.google.common.base.Strings;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import net.openid.conformance.testmodule.DataUtils;
+import org.bson.Document;
 
 import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A wrapper around an EventLog that supports blocks and remembers the test ID and Owner information
+ *
+ * It also keeps the most recent entries in memory, so that the log viewer (and run-test-plan.py) can be sent the new
+ * entries for a running test without reading them back from the database; see getRecentEntries().
  */
 public class TestInstanceEventLog implements DataUtils {
 
@@ -25,15 +33,41 @@ public class TestInstanceEventLog implements DataUtils {
 	// random number generator
 	private Random random = new SecureRandom();
 
+	// held whilst logging, and by the test for the whole of a runBlock(). A lock rather than synchronized, so that a
+	// virtual thread waiting for it (or logging to a slow database) doesn't pin its carrier thread
+	private final ReentrantLock lock = new ReentrantLock();
+
+	// the most recently logged entries, oldest first. This has its own lock, as 'lock' is held for the whole of a
+	// runBlock()
+	private final ArrayDeque<Document> recentEntries = new ArrayDeque<>();
+
+	private final ReentrantLock recentEntriesLock = new ReentrantLock();
+
+	private final int maxRecentEntries;
+
+	// the latest 'time' of the entries that have been dropped from recentEntries, or null if none have been
+	private Long droppedUpTo = null;
+
 	/**
 	 * @param testId
 	 * @param owner
 	 * @param eventLog
 	 */
 	public TestInstanceEventLog(String testId, Map<String, String> owner, EventLog eventLog) {
+		this(testId, owner, eventLog, 0);
+	}
+
+	/**
+	 * @param testId
+	 * @param owner
+	 * @param eventLog
+	 * @param maxRecentEntries the number of entries to keep in memory for getRecentEntries()
+	 */
+	public TestInstanceEventLog(String testId, Map<String, String> owner, EventLog eventLog, int maxRecentEntries) {
 		this.testId = testId;
 		this.owner = owner;
 		this.eventLog = eventLog;
+		this.maxRecentEntries = maxRecentEntries;
 	}
 
 	/**
@@ -41,11 +75,16 @@ public class TestInstanceEventLog implements DataUtils {
 	 * @param msg
 	 * @see EventLog#log(java.lang.String, java.lang.String, java.util.Map, java.lang.String)
 	 */
-	public synchronized void log(String source, String msg) {
-		if (blockId != null) {
-			eventLog.log(testId, source, owner, Map.of("blockId", blockId, "msg", msg));
-		} else {
-			eventLog.log(testId, source, owner, msg);
+	public void log(String source, String msg) {
+		lock.lock();
+		try {
+			if (blockId != null) {
+				addRecentEntry(eventLog.log(testId, source, owner, Map.of("blockId", blockId, "msg", msg)));
+			} else {
+				addRecentEntry(eventLog.log(testId, source, owner, msg));
+			}
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -54,18 +93,25 @@ public class TestInstanceEventLog implements DataUtils {
 	 * @param obj
 	 * @see EventLog#log(java.lang.String, java.lang.String, java.util.Map, com.google.gson.JsonObject)
 	 */
-	public synchronized void log(String source, JsonObject obj) {
-		JsonObject logObj;
-		if (blockId != null) {
-			logObj = new JsonObject();
-			for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
-				logObj.add(entry.getKey(), entry.getValue().deepCopy());
+	public void log(String source, JsonObject obj) {
+		lock.lock();
+		try {
+			JsonObject logObj;
+			if (blockId != null) {
+				// a shallow copy is enough to avoid adding blockId to the caller's object; the event log copies the
+				// values as it converts them, and never modifies them
+				logObj = new JsonObject();
+				for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+					logObj.add(entry.getKey(), entry.getValue());
+				}
+				logObj.addProperty("blockId", blockId);
+			} else {
+				logObj = obj;
 			}
-			logObj.addProperty("blockId", blockId);
-		} else {
-			logObj = obj;
+			addRecentEntry(eventLog.log(testId, source, owner, logObj));
+		} finally {
+			lock.unlock();
 		}
-		eventLog.log(testId, source, owner, logObj);
 	}
 
 	/**
@@ -73,15 +119,106 @@ public class TestInstanceEventLog implements DataUtils {
 	 * @param map
 	 * @see EventLog#log(java.lang.String, java.lang.String, java.util.Map, java.util.Map)
 	 */
-	public synchronized void log(String source, Map<String, Object> map) {
-		Map<String, Object> logMap;
-		if (blockId != null) {
-			logMap = new HashMap<>(map);
-			logMap.put("blockId", blockId);
-		} else {
-			logMap = map;
+	public void log(String source, Map<String, Object> map) {
+		lock.lock();
+		try {
+			Map<String, Object> logMap;
+			if (blockId != null) {
+				logMap = new HashMap<>(map);
+				logMap.put("blockId", blockId);
+			} else {
+				logMap = map;
+			}
+			addRecentEntry(eventLog.log(testId, source, owner, logMap));
+		} finally {
+			lock.unlock();
 		}
-		eventLog.log(testId, source, owner, logMap);
+	}
+
+	/**
+	 * Log an entry that isn't part of whatever block the test is currently in, e.g. an http request to the test that
+	 * is handled on another thread. Unlike the other log methods, this doesn't wait for the test to finish a
+	 * runBlock() that is in progress.
+	 *
+	 * @param source
+	 * @param map
+	 * @see EventLog#log(java.lang.String, java.lang.String, java.util.Map, java.util.Map)
+	 */
+	public void logOutsideBlock(String source, Map<String, Object> map) {
+		addRecentEntry(eventLog.log(testId, source, owner, map));
+	}
+
+	/**
+	 * Keep an entry for getRecentEntries(); this is done automatically for entries logged through this class, but
+	 * must be called for entries for this test that are written to the database some other way.
+	 *
+	 * @param entry the entry as written to the database
+	 */
+	public void addRecentEntry(Document entry) {
+		if (entry == null) {
+			return;
+		}
+		recentEntriesLock.lock();
+		try {
+			if (entry.containsKey("upload")) {
+				// a placeholder for an image, which is filled in later by updating the entry in the database; so the
+				// copy here would become out of date
+				drop(entry);
+			} else {
+				recentEntries.addLast(entry);
+			}
+			while (recentEntries.size() > maxRecentEntries) {
+				drop(recentEntries.removeFirst());
+			}
+		} finally {
+			recentEntriesLock.unlock();
+		}
+	}
+
+	private void drop(Document entry) {
+		long time = getTime(entry);
+		droppedUpTo = droppedUpTo == null ? time : Math.max(droppedUpTo, time);
+	}
+
+	/**
+	 * Get the entries logged after the given time, if they are all still held in memory.
+	 *
+	 * The entries returned are the same objects that are written to the database, so must not be modified.
+	 *
+	 * @param since only return entries with a 'time' after this; null for all entries
+	 * @return the entries in the order they were logged, or null if some of them are no longer held (in which case
+	 *         they have to be read from the database)
+	 */
+	public List<Document> getRecentEntries(Long since) {
+		recentEntriesLock.lock();
+		try {
+			if (droppedUpTo != null && (since == null || since < droppedUpTo)) {
+				return null;
+			}
+			List<Document> entries = new ArrayList<>();
+			for (Document entry : recentEntries) {
+				if (since == null || getTime(entry) > since) {
+					entries.add(entry);
+				}
+			}
+			return entries;
+		} finally {
+			recentEntriesLock.unlock();
+		}
+	}
+
+	private static long getTime(Document entry) {
+		Object time = entry.get("time");
+		return time instanceof Number number ? number.longValue() : Long.MIN_VALUE;
+	}
+
+	/**
+	 * Wait until everything logged so far has been written to the database
+	 *
+	 * @see EventLog#flush(java.lang.String)
+	 */
+	public void flush() {
+		eventLog.flush(testId);
 	}
 
 	private String startBlock() {
@@ -99,23 +236,33 @@ public class TestInstanceEventLog implements DataUtils {
 	 *
 	 * @return
 	 */
-	public synchronized String startBlock(String message) {
-		String blockId = startBlock();
+	public String startBlock(String message) {
+		lock.lock();
+		try {
+			String blockId = startBlock();
 
-		if (!Strings.isNullOrEmpty(message)) {
-			log("-START-BLOCK-", args("msg", message, "startBlock", true));
-		}
+			if (!Strings.isNullOrEmpty(message)) {
+				log("-START-BLOCK-", args("msg", message, "startBlock", true));
+			}
 
-		return blockId;
+			return blockId;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
 	 * end a log block and return the previous block ID
 	 */
-	public synchronized String endBlock() {
-		String oldBlock = blockId;
-		blockId = null;
-		return oldBlock;
+	public String endBlock() {
+		lock.lock();
+		try {
+			String oldBlock = blockId;
+			blockId = null;
+			return oldBlock;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
@@ -125,7 +272,7 @@ public class TestInstanceEventLog implements DataUtils {
 	 * @param block
 	 * @return
 	 */
-	public synchronized String runBlock(Runnable block) {
+	public String runBlock(Runnable block) {
 		return runBlock(null, block);
 	}
 
@@ -140,18 +287,23 @@ public class TestInstanceEventLog implements DataUtils {
 	 * @param block
 	 * @return
 	 */
-	public synchronized String runBlock(String message, Runnable block) {
-		String result;
-		if (message == null) {
-			startBlock();
-		} else {
-			startBlock(message);
-		}
+	public String runBlock(String message, Runnable block) {
+		lock.lock();
 		try {
-			block.run();
+			String result;
+			if (message == null) {
+				startBlock();
+			} else {
+				startBlock(message);
+			}
+			try {
+				block.run();
+			} finally {
+				result = endBlock();
+			}
+			return result;
 		} finally {
-			result = endBlock();
+			lock.unlock();
 		}
-		return result;
 	}
 }
@@ -17,6 +17,7 @@ import net.openid.conformance.condition.client.WaitForJWKSRefreshDelay;
 import net.openid.conformance.sequence.ConditionSequence;
 import net.openid.conformance.sequence.client.OIDCCCreateDynamicClientRegistrationRequest;
 import net.openid.conformance.sequence.client.RefreshTokenRequestSteps;
+import net.openid.conformance.testmodule.DisablePlanFetchCache;
 import net.openid.conformance.testmodule.PublishTestModule;
 import net.openid.conformance.testmodule.TestFailureException;
 import net.openid.conformance.variant.ClientAuthType;
@@ -42,6 +43,7 @@ import jakarta.servlet.http.HttpSession;
 	"none", "client_secret_basic", "client_secret_post", "client_secret_jwt", "mtls"
 }) // this test relies on sending a client assertion containing the new kid so private_key_jwt is required
 // Equivalent of https://www.heenan.me.uk/~joseph/oidcc_test_desc-phase1.html#OP_Rotation_RP_Sig
+@DisablePlanFetchCache
 public class OIDCCRefreshTokenRPKeyRotation extends AbstractOIDCCServerTest {
 
 	@Override
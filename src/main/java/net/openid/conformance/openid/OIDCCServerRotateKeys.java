@@ -15,6 +15,7 @@ import net.openid.conformance.condition.common.CheckDistinctKeyIdValueInServerJW
 import net.openid.conformance.condition.common.CheckForKeyIdInServerJWKs;
 import net.openid.conformance.condition.common.CheckServerConfiguration;
 import net.openid.conformance.testmodule.AbstractTestModule;
+import net.openid.conformance.testmodule.DisablePlanFetchCache;
 import net.openid.conformance.testmodule.PublishTestModule;
 import net.openid.conformance.variant.ServerMetadata;
 import net.openid.conformance.variant.VariantConfigurationFields;
@@ -36,6 +37,7 @@ import net.openid.conformance.variant.VariantParameters;
 @VariantConfigurationFields(parameter = ServerMetadata.class, value = "discovery", configurationFields = {
 	"server.discoveryUrl"
 })
+@DisablePlanFetchCache
 public class OIDCCServerRotateKeys extends AbstractTestModule {
 
 	@Override
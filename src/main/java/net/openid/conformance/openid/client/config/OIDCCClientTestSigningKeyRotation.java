@@ -1,6 +1,7 @@
 package net.openid.conformance.openid.client.config;
 
 import net.openid.conformance.openid.client.AbstractOIDCCClientTest;
+import net.openid.conformance.testmodule.DisablePlanFetchCache;
 import net.openid.conformance.testmodule.PublishTestModule;
 import net.openid.conformance.testmodule.TestFailureException;
 import net.openid.conformance.variant.ClientRegistration;
@@ -21,6 +22,7 @@ import jakarta.servlet.http.HttpServletResponse;
 	configurationFields = {
 	}
 )
+@DisablePlanFetchCache
 public class OIDCCClientTestSigningKeyRotation extends AbstractOIDCCClientTest {
 	protected boolean receivedSecondJwksRequest;
 	protected boolean receivedSecondAuthorizationRequest;
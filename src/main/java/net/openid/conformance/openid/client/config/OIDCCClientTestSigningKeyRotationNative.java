@@ -1,6 +1,7 @@
 package net.openid.conformance.openid.client.config;
 
 import net.openid.conformance.openid.client.AbstractOIDCCClientTest;
+import net.openid.conformance.testmodule.DisablePlanFetchCache;
 import net.openid.conformance.testmodule.PublishTestModule;
 
 
@@ -16,6 +17,7 @@ import net.openid.conformance.testmodule.PublishTestModule;
 	}
 )
 //TODO needs a better class and test name. why the Python test was called "-native" is unclear
+@DisablePlanFetchCache
 public class OIDCCClientTestSigningKeyRotationNative extends AbstractOIDCCClientTest {
 
 
@@ -1,16 +1,8 @@
 package net.openid.conformance.pagination;
 
-import com.google.common.base.Strings;
-import com.google.common.collect.Lists;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Order;
 
-import java.util.function.BiFunction;
-import java.util.function.Function;
-
 public class PaginationRequest {
 
 	private int draw;
@@ -23,6 +15,10 @@ public class PaginationRequest {
 
 	private String order;
 
+	private String after;
+
+	private String fields;
+
 	public int getDraw() {
 		return draw;
 	}
@@ -66,29 +62,30 @@ public class PaginationRequest {
 		this.order = order;
 	}
 
-	public <T> PaginationResponse<T> getResponse(
-			Function<Pageable, Page<T>> queryAll,
-			BiFunction<String, Pageable, Page<T>> querySearch) {
-
-		Page<T> allResults = queryAll.apply(getPageable());
-		Page<T> filteredResults = Strings.isNullOrEmpty(search) ? allResults : querySearch.apply('\"' + search + '\"', getPageable());
+	/**
+	 * @return the 'next' value returned with the previous page, to fetch the page after it by cursor rather than by
+	 * position (see {@link PaginationService})
+	 */
+	public String getAfter() {
+		return after;
+	}
 
-		return new PaginationResponse<T>(draw,
-				allResults.getTotalElements(),
-				filteredResults.getTotalElements(),
-				Lists.newArrayList(filteredResults));
+	public void setAfter(String after) {
+		this.after = after;
 	}
 
-	private Pageable getPageable() {
-		int l = length;
-		if (l == 0) {
-			l = 10;
-		}
+	/**
+	 * @return comma separated list of the fields to return, or null for all of them
+	 */
+	public String getFields() {
+		return fields;
+	}
 
-		return PageRequest.of(start / l, l, getSort());
+	public void setFields(String fields) {
+		this.fields = fields;
 	}
 
-	private Sort getSort() {
+	Sort getSort() {
 
 		Sort sort = Sort.unsorted();
 
@@ -8,11 +8,14 @@ public class PaginationResponse<T> {
 	public final long recordsTotal;
 	public final long recordsFiltered;
 	public final List<T> data;
+	// pass as 'after' to get the next page, when fetching pages by cursor; null if this is the last page
+	public final String next;
 
-	PaginationResponse(int draw, long recordsTotal, long recordsFiltered, List<T> data) {
+	PaginationResponse(int draw, long recordsTotal, long recordsFiltered, List<T> data, String next) {
 		this.draw = draw;
 		this.recordsTotal = recordsTotal;
 		this.recordsFiltered = recordsFiltered;
 		this.data = data;
+		this.next = next;
 	}
 }
@@ -0,0 +1,239 @@
+package net.openid.conformance.pagination;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the query for a {@link PaginationRequest} against a MongoDB collection.
+ *
+ * Pages can be requested in two ways:
+ * - by position ('start' and 'length', as sent by DataTables), which has to skip over all the earlier entries
+ * - by cursor ('after' set to the 'next' value returned with the previous page), which seeks straight to the next page
+ *   on the started/_id index, so later pages are as quick to fetch as the first
+ *
+ * Cursors are only possible when sorting by 'started' (the default, newest first); 'next' is null for any other sort
+ * (and on the last page), and 'after' is ignored.
+ *
+ * Counting the entries is often slower than fetching a page of them, so counts are cached for a short time (the size of
+ * a whole collection comes from the collection metadata instead), and any counts that are needed are run at the same
+ * time as the query for the page.
+ *
+ * Only the fields the result type has are fetched, or just those listed in 'fields' if the request has it.
+ */
+@Service
+public class PaginationService {
+
+	public static final String CURSOR_FIELD = "started";
+
+	private static final int DEFAULT_LENGTH = 10;
+
+	private static final Pattern FIELD_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Value("${fintechlabs.pagination.count_cache_seconds:30}")
+	private long countCacheSeconds;
+
+	private Cache<CountKey, Long> countCache;
+
+	private final ExecutorService countExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+		.setNameFormat("pagination-count-%d")
+		.setDaemon(true)
+		.build());
+
+	@PostConstruct
+	public void createCountCache() {
+		countCache = CacheBuilder.newBuilder()
+			.maximumSize(10000)
+			.expireAfterWrite(countCacheSeconds, TimeUnit.SECONDS)
+			.build();
+	}
+
+	/**
+	 * @param page the request
+	 * @param collection the collection to query
+	 * @param filter restricts the entries the user can see (e.g. to the ones they own); null for all entries
+	 * @param type the type to map the entries to
+	 */
+	public <T> PaginationResponse<T> getResponse(PaginationRequest page, String collection, Criteria filter, Class<T> type) {
+		int length = page.getLength() == 0 ? DEFAULT_LENGTH : page.getLength();
+		String search = Strings.emptyToNull(page.getSearch());
+
+		CompletableFuture<Long> total = count(collection, filter, null);
+		CompletableFuture<Long> filtered = search == null ? total : count(collection, filter, search);
+
+		List<Criteria> criteria = new ArrayList<>();
+		if (filter != null) {
+			criteria.add(filter);
+		}
+
+		Query query = new Query();
+		Sort sort = page.getSort();
+		Sort.Direction cursorDirection = getCursorDirection(sort);
+		if (cursorDirection != null) {
+			// the same order whichever way the page is requested, so the cursor returned for the next page can be used
+			// after a page requested by position too
+			query.with(Sort.by(cursorDirection, CURSOR_FIELD, "_id"));
+			if (!Strings.isNullOrEmpty(page.getAfter())) {
+				criteria.add(Cursor.decode(page.getAfter()).seek(cursorDirection));
+			} else {
+				query.skip(page.getStart());
+			}
+		} else {
+			query.with(sort).skip(page.getStart());
+		}
+		query.limit(length);
+
+		if (criteria.size() == 1) {
+			query.addCriteria(criteria.get(0));
+		} else if (criteria.size() > 1) {
+			query.addCriteria(new Criteria().andOperator(criteria));
+		}
+		if (search != null) {
+			query.addCriteria(TextCriteria.forDefaultLanguage().matchingPhrase(search));
+		}
+		selectFields(query, type, page.getFields());
+
+		List<Document> documents = mongoTemplate.find(query, Document.class, collection);
+
+		List<T> data = new ArrayList<>(documents.size());
+		for (Document document : documents) {
+			data.add(mongoTemplate.getConverter().read(type, document));
+		}
+
+		String next = null;
+		if (cursorDirection != null && documents.size() == length) {
+			next = Cursor.of(documents.get(documents.size() - 1)).encode();
+		}
+
+		return new PaginationResponse<>(page.getDraw(), total.join(), filtered.join(), data, next);
+	}
+
+	/**
+	 * @return the direction to seek in, or null if the sort order can't be followed with a cursor
+	 */
+	private static Sort.Direction getCursorDirection(Sort sort) {
+		if (sort.isUnsorted()) {
+			return Sort.Direction.DESC;
+		}
+		Sort.Order first = sort.iterator().next();
+		return first.getProperty().equals(CURSOR_FIELD) ? first.getDirection() : null;
+	}
+
+	private void selectFields(Query query, Class<?> type, String fields) {
+		if (Strings.isNullOrEmpty(fields)) {
+			MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getPersistentEntity(type);
+			if (entity != null) {
+				for (MongoPersistentProperty property : entity) {
+					query.fields().include(property.getFieldName());
+				}
+			}
+			return;
+		}
+
+		for (String field : fields.split(",")) {
+			String name = field.trim();
+			if (!FIELD_NAME.matcher(name).matches()) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid field name: " + name);
+			}
+			query.fields().include(name);
+		}
+		// needed to create the cursor for the next page ('_id' is always included)
+		query.fields().include(CURSOR_FIELD);
+	}
+
+	private CompletableFuture<Long> count(String collection, Criteria filter, String search) {
+		CountKey key = new CountKey(collection, filter == null ? null : filter.getCriteriaObject().toString(), search);
+		Long cached = countCache.getIfPresent(key);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		return CompletableFuture.supplyAsync(() -> {
+			long count;
+			if (filter == null && search == null) {
+				// from the collection metadata, rather than counting every document
+				count = mongoTemplate.estimatedCount(collection);
+			} else {
+				Query query = new Query();
+				if (filter != null) {
+					query.addCriteria(filter);
+				}
+				if (search != null) {
+					query.addCriteria(TextCriteria.forDefaultLanguage().matchingPhrase(search));
+				}
+				count = mongoTemplate.count(query, collection);
+			}
+			countCache.put(key, count);
+			return count;
+		}, countExecutor);
+	}
+
+	private record CountKey(String collection, String filter, String search) {
+	}
+
+	/**
+	 * The position after the last entry on a page, as the 'started' and '_id' of that entry
+	 */
+	record Cursor(String started, String id) {
+
+		static Cursor of(Document document) {
+			return new Cursor(String.valueOf(document.get(CURSOR_FIELD)), String.valueOf(document.get("_id")));
+		}
+
+		static Cursor decode(String encoded) {
+			String decoded;
+			try {
+				decoded = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+			} catch (IllegalArgumentException e) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor", e);
+			}
+			int separator = decoded.indexOf('\n');
+			if (separator < 0) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+			}
+			return new Cursor(decoded.substring(0, separator), decoded.substring(separator + 1));
+		}
+
+		String encode() {
+			return Base64.getUrlEncoder().withoutPadding().encodeToString((started + "\n" + id).getBytes(StandardCharsets.UTF_8));
+		}
+
+		Criteria seek(Sort.Direction direction) {
+			if (direction.isAscending()) {
+				return new Criteria().orOperator(
+					Criteria.where(CURSOR_FIELD).gt(started),
+					Criteria.where(CURSOR_FIELD).is(started).and("_id").gt(id));
+			}
+			return new Criteria().orOperator(
+				Criteria.where(CURSOR_FIELD).lt(started),
+				Criteria.where(CURSOR_FIELD).is(started).and("_id").lt(id));
+		}
+	}
+}
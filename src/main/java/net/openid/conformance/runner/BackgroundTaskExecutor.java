@@ -0,0 +1,222 @@
+package net.openid.conformance.runner;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs the background tasks for all tests (see {@link TestExecutionManager}).
+ *
+ * Most background tasks spend nearly all their time waiting - for the browser, for a poll interval, or for the test
+ * lock - so the tasks can optionally be run on virtual threads, which don't tie up an OS thread whilst they wait.
+ * Virtual threads need a Java 21 or later runtime; on older runtimes a warning is logged and platform threads are used.
+ *
+ * Tasks can also be scheduled to run after a delay. The delay is handled by a single shared timer thread, so a test
+ * that is waiting for (say) a CIBA poll interval doesn't need a thread of its own until the task actually runs.
+ *
+ * When a task fails, the failure is passed to the handler as soon as the task completes.
+ */
+public class BackgroundTaskExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(BackgroundTaskExecutor.class);
+
+	private final ExecutorService executorService;
+
+	// only used to hand tasks over to executorService when their delay expires; the tasks never run on it
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+		.setNameFormat("background-task-scheduler-%d")
+		.setDaemon(true)
+		.build());
+
+	private final Consumer<Throwable> failureHandler;
+
+	// tasks scheduled to run after a delay that hasn't expired yet
+	private final AtomicInteger scheduled = new AtomicInteger();
+
+	// tasks submitted but not yet started
+	private final AtomicInteger queued = new AtomicInteger();
+
+	// the threads currently running a task
+	private final Set<Thread> activeThreads = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param useVirtualThreads run each task on its own virtual thread, if the runtime supports them
+	 * @param failureHandler called with the exception thrown by any task that fails (but not for cancelled tasks)
+	 */
+	public BackgroundTaskExecutor(boolean useVirtualThreads, Consumer<Throwable> failureHandler) {
+		this.executorService = useVirtualThreads ? createVirtualThreadExecutor() : createPlatformThreadExecutor();
+		this.failureHandler = failureHandler;
+	}
+
+	private static ExecutorService createPlatformThreadExecutor() {
+		return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+			.setNameFormat("background-task-%d")
+			.build());
+	}
+
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			// looked up reflectively, as we still compile for Java 17
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			logger.warn("Virtual threads are not supported by this Java runtime ({}), using platform threads for background tasks",
+				System.getProperty("java.version"));
+			return createPlatformThreadExecutor();
+		}
+	}
+
+	public Future<Object> submit(Callable<Object> callable) {
+		TrackedTask task = new TrackedTask(callable, TrackedTask.QUEUED);
+		queued.incrementAndGet();
+		executorService.execute(task);
+		return task;
+	}
+
+	/**
+	 * Run a task once the delay has passed
+	 *
+	 * Cancelling the returned future before the delay expires means the task never runs.
+	 */
+	public Future<Object> schedule(Duration delay, Callable<Object> callable) {
+		TrackedTask task = new TrackedTask(callable, TrackedTask.SCHEDULED);
+		scheduled.incrementAndGet();
+		task.timer = scheduler.schedule(task::release, delay.toMillis(), TimeUnit.MILLISECONDS);
+		return task;
+	}
+
+	/**
+	 * Register gauges for the number of tasks that are queued, running, and running but currently blocked or waiting
+	 */
+	public void registerMetrics(MeterRegistry registry) {
+		Gauge.builder("conformance.background_tasks.scheduled", scheduled, AtomicInteger::get)
+			.description("Background tasks waiting for their delay to expire")
+			.register(registry);
+		Gauge.builder("conformance.background_tasks.queued", queued, AtomicInteger::get)
+			.description("Background tasks waiting to start")
+			.register(registry);
+		Gauge.builder("conformance.background_tasks.active", this, BackgroundTaskExecutor::getActiveCount)
+			.description("Background tasks currently running")
+			.register(registry);
+		Gauge.builder("conformance.background_tasks.parked", this, BackgroundTaskExecutor::getParkedCount)
+			.description("Running background tasks that are sleeping, waiting or blocked")
+			.register(registry);
+	}
+
+	public int getScheduledCount() {
+		return scheduled.get();
+	}
+
+	public int getQueuedCount() {
+		return queued.get();
+	}
+
+	public int getActiveCount() {
+		return activeThreads.size();
+	}
+
+	public int getParkedCount() {
+		int parked = 0;
+		for (Thread thread : activeThreads) {
+			switch (thread.getState()) {
+				case BLOCKED:
+				case WAITING:
+				case TIMED_WAITING:
+					parked++;
+					break;
+				default:
+					break;
+			}
+		}
+		return parked;
+	}
+
+	private class TrackedTask extends FutureTask<Object> {
+
+		static final int SCHEDULED = 0;
+		static final int QUEUED = 1;
+		static final int STARTED = 2;
+
+		private final AtomicInteger state;
+
+		private volatile ScheduledFuture<?> timer;
+
+		TrackedTask(Callable<Object> callable, int initialState) {
+			super(callable);
+			this.state = new AtomicInteger(initialState);
+		}
+
+		/**
+		 * Called by the scheduler when the delay has expired
+		 */
+		void release() {
+			if (!state.compareAndSet(SCHEDULED, QUEUED)) {
+				// cancelled whilst waiting
+				return;
+			}
+			scheduled.decrementAndGet();
+			queued.incrementAndGet();
+			executorService.execute(this);
+		}
+
+		@Override
+		public void run() {
+			if (!state.compareAndSet(QUEUED, STARTED)) {
+				return;
+			}
+			queued.decrementAndGet();
+			Thread thread = Thread.currentThread();
+			activeThreads.add(thread);
+			try {
+				super.run();
+			} finally {
+				activeThreads.remove(thread);
+			}
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled()) {
+				// if it was cancelled before it started, it will never run
+				if (state.compareAndSet(SCHEDULED, STARTED)) {
+					scheduled.decrementAndGet();
+					ScheduledFuture<?> t = timer;
+					if (t != null) {
+						t.cancel(false);
+					}
+				} else if (state.compareAndSet(QUEUED, STARTED)) {
+					queued.decrementAndGet();
+				}
+				return;
+			}
+			try {
+				get();
+			} catch (ExecutionException e) {
+				try {
+					failureHandler.accept(e.getCause());
+				} catch (RuntimeException handlerException) {
+					logger.error("Failed to handle exception from background task", handlerException);
+				}
+			} catch (InterruptedException e) {
+				// can't happen; the task is already complete
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
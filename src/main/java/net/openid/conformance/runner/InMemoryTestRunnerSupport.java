@@ -1,66 +1,114 @@
 package net.openid.conformance.runner;
 
-import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import net.openid.conformance.security.AuthenticationFacade;
 import net.openid.conformance.testmodule.TestModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+/**
+ * Keeps track of the tests running on this node.
+ *
+ * This is called on every back-channel request and every status poll from the UI, so all lookups are single map
+ * operations on concurrent maps rather than taking a lock. Old tests are removed by a background sweeper; lookups of a
+ * single test also check whether that test has timed out, so an expired test is never returned even if the sweeper
+ * hasn't got to it yet.
+ */
 public class InMemoryTestRunnerSupport implements TestRunnerSupport {
 
+	private static final Logger logger = LoggerFactory.getLogger(InMemoryTestRunnerSupport.class);
+
 	private Duration closedTestTimeout = Duration.ofMinutes(15);
 	private Duration waitingTestTimeout = Duration.ofHours(6);
 
+	@Value("${fintechlabs.testrunner.expiry_interval_seconds:60}")
+	private long expiryIntervalSeconds = 60;
+
 	@Autowired
-	private AuthenticationFacade authenticationFacade;
+	protected AuthenticationFacade authenticationFacade;
 
 	// collection of all currently running tests
-	private Map<String, TestModule> runningTests = new LinkedHashMap<>();
+	private final Map<String, TestModule> runningTests = new ConcurrentHashMap<>();
+
+	// ids of the running tests, by owner
+	private final Map<Map<String, String>, Set<String>> testsByOwner = new ConcurrentHashMap<>();
 
 	// collection of aliases assigned to tests
-	private Map<String, String> aliases = new HashMap<>();
+	private final Map<String, String> aliases = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService sweeper;
+
+	@PostConstruct
+	@SuppressWarnings("FutureReturnValueIgnored") // expireOldTests() catches and logs its own errors
+	public void startSweeper() {
+		sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+			.setNameFormat("test-expiry-%d")
+			.setDaemon(true)
+			.build());
+		sweeper.scheduleWithFixedDelay(this::expireOldTests, expiryIntervalSeconds, expiryIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void stopSweeper() {
+		if (sweeper != null) {
+			sweeper.shutdownNow();
+		}
+	}
 
 	@Override
-	public synchronized void addRunningTest(String id, TestModule test) {
+	public void addRunningTest(String id, TestModule test) {
 		runningTests.put(id, test);
+		// the add has to happen inside compute(), otherwise removeFromOwnerIndex() could drop the set in between
+		testsByOwner.compute(test.getOwner(), (o, ids) -> {
+			Set<String> updated = ids == null ? ConcurrentHashMap.newKeySet() : ids;
+			updated.add(id);
+			return updated;
+		});
 	}
 
 	@Override
-	public synchronized boolean hasAlias(String alias) {
+	public boolean hasAlias(String alias) {
 		return aliases.containsKey(alias);
 	}
 
 	@Override
-	public synchronized TestModule getRunningTestByAliasIgnoringLoggedInUser(String alias) {
-		expireOldTests();
+	public TestModule getRunningTestByAliasIgnoringLoggedInUser(String alias) {
 		String testId = getTestIdForAlias(alias);
-		return runningTests.get(testId);
+		return testId == null ? null : getUnexpiredTest(testId);
 	}
 
 	@Override
-	public synchronized void addAlias(String alias, String id) {
+	public void addAlias(String alias, String id) {
 		aliases.put(alias, id);
 	}
 
 	@Override
-	public synchronized TestModule getRunningTestById(String testId) {
-		expireOldTests();
+	public TestModule getRunningTestById(String testId) {
+		TestModule test = getUnexpiredTest(testId);
 
 		if (authenticationFacade.getPrincipal() == null || 	// if the user's not logged in at all (it's a back-channel or Selenium call)
 			authenticationFacade.isAdmin()) { 				// of if they're admin
-			return runningTests.get(testId); 				// just send the results
+			return test; 									// just send the results
 		} else {
-			TestModule test = runningTests.get(testId);		// otherwise make sure only the current user can get the test information
-			if (test != null &&
+			if (test != null &&								// otherwise make sure only the current user can get the test information
 				test.getOwner().equals(authenticationFacade.getPrincipal())) {
 				return test;
 			}
@@ -69,74 +117,121 @@ public class InMemoryTestRunnerSupport implements TestRunnerSupport {
 	}
 
 	@Override
-	public synchronized Set<String> getAllRunningTestIds() {
-		expireOldTests();
-
+	public Set<String> getAllRunningTestIds() {
+		Collection<String> testIds;
 		if (authenticationFacade.getPrincipal() == null || 	// if the user's not logged in at all (it's a back-channel or Selenium call)
 			authenticationFacade.isAdmin()) { 				// of if they're admin
-			return runningTests.entrySet().stream()
-				.sorted((e1, e2) -> e2.getValue().getCreated().compareTo(e1.getValue().getCreated())) // this sorts to newest-first
-				.map(e -> e.getValue().getId())
-				.collect(Collectors.toCollection(() -> new LinkedHashSet<>()));
+			testIds = runningTests.keySet();
 		} else {
-			ImmutableMap<String, String> owner = authenticationFacade.getPrincipal();
-			return runningTests.entrySet().stream()
-				.filter(map -> map.getValue().getOwner().equals(owner))
-				.sorted((e1, e2) -> e2.getValue().getCreated().compareTo(e1.getValue().getCreated())) // this sorts to newest-first
-				.map(e -> e.getValue().getId())
-				.collect(Collectors.toCollection(() -> new LinkedHashSet<>()));
+			testIds = testsByOwner.getOrDefault(authenticationFacade.getPrincipal(), Set.of());
 		}
+
+		Instant now = Instant.now();
+		return testIds.stream()
+			.map(runningTests::get)
+			.filter(Objects::nonNull) // may have been removed since we got the ids
+			.filter(test -> !hasExpired(test, now))
+			.sorted(Comparator.comparing(TestModule::getCreated).reversed()) // this sorts to newest-first
+			.map(TestModule::getId)
+			.collect(Collectors.toCollection(LinkedHashSet::new));
 	}
 
 	@Override
-	public synchronized String getTestIdForAlias(String alias) {
+	public String getTestIdForAlias(String alias) {
 		return aliases.get(alias);
 	}
 
 	@Override
-	public synchronized boolean hasTestId(String testId) {
-		expireOldTests();
-		return runningTests.containsKey(testId);
+	public boolean hasTestId(String testId) {
+		return getUnexpiredTest(testId) != null;
 	}
 
 	/**
 	 * @param testId
 	 */
 	@Override
-	public synchronized void removeRunningTest(String testId) {
-		runningTests.remove(testId);
-	}
-
-	private void expireOldTests() {
-		for (Map.Entry<String, TestModule> entry : new HashSet<>(runningTests.entrySet())) {
-			TestModule testModule = entry.getValue();
-			String testId = entry.getKey();
-			switch (testModule.getStatus()) {
-				case INTERRUPTED:
-				case FINISHED:
-					// if the test has been finished or interrupted, we check to see if it's timed out yet
-					if (testModule.getStatusUpdated().plus(getClosedTestTimeout()).isBefore(Instant.now())) {
-						removeRunningTest(testId);
-					}
-					break;
-
-				case CREATED:
-				case WAITING:
-				case CONFIGURED:
-				case RUNNING:
-				case NOT_YET_CREATED:
-					if (testModule.getStatusUpdated().plus(waitingTestTimeout).isBefore(Instant.now())) {
-						removeRunningTest(testId);
-						testModule.getTestExecutionManager().runInBackground(() -> {
-							testModule.stop("The test was idle for more than %s minutes.".formatted(waitingTestTimeout.getSeconds() / 60));
-							return "stopped";
-						});
-					}
-					break;
-			}
+	public void removeRunningTest(String testId) {
+		TestModule test = runningTests.remove(testId);
+		if (test != null) {
+			removeFromOwnerIndex(test.getOwner(), testId);
+			testRemoved(testId);
 		}
 	}
 
+	/**
+	 * Called after a test has been removed, whether by removeRunningTest() or because it expired
+	 */
+	protected void testRemoved(String testId) {
+	}
+
+	private void removeFromOwnerIndex(Map<String, String> owner, String testId) {
+		// done atomically so that a concurrent addRunningTest() can't add to a set that's being dropped
+		testsByOwner.computeIfPresent(owner, (o, ids) -> {
+			ids.remove(testId);
+			return ids.isEmpty() ? null : ids;
+		});
+	}
+
+	/**
+	 * Get a test, expiring it first if it has timed out
+	 */
+	private TestModule getUnexpiredTest(String testId) {
+		TestModule test = runningTests.get(testId);
+		if (test != null && hasExpired(test, Instant.now())) {
+			expireTest(testId, test);
+			return null;
+		}
+		return test;
+	}
+
+	private boolean hasExpired(TestModule testModule, Instant now) {
+		return switch (testModule.getStatus()) {
+			// if the test has been finished or interrupted, we check to see if it's timed out yet
+			case INTERRUPTED, FINISHED -> testModule.getStatusUpdated().plus(getClosedTestTimeout()).isBefore(now);
+			case CREATED, WAITING, CONFIGURED, RUNNING, NOT_YET_CREATED -> testModule.getStatusUpdated().plus(waitingTestTimeout).isBefore(now);
+		};
+	}
+
+	private void expireTest(String testId, TestModule testModule) {
+		// only the caller that actually removes the test stops it, in case the sweeper and a lookup race
+		if (!runningTests.remove(testId, testModule)) {
+			return;
+		}
+		removeFromOwnerIndex(testModule.getOwner(), testId);
+		testRemoved(testId);
+
+		switch (testModule.getStatus()) {
+			case INTERRUPTED:
+			case FINISHED:
+				break;
+
+			case CREATED:
+			case WAITING:
+			case CONFIGURED:
+			case RUNNING:
+			case NOT_YET_CREATED:
+				testModule.getTestExecutionManager().runInBackground(() -> {
+					testModule.stop("The test was idle for more than %s minutes.".formatted(waitingTestTimeout.getSeconds() / 60));
+					return "stopped";
+				});
+				break;
+		}
+	}
+
+	void expireOldTests() {
+		Instant now = Instant.now();
+		runningTests.forEach((testId, testModule) -> {
+			try {
+				if (hasExpired(testModule, now)) {
+					expireTest(testId, testModule);
+				}
+			} catch (RuntimeException e) {
+				// carry on with the other tests, and don't let the exception stop the sweeper from running again
+				logger.error(testId + ": Failed to expire test", e);
+			}
+		});
+	}
+
 	/**
 	 * @return the closedTestTimeout
 	 */
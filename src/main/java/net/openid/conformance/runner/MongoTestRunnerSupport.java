@@ -0,0 +1,307 @@
+package net.openid.conformance.runner;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mongodb.client.result.UpdateResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.openid.conformance.testmodule.TestModule;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the tests running on this node, and records in the database which node each test and alias belongs
+ * to, so that several nodes can run tests behind the same load balancer.
+ *
+ * Tests are only ever held in memory on the node that created them; the other nodes use getRemoteNodeUrl() to find
+ * where to forward requests for them (see TestForwardingInterceptor). Aliases are looked up in the database, so an
+ * alias can move to a test on a different node.
+ *
+ * Each node writes a heartbeat every few seconds. A node that hasn't written one for the lease period is treated as
+ * gone, and its records are removed by whichever node notices first; if the node was only paused (e.g. lost its
+ * database connection) it publishes its records again on its next heartbeat.
+ */
+public class MongoTestRunnerSupport extends InMemoryTestRunnerSupport {
+
+	public static final String TESTS_COLLECTION = "CLUSTER_RUNNING_TESTS";
+	public static final String ALIASES_COLLECTION = "CLUSTER_TEST_ALIASES";
+	public static final String NODES_COLLECTION = "CLUSTER_NODES";
+
+	private static final Logger logger = LoggerFactory.getLogger(MongoTestRunnerSupport.class);
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	@Value("${fintechlabs.cluster.node_id:}")
+	private String nodeId;
+
+	@Value("${fintechlabs.cluster.node_url:}")
+	private String nodeUrl;
+
+	@Value("${server.port:8080}")
+	private int serverPort = 8080;
+
+	@Value("${fintechlabs.cluster.heartbeat_seconds:10}")
+	private long heartbeatSeconds = 10;
+
+	@Value("${fintechlabs.cluster.lease_seconds:30}")
+	private long leaseSeconds = 30;
+
+	// the records this node has published, so they can be put back if they go missing from the database
+	private final Map<String, Document> publishedTests = new ConcurrentHashMap<>();
+	private final Map<String, String> publishedAliases = new ConcurrentHashMap<>();
+
+	// base url of each node that holds a lease, by node id; refreshed on every heartbeat
+	private volatile Map<String, String> liveNodes = Map.of();
+
+	// which node each remote test is on; a test never moves, so this is only dropped to save memory
+	private final Cache<String, String> remoteTestNodes = CacheBuilder.newBuilder()
+		.expireAfterAccess(Duration.ofMinutes(10))
+		.maximumSize(10000)
+		.build();
+
+	private ScheduledExecutorService heartbeat;
+
+	@PostConstruct
+	@SuppressWarnings("FutureReturnValueIgnored") // beat() catches and logs its own errors
+	public void joinCluster() {
+		if (nodeId == null || nodeId.isEmpty()) {
+			nodeId = RandomStringUtils.randomAlphanumeric(10);
+		}
+		if (nodeUrl == null || nodeUrl.isEmpty()) {
+			nodeUrl = "http://" + getLocalAddress() + ":" + serverPort;
+		}
+		logger.info("Joining cluster as node " + nodeId + " at " + nodeUrl);
+
+		mongoTemplate.getCollection(TESTS_COLLECTION).createIndex(new Document("node", 1));
+		mongoTemplate.getCollection(ALIASES_COLLECTION).createIndex(new Document("node", 1));
+
+		// make sure this node is known to the others before it creates any tests
+		beat();
+
+		heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+			.setNameFormat("cluster-heartbeat-%d")
+			.setDaemon(true)
+			.build());
+		heartbeat.scheduleWithFixedDelay(this::beat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void leaveCluster() {
+		if (heartbeat != null) {
+			heartbeat.shutdownNow();
+		}
+		try {
+			removeNode(nodeId);
+		} catch (RuntimeException e) {
+			// the other nodes will remove the records once the lease runs out
+			logger.warn("Failed to remove cluster records for node " + nodeId, e);
+		}
+	}
+
+	private static String getLocalAddress() {
+		try {
+			return InetAddress.getLocalHost().getHostAddress();
+		} catch (UnknownHostException e) {
+			return "localhost";
+		}
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	@Override
+	public void addRunningTest(String id, TestModule test) {
+		super.addRunningTest(id, test);
+
+		Document record = new Document("_id", id)
+			.append("node", nodeId)
+			.append("owner", test.getOwner())
+			.append("created", test.getCreated().toEpochMilli());
+		publishedTests.put(id, record);
+		try {
+			mongoTemplate.save(record, TESTS_COLLECTION);
+		} catch (RuntimeException e) {
+			// the next heartbeat will try again
+			logger.error(id + ": Failed to publish running test", e);
+		}
+	}
+
+	@Override
+	public void addAlias(String alias, String id) {
+		super.addAlias(alias, id);
+
+		publishedAliases.put(alias, id);
+		mongoTemplate.save(aliasRecord(alias, id), ALIASES_COLLECTION);
+	}
+
+	private Document aliasRecord(String alias, String id) {
+		return new Document("_id", alias)
+			.append("testId", id)
+			.append("node", nodeId);
+	}
+
+	@Override
+	public boolean hasAlias(String alias) {
+		return getTestIdForAlias(alias) != null;
+	}
+
+	@Override
+	public String getTestIdForAlias(String alias) {
+		// the database is authoritative, as the alias may have been taken over by a test on another node
+		Document record = mongoTemplate.findById(alias, Document.class, ALIASES_COLLECTION);
+		if (record != null && liveNodes.containsKey(record.getString("node"))) {
+			return record.getString("testId");
+		}
+		return super.getTestIdForAlias(alias);
+	}
+
+	@Override
+	public Set<String> getAllRunningTestIds() {
+		Set<String> localTestIds = super.getAllRunningTestIds();
+
+		Query query = new Query(Criteria.where("node").in(liveNodes.keySet()));
+		if (authenticationFacade.getPrincipal() != null && !authenticationFacade.isAdmin()) {
+			query.addCriteria(Criteria.where("owner").is(authenticationFacade.getPrincipal()));
+		}
+		query.with(Sort.by(Sort.Direction.DESC, "created"));
+		query.fields().include("_id").include("node");
+
+		Set<String> testIds = new LinkedHashSet<>();
+		for (Document record : mongoTemplate.find(query, Document.class, TESTS_COLLECTION)) {
+			String testId = record.getString("_id");
+			// this node's own tests are taken from memory, which knows whether they've expired
+			if (!nodeId.equals(record.getString("node")) || localTestIds.contains(testId)) {
+				testIds.add(testId);
+			}
+		}
+		// in case any haven't been published yet
+		testIds.addAll(localTestIds);
+		return testIds;
+	}
+
+	@Override
+	public String getRemoteNodeUrl(String testId) {
+		if (hasTestId(testId)) {
+			return null;
+		}
+
+		String node = remoteTestNodes.getIfPresent(testId);
+		if (node == null) {
+			Document record = mongoTemplate.findById(testId, Document.class, TESTS_COLLECTION);
+			if (record == null) {
+				return null;
+			}
+			node = record.getString("node");
+			remoteTestNodes.put(testId, node);
+		}
+
+		if (nodeId.equals(node)) {
+			// it was here, but has gone
+			return null;
+		}
+		return liveNodes.get(node);
+	}
+
+	@Override
+	protected void testRemoved(String testId) {
+		publishedTests.remove(testId);
+		try {
+			mongoTemplate.remove(new Query(Criteria.where("_id").is(testId).and("node").is(nodeId)), TESTS_COLLECTION);
+		} catch (RuntimeException e) {
+			// the next heartbeat will try again
+			logger.error(testId + ": Failed to remove published running test", e);
+		}
+	}
+
+	void beat() {
+		try {
+			// heartbeats are timed by the database's clock, so the nodes' own clocks don't need to agree
+			UpdateResult result = mongoTemplate.upsert(new Query(Criteria.where("_id").is(nodeId)),
+				new Update().set("url", nodeUrl).currentDate("heartbeat"),
+				NODES_COLLECTION);
+			if (result.getUpsertedId() != null) {
+				logger.info("Node " + nodeId + " has (re)joined the cluster");
+			}
+
+			republish();
+
+			for (Document node : mongoTemplate.find(expiredNodes(), Document.class, NODES_COLLECTION)) {
+				String id = node.getString("_id");
+				logger.info("Node " + id + " has not sent a heartbeat for more than " + leaseSeconds + " seconds, removing its tests");
+				removeNode(id);
+			}
+
+			Map<String, String> nodes = new HashMap<>();
+			for (Document node : mongoTemplate.findAll(Document.class, NODES_COLLECTION)) {
+				nodes.put(node.getString("_id"), node.getString("url"));
+			}
+			liveNodes = Map.copyOf(nodes);
+		} catch (RuntimeException e) {
+			// don't let the exception stop the heartbeat from running again
+			logger.error("Cluster heartbeat failed for node " + nodeId, e);
+		}
+	}
+
+	/**
+	 * @return a query for the nodes whose last heartbeat was longer ago than the lease, by the database's clock
+	 */
+	Query expiredNodes() {
+		Document leaseStart = new Document("$subtract", List.of("$$NOW", TimeUnit.SECONDS.toMillis(leaseSeconds)));
+		return new BasicQuery(new Document("$expr", new Document("$lt", List.of("$heartbeat", leaseStart))));
+	}
+
+	/**
+	 * Put back any of this node's records that are missing from the database, e.g. because another node decided this
+	 * node had gone while it was paused, or because a write failed.
+	 */
+	private void republish() {
+		Query ownTests = new Query(Criteria.where("node").is(nodeId));
+		if (mongoTemplate.count(ownTests, TESTS_COLLECTION) != publishedTests.size()) {
+			mongoTemplate.remove(new Query(Criteria.where("node").is(nodeId).and("_id").nin(publishedTests.keySet())), TESTS_COLLECTION);
+			publishedTests.values().forEach(record -> mongoTemplate.save(record, TESTS_COLLECTION));
+		}
+
+		Query ownAliases = new Query(Criteria.where("node").is(nodeId));
+		if (mongoTemplate.count(ownAliases, ALIASES_COLLECTION) != publishedAliases.size()) {
+			List<Document> claimed = mongoTemplate.find(
+				new Query(Criteria.where("_id").in(publishedAliases.keySet()).and("node").ne(nodeId)),
+				Document.class, ALIASES_COLLECTION);
+			// aliases that have been taken over by another node are no longer ours to publish
+			claimed.forEach(record -> publishedAliases.remove(record.getString("_id")));
+			publishedAliases.forEach((alias, id) -> mongoTemplate.save(aliasRecord(alias, id), ALIASES_COLLECTION));
+		}
+	}
+
+	private void removeNode(String id) {
+		mongoTemplate.remove(new Query(Criteria.where("node").is(id)), TESTS_COLLECTION);
+		mongoTemplate.remove(new Query(Criteria.where("node").is(id)), ALIASES_COLLECTION);
+		mongoTemplate.remove(new Query(Criteria.where("_id").is(id)), NODES_COLLECTION);
+	}
+
+}
@@ -0,0 +1,321 @@
+package net.openid.conformance.runner;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.openid.conformance.info.Plan;
+import net.openid.conformance.info.TestInfo;
+import net.openid.conformance.info.TestInfoRepository;
+import net.openid.conformance.info.TestPlanService;
+import net.openid.conformance.security.AuthenticationFacade;
+import net.openid.conformance.testmodule.OIDFJSON;
+import net.openid.conformance.testmodule.TestModule;
+import net.openid.conformance.testmodule.TestModule.Status;
+import net.openid.conformance.variant.VariantSelection;
+import net.openid.conformance.variant.VariantService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the modules of a test plan on the server, so that automation doesn't have to create each test and poll its
+ * status over the API (as run-test-plan.py does).
+ *
+ * Each run has its own thread, which creates the tests through TestRunner exactly as the API does (so they belong to
+ * the user who started the run), starts any that don't start themselves, and checks on them every second. Modules
+ * that share an alias are never run at the same time, and modules that are not applicable to the plan's variant are
+ * skipped. Tests that need something external to happen (e.g. a client test waiting for the client) are stopped if
+ * they haven't finished within the module timeout.
+ *
+ * Runs are kept in memory on the node that started them, and only the latest run of each plan is kept.
+ */
+@Service
+public class PlanExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(PlanExecutor.class);
+
+	// browsers reconnect automatically when the stream is closed, so there's no need to keep them open forever
+	private static final Duration STREAM_TIMEOUT = Duration.ofMinutes(30);
+
+	// how long a test has to stop after being asked to
+	private static final Duration STOP_TIMEOUT = Duration.ofSeconds(60);
+
+	@Autowired
+	private TestPlanService planService;
+
+	@Autowired
+	private TestRunner testRunner;
+
+	@Autowired
+	private TestRunnerSupport support;
+
+	@Autowired
+	private VariantService variantService;
+
+	@Autowired
+	private TestInfoRepository testInfos;
+
+	@Autowired
+	private AuthenticationFacade authenticationFacade;
+
+	@Autowired
+	private TestForwardingInterceptor testForwarding;
+
+	@Value("${fintechlabs.plan_executor.max_parallel:3}")
+	private int maxParallel = 3;
+
+	@Value("${fintechlabs.plan_executor.module_timeout_seconds:600}")
+	private int moduleTimeoutSeconds = 600;
+
+	// how often the running tests are checked on
+	private Duration pollInterval = Duration.ofSeconds(1);
+
+	// the latest run of each plan, by plan id
+	private final Map<String, PlanRun> runs = new ConcurrentHashMap<>();
+
+	private ExecutorService executor;
+
+	@PostConstruct
+	public void startExecutor() {
+		executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+			.setNameFormat("plan-executor-%d")
+			.setDaemon(true)
+			.build());
+	}
+
+	@PreDestroy
+	public void stopExecutor() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Start running a plan's modules in the background, as the current user. The caller must already have checked
+	 * the user is allowed to see the plan, and that it's mutable.
+	 *
+	 * @param parallel the maximum number of modules to run at once; null for the configured maximum
+	 * @param moduleNames the names of the modules to run; null or empty to run all of them
+	 * @return the new run, or null if the plan is already being run
+	 */
+	public PlanRun start(Plan plan, Integer parallel, Collection<String> moduleNames) {
+		String planId = plan.getId();
+
+		List<PlanRun.Module> modules = new ArrayList<>();
+		List<Plan.Module> planModules = plan.getModules();
+		for (int i = 0; i < planModules.size(); i++) {
+			Plan.Module module = planModules.get(i);
+			if (moduleNames != null && !moduleNames.isEmpty() && !moduleNames.contains(module.getTestModule())) {
+				continue;
+			}
+			modules.add(new PlanRun.Module(i, module.getTestModule(), module.getVariant(), getAlias(planId, module.getTestModule())));
+		}
+
+		// looked up before the run is registered, so a failure here can't leave a run that never finishes
+		VariantSelection planVariant = planService.getTestPlanVariant(planId);
+		Authentication authentication = authenticationFacade.getContextAuthentication();
+		// the run's thread has no request, so stopping a test on another node needs this if there's no cluster secret
+		String authorization = TestForwardingInterceptor.getRequestAuthorization();
+
+		int runParallel = parallel == null ? maxParallel : Math.max(1, Math.min(parallel, maxParallel));
+		PlanRun newRun = new PlanRun(planId, authenticationFacade.getPrincipal(), runParallel, modules, executor);
+		PlanRun run = runs.compute(planId, (k, existing) -> existing != null && !existing.isFinished() ? existing : newRun);
+		if (!newRun.equals(run)) {
+			// the plan's previous run is still going
+			return null;
+		}
+
+		try {
+			executor.execute(() -> run(run, planVariant, authentication, authorization));
+		} catch (RuntimeException e) {
+			// e.g. the executor has been shut down; finishing the run lets the plan be run again
+			run.finish();
+			throw e;
+		}
+		return run;
+	}
+
+	/**
+	 * @return the latest run of the plan, or null if it hasn't been run since the server started. The caller must
+	 *         already have checked the user is allowed to see the plan.
+	 */
+	public PlanRun getRun(String planId) {
+		return runs.get(planId);
+	}
+
+	/**
+	 * Send a run's events to a client
+	 *
+	 * @param after only send events after this one; null to send them all
+	 */
+	public SseEmitter openStream(PlanRun run, Long after) {
+		SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT.toMillis());
+		run.follow(emitter, after);
+		return emitter;
+	}
+
+	private String getAlias(String planId, String testModule) {
+		JsonObject config = planService.getModuleConfig(planId, testModule);
+		if (config != null && config.has("alias") && config.get("alias").isJsonPrimitive()) {
+			return OIDFJSON.getString(config.get("alias"));
+		}
+		return null;
+	}
+
+	private void run(PlanRun run, VariantSelection planVariant, Authentication authentication, String authorization) {
+		// the tests are created as the user who started the run, just as if they'd called the API
+		SecurityContext context = SecurityContextHolder.createEmptyContext();
+		context.setAuthentication(authentication);
+		SecurityContextHolder.setContext(context);
+		try {
+			while (true) {
+				if (run.isCancelled()) {
+					for (PlanRun.Module module : run.getModules(PlanRun.State.PENDING)) {
+						run.moduleCancelled(module);
+					}
+				} else {
+					PlanRun.Module module = run.nextModuleToStart();
+					while (module != null) {
+						startModule(run, module, planVariant);
+						module = run.nextModuleToStart();
+					}
+				}
+
+				List<PlanRun.Module> running = run.getModules(PlanRun.State.RUNNING);
+				if (running.isEmpty() && run.nextModuleToStart() == null) {
+					break;
+				}
+				for (PlanRun.Module module : running) {
+					checkModule(run, module, authorization);
+				}
+
+				Thread.sleep(pollInterval.toMillis());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			logger.error("Run of plan " + run.getPlanId() + " failed", e);
+		} finally {
+			run.finish();
+			SecurityContextHolder.clearContext();
+		}
+	}
+
+	private void startModule(PlanRun run, PlanRun.Module module, VariantSelection planVariant) {
+		VariantService.TestModuleHolder holder = variantService.getTestModule(module.getTestModule());
+		if (holder == null) {
+			run.moduleFailed(module, "test module not found");
+			return;
+		}
+
+		// the same as TestRunner.createTest: the plan's variant takes priority over the module's
+		Map<String, String> variant = new HashMap<>();
+		if (module.getVariant() != null) {
+			variant.putAll(module.getVariant());
+		}
+		if (planVariant != null) {
+			variant.putAll(planVariant.getVariant());
+		}
+
+		try {
+			if (!holder.isApplicableForVariant(new VariantSelection(variant))) {
+				run.moduleNotApplicable(module);
+				return;
+			}
+
+			ResponseEntity<Map<String, String>> response = testRunner.createTest(module.getTestModule(), run.getPlanId(),
+				module.getVariant() == null ? null : new VariantSelection(module.getVariant()), null, null);
+			Map<String, String> body = response.getBody();
+			if (response.getStatusCode() == HttpStatus.CREATED && body != null) {
+				run.moduleCreated(module, body.get("id"));
+			} else if (body != null && body.get("error") != null) {
+				run.moduleFailed(module, body.get("error"));
+			} else {
+				run.moduleFailed(module, "Creating the test failed with HTTP status " + response.getStatusCode().value());
+			}
+		} catch (RuntimeException e) {
+			logger.warn("Couldn't create " + module.getTestModule() + " for plan " + run.getPlanId(), e);
+			run.moduleFailed(module, e.getMessage());
+		}
+	}
+
+	/**
+	 * @param authorization the Authorization header of the request that started the run, used to stop the test if
+	 *                      it's on another node
+	 */
+	private void checkModule(PlanRun run, PlanRun.Module module, String authorization) {
+		TestModule test = support.getRunningTestById(module.getTestId());
+		if (test != null) {
+			TestModule.Result result = test.getResult();
+			run.moduleStatus(module, test.getStatus(), result == null ? null : result.name());
+		} else {
+			// the test has expired (or is running on another node); its status is in the database
+			Optional<TestInfo> testInfo = testInfos.findById(module.getTestId());
+			if (testInfo.isPresent()) {
+				run.moduleStatus(module, testInfo.get().getStatus(), testInfo.get().getResult());
+			} else {
+				run.moduleFailed(module, "The test is no longer running");
+				return;
+			}
+		}
+		if (module.getState() != PlanRun.State.RUNNING) {
+			return;
+		}
+
+		if (test != null && test.getStatus() == Status.CONFIGURED && !test.autoStart() && !module.isStartRequested()) {
+			// tests that would normally wait for the user to press 'start' (e.g. oidcc-server-rotate-keys) are started
+			// straight away, as run-test-plan.py does
+			module.setStartRequested();
+			test.getTestExecutionManager().runInBackground(() -> {
+				test.start();
+				return "started";
+			});
+		}
+
+		Instant now = Instant.now();
+		if (module.getStopRequested() == null) {
+			String reason = null;
+			if (run.isCancelled()) {
+				reason = "The run of this test's plan was cancelled via the conformance suite API.";
+			} else if (module.getStarted().plus(Duration.ofSeconds(moduleTimeoutSeconds)).isBefore(now)) {
+				reason = "The test did not finish within " + moduleTimeoutSeconds + " seconds of being started by the plan executor.";
+			}
+			if (reason != null) {
+				module.setStopRequested(now);
+				if (test != null) {
+					String stopReason = reason;
+					test.getTestExecutionManager().runInBackground(() -> {
+						test.stop(stopReason);
+						return "stopped";
+					});
+				} else {
+					// if no node has the test, it never stops, and the module fails once the stop timeout has passed
+					testForwarding.stopRemoteTest(module.getTestId(), authorization);
+				}
+			}
+		} else if (module.getStopRequested().plus(STOP_TIMEOUT).isBefore(now)) {
+			run.moduleFailed(module, "The test did not stop when asked to");
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package net.openid.conformance.runner;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import net.openid.conformance.info.Plan;
+import net.openid.conformance.info.TestPlanService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.Map;
+
+@Controller
+@RequestMapping(value = "/api")
+public class PlanExecutorApi {
+
+	@Autowired
+	private TestPlanService planService;
+
+	@Autowired
+	private PlanExecutor planExecutor;
+
+	@PostMapping(value = "/plan/{id}/run", produces = MediaType.APPLICATION_JSON_VALUE)
+	@Operation(summary = "Run the modules of a test plan on the server", description = "Creates a test for each module of the plan in turn (skipping any that aren't applicable to the plan's variant), running up to 'parallel' at once but never two with the same alias at the same time. Progress can be followed via /api/plan/{id}/run or /api/plan/{id}/run/events.")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "201", description = "Run started"),
+		@ApiResponse(responseCode = "404", description = "Couldn't find test plan for provided plan Id"),
+		@ApiResponse(responseCode = "405", description = "The plan is immutable, so no more tests can be run in it"),
+		@ApiResponse(responseCode = "409", description = "The plan is already being run")
+	})
+	public ResponseEntity<Object> runTestPlan(
+		@Parameter(description = "Id of test plan") @PathVariable String id,
+		@Parameter(description = "Maximum number of modules to run at once (limited by the server's configuration)") @RequestParam(required = false) Integer parallel,
+		@Parameter(description = "Only run the named modules (may be repeated)") @RequestParam(name = "module", required = false) List<String> modules) {
+
+		Plan plan = planService.getTestPlan(id);
+		if (plan == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+
+		if (plan.getImmutable() != null && plan.getImmutable()) {
+			return new ResponseEntity<>(HttpStatus.METHOD_NOT_ALLOWED);
+		}
+
+		PlanRun run = planExecutor.start(plan, parallel, modules);
+		if (run == null) {
+			return new ResponseEntity<>(Map.of("error", "The plan is already being run"), HttpStatus.CONFLICT);
+		}
+
+		return new ResponseEntity<>(run.toMap(), HttpStatus.CREATED);
+	}
+
+	@GetMapping(value = "/plan/{id}/run", produces = MediaType.APPLICATION_JSON_VALUE)
+	@Operation(summary = "Get the progress of the latest run of a test plan")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Retrieved successfully"),
+		@ApiResponse(responseCode = "404", description = "Couldn't find test plan for provided plan Id, or it hasn't been run on this server")
+	})
+	public ResponseEntity<Object> getTestPlanRun(
+		@Parameter(description = "Id of test plan") @PathVariable String id) {
+
+		PlanRun run = findRun(id);
+		if (run == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+
+		return new ResponseEntity<>(run.toMap(), HttpStatus.OK);
+	}
+
+	@GetMapping(value = "/plan/{id}/run/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	@Operation(summary = "Stream the progress of the latest run of a test plan", description = "Sends a 'module' event each time a module's state changes, and a 'finished' event with the final results. The id of each event can be passed back as 'after' (or the Last-Event-ID header) to resume the stream.")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Stream opened successfully"),
+		@ApiResponse(responseCode = "404", description = "Couldn't find test plan for provided plan Id, or it hasn't been run on this server")
+	})
+	public ResponseEntity<SseEmitter> streamTestPlanRun(
+		@Parameter(description = "Id of test plan") @PathVariable String id,
+		@Parameter(description = "Only send events after the one with this id") @RequestParam(required = false) Long after,
+		@Parameter(hidden = true) @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId) {
+
+		PlanRun run = findRun(id);
+		if (run == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+
+		return ResponseEntity.ok().body(planExecutor.openStream(run, lastEventId != null ? lastEventId : after));
+	}
+
+	@DeleteMapping(value = "/plan/{id}/run", produces = MediaType.APPLICATION_JSON_VALUE)
+	@Operation(summary = "Cancel the run of a test plan", description = "No more modules are started, and the tests that are running are stopped.")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Run cancelled"),
+		@ApiResponse(responseCode = "404", description = "Couldn't find test plan for provided plan Id, or it hasn't been run on this server")
+	})
+	public ResponseEntity<Object> cancelTestPlanRun(
+		@Parameter(description = "Id of test plan") @PathVariable String id) {
+
+		PlanRun run = findRun(id);
+		if (run == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+
+		run.cancel();
+		return new ResponseEntity<>(run.toMap(), HttpStatus.OK);
+	}
+
+	private PlanRun findRun(String planId) {
+		// getTestPlan only returns the plan if the user is allowed to see it
+		if (planService.getTestPlan(planId) == null) {
+			return null;
+		}
+		return planExecutor.getRun(planId);
+	}
+}
@@ -0,0 +1,408 @@
+package net.openid.conformance.runner;
+
+import com.google.gson.Gson;
+import net.openid.conformance.CollapsingGsonHttpMessageConverter;
+import net.openid.conformance.testmodule.TestModule.Status;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The state of one run of a plan by the PlanExecutor.
+ *
+ * The modules are run in plan order, except that a module whose alias is already in use by another module of the run
+ * is passed over until that module has finished (as creating a test with an alias stops any other test using it).
+ *
+ * Each change to a module is recorded as an event, which is sent to anyone following the run's event stream; a
+ * client that reconnects can pass the id of the last event it saw to carry on from there. Events are recorded whilst
+ * holding the run's lock, but each stream is sent its events from its own queue by a task on the 'sender' executor, so
+ * a client that has stopped reading only holds up its own stream.
+ */
+public class PlanRun {
+
+	private static final Logger logger = LoggerFactory.getLogger(PlanRun.class);
+
+	private static final Gson GSON = CollapsingGsonHttpMessageConverter.getDbObjectCollapsingGson();
+
+	public enum State {
+		PENDING, // not started yet
+		NOT_APPLICABLE, // the module has a @VariantNotApplicable for the plan's variant
+		RUNNING, // the test has been created
+		DONE, // the test has finished or been interrupted
+		ERROR, // the test couldn't be created, or didn't finish in time
+		CANCELLED // the run was cancelled before the module was started
+	}
+
+	static class Module {
+		private final int index;
+		private final String testModule;
+		private final Map<String, String> variant;
+		private final String alias;
+
+		private State state = State.PENDING;
+		private String testId;
+		private Status status;
+		private String result;
+		private String error;
+		private Instant started;
+		private Instant finished;
+
+		// set once the executor has asked the test to start or stop, so it only does so once
+		private boolean startRequested;
+		private Instant stopRequested;
+
+		Module(int index, String testModule, Map<String, String> variant, String alias) {
+			this.index = index;
+			this.testModule = testModule;
+			this.variant = variant;
+			this.alias = alias;
+		}
+
+		String getTestModule() {
+			return testModule;
+		}
+
+		Map<String, String> getVariant() {
+			return variant;
+		}
+
+		String getAlias() {
+			return alias;
+		}
+
+		State getState() {
+			return state;
+		}
+
+		String getTestId() {
+			return testId;
+		}
+
+		Instant getStarted() {
+			return started;
+		}
+
+		boolean isStartRequested() {
+			return startRequested;
+		}
+
+		void setStartRequested() {
+			startRequested = true;
+		}
+
+		Instant getStopRequested() {
+			return stopRequested;
+		}
+
+		void setStopRequested(Instant stopRequested) {
+			this.stopRequested = stopRequested;
+		}
+
+		private Map<String, Object> toMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("index", index);
+			map.put("testModule", testModule);
+			map.put("variant", variant);
+			map.put("state", state);
+			map.put("testId", testId);
+			map.put("status", status);
+			map.put("result", result);
+			map.put("error", error);
+			map.put("started", started == null ? null : started.toString());
+			map.put("finished", finished == null ? null : finished.toString());
+			return map;
+		}
+	}
+
+	private final String planId;
+	private final Map<String, String> owner;
+	private final int parallel;
+	private final Instant started = Instant.now();
+	private Instant finished;
+	private boolean cancelled;
+
+	private final List<Module> modules;
+
+	private final List<Map<String, Object>> events = new ArrayList<>();
+	private final List<Follower> followers = new ArrayList<>();
+	private final Executor sender;
+
+	/**
+	 * @param sender runs the tasks that send events to the streams
+	 */
+	PlanRun(String planId, Map<String, String> owner, int parallel, List<Module> modules, Executor sender) {
+		this.planId = planId;
+		this.owner = owner;
+		this.parallel = parallel;
+		this.modules = modules;
+		this.sender = sender;
+	}
+
+	/**
+	 * A stream following the run, and the events that are waiting to be sent to it
+	 */
+	private class Follower {
+		private final SseEmitter emitter;
+		private final ConcurrentLinkedQueue<Map<String, Object>> queue = new ConcurrentLinkedQueue<>();
+		// set whilst a task is sending the queued events, so they are sent in order
+		private final AtomicBoolean sending = new AtomicBoolean();
+		// set once the run has finished, so the stream is completed after the queued events
+		private volatile boolean ending;
+		private volatile boolean closed;
+
+		Follower(SseEmitter emitter) {
+			this.emitter = emitter;
+		}
+
+		void enqueue(Map<String, Object> event) {
+			if (!closed) {
+				queue.add(event);
+				schedule();
+			}
+		}
+
+		/**
+		 * Complete the stream once the events queued so far have been sent
+		 */
+		void end() {
+			ending = true;
+			schedule();
+		}
+
+		private void schedule() {
+			if (!sending.compareAndSet(false, true)) {
+				// the task that's sending will pick the event up
+				return;
+			}
+			try {
+				sender.execute(this::drain);
+			} catch (RejectedExecutionException e) {
+				sending.set(false);
+				close(e);
+			}
+		}
+
+		private void drain() {
+			try {
+				Map<String, Object> event = queue.poll();
+				while (event != null && !closed) {
+					send(event);
+					event = queue.poll();
+				}
+				if (ending && !closed) {
+					closed = true;
+					emitter.complete();
+				}
+			} finally {
+				sending.set(false);
+			}
+			if ((!queue.isEmpty() || ending) && !closed) {
+				// queued or ended after this task had finished looking, but before 'sending' was cleared
+				schedule();
+			}
+		}
+
+		private void send(Map<String, Object> event) {
+			try {
+				emitter.send(SseEmitter.event()
+					.id(String.valueOf(event.get("seq")))
+					.name((String) event.get("event"))
+					.data(GSON.toJson(event)));
+			} catch (IOException | RuntimeException e) {
+				// the client has gone away
+				logger.debug("Dropping plan run event stream for " + planId, e);
+				close(e);
+			}
+		}
+
+		private void close(Exception e) {
+			closed = true;
+			queue.clear();
+			unfollow(this);
+			emitter.completeWithError(e);
+		}
+	}
+
+	public String getPlanId() {
+		return planId;
+	}
+
+	public Map<String, String> getOwner() {
+		return owner;
+	}
+
+	public synchronized boolean isFinished() {
+		return finished != null;
+	}
+
+	synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	synchronized void cancel() {
+		cancelled = true;
+	}
+
+	synchronized List<Module> getModules(State state) {
+		return modules.stream().filter(m -> m.state == state).toList();
+	}
+
+	/**
+	 * @return the next module that can be started, or null if none can be started until a running one finishes
+	 */
+	synchronized Module nextModuleToStart() {
+		List<Module> running = getModules(State.RUNNING);
+		if (running.size() >= parallel) {
+			return null;
+		}
+		Set<String> aliasesInUse = new HashSet<>();
+		for (Module module : running) {
+			if (module.alias != null) {
+				aliasesInUse.add(module.alias);
+			}
+		}
+		for (Module module : modules) {
+			if (module.state == State.PENDING && (module.alias == null || !aliasesInUse.contains(module.alias))) {
+				return module;
+			}
+		}
+		return null;
+	}
+
+	synchronized void moduleNotApplicable(Module module) {
+		module.state = State.NOT_APPLICABLE;
+		moduleChanged(module);
+	}
+
+	synchronized void moduleCreated(Module module, String testId) {
+		module.state = State.RUNNING;
+		module.testId = testId;
+		module.started = Instant.now();
+		moduleChanged(module);
+	}
+
+	synchronized void moduleFailed(Module module, String error) {
+		module.state = State.ERROR;
+		module.error = error;
+		if (module.started != null) {
+			module.finished = Instant.now();
+		}
+		moduleChanged(module);
+	}
+
+	synchronized void moduleCancelled(Module module) {
+		module.state = State.CANCELLED;
+		moduleChanged(module);
+	}
+
+	/**
+	 * Record the latest status of a module's test; only sends an event if something has changed
+	 */
+	synchronized void moduleStatus(Module module, Status status, String result) {
+		boolean done = status == Status.FINISHED || status == Status.INTERRUPTED;
+		if (status == module.status && Objects.equals(result, module.result) && !done) {
+			return;
+		}
+		module.status = status;
+		module.result = result;
+		if (done) {
+			module.state = State.DONE;
+			module.finished = Instant.now();
+		}
+		moduleChanged(module);
+	}
+
+	synchronized void finish() {
+		finished = Instant.now();
+		for (Module module : modules) {
+			if (module.state == State.PENDING) {
+				module.state = State.CANCELLED;
+			}
+		}
+		Map<String, Object> event = toMap();
+		event.put("event", "finished");
+		addEvent(event);
+		for (Follower follower : new ArrayList<>(followers)) {
+			follower.end();
+		}
+		followers.clear();
+	}
+
+	private void moduleChanged(Module module) {
+		Map<String, Object> event = module.toMap();
+		event.put("event", "module");
+		addEvent(event);
+	}
+
+	private void addEvent(Map<String, Object> event) {
+		event.put("seq", events.size());
+		events.add(event);
+		for (Follower follower : new ArrayList<>(followers)) {
+			follower.enqueue(event);
+		}
+	}
+
+	/**
+	 * Send the events after 'after' to a new stream, then follow the run
+	 *
+	 * @param after the last event the client has seen, or null for all of them
+	 */
+	synchronized void follow(SseEmitter emitter, Long after) {
+		Follower follower = new Follower(emitter);
+		for (Map<String, Object> event : events) {
+			if (after == null || ((Integer) event.get("seq")) > after) {
+				follower.enqueue(event);
+			}
+		}
+		if (finished != null) {
+			follower.end();
+			return;
+		}
+		followers.add(follower);
+		emitter.onCompletion(() -> unfollow(follower));
+		emitter.onTimeout(() -> unfollow(follower));
+	}
+
+	private synchronized void unfollow(Follower follower) {
+		followers.remove(follower);
+	}
+
+	/**
+	 * The run's current state, as returned by the API
+	 */
+	public synchronized Map<String, Object> toMap() {
+		Map<String, Integer> results = new TreeMap<>();
+		List<Map<String, Object>> moduleMaps = new ArrayList<>();
+		for (Module module : modules) {
+			moduleMaps.add(module.toMap());
+			// finished modules are counted by their result, the others by their state
+			String key = module.state != State.DONE ? module.state.name() : module.result == null ? "UNKNOWN" : module.result;
+			results.merge(key, 1, Integer::sum);
+		}
+
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("planId", planId);
+		map.put("parallel", parallel);
+		map.put("started", started.toString());
+		map.put("finished", finished == null ? null : finished.toString());
+		map.put("cancelled", cancelled);
+		map.put("results", results);
+		map.put("modules", moduleMaps);
+		return map;
+	}
+}
@@ -11,7 +11,6 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import net.openid.conformance.condition.ConditionError;
-import net.openid.conformance.logging.EventLog;
 import net.openid.conformance.openid.client.AbstractOIDCCClientTest;
 import net.openid.conformance.testmodule.AbstractTestModule;
 import net.openid.conformance.testmodule.DataUtils;
@@ -58,11 +57,12 @@ public class TestDispatcher implements DataUtils {
 	public static final String TEST_PATH = "/test/"; // path for incoming test requests
 	public static final String TEST_MTLS_PATH = "/test-mtls/"; // path for incoming MTLS requests
 
-	@Autowired
-	private TestRunnerSupport support;
+	// webfinger resources, see handleWellKnownWebFingerRequest()
+	static final Pattern WEBFINGER_ACCT_PATTERN = Pattern.compile("^acct:([a-zA-Z0-9_-]+)\\.([a-zA-Z0-9_-]+)@.*$", Pattern.CASE_INSENSITIVE);
+	static final Pattern WEBFINGER_HTTPS_PATTERN = Pattern.compile("^https?://.*/([a-zA-Z0-9_-]+)/([a-zA-Z0-9_-]+)$", Pattern.CASE_INSENSITIVE);
 
 	@Autowired
-	private EventLog eventLog;
+	private TestRunnerSupport support;
 
 	/**
 	 * Dispatch a request to a running test. This came in on the /test/ URL either as /test/test-id-string or /test/a/test-alias.
@@ -239,15 +239,13 @@ public class TestDispatcher implements DataUtils {
 		String alias = null;
 		String resourcePrefix = null;
 		try {
-			Pattern acctPattern = Pattern.compile("^acct:([a-zA-Z0-9_-]+)\\.([a-zA-Z0-9_-]+)@.*$", Pattern.CASE_INSENSITIVE);
-			Matcher acctMatcher = acctPattern.matcher(resource);
+			Matcher acctMatcher = WEBFINGER_ACCT_PATTERN.matcher(resource);
 			if(acctMatcher.matches()) {
 				resourcePrefix = "acct";
 				alias = acctMatcher.group(1);
 				testName = acctMatcher.group(2);
 			} else {
-				Pattern httpsPattern = Pattern.compile("^https?://.*/([a-zA-Z0-9_-]+)/([a-zA-Z0-9_-]+)$", Pattern.CASE_INSENSITIVE);
-				Matcher httpsMatcher = httpsPattern.matcher(resource);
+				Matcher httpsMatcher = WEBFINGER_HTTPS_PATTERN.matcher(resource);
 				if (httpsMatcher.matches()) {
 					resourcePrefix = "https";
 					alias = httpsMatcher.group(1);
@@ -345,7 +343,7 @@ public class TestDispatcher implements DataUtils {
 			headers.remove(headerName);
 		}
 
-		eventLog.log(test.getId(), test.getName(), test.getOwner(), args(
+		test.getEventLog().logOutsideBlock(test.getName(), args(
 			"msg", "Incoming HTTP request to " + path,
 			"http", "incoming",
 			"incoming_path", path,
@@ -364,7 +362,7 @@ public class TestDispatcher implements DataUtils {
 
 	protected void logOutgoingHttpResponse(TestModule test, String path, Object response) {
 		if (response instanceof ResponseEntity<?> responseEntity) {
-			eventLog.log(test.getId(), test.getName(), test.getOwner(), args(
+			test.getEventLog().logOutsideBlock(test.getName(), args(
 				"msg", "Response to HTTP request to test instance " + test.getId(),
 				"http", "outgoing",
 				"outgoing_path", path,
@@ -373,7 +371,7 @@ public class TestDispatcher implements DataUtils {
 				"outgoing_body", responseEntity.getBody()));
 		} else {
 			// ModelAndView or other cases; just log 'toString'
-			eventLog.log(test.getId(), test.getName(), test.getOwner(), args(
+			test.getEventLog().logOutsideBlock(test.getName(), args(
 				"msg", "Response to HTTP request to test instance " + test.getId(),
 				"http", "outgoing",
 				"outgoing_path", path,
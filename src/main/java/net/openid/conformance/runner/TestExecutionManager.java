@@ -9,11 +9,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.core.Authentication;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class TestExecutionManager {
 
@@ -81,7 +82,11 @@ public class TestExecutionManager {
 
 	private boolean finalisationStarted;
 
-	private ExecutorCompletionService<Object> executorCompletionService;
+	private BackgroundTaskExecutor backgroundTaskExecutor;
+
+	// a lock rather than synchronized methods, as a virtual thread that blocks whilst in a synchronized method can't
+	// release its carrier thread
+	private final ReentrantLock lock = new ReentrantLock();
 
 	private AuthenticationFacade authenticationFacade;
 
@@ -89,9 +94,9 @@ public class TestExecutionManager {
 
 	private TestRunnerSupport testRunnerSupport;
 
-	public TestExecutionManager(String testId, ExecutorCompletionService<Object> executorCompletionService, AuthenticationFacade authenticationFacade, TestRunnerSupport testRunnerSupport) {
+	public TestExecutionManager(String testId, BackgroundTaskExecutor backgroundTaskExecutor, AuthenticationFacade authenticationFacade, TestRunnerSupport testRunnerSupport) {
 		this.testId = testId;
-		this.executorCompletionService = executorCompletionService;
+		this.backgroundTaskExecutor = backgroundTaskExecutor;
 		this.authenticationFacade = authenticationFacade;
 		this.testRunnerSupport = testRunnerSupport;
 	}
@@ -106,30 +111,69 @@ public class TestExecutionManager {
 	/**
 	 * Clean up queued tasks for this test id
 	 */
-	public synchronized void cancelAllBackgroundTasks() {
-		for (Future<?> f : futures) {
-			if (!f.isDone()) {
-				f.cancel(true); // True allows the task to be interrupted.
+	public void cancelAllBackgroundTasks() {
+		lock.lock();
+		try {
+			for (Future<?> f : futures) {
+				if (!f.isDone()) {
+					f.cancel(true); // True allows the task to be interrupted.
+				}
 			}
+		} finally {
+			lock.unlock();
 		}
 	}
 
-	public synchronized void cancelAllBackgroundTasksExceptFinalisation() {
-		for (Future<?> f : futures) {
-			if (f.equals(finalisationFuture)) {
-				continue;
+	public void cancelAllBackgroundTasksExceptFinalisation() {
+		lock.lock();
+		try {
+			for (Future<?> f : futures) {
+				if (f.equals(finalisationFuture)) {
+					continue;
+				}
+				if (!f.isDone()) {
+					f.cancel(true); // True allows the task to be interrupted.
+				}
 			}
-			if (!f.isDone()) {
-				f.cancel(true); // True allows the task to be interrupted.
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void runInBackground(Callable<?> callable) {
+		lock.lock();
+		try {
+			if (finalisationStarted) {
+				throw new RuntimeException("runInBackground called after runFinalisationTaskInBackground()");
 			}
+			futures.add(backgroundTaskExecutor.submit(new BackgroundTask(testId, callable, testRunnerSupport)));
+		} finally {
+			lock.unlock();
 		}
 	}
 
-	public synchronized void runInBackground(Callable<?> callable) {
-		if (finalisationStarted) {
-			throw new RuntimeException("runInBackground called after runFinalisationTaskInBackground()");
+	/**
+	 * Run a task in the background once the delay has passed
+	 *
+	 * This is the way for a test module to wait for something (a poll interval, a user to upload an image, etc)
+	 * without tying up a thread or holding the test's lock whilst it waits: set the status to WAITING, and schedule
+	 * the rest of the test as the task. The task is cancelled along with the other background tasks if the test stops.
+	 *
+	 * If the test is already finishing, the task is not scheduled.
+	 */
+	public void schedule(Duration delay, Callable<?> callable) {
+		lock.lock();
+		try {
+			if (finalisationStarted) {
+				logger.info(testId + ": Not scheduling task as the test is finishing");
+				return;
+			}
+			// a test that keeps rescheduling itself would otherwise grow the list for as long as it runs
+			futures.removeIf(Future::isDone);
+			futures.add(backgroundTaskExecutor.schedule(delay, new BackgroundTask(testId, callable, testRunnerSupport)));
+		} finally {
+			lock.unlock();
 		}
-		futures.add(executorCompletionService.submit(new BackgroundTask(testId, callable, testRunnerSupport)));
 	}
 
 	/**
@@ -138,12 +182,17 @@ public class TestExecutionManager {
 	 * This is just like a normal task, except there can only ever be one of them. It should only be used by
 	 * AbstractTestModule to run it's finalisation task from fireTestFinished().
 	 */
-	public synchronized void runFinalisationTaskInBackground(Callable<?> callable) {
-		if (!finalisationStarted) {
-			finalisationStarted = true;
-			Future<?> f = executorCompletionService.submit(new BackgroundTask(testId, callable, testRunnerSupport));
-			futures.add(f);
-			finalisationFuture = f;
+	public void runFinalisationTaskInBackground(Callable<?> callable) {
+		lock.lock();
+		try {
+			if (!finalisationStarted) {
+				finalisationStarted = true;
+				Future<?> f = backgroundTaskExecutor.submit(new BackgroundTask(testId, callable, testRunnerSupport));
+				futures.add(f);
+				finalisationFuture = f;
+			}
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -0,0 +1,377 @@
+package net.openid.conformance.runner;
+
+import com.google.common.base.Splitter;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import net.openid.conformance.security.AuthenticationFacade;
+import net.openid.conformance.security.ClusterForwardedUserFilter;
+import net.openid.conformance.testmodule.OIDFJSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+
+/**
+ * When the suite runs as a cluster (see MongoTestRunnerSupport), a request for a test may arrive at any node, but
+ * the test only exists on the node that created it. This passes such requests on to that node before they reach
+ * TestDispatcher or TestRunner, and relays the response back unchanged.
+ *
+ * The owning node is told the original scheme, host and port in X-Forwarded-* headers so that the test sees the same
+ * request url it would have done if the load balancer had sent the request straight to it. For API calls the user is
+ * passed on as described in ClusterForwardedUserFilter.
+ */
+@Component
+public class TestForwardingInterceptor implements HandlerInterceptor, WebMvcConfigurer {
+
+	private static final Logger logger = LoggerFactory.getLogger(TestForwardingInterceptor.class);
+
+	/**
+	 * Set on forwarded requests, so that they're never forwarded again
+	 */
+	public static final String FORWARDED_BY_HEADER = "X-Conformance-Forwarded-By";
+
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+	// some test endpoints deliberately take a long time to respond
+	private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(5);
+
+	// describe the connection to this node rather than the request, or are set by the http client itself
+	private static final Set<String> REQUEST_HEADERS_NOT_FORWARDED = Set.of(
+		"host", "connection", "content-length", "expect", "upgrade", "keep-alive", "te", "trailer", "transfer-encoding",
+		"x-forwarded-for", "x-forwarded-host", "x-forwarded-port", "x-forwarded-proto", "forwarded",
+		FORWARDED_BY_HEADER.toLowerCase(Locale.ROOT),
+		ClusterForwardedUserFilter.SECRET_HEADER.toLowerCase(Locale.ROOT),
+		ClusterForwardedUserFilter.USER_HEADER.toLowerCase(Locale.ROOT));
+
+	private static final Set<String> RESPONSE_HEADERS_NOT_RELAYED = Set.of(
+		"connection", "content-length", "keep-alive", "transfer-encoding");
+
+	@Value("${fintechlabs.cluster.enabled:false}")
+	private boolean clustered;
+
+	@Value("${fintechlabs.cluster.secret:}")
+	private String clusterSecret;
+
+	@Value("${server.servlet.session.cookie.name:JSESSIONID}")
+	private String sessionCookieName;
+
+	@Autowired
+	private TestRunnerSupport support;
+
+	@Autowired
+	private AuthenticationFacade authenticationFacade;
+
+	private final HttpClient httpClient = HttpClient.newBuilder()
+		.version(HttpClient.Version.HTTP_1_1)
+		.followRedirects(HttpClient.Redirect.NEVER)
+		.connectTimeout(CONNECT_TIMEOUT)
+		.build();
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		if (clustered) {
+			registry.addInterceptor(this).addPathPatterns(
+				TestDispatcher.TEST_PATH + "**",
+				TestDispatcher.TEST_MTLS_PATH + "**",
+				"/.well-known/webfinger",
+				"/api/runner/*",
+				"/api/runner/browser/*",
+				"/api/runner/browser/*/visit");
+		}
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+		if (request.getHeader(FORWARDED_BY_HEADER) != null) {
+			// it's already been forwarded once, so whatever happens it's handled here
+			return true;
+		}
+
+		String testId = findTestId(request);
+		if (testId == null) {
+			return true;
+		}
+
+		String nodeUrl = support.getRemoteNodeUrl(testId);
+		if (nodeUrl == null) {
+			return true;
+		}
+
+		forward(request, response, nodeUrl);
+		return false;
+	}
+
+	/**
+	 * Work out which test the request is for, in the same way TestDispatcher and TestRunner do
+	 */
+	String findTestId(HttpServletRequest request) {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+
+		if (path.startsWith(TestDispatcher.TEST_PATH) || path.startsWith(TestDispatcher.TEST_MTLS_PATH)) {
+			String prefix = path.startsWith(TestDispatcher.TEST_PATH) ? TestDispatcher.TEST_PATH : TestDispatcher.TEST_MTLS_PATH;
+			Iterator<String> pathParts = Splitter.on("/").split(path.substring(prefix.length())).iterator();
+			String testId = pathParts.next();
+			if (testId.equals("a")) {
+				return pathParts.hasNext() ? support.getTestIdForAlias(pathParts.next()) : null;
+			}
+			return testId;
+		}
+
+		if (path.equals("/.well-known/webfinger")) {
+			String resource = request.getParameter("resource");
+			if (resource == null) {
+				return null;
+			}
+			Matcher matcher = TestDispatcher.WEBFINGER_ACCT_PATTERN.matcher(resource);
+			if (!matcher.matches()) {
+				matcher = TestDispatcher.WEBFINGER_HTTPS_PATTERN.matcher(resource);
+				if (!matcher.matches()) {
+					return null;
+				}
+			}
+			String alias = matcher.group(1);
+			String testId = support.getTestIdForAlias(alias);
+			// as in TestDispatcher, if there's no such alias it's assumed to be the test id
+			return testId != null ? testId : alias;
+		}
+
+		@SuppressWarnings("unchecked")
+		Map<String, String> pathVariables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+		return pathVariables == null ? null : pathVariables.get("id");
+	}
+
+	/**
+	 * @return the Authorization header of the request this thread is handling, if any; a background thread acting for
+	 *         the user can pass this to stopRemoteTest
+	 */
+	public static String getRequestAuthorization() {
+		if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+			return attributes.getRequest().getHeader("Authorization");
+		}
+		return null;
+	}
+
+	/**
+	 * Ask the node running a test to stop it, as a DELETE /api/runner/{id} made by the current user
+	 *
+	 * @param authorization the Authorization header to send if there's no cluster secret, e.g. from
+	 *                      getRequestAuthorization() when the request was made; null if there isn't one
+	 * @return true if the test is on another node and that node agreed to stop it
+	 */
+	public boolean stopRemoteTest(String testId, String authorization) {
+		String nodeUrl = support.getRemoteNodeUrl(testId);
+		if (nodeUrl == null) {
+			return false;
+		}
+
+		HttpRequest request = requestToNode(nodeUrl + "/api/runner/" + URLEncoder.encode(testId, StandardCharsets.UTF_8), "stop", authorization)
+			.DELETE()
+			.build();
+
+		try {
+			HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+			if (response.statusCode() == HttpStatus.OK.value()) {
+				return true;
+			}
+			logger.warn(testId + ": Node at " + nodeUrl + " refused to stop the test, HTTP status " + response.statusCode());
+		} catch (IOException e) {
+			logger.warn(testId + ": Failed to ask node at " + nodeUrl + " to stop the test", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * Ask the node running a test to stop it so that a new test on this node can take over its alias. The other node
+	 * decides whether the current user may do that, using the same rules as TestRunner does for a test on this node.
+	 *
+	 * @throws RuntimeException if the other node refused, or couldn't be asked
+	 */
+	public void takeOverRemoteAlias(String testId, String alias, String newTestId) {
+		String nodeUrl = support.getRemoteNodeUrl(testId);
+		if (nodeUrl == null) {
+			// the test isn't running anywhere now, so the alias is free
+			return;
+		}
+
+		HttpRequest request = requestToNode(nodeUrl + "/api/runner/" + URLEncoder.encode(testId, StandardCharsets.UTF_8)
+				+ "/alias?alias=" + URLEncoder.encode(alias, StandardCharsets.UTF_8)
+				+ "&new_test_id=" + URLEncoder.encode(newTestId, StandardCharsets.UTF_8), "alias-takeover", getRequestAuthorization())
+			.DELETE()
+			.build();
+
+		try {
+			HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+			if (response.statusCode() == HttpStatus.OK.value()) {
+				logger.info("Stopped test " + testId + " on node at " + nodeUrl + ", as test " + newTestId + " has taken over its alias");
+				return;
+			}
+			if (response.statusCode() == HttpStatus.NOT_FOUND.value()) {
+				// it finished and was removed in the meantime
+				return;
+			}
+			if (response.statusCode() == HttpStatus.CONFLICT.value()) {
+				throw new RuntimeException(errorFromResponse(response.body()));
+			}
+			logger.warn(testId + ": Node at " + nodeUrl + " refused to stop the test, HTTP status " + response.statusCode());
+		} catch (IOException e) {
+			logger.warn(testId + ": Failed to ask node at " + nodeUrl + " to stop the test", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		throw new RuntimeException("alias '" + alias + "' is in use by a test running on another node, which could not be stopped. Please try again shortly.");
+	}
+
+	private static String errorFromResponse(String body) {
+		try {
+			JsonElement error = JsonParser.parseString(body).getAsJsonObject().get("error");
+			if (error != null && error.isJsonPrimitive()) {
+				return OIDFJSON.getString(error);
+			}
+		} catch (RuntimeException e) {
+			// not the expected json, fall through
+		}
+		return "The alias is in use by a test running on another node, which refused to stop it.";
+	}
+
+	/**
+	 * Start a request to another node as the current user; the user is passed on as described in
+	 * ClusterForwardedUserFilter if there's a cluster secret, otherwise the caller's Authorization header (an API token,
+	 * which every node accepts) is.
+	 */
+	private HttpRequest.Builder requestToNode(String url, String forwardedBy, String authorization) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+			.timeout(CONNECT_TIMEOUT)
+			.header(FORWARDED_BY_HEADER, forwardedBy);
+
+		if (clusterSecret != null && !clusterSecret.isEmpty() && authenticationFacade.getPrincipal() != null) {
+			builder.header(ClusterForwardedUserFilter.SECRET_HEADER, clusterSecret);
+			builder.header(ClusterForwardedUserFilter.USER_HEADER, ClusterForwardedUserFilter.encodeUser(
+				authenticationFacade.getPrincipal(), authenticationFacade.getDisplayName(), authenticationFacade.isAdmin()));
+		} else if (authorization != null) {
+			builder.header("Authorization", authorization);
+		}
+		return builder;
+	}
+
+	private void forward(HttpServletRequest request, HttpServletResponse response, String nodeUrl) throws IOException {
+		String query = request.getQueryString();
+		URI uri = URI.create(nodeUrl + request.getRequestURI() + (query != null ? "?" + query : ""));
+
+		boolean forwardUser = clusterSecret != null && !clusterSecret.isEmpty()
+			&& request.getRequestURI().startsWith("/api/")
+			&& authenticationFacade.getPrincipal() != null;
+
+		byte[] body = readBody(request);
+		HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+			.timeout(REQUEST_TIMEOUT)
+			.method(request.getMethod(), body.length == 0 ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+
+		for (String name : Collections.list(request.getHeaderNames())) {
+			String lowerCaseName = name.toLowerCase(Locale.ROOT);
+			if (REQUEST_HEADERS_NOT_FORWARDED.contains(lowerCaseName) || (forwardUser && lowerCaseName.equals("authorization"))) {
+				continue;
+			}
+			for (String value : Collections.list(request.getHeaders(name))) {
+				builder.header(name, value);
+			}
+		}
+
+		// the forwarded-headers handling on this node has already applied any from the load balancer
+		builder.header("X-Forwarded-Proto", request.getScheme());
+		builder.header("X-Forwarded-Host", request.getServerName());
+		builder.header("X-Forwarded-Port", String.valueOf(request.getServerPort()));
+		builder.header("X-Forwarded-For", request.getRemoteAddr());
+		builder.header(FORWARDED_BY_HEADER, request.getLocalAddr());
+
+		if (forwardUser) {
+			builder.header(ClusterForwardedUserFilter.SECRET_HEADER, clusterSecret);
+			builder.header(ClusterForwardedUserFilter.USER_HEADER, ClusterForwardedUserFilter.encodeUser(
+				authenticationFacade.getPrincipal(), authenticationFacade.getDisplayName(), authenticationFacade.isAdmin()));
+		}
+
+		HttpResponse<byte[]> forwardedResponse;
+		try {
+			forwardedResponse = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+		} catch (IOException e) {
+			logger.error("Failed to forward " + request.getMethod() + " " + request.getRequestURI() + " to " + nodeUrl, e);
+			response.sendError(HttpStatus.BAD_GATEWAY.value(), "The node running this test could not be reached");
+			return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+			return;
+		}
+
+		response.setStatus(forwardedResponse.statusCode());
+		forwardedResponse.headers().map().forEach((name, values) -> {
+			String lowerCaseName = name.toLowerCase(Locale.ROOT);
+			if (RESPONSE_HEADERS_NOT_RELAYED.contains(lowerCaseName)) {
+				return;
+			}
+			for (String value : values) {
+				// the browser's session is with this node, so don't let the other node replace it
+				if (lowerCaseName.equals("set-cookie") && value.startsWith(sessionCookieName + "=")) {
+					continue;
+				}
+				response.addHeader(name, value);
+			}
+		});
+		response.setContentLength(forwardedResponse.body().length);
+		response.getOutputStream().write(forwardedResponse.body());
+	}
+
+	private static byte[] readBody(HttpServletRequest request) throws IOException {
+		byte[] body = request.getInputStream().readAllBytes();
+
+		if (body.length == 0 && request.getContentType() != null
+			&& MediaType.APPLICATION_FORM_URLENCODED.isCompatibleWith(MediaType.parseMediaType(request.getContentType()))) {
+			// the form may have already been read as parameters (see the same workaround in TestDispatcher), so put it
+			// back together, leaving out the parameters that came from the query string
+			Set<String> queryParams = request.getQueryString() == null
+				? Set.of()
+				: UriComponentsBuilder.newInstance().query(request.getQueryString()).build().getQueryParams().keySet();
+			List<String> formParams = new ArrayList<>();
+			request.getParameterMap().forEach((name, values) -> {
+				if (!queryParams.contains(name)) {
+					for (String value : values) {
+						formParams.add(URLEncoder.encode(name, StandardCharsets.UTF_8) + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8));
+					}
+				}
+			});
+			body = String.join("&", formParams).getBytes(StandardCharsets.UTF_8);
+		}
+
+		return body;
+	}
+}
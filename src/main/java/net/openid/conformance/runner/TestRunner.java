@@ -1,14 +1,21 @@
 package net.openid.conformance.runner;
 
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.vdurmont.semver4j.Semver;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.annotation.PostConstruct;
+import net.openid.conformance.CollapsingGsonHttpMessageConverter;
 import net.openid.conformance.condition.Condition;
+import net.openid.conformance.condition.util.PlanFetchCache;
 import net.openid.conformance.frontchannel.BrowserControl;
 import net.openid.conformance.info.ImageService;
 import net.openid.conformance.info.Plan;
@@ -19,6 +26,7 @@ import net.openid.conformance.logging.EventLog;
 import net.openid.conformance.logging.TestInstanceEventLog;
 import net.openid.conformance.security.AuthenticationFacade;
 import net.openid.conformance.testmodule.DataUtils;
+import net.openid.conformance.testmodule.DisablePlanFetchCache;
 import net.openid.conformance.testmodule.OIDFJSON;
 import net.openid.conformance.testmodule.TestFailureException;
 import net.openid.conformance.testmodule.TestInterruptedException;
@@ -53,12 +61,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -69,6 +71,7 @@ import java.util.stream.Collectors;
  * GET /api/runner/id: get test status
  * POST /api/runner/id: start test
  * DELETE /api/runner/id: cancel test
+ * DELETE /api/runner/id/alias: stop test so that a test on another node can take over its alias
  * GET /api/runner/browser/id: get front-channel external URLs
  * POST /api/runner/browser/id/visit: mark front-channel external URL as visited
  *
@@ -130,57 +133,53 @@ public class TestRunner implements DataUtils {
 	@Autowired
 	private VariantService variantService;
 
-	private ExecutorService executorService = Executors.newCachedThreadPool();
-	private ExecutorCompletionService<Object> executorCompletionService = new ExecutorCompletionService<>(executorService);
-	private FutureWatcher futureWatcher = new FutureWatcher();
+	@Autowired
+	private TestForwardingInterceptor testForwarding;
 
-	private class FutureWatcher implements Runnable {
-		private boolean running = false;
+	@Value("${fintechlabs.background_tasks.virtual_threads:false}")
+	private boolean useVirtualThreads;
 
-		@SuppressWarnings("UnusedMethod") // Unsure why this was created but never called
-		public void stop() {
-			this.running = false;
-		}
+	@Value("${fintechlabs.eventlog.recent_entries:500}")
+	private int recentLogEntries;
 
-		@Override
-		public void run() {
-			running = true;
-			while (running) {
-				try {
-					Future<?> future = executorCompletionService.poll(1, TimeUnit.SECONDS);
-					if (future != null && !future.isCancelled()) {
-						future.get();
-					}
-				} catch (InterruptedException e) {
-					// If we've been interrupted, then either it was on purpose, or something went very very wrong.
-					logger.error("Background task was interrupted", e);
-				} catch (ExecutionException e) {
-					if (e.getCause() instanceof TestInterruptedException) {
-						// This should always be the case for our BackgroundTasks
-						TestInterruptedException testException = (TestInterruptedException) e.getCause();
-
-						String testId = testException.getTestId();
-						TestModule test = support.getRunningTestById(testId);
-						if (test != null) {
-							// We can't just throw it, the Exception Handler Annotation is only for HTTP requests
-							handleTestInterruptedException(testException, support, "TestRunner.java background task");
-						} else {
-							logger.error("Caught an exception for testId '"+testId+"' but it doesn't seem to be running", e);
-						}
-					} else {
-						// There's not much more we can do as there's no way to get the testId; TestExecutionManager's
-						// BackgroundTask does it's best to make sure we don't follow any of these paths.
-						logger.error("Unexpected exception from future.get(): "+e.getMessage(), e);
-					}
+	@Value("${fintechlabs.plan_fetch_cache.enabled:false}")
+	private boolean planFetchCacheEnabled;
 
-				}
-			}
-		}
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private BackgroundTaskExecutor backgroundTaskExecutor;
+
+	// the available test modules can't change whilst the server is running, so only build the (large) list once
+	private final Supplier<JsonElement> availableTests = Suppliers.memoize(this::buildAvailableTests);
+
+	@PostConstruct
+	public void createBackgroundTaskExecutor() {
+		backgroundTaskExecutor = new BackgroundTaskExecutor(useVirtualThreads, this::handleBackgroundTaskFailure);
+		backgroundTaskExecutor.registerMetrics(meterRegistry);
 	}
 
-	@SuppressWarnings("FutureReturnValueIgnored")
-	public TestRunner() {
-		executorService.submit(futureWatcher);
+	/**
+	 * Called (on the background task's thread) when a background task throws an exception
+	 */
+	private void handleBackgroundTaskFailure(Throwable cause) {
+		if (cause instanceof TestInterruptedException) {
+			// This should always be the case for our BackgroundTasks
+			TestInterruptedException testException = (TestInterruptedException) cause;
+
+			String testId = testException.getTestId();
+			TestModule test = support.getRunningTestById(testId);
+			if (test != null) {
+				// We can't just throw it, the Exception Handler Annotation is only for HTTP requests
+				handleTestInterruptedException(testException, support, "TestRunner.java background task");
+			} else {
+				logger.error("Caught an exception for testId '"+testId+"' but it doesn't seem to be running", cause);
+			}
+		} else {
+			// There's not much more we can do as there's no way to get the testId; TestExecutionManager's
+			// BackgroundTask does it's best to make sure we don't follow any of these paths.
+			logger.error("Unexpected exception from background task: "+cause.getMessage(), cause);
+		}
 	}
 
 	@Operation(summary = "Get list of available TestModule names")
@@ -189,7 +188,10 @@ public class TestRunner implements DataUtils {
 	})
 	@GetMapping(value = "/runner/available", produces = MediaType.APPLICATION_JSON_VALUE)
 	public ResponseEntity<Object> getAvailableTests(Model m) {
+		return new ResponseEntity<>(availableTests.get(), HttpStatus.OK);
+	}
 
+	private JsonElement buildAvailableTests() {
 		List<?> available = variantService.getTestModules().stream()
 			.map(e -> args(
 				"testName", e.info.testName(),
@@ -200,7 +202,7 @@ public class TestRunner implements DataUtils {
 				"summary", e.info.summary()))
 			.collect(Collectors.toList());
 
-		return new ResponseEntity<>(available, HttpStatus.OK);
+		return CollapsingGsonHttpMessageConverter.getDbObjectCollapsingGson().toJsonTree(available);
 	}
 
 	@Operation(summary = "Create test module instance", description = "Normally a test plan should be created first. After a test is created, use /api/info/{testid} to wait for the test to be in the WAITING state before trying to interact with the test")
@@ -325,6 +327,14 @@ public class TestRunner implements DataUtils {
 
 		support.addRunningTest(id, test);
 
+		if (planFetchCacheEnabled && !Strings.isNullOrEmpty(planId)) {
+			if (test.getClass().isAnnotationPresent(DisablePlanFetchCache.class)) {
+				PlanFetchCache.registerUncachedTest(id, planId);
+			} else {
+				PlanFetchCache.registerTest(id, planId);
+			}
+		}
+
 		String alias = "";
 		String path;
 
@@ -374,7 +384,7 @@ public class TestRunner implements DataUtils {
 
 
 		// log the test creation event in the event log
-		eventLog.log(id, "TEST-RUNNER", test.getOwner(),
+		test.getEventLog().logOutsideBlock("TEST-RUNNER",
 			args("msg", "Test instance " + id + " created",
 				"result", Condition.ConditionResult.INFO,
 				"baseUrl", url,
@@ -426,49 +436,88 @@ public class TestRunner implements DataUtils {
 			TestModule test = support.getRunningTestByAliasIgnoringLoggedInUser(alias);
 
 			if (test != null) {
-				boolean testHasStopped = TestModule.Status.FINISHED == test.getStatus() || TestModule.Status.INTERRUPTED == test.getStatus();
-				boolean oldTestIsOwnedByCurrentUser = test.getOwner().equals(authenticationFacade.getPrincipal());
-
-				if (authenticationFacade.isAdmin()) {
-					// admin users are allowed to claim alias at any time
-				} else {
-					if (!oldTestIsOwnedByCurrentUser) {
-						long idleTimeRequiredSeconds;
-						if (testHasStopped) {
-							// there are no tests running, but give the user a small grace window to start a new test
-							idleTimeRequiredSeconds = 30;
-						} else {
-							// user is hopefully actively testing and a few of the tests have sleeps of many minutes
-							idleTimeRequiredSeconds = 6 * 60;
-						}
-						long idleForSeconds = Duration.between(test.getStatusUpdated(), Instant.now()).toSeconds();
-						if (idleForSeconds < idleTimeRequiredSeconds) {
-							throw new RuntimeException("alias '" + alias + "' is in use by a different user. Please ensure you are using a unique alias value in your test configuration, for example by including the name of your company in it. If you are unable to change the alias you must wait until the other user has completed their testing. If the other user takes no further action the alias will be released in " + (idleTimeRequiredSeconds - idleForSeconds) + " seconds.");
-						}
-					}
+				takeOverAlias(test, alias, id);
+			} else {
+				// the alias may belong to a test on another node, which applies the same rules before stopping it
+				String otherTestId = support.getTestIdForAlias(alias);
+				if (otherTestId != null) {
+					testForwarding.takeOverRemoteAlias(otherTestId, alias, id);
 				}
+			}
+		}
 
-				String message;
+		// there is a small race condition here if two users are trying to start a test at the same time; this method
+		// should probably be inside a mutex
+		support.addAlias(alias, id);
+	}
+
+	/**
+	 * Stop a test on this node so that a new test can use its alias, if the current user is allowed to take the alias
+	 * over from it
+	 *
+	 * @throws RuntimeException if the alias belongs to another user's test that hasn't been idle for long enough
+	 */
+	private void takeOverAlias(TestModule test, String alias, String newTestId) {
+		boolean testHasStopped = TestModule.Status.FINISHED == test.getStatus() || TestModule.Status.INTERRUPTED == test.getStatus();
+		boolean oldTestIsOwnedByCurrentUser = test.getOwner().equals(authenticationFacade.getPrincipal());
+
+		if (authenticationFacade.isAdmin()) {
+			// admin users are allowed to claim alias at any time
+		} else {
+			if (!oldTestIsOwnedByCurrentUser) {
+				long idleTimeRequiredSeconds;
 				if (testHasStopped) {
-					message = "Alias has now been claimed by another test";
+					// there are no tests running, but give the user a small grace window to start a new test
+					idleTimeRequiredSeconds = 30;
 				} else {
-					message = "Stopping test due to alias conflict - before this test finished, ";
-					if (oldTestIsOwnedByCurrentUser) {
-						message += "you have ";
-					} else {
-						message += "another tester has ";
-					}
-					message += "started another test using the same alias. You will need to rerun this test and ensure you complete all steps in this test before you move onto the next test. Please check that the alias in your test configuration is unique, for example include your company name in it.";
+					// user is hopefully actively testing and a few of the tests have sleeps of many minutes
+					idleTimeRequiredSeconds = 6 * 60;
+				}
+				long idleForSeconds = Duration.between(test.getStatusUpdated(), Instant.now()).toSeconds();
+				if (idleForSeconds < idleTimeRequiredSeconds) {
+					throw new RuntimeException("alias '" + alias + "' is in use by a different user. Please ensure you are using a unique alias value in your test configuration, for example by including the name of your company in it. If you are unable to change the alias you must wait until the other user has completed their testing. If the other user takes no further action the alias will be released in " + (idleTimeRequiredSeconds - idleForSeconds) + " seconds.");
 				}
-				eventLog.log(test.getId(), "TEST-RUNNER", test.getOwner(), args("msg", message, "alias", alias, "new_test_id", id));
+			}
+		}
 
-				test.stop(message); // stop the currently-running test
+		String message;
+		if (testHasStopped) {
+			message = "Alias has now been claimed by another test";
+		} else {
+			message = "Stopping test due to alias conflict - before this test finished, ";
+			if (oldTestIsOwnedByCurrentUser) {
+				message += "you have ";
+			} else {
+				message += "another tester has ";
 			}
+			message += "started another test using the same alias. You will need to rerun this test and ensure you complete all steps in this test before you move onto the next test. Please check that the alias in your test configuration is unique, for example include your company name in it.";
 		}
+		test.getEventLog().logOutsideBlock("TEST-RUNNER", args("msg", message, "alias", alias, "new_test_id", newTestId));
 
-		// there is a small race condition here if two users are trying to start a test at the same time; this method
-		// should probably be inside a mutex
-		support.addAlias(alias, id);
+		test.stop(message); // stop the currently-running test
+	}
+
+	@Operation(summary = "Stop a test so that a test on another node can take over its alias; used between the nodes of a cluster")
+	@ApiResponses(value = {
+		@ApiResponse(responseCode = "200", description = "Stopped the test"),
+		@ApiResponse(responseCode = "404", description = "The test isn't running on this node, or no longer has the alias"),
+		@ApiResponse(responseCode = "409", description = "The current user can't take the alias over from the test yet")
+	})
+	@DeleteMapping(value = "/runner/{id}/alias", produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> releaseTestAlias(@Parameter(description = "Id of the test using the alias") @PathVariable("id") String testId,
+		@Parameter(description = "The alias") @RequestParam("alias") String alias,
+		@Parameter(description = "Id of the test taking over the alias") @RequestParam("new_test_id") String newTestId) {
+		TestModule test = support.getRunningTestByAliasIgnoringLoggedInUser(alias);
+		if (test == null || !test.getId().equals(testId)) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+
+		try {
+			takeOverAlias(test, alias, newTestId);
+		} catch (RuntimeException e) {
+			return new ResponseEntity<>(stringMap("error", e.getMessage()), HttpStatus.CONFLICT);
+		}
+		return new ResponseEntity<>(HttpStatus.OK);
 	}
 
 	@Operation(summary = "Start test by id")
@@ -624,9 +673,9 @@ public class TestRunner implements DataUtils {
 
 		Map<String, String> owner = authenticationFacade.getPrincipal();
 
-		TestInstanceEventLog wrappedEventLog = new TestInstanceEventLog(id, owner, eventLog);
+		TestInstanceEventLog wrappedEventLog = new TestInstanceEventLog(id, owner, eventLog, recentLogEntries);
 
-		TestExecutionManager executionManager = new TestExecutionManager(id, executorCompletionService, authenticationFacade, support);
+		TestExecutionManager executionManager = new TestExecutionManager(id, backgroundTaskExecutor, authenticationFacade, support);
 		BrowserControl browser = new BrowserControl(config, id, wrappedEventLog, executionManager, imageService);
 
 		TestModule module;
@@ -58,4 +58,16 @@ public interface TestRunnerSupport {
 	 */
 	void removeRunningTest(String testId);
 
+	/**
+	 * When several nodes share the same database, requests for a test that is running on another node have to be
+	 * forwarded to that node.
+	 *
+	 * @param testId
+	 * @return the base url of the node the test is running on, or null if it's running on this node (or isn't running
+	 *         at all)
+	 */
+	default String getRemoteNodeUrl(String testId) {
+		return null;
+	}
+
 }
@@ -1,9 +1,5 @@
 package net.openid.conformance.security;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
-import net.openid.conformance.testmodule.OIDFJSON;
 import net.openid.conformance.token.TokenService;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.core.Authentication;
@@ -54,15 +50,14 @@ public class ApiTokenAuthenticationProvider implements AuthenticationProvider {
 
 	private DefaultOidcUser createOidcUserFromApiToken(Map<String, Object> tokenInfoMap, Set<GrantedAuthority> authorities) {
 
-		JsonObject tokenInfo = (JsonObject) new Gson().toJsonTree(tokenInfoMap);
-
-		JsonObject ownerClaims = tokenInfo.getAsJsonObject("owner");
-		String iss = OIDFJSON.getString(ownerClaims.get("iss"));
-		String sub = OIDFJSON.getString(ownerClaims.get("sub"));
+		// read the fields directly rather than converting the whole token document to json
+		Map<?, ?> ownerClaims = (Map<?, ?>) tokenInfoMap.get("owner");
+		String iss = (String) ownerClaims.get("iss");
+		String sub = (String) ownerClaims.get("sub");
 		Map<String, Object> idTokenClaims = Map.of("iss", iss, "sub", sub);
 		Instant instantAt = Instant.now();
-		JsonPrimitive expires = tokenInfo.getAsJsonPrimitive("expires");
-		Instant expiresAt = expires != null ? Instant.ofEpochMilli(OIDFJSON.getLong(tokenInfo.getAsJsonPrimitive("expires"))) : null;
+		Number expires = (Number) tokenInfoMap.get("expires");
+		Instant expiresAt = expires != null ? Instant.ofEpochMilli(expires.longValue()) : null;
 		OidcIdToken idToken = new OidcIdToken("dummy", instantAt, expiresAt, idTokenClaims);
 
 		OidcUserInfo oidcUserInfo = new OidcUserInfo(idTokenClaims);
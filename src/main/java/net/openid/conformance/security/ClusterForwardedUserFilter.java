@@ -0,0 +1,86 @@
+package net.openid.conformance.security;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import net.openid.conformance.testmodule.OIDFJSON;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.GenericFilterBean;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * When the suite runs as a cluster, an API request for a test running on another node is forwarded to that node (see
+ * TestForwardingInterceptor). Sessions aren't shared between nodes, so the forwarding node passes on who the user is
+ * in a header, along with the cluster secret to show the header can be trusted.
+ * <p>
+ * Requests without the secret are left alone, so this does nothing unless fintechlabs.cluster.secret is set.
+ */
+@Component
+public class ClusterForwardedUserFilter extends GenericFilterBean {
+
+	public static final String SECRET_HEADER = "X-Conformance-Cluster-Secret";
+	public static final String USER_HEADER = "X-Conformance-Forwarded-User";
+
+	@Value("${fintechlabs.cluster.secret:}")
+	private String secret;
+
+	/**
+	 * @return the value for USER_HEADER describing the given user
+	 */
+	public static String encodeUser(Map<String, String> principal, String name, boolean admin) {
+		JsonObject user = new JsonObject();
+		user.addProperty("sub", principal.get("sub"));
+		user.addProperty("iss", principal.get("iss"));
+		user.addProperty("name", name);
+		user.addProperty("admin", admin);
+		return user.toString();
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+		if (secret != null && !secret.isEmpty() && request instanceof HttpServletRequest httpRequest) {
+			String presentedSecret = httpRequest.getHeader(SECRET_HEADER);
+			String forwardedUser = httpRequest.getHeader(USER_HEADER);
+
+			if (presentedSecret != null && forwardedUser != null &&
+				MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8), presentedSecret.getBytes(StandardCharsets.UTF_8))) {
+
+				JsonObject user = JsonParser.parseString(forwardedUser).getAsJsonObject();
+
+				Set<GrantedAuthority> authorities = OIDFJSON.getBoolean(user.get("admin"))
+					? Set.of(OIDCAuthenticationFacade.ROLE_USER, OIDCAuthenticationFacade.ROLE_ADMIN)
+					: Set.of(OIDCAuthenticationFacade.ROLE_USER);
+
+				Map<String, Object> claims = new HashMap<>();
+				claims.put("sub", OIDFJSON.getString(user.get("sub")));
+				claims.put("iss", OIDFJSON.getString(user.get("iss")));
+				claims.put("name", OIDFJSON.getString(user.get("name")));
+
+				OidcIdToken idToken = new OidcIdToken("forwarded", Instant.now(), null, claims);
+
+				DefaultOidcUser oidcUser = new DefaultOidcUser(authorities, idToken, new OidcUserInfo(claims), "name");
+
+				SecurityContextHolder.getContext().setAuthentication(new OAuth2AuthenticationToken(oidcUser, authorities, "cluster"));
+			}
+		}
+		chain.doFilter(request, response);
+	}
+}
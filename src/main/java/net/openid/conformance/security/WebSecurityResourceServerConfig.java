@@ -40,6 +40,9 @@ public class WebSecurityResourceServerConfig {
 	@Autowired
 	private DummyUserFilter dummyUserFilter;
 
+	@Autowired
+	private ClusterForwardedUserFilter clusterForwardedUserFilter;
+
 	@Bean
 	protected SecurityFilterChain filterChainResourceServer(HttpSecurity http, ApiTokenAuthenticationProvider apiTokenAuthenticationProvider) throws Exception {
 
@@ -78,6 +81,9 @@ public class WebSecurityResourceServerConfig {
 			http.addFilterBefore(dummyUserFilter, BearerTokenAuthenticationFilter.class);
 		}
 
+		// requests forwarded from another node in the cluster
+		http.addFilterBefore(clusterForwardedUserFilter, BearerTokenAuthenticationFilter.class);
+
 		return http.build();
 	}
 
@@ -113,7 +119,7 @@ public class WebSecurityResourceServerConfig {
 
 	private RequestMatcher getPublicMatcher() {
 		// Matches following paths IIF the ?public query parameter is present
-		return new AndRequestMatcher(new OrRequestMatcher(new AntPathRequestMatcher("/api/info/?*", HttpMethod.GET), new AntPathRequestMatcher("/api/log", HttpMethod.GET), new AntPathRequestMatcher("/api/log/?*", HttpMethod.GET), new AntPathRequestMatcher("/api/log/export/?*", HttpMethod.GET), new AntPathRequestMatcher("/api/plan", HttpMethod.GET), new AntPathRequestMatcher("/api/plan/?*", HttpMethod.GET), new AntPathRequestMatcher("/api/plan/export/?*", HttpMethod.GET)), new PublicRequestMatcher());
+		return new AndRequestMatcher(new OrRequestMatcher(new AntPathRequestMatcher("/api/info/?*", HttpMethod.GET), new AntPathRequestMatcher("/api/log", HttpMethod.GET), new AntPathRequestMatcher("/api/log/?*", HttpMethod.GET), new AntPathRequestMatcher("/api/log/export/?*", HttpMethod.GET), new AntPathRequestMatcher("/api/log/?*/images/?*", HttpMethod.GET), new AntPathRequestMatcher("/api/plan", HttpMethod.GET), new AntPathRequestMatcher("/api/plan/?*", HttpMethod.GET), new AntPathRequestMatcher("/api/plan/export/?*", HttpMethod.GET)), new PublicRequestMatcher());
 	}
 
 	@Bean
@@ -6,9 +6,12 @@ import com.google.common.collect.ImmutableMap;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import net.openid.conformance.condition.Condition;
+import net.openid.conformance.condition.ConditionDescriptor;
 import net.openid.conformance.condition.ConditionError;
 import net.openid.conformance.condition.client.SleepUntilAuthReqExpires;
 import net.openid.conformance.condition.client.WaitFor5Seconds;
+import net.openid.conformance.condition.util.HttpClientCache;
+import net.openid.conformance.condition.util.PlanFetchCache;
 import net.openid.conformance.frontchannel.BrowserControl;
 import net.openid.conformance.info.ImageService;
 import net.openid.conformance.info.TestInfoService;
@@ -25,6 +28,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -302,9 +306,7 @@ public abstract class AbstractTestModule implements TestModule, DataUtils {
 			Condition condition = builder.getCondition();
 			if (condition == null) {
 				// create a new condition object from the class above
-				condition = builder.getConditionClass()
-					.getDeclaredConstructor()
-					.newInstance();
+				condition = ConditionDescriptor.forClass(builder.getConditionClass()).newInstance();
 			}
 			condition.setProperties(id, eventLog, builder.getOnFail(), builder.getRequirements());
 
@@ -387,7 +389,7 @@ public abstract class AbstractTestModule implements TestModule, DataUtils {
 					updateResultFromConditionFailure(builder.getOnFail());
 				}
 			}
-		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
+		} catch (ReflectiveOperationException | IllegalArgumentException | SecurityException e) {
 			logException(e);
 			logger.error(getId() + ": Couldn't create condition object", e);
 			throw new TestFailureException(getId(), "Fatal failure from condition: " + builder.getConditionClass().getSimpleName());
@@ -552,7 +554,19 @@ public abstract class AbstractTestModule implements TestModule, DataUtils {
 	}
 
 	protected void logFinalEnv() {
-		logger.info(getId() + ": Final environment: " + env);
+		// the (possibly large) string is built from a snapshot, so other threads of the test can carry on using the
+		// environment meanwhile. If the lock is held elsewhere (e.g. stop() called from the API whilst the test is
+		// running) this doesn't wait for it, as it never used to.
+		boolean locked = env.getLock().tryLock();
+		Environment finalEnv;
+		try {
+			finalEnv = env.snapshot();
+		} finally {
+			if (locked) {
+				env.getLock().unlock();
+			}
+		}
+		logger.info(getId() + ": Final environment: " + finalEnv);
 	}
 
 	@Override
@@ -818,6 +832,10 @@ public abstract class AbstractTestModule implements TestModule, DataUtils {
 				throw new TestFailureException(getId(), "Illegal test state; tried to move from " + oldStatus + " -> " + newStatus + " but 'result' is UNKNOWN");
 			}
 
+			// make sure everything logged so far is in the database before anyone can see the new status; e.g.
+			// run-test-plan.py fetches the logs as soon as it sees FINISHED
+			eventLog.flush();
+
 			this.status = newStatus;
 			testInfo.updateTestStatus(getId(), newStatus);
 
@@ -915,6 +933,11 @@ public abstract class AbstractTestModule implements TestModule, DataUtils {
 		return this.browser;
 	}
 
+	@Override
+	public TestInstanceEventLog getEventLog() {
+		return this.eventLog;
+	}
+
 	/**
 	 * @return the name
 	 */
@@ -935,8 +958,13 @@ public abstract class AbstractTestModule implements TestModule, DataUtils {
 			// db, which normally contains a ConditionResult.
 
 			logFinalEnv();
+			eventLog.flush();
 		}
 
+		// close the connections the test's conditions had open to other servers
+		HttpClientCache.evict(getId());
+		PlanFetchCache.unregisterTest(getId());
+
 		// This might interrupt the current thread, so don't do any logging after this
 		getTestExecutionManager().cancelAllBackgroundTasks();
 	}
@@ -1050,41 +1078,35 @@ public abstract class AbstractTestModule implements TestModule, DataUtils {
 	}
 
 	protected void waitForPlaceholders() {
-		// set up a listener to wait for either an error callback or an image upload
-		executionManager.runInBackground(() -> {
-			long delayMillis = 1000; // wait for a second before we check the first time
-
-			Thread.sleep(delayMillis);
+		// set up a listener to wait for either an error callback or an image upload; wait for a second before we check
+		// the first time
+		scheduleCheckForPlaceholders(Duration.ofSeconds(1));
+	}
 
-			while (true) {
+	private void scheduleCheckForPlaceholders(Duration delay) {
+		executionManager.schedule(delay, () -> {
+			// grab the lock before we check anything in case something is finishing up
+			acquireLock();
 
-				// grab the lock before we check anything in case something is finishing up
-				acquireLock();
+			// re-fetch the placeholders every check
+			List<String> remainingPlaceholders = imageService.getRemainingPlaceholders(getId(), true);
 
-				// re-fetch the placeholders every check
-				List<String> remainingPlaceholders = imageService.getRemainingPlaceholders(getId(), true);
-
-				if (getStatus().equals(Status.FINISHED) || getStatus().equals(Status.INTERRUPTED)) {
-					// if the test is finished/interrupted, nothing for us to do, stop looking
-					clearLock();
-					break;
-				}
-				if (remainingPlaceholders.isEmpty() && getStatus().equals(Status.WAITING)) {
-					// if the test is still waiting, but all the placeholders are gone, then we can call it finished, stop looking
-					clearLock();
-					fireTestFinishedInternal();
-					break;
-				}
-				// otherwise (test is waiting but placeholders are still there, or test is running, etc), check again in the future
+			if (getStatus().equals(Status.FINISHED) || getStatus().equals(Status.INTERRUPTED)) {
+				// if the test is finished/interrupted, nothing for us to do, stop looking
 				clearLock();
-
-				if (delayMillis < 30 * 1000) {
-					// backoff checks to every 30 seconds so we don't overload db or jvm
-					delayMillis *= 2;
-				}
-				Thread.sleep(delayMillis);
-
+				return "done";
 			}
+			if (remainingPlaceholders.isEmpty() && getStatus().equals(Status.WAITING)) {
+				// if the test is still waiting, but all the placeholders are gone, then we can call it finished, stop looking
+				clearLock();
+				fireTestFinishedInternal();
+				return "done";
+			}
+			// otherwise (test is waiting but placeholders are still there, or test is running, etc), check again in the future
+			clearLock();
+
+			// backoff checks to every 30 seconds so we don't overload db or jvm
+			scheduleCheckForPlaceholders(delay.getSeconds() < 30 ? delay.multipliedBy(2) : delay);
 
 			return "done";
 		});
@@ -0,0 +1,20 @@
+package net.openid.conformance.testmodule;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Stops a test module from using responses cached by other tests in its plan (see PlanFetchCache).
+ *
+ * For tests that check that a document changes while the test is running, e.g. that the server's JWKS has changed
+ * after the user rotated their keys, so must always fetch it from the server, and for tests that change a document
+ * the server fetches or that later tests in the plan would fetch, e.g. by rotating the suite's own keys. The responses
+ * cached for the plan are discarded when the test is created and again when it finishes.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DisablePlanFetchCache {
+
+}
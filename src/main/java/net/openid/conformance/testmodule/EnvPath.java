@@ -0,0 +1,83 @@
+package net.openid.conformance.testmodule;
+
+import com.google.common.base.Splitter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dot-separated path to an element within an object in the {@link Environment}, e.g. "server.token_endpoint", split
+ * into its segments ahead of time.
+ *
+ * Paths are looked up in the environment by nearly every condition, so the split paths are cached; passing a string
+ * path to the environment only costs a map lookup after the first time that path is used. Conditions can also hold
+ * paths as constants:
+ *
+ *   private static final EnvPath TOKEN_ENDPOINT = EnvPath.of("token_endpoint");
+ *   ...
+ *   env.getString("server", TOKEN_ENDPOINT);
+ */
+public final class EnvPath {
+
+	// paths are almost always string constants, so there are only a few thousand of them; but don't let paths that
+	// are built at runtime (e.g. from a claim name) grow the cache forever
+	private static final int MAX_CACHED_PATHS = 10000;
+
+	private static final Map<String, EnvPath> cache = new ConcurrentHashMap<>();
+
+	private final String path;
+
+	private final String[] segments;
+
+	private EnvPath(String path) {
+		this.path = path;
+		List<String> parts = Splitter.on('.').splitToList(path);
+		this.segments = parts.toArray(new String[0]);
+	}
+
+	/**
+	 * @param path the path, in dot-separated notation
+	 * @return the (possibly cached) compiled path
+	 */
+	public static EnvPath of(String path) {
+		EnvPath compiled = cache.get(path);
+		if (compiled == null) {
+			compiled = new EnvPath(path);
+			if (cache.size() < MAX_CACHED_PATHS) {
+				cache.putIfAbsent(path, compiled);
+			}
+		}
+		return compiled;
+	}
+
+	/**
+	 * @return the number of segments in the path; always at least one
+	 */
+	int size() {
+		return segments.length;
+	}
+
+	String segment(int index) {
+		return segments[index];
+	}
+
+	String lastSegment() {
+		return segments[segments.length - 1];
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof EnvPath other && path.equals(other.path);
+	}
+
+	@Override
+	public int hashCode() {
+		return path.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return path;
+	}
+}
@@ -1,8 +1,6 @@
 package net.openid.conformance.testmodule;
 
-import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
@@ -13,11 +11,11 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.reflect.TypeToken;
 
 import java.lang.reflect.Type;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -46,6 +44,11 @@ import java.util.concurrent.locks.ReentrantLock;
  * stored internally in a dedicated JSON object alongside all other objects. A native value and a JSON object can be stored using
  * the same key, but the two of these are unrelated to each other. Native value keys are never mapped.
  *
+ * A snapshot of the environment can be taken with snapshot(). This doesn't copy the stored objects; instead an object
+ * is copied the first time it's accessed (through getObject() or any of the path based accessors) in either the
+ * environment or the snapshot, so taking a snapshot only costs a copy of the index, and objects that aren't used
+ * afterwards are never copied.
+ *
  */
 public class Environment {
 
@@ -66,6 +69,9 @@ public class Environment {
 
 	private Map<String, String> keyMap = new HashMap<>();
 
+	// keys of the stored objects that are shared with a snapshot or another key, and must be copied before they can be modified
+	private Set<String> sharedKeys = new HashSet<>();
+
 
 	/**
 	 * Check to see if there is an object in the Environment referenced by the given key. If
@@ -93,7 +99,14 @@ public class Environment {
 	 * @return the stored object if it exists, null if it does not
 	 */
 	public JsonObject getObject(String key) {
-		return store.get(getEffectiveKey(key));
+		String effectiveKey = getEffectiveKey(key);
+		JsonObject o = store.get(effectiveKey);
+		if (o != null && !sharedKeys.isEmpty() && sharedKeys.remove(effectiveKey)) {
+			// the caller may modify the object, so it can no longer be shared with a snapshot or another key
+			o = o.deepCopy();
+			store.put(effectiveKey, o);
+		}
+		return o;
 	}
 
 	/**
@@ -106,7 +119,9 @@ public class Environment {
 	 * @param key the object ID to removeObject, will be checked against any mapped keys
 	 */
 	public void removeObject(String key) {
-		store.remove(getEffectiveKey(key));
+		String effectiveKey = getEffectiveKey(key);
+		store.remove(effectiveKey);
+		sharedKeys.remove(effectiveKey);
 	}
 
 
@@ -123,22 +138,21 @@ public class Environment {
 	 * @return the stored object
 	 */
 	public JsonObject putObject(String key, JsonObject value) {
-		return store.put(getEffectiveKey(key), value);
+		String effectiveKey = getEffectiveKey(key);
+		sharedKeys.remove(effectiveKey);
+		return store.put(effectiveKey, value);
 	}
 
-	private void putElement(String key, String path, JsonElement value) {
+	private void putElement(String key, EnvPath path, JsonElement value) {
 		JsonObject o = getObject(key);
 		if (o == null) {
 			o = new JsonObject();
 			putObject(key, o);
 		}
 
-		ArrayList<String> pathSegments = Lists.newArrayList(Splitter.on('.').split(path));
-		int lastIndex = pathSegments.size() - 1;
-		String lastSegment = pathSegments.get(lastIndex);
-		pathSegments.remove(lastIndex);
-
-		for (String pathSegment: pathSegments) {
+		int lastIndex = path.size() - 1;
+		for (int i = 0; i < lastIndex; i++) {
+			String pathSegment = path.segment(i);
 			JsonElement nextO = o.get(pathSegment);
 			if (nextO == null) {
 				nextO = new JsonObject();
@@ -151,34 +165,47 @@ public class Environment {
 			}
 			o = (JsonObject) nextO;
 		}
-		o.add(lastSegment, value);
+		o.add(path.lastSegment(), value);
 	}
 
 	public void putObject(String key, String path, JsonObject value) {
+		putObject(key, EnvPath.of(path), value);
+	}
+
+	public void putObject(String key, EnvPath path, JsonObject value) {
 		putElement(key, path, value);
 	}
 
 	public void putArray(String key, String path, JsonArray value) {
+		putArray(key, EnvPath.of(path), value);
+	}
+
+	public void putArray(String key, EnvPath path, JsonArray value) {
 		putElement(key, path, value);
 	}
 
 	public void putString(String key, String path, String value) {
+		putString(key, EnvPath.of(path), value);
+	}
+
+	public void putString(String key, EnvPath path, String value) {
 		putElement(key, path, new JsonPrimitive(value));
 	}
 
 	public void removeElement(String key, String path) {
+		removeElement(key, EnvPath.of(path));
+	}
+
+	public void removeElement(String key, EnvPath path) {
 
 		JsonObject o = getObject(key);
 		if (o == null) {
 			throw new NoSuchElementException("No object with key %s found in path %s".formatted(key, path));
 		}
 
-		ArrayList<String> pathSegments = Lists.newArrayList(Splitter.on('.').split(path));
-		int lastIndex = pathSegments.size() - 1;
-		String lastSegment = pathSegments.get(lastIndex);
-		pathSegments.remove(lastIndex);
-
-		for (String pathSegment: pathSegments) {
+		int lastIndex = path.size() - 1;
+		for (int i = 0; i < lastIndex; i++) {
+			String pathSegment = path.segment(i);
 			JsonElement nextO = o.get(pathSegment);
 			if (nextO == null) {
 				throw new NoSuchElementException("No object with key %s found in path %s".formatted(key, path));
@@ -190,7 +217,7 @@ public class Environment {
 			}
 			o = (JsonObject) nextO;
 		}
-		o.remove(lastSegment);
+		o.remove(path.lastSegment());
 	}
 
 	public JsonObject putObjectFromJsonString(String key, String json) {
@@ -228,6 +255,17 @@ public class Environment {
 	 * @return the element within the object if found, null if the object is not found, or null if no element is found at the given path within the object
 	 */
 	public JsonElement getElementFromObject(String key, String path) {
+		return getElementFromObject(key, EnvPath.of(path));
+	}
+
+	/**
+	 * See getElementFromObject(String, String)
+	 *
+	 * @param key the object identifier to look up, may be mapped; see getObject(String)
+	 * @param path the path within the object to search
+	 * @return the element within the object if found, null if the object is not found, or null if no element is found at the given path within the object
+	 */
+	public JsonElement getElementFromObject(String key, EnvPath path) {
 
 		// get the object we're looking for and recursively start our walk here
 		JsonElement e = getObject(key);
@@ -236,22 +274,13 @@ public class Environment {
 			return null;
 		}
 
-		Iterable<String> parts = Splitter.on('.').split(path);
-		Iterator<String> it = parts.iterator();
-
-		while (it.hasNext()) {
-			String p = it.next();
+		int lastIndex = path.size() - 1;
+		for (int i = 0; i <= lastIndex; i++) {
 			if (e.isJsonObject()) {
-				JsonObject o = e.getAsJsonObject();
-				if (o.has(p)) {
-					e = o.get(p); // found the next level
-					if (!it.hasNext()) {
-						// we've reached a leaf at the right part of the key, return what we found
-						return e;
-					}
-				} else {
+				e = e.getAsJsonObject().get(path.segment(i));
+				if (e == null) {
 					// didn't find it, stop processing
-					break;
+					return null;
 				}
 			} else {
 				throw new UnexpectedTypeException("An object is required for %s.%s but %s was found whilst traversing the path".formatted(
@@ -259,8 +288,8 @@ public class Environment {
 			}
 		}
 
-		// didn't find it
-		return null;
+		// we've reached a leaf at the right part of the key, return what we found
+		return e;
 
 	}
 
@@ -279,7 +308,17 @@ public class Environment {
 	 * @throws UnexpectedTypeException if the element is not the appropriate native type
 	 */
 	public String getString(String key, String path) {
-		JsonElement e = getElementFromObject(key, path);
+		return stringValue(getElementFromObject(key, path), key, path);
+	}
+
+	/**
+	 * See getString(String, String)
+	 */
+	public String getString(String key, EnvPath path) {
+		return stringValue(getElementFromObject(key, path), key, path);
+	}
+
+	private static String stringValue(JsonElement e, String key, Object path) {
 		if (e == null) {
 			// we didn't find it
 			return null;
@@ -308,7 +347,17 @@ public class Environment {
 	 * @throws UnexpectedTypeException if the element is not the appropriate native type
 	 */
 	public Integer getInteger(String key, String path) {
-		JsonElement e = getElementFromObject(key, path);
+		return integerValue(getElementFromObject(key, path), key, path);
+	}
+
+	/**
+	 * See getInteger(String, String)
+	 */
+	public Integer getInteger(String key, EnvPath path) {
+		return integerValue(getElementFromObject(key, path), key, path);
+	}
+
+	private static Integer integerValue(JsonElement e, String key, Object path) {
 		if (e == null) {
 			return null;
 		}
@@ -338,7 +387,17 @@ public class Environment {
 	 */
 
 	public Boolean getBoolean(String key, String path) {
-		JsonElement e = getElementFromObject(key, path);
+		return booleanValue(getElementFromObject(key, path), key, path);
+	}
+
+	/**
+	 * See getBoolean(String, String)
+	 */
+	public Boolean getBoolean(String key, EnvPath path) {
+		return booleanValue(getElementFromObject(key, path), key, path);
+	}
+
+	private static Boolean booleanValue(JsonElement e, String key, Object path) {
 		if (e == null) {
 			return null;
 		}
@@ -366,7 +425,17 @@ public class Environment {
 	 * @throws UnexpectedTypeException if the element is not the appropriate native type
 	 */
 	public Long getLong(String key, String path) {
-		JsonElement e = getElementFromObject(key, path);
+		return longValue(getElementFromObject(key, path), key, path);
+	}
+
+	/**
+	 * See getLong(String, String)
+	 */
+	public Long getLong(String key, EnvPath path) {
+		return longValue(getElementFromObject(key, path), key, path);
+	}
+
+	private static Long longValue(JsonElement e, String key, Object path) {
 		if (e == null) {
 			return null;
 		}
@@ -397,6 +466,49 @@ public class Environment {
 		return lock;
 	}
 
+	/**
+	 * Take a snapshot of the current contents of the environment, including mapped keys and native values.
+	 *
+	 * This is cheap even for a large environment, as the stored objects are shared until they're next accessed through
+	 * either environment. Objects obtained from this environment before the snapshot was taken must not be modified
+	 * afterwards, as that would change the snapshot too.
+	 *
+	 * The caller should hold the lock, or otherwise be sure the environment isn't being changed by another thread.
+	 *
+	 * @return a new environment with the same contents as this one, which can be read and modified without affecting
+	 * this one
+	 */
+	public Environment snapshot() {
+		Environment snapshot = new Environment();
+		snapshot.store = new HashMap<>(store);
+		snapshot.keyMap = new HashMap<>(keyMap);
+		snapshot.sharedKeys = new HashSet<>(store.keySet());
+		sharedKeys.addAll(store.keySet());
+		return snapshot;
+	}
+
+	/**
+	 * Store a copy of an object under another key, e.g. so that a condition can change the copy and the original can
+	 * be put back afterwards. Like snapshot(), the object is shared until it's next accessed through either key.
+	 *
+	 * @param fromKey the object to copy, will be checked against any mapped keys
+	 * @param toKey the key to store the copy as, will be checked against any mapped keys
+	 * @return the copy, which is null if there's no object with fromKey
+	 */
+	public JsonObject copyObject(String fromKey, String toKey) {
+		String effectiveFromKey = getEffectiveKey(fromKey);
+		JsonObject o = store.get(effectiveFromKey);
+		if (o == null) {
+			removeObject(toKey);
+			return null;
+		}
+		String effectiveToKey = getEffectiveKey(toKey);
+		store.put(effectiveToKey, o);
+		sharedKeys.add(effectiveFromKey);
+		sharedKeys.add(effectiveToKey);
+		return o;
+	}
+
 	/**
 	 * If the key is mapped to another value, get the underlying value. Otherwise return the input key itself.
 	 *
@@ -122,6 +122,11 @@ public interface TestModule {
 	 */
 	BrowserControl getBrowser();
 
+	/**
+	 * @return the event log for this test
+	 */
+	TestInstanceEventLog getEventLog();
+
 	/**
 	 * @return the associated execution manager
 	 */
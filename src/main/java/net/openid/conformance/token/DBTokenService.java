@@ -1,21 +1,29 @@
 package net.openid.conformance.token;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.IndexOptions;
 import net.openid.conformance.security.AuthenticationFacade;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.bson.Document;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @SuppressWarnings("rawtypes")
@@ -32,6 +40,26 @@ public class DBTokenService implements TokenService {
 	@Autowired
 	private AuthenticationFacade authenticationFacade;
 
+	@Value("${fintechlabs.api_token_cache_seconds:10}")
+	private long tokenCacheSeconds;
+
+	@Value("${fintechlabs.api_token_cache_size:10000}")
+	private long tokenCacheSize;
+
+	// Tokens are looked up on every API call made with one (e.g. CI scripts polling test status), so keep recently used
+	// tokens in memory. The cache is keyed by a hash of the token, and the 'token' field is removed from the cached
+	// documents, so the tokens themselves aren't kept in memory. Entries are removed as soon as the token is deleted on
+	// this node, but another node may still accept a deleted token for up to tokenCacheSeconds.
+	private Cache<String, Document> tokenCache;
+
+	@PostConstruct
+	public void createTokenCache() {
+		tokenCache = CacheBuilder.newBuilder()
+			.maximumSize(tokenCacheSize)
+			.expireAfterWrite(tokenCacheSeconds, TimeUnit.SECONDS)
+			.build();
+	}
+
 	@Override
 	public Map createToken(boolean permanent) {
 
@@ -57,7 +85,11 @@ public class DBTokenService implements TokenService {
 		Criteria criteria = new Criteria("_id").is(id);
 		criteria.and("owner").is(authenticationFacade.getPrincipal());
 		Query query = new Query(criteria);
-		return mongoTemplate.remove(query, COLLECTION).wasAcknowledged();
+		boolean removed = mongoTemplate.remove(query, COLLECTION).wasAcknowledged();
+
+		tokenCache.asMap().values().removeIf(token -> Objects.equals(token.get("_id"), id));
+
+		return removed;
 	}
 
 	@Override
@@ -76,10 +108,34 @@ public class DBTokenService implements TokenService {
 	@Override
 	public Map findToken(String token) {
 
+		String key = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+
+		Document tokenInfo = tokenCache.getIfPresent(key);
+		if (tokenInfo != null) {
+			if (!hasExpired(tokenInfo)) {
+				return tokenInfo;
+			}
+			tokenCache.invalidate(key);
+		}
+
 		Criteria criteria = new Criteria("token").is(token);
 		Query query = new Query(criteria);
 
-		return mongoTemplate.getCollection(COLLECTION).find(query.getQueryObject()).first();
+		tokenInfo = mongoTemplate.getCollection(COLLECTION).find(query.getQueryObject()).first();
+		if (tokenInfo != null) {
+			// the caller already has the token, and it isn't needed to authenticate them
+			tokenInfo.remove("token");
+		}
+		// unknown tokens aren't cached, so a newly created token can be used straight away
+		if (tokenInfo != null && !hasExpired(tokenInfo)) {
+			tokenCache.put(key, tokenInfo);
+		}
+		return tokenInfo;
+	}
+
+	private static boolean hasExpired(Document tokenInfo) {
+		Number expires = (Number) tokenInfo.get("expires");
+		return expires != null && expires.longValue() <= System.currentTimeMillis();
 	}
 
 	@Override
@@ -0,0 +1,70 @@
+package net.openid.conformance.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import net.openid.conformance.testmodule.OIDFJSON;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+
+/**
+ * Converts GSON JsonElements to Jackson JsonNodes (e.g. for JSON schema validation), without serializing them to a
+ * JSON string and parsing that back.
+ *
+ * Numbers become the same node types that Jackson's parser would give for their JSON representation.
+ */
+public class GsonJsonNodeAdapter {
+
+	private static final JsonNodeFactory factory = JsonNodeFactory.instance;
+
+	private GsonJsonNodeAdapter() {
+	}
+
+	public static JsonNode toJsonNode(JsonElement element) {
+		if (element == null || element.isJsonNull()) {
+			return factory.nullNode();
+		}
+		if (element.isJsonObject()) {
+			ObjectNode node = factory.objectNode();
+			for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+				node.set(entry.getKey(), toJsonNode(entry.getValue()));
+			}
+			return node;
+		}
+		if (element.isJsonArray()) {
+			ArrayNode node = factory.arrayNode();
+			for (JsonElement item : element.getAsJsonArray()) {
+				node.add(toJsonNode(item));
+			}
+			return node;
+		}
+		JsonPrimitive primitive = element.getAsJsonPrimitive();
+		if (primitive.isBoolean()) {
+			return factory.booleanNode(OIDFJSON.getBoolean(primitive));
+		}
+		if (primitive.isNumber()) {
+			return numberNode(OIDFJSON.getNumber(primitive).toString());
+		}
+		return factory.textNode(OIDFJSON.getString(primitive));
+	}
+
+	private static JsonNode numberNode(String number) {
+		if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+			BigInteger value = new BigInteger(number);
+			if (value.bitLength() < 32) {
+				return factory.numberNode(value.intValue());
+			}
+			if (value.bitLength() < 64) {
+				return factory.numberNode(value.longValue());
+			}
+			return factory.numberNode(value);
+		}
+		// Jackson's default is to read non-integers as doubles
+		return factory.numberNode(new BigDecimal(number).doubleValue());
+	}
+}
@@ -0,0 +1,97 @@
+package net.openid.conformance.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.Ed25519Verifier;
+import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.jwk.AsymmetricJWK;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.jwk.SecretJWK;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Caches parsed JWK sets, and the JWSVerifiers created from their keys.
+ *
+ * The same JWKS (usually the server's) is used to check the signatures on many tokens in a test, and in every test in
+ * a plan, so rather than parsing it and creating verifiers for its keys for every signature they are cached, keyed on
+ * the content of the JWKS and the key. Nimbus JWKSets and verifiers are immutable, so they can be shared between tests.
+ */
+public class JWKCache {
+
+	private static final Duration EXPIRY = Duration.ofHours(1);
+
+	private static final Cache<HashCode, JWKSet> jwkSets = CacheBuilder.newBuilder()
+		.expireAfterAccess(EXPIRY)
+		.maximumSize(1000)
+		.build();
+
+	// empty if no verifier can be created for the key
+	private static final Cache<VerifierKey, Optional<JWSVerifier>> verifiers = CacheBuilder.newBuilder()
+		.expireAfterAccess(EXPIRY)
+		.maximumSize(1000)
+		.build();
+
+	private record VerifierKey(JWSAlgorithm alg, JWK key) {
+	}
+
+	private JWKCache() {
+	}
+
+	/**
+	 * The same as JWKSet.parse(), but returns the already parsed JWKSet if the same JWKS has been parsed before
+	 */
+	public static JWKSet parseJWKSet(String jwks) throws ParseException {
+		HashCode hash = Hashing.sha256().hashString(jwks, StandardCharsets.UTF_8);
+		JWKSet jwkSet = jwkSets.getIfPresent(hash);
+		if (jwkSet == null) {
+			jwkSet = JWKSet.parse(jwks);
+			jwkSets.put(hash, jwkSet);
+		}
+		return jwkSet;
+	}
+
+	/**
+	 * @return a verifier for signatures made with the given algorithm and key, or null if one can't be created (e.g.
+	 *         the key is for an unsupported curve)
+	 */
+	public static JWSVerifier getVerifier(JWSAlgorithm alg, JWK key) {
+		VerifierKey cacheKey = new VerifierKey(alg, key);
+		Optional<JWSVerifier> verifier = verifiers.getIfPresent(cacheKey);
+		if (verifier == null) {
+			verifier = Optional.ofNullable(createVerifier(alg, key));
+			verifiers.put(cacheKey, verifier);
+		}
+		return verifier.orElse(null);
+	}
+
+	private static JWSVerifier createVerifier(JWSAlgorithm alg, JWK key) {
+		try {
+			if (key instanceof OctetKeyPair) {
+				OctetKeyPair publicKey = OctetKeyPair.parse(key.toPublicJWK().toString());
+				if (Curve.Ed25519.equals(publicKey.getCurve())) {
+					return new Ed25519Verifier(publicKey);
+				}
+			} else if (key instanceof AsymmetricJWK asymmetricKey) {
+				return new DefaultJWSVerifierFactory().createJWSVerifier(new JWSHeader(alg), asymmetricKey.toPublicKey());
+			} else if (key instanceof SecretJWK secretKey) {
+				return new DefaultJWSVerifierFactory().createJWSVerifier(new JWSHeader(alg), secretKey.toSecretKey());
+			}
+		} catch (JOSEException | ParseException e) {
+			// unusable key
+		}
+		return null;
+	}
+}
@@ -1,5 +1,7 @@
 package net.openid.conformance.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.nimbusds.jose.JOSEException;
@@ -16,10 +18,18 @@ import com.nimbusds.jwt.JWTParser;
 import net.openid.conformance.testmodule.OIDFJSON;
 
 import java.text.ParseException;
-import java.util.regex.Pattern;
+import java.time.Duration;
 
 public class JWTUtil {
 
+	// the same token is often parsed several times in a test (e.g. when it's received, and again by conditions that
+	// check it), so the results of jwtStringToJsonObjectForEnvironment are kept for a while; each caller gets its own
+	// copy, as callers are free to modify the result
+	private static final Cache<String, JsonObject> parsedForEnvironment = CacheBuilder.newBuilder()
+		.expireAfterAccess(Duration.ofMinutes(10))
+		.maximumSize(1000)
+		.build();
+
 	/**
 	 * wrapper for Nimbus JWTParser
 	 * just in case we want to override something one day
@@ -35,16 +45,19 @@ public class JWTUtil {
 
 	public static void validateJwtContainsOnlyAllowedCharacters(String jwt) throws ParseException {
 		// the allowed characters is base64url plus '.'
-		String regex = "[.a-zA-Z0-9_-]";
 		for (int i = 0; i < jwt.length(); i++) {
 			char character = jwt.charAt(i);
-			if (!Pattern.matches(regex, String.valueOf(character))) {
+			if (!isAllowedCharacter(character)) {
 				throw new ParseException("The jwt is invalid because it contains the character %s that is neither a '.' nor one permitted in unpadded base64url".formatted(character), 0);
 			}
 		}
 
 	}
 
+	private static boolean isAllowedCharacter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '_' || c == '-';
+	}
+
 	/**
 	 * Also see jwtStringToJsonObjectForEnvironment
 	 * @param jwt
@@ -93,6 +106,11 @@ public class JWTUtil {
 	 * @throws ParseException
 	 */
 	public static JsonObject jwtStringToJsonObjectForEnvironment(String jwtAsString) throws ParseException {
+		JsonObject cached = getParsedForEnvironment(jwtAsString);
+		if (cached != null) {
+			return cached;
+		}
+
 		JWT token = JWTUtil.parseJWT(jwtAsString);
 
 		if(token instanceof EncryptedJWT) {
@@ -101,7 +119,17 @@ public class JWTUtil {
 		JsonObject header = JWTUtil.jwtHeaderAsJsonObject(token);
 		JsonObject claims = JWTUtil.jwtClaimsSetAsJsonObject(token);
 
-		return createJsonObjectForEnvironment(jwtAsString, header, claims);
+		return putParsedForEnvironment(jwtAsString, createJsonObjectForEnvironment(jwtAsString, header, claims));
+	}
+
+	private static JsonObject getParsedForEnvironment(String jwtAsString) {
+		JsonObject parsed = parsedForEnvironment.getIfPresent(jwtAsString);
+		return parsed == null ? null : parsed.deepCopy();
+	}
+
+	private static JsonObject putParsedForEnvironment(String jwtAsString, JsonObject parsed) {
+		parsedForEnvironment.put(jwtAsString, parsed.deepCopy());
+		return parsed;
 	}
 
 	private static JsonObject createJsonObjectForEnvironment(String jwtString, JsonObject header, JsonObject claims) {
@@ -121,6 +149,12 @@ public class JWTUtil {
 	 */
 	public static JsonObject jwtStringToJsonObjectForEnvironment(String jwtAsString, JsonObject client, JsonObject privateJwksWithEncKeys)
 		throws ParseException, JOSEException {
+		// only unencrypted tokens are ever cached
+		JsonObject cached = getParsedForEnvironment(jwtAsString);
+		if (cached != null) {
+			return cached;
+		}
+
 		JWT token = JWTUtil.parseJWT(jwtAsString);
 		if(token instanceof EncryptedJWT encryptedJWT) {
 			JsonObject jweHeader = JWTUtil.jwtHeaderAsJsonObject(token);
@@ -160,7 +194,7 @@ public class JWTUtil {
 		} else {
 			JsonObject header = JWTUtil.jwtHeaderAsJsonObject(token);
 			JsonObject claims = JWTUtil.jwtClaimsSetAsJsonObject(token);
-			return createJsonObjectForEnvironment(jwtAsString, header, claims);
+			return putParsedForEnvironment(jwtAsString, createJsonObjectForEnvironment(jwtAsString, header, claims));
 		}
 	}
 
@@ -0,0 +1,128 @@
+package net.openid.conformance.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.schema.JsonSchema;
+import com.networknt.schema.JsonSchemaFactory;
+import com.networknt.schema.SpecVersionDetector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled versions of the JSON schemas in src/main/resources/json-schemas
+ *
+ * Reading and compiling a schema is much slower than validating against it (and some of the schemas are large), so
+ * each schema is compiled once and then shared; JsonSchema instances are thread-safe once their validators have been
+ * initialized.
+ *
+ * Schemas are keyed by their classpath resource name and the schema mappings used to resolve the $refs in them.
+ */
+public class JsonSchemaRegistry {
+
+	public static final String SCHEMA_DIRECTORY = "json-schemas/";
+
+	// the ekyc schemas refer to each other using their published URLs; resolve those to our copies instead
+	public static final Map<String, String> EKYC_IDA_12_SCHEMA_MAPPINGS = Map.of(
+		"https://bitbucket.org/openid/ekyc-ida/raw/master/schema/", "resource:json-schemas/ekyc-ida/12/");
+
+	private static final Map<String, Map<String, String>> schemaMappingsByDirectory = Map.of(
+		SCHEMA_DIRECTORY + "ekyc-ida/12/", EKYC_IDA_12_SCHEMA_MAPPINGS);
+
+	private static final Logger logger = LoggerFactory.getLogger(JsonSchemaRegistry.class);
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private static final Map<Key, JsonSchema> schemas = new ConcurrentHashMap<>();
+
+	private JsonSchemaRegistry() {
+	}
+
+	/**
+	 * Get a schema, using the schema mappings for the directory the schema is in
+	 *
+	 * @param resource the classpath resource name, e.g. "json-schemas/ekyc-ida/12/verified_claims.json"
+	 */
+	public static JsonSchema getSchema(String resource) throws IOException {
+		return getSchema(resource, schemaMappingsFor(resource));
+	}
+
+	/**
+	 * Get a schema
+	 *
+	 * @param resource the classpath resource name, e.g. "json-schemas/ekyc-ida/12/verified_claims.json"
+	 * @param schemaMappings prefixes of $ref URIs to map to other URIs (see SchemaMappers.Builder.mapPrefix())
+	 */
+	public static JsonSchema getSchema(String resource, Map<String, String> schemaMappings) throws IOException {
+		try {
+			return schemas.computeIfAbsent(new Key(resource, Map.copyOf(schemaMappings)), JsonSchemaRegistry::compile);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Compile all the schemas in json-schemas, so the first test that uses each one doesn't have to wait.
+	 *
+	 * Failures are logged rather than thrown; they will happen again (and be reported in the test) when the schema is
+	 * used.
+	 */
+	public static void preload() {
+		Resource[] resources;
+		try {
+			resources = new PathMatchingResourcePatternResolver().getResources("classpath*:" + SCHEMA_DIRECTORY + "**/*.json");
+		} catch (IOException e) {
+			logger.warn("Unable to list JSON schemas to preload", e);
+			return;
+		}
+		for (Resource resource : resources) {
+			String name;
+			try {
+				String url = resource.getURL().toString();
+				name = url.substring(url.lastIndexOf("/" + SCHEMA_DIRECTORY) + 1);
+			} catch (IOException e) {
+				logger.warn("Unable to find name of JSON schema " + resource, e);
+				continue;
+			}
+			try {
+				getSchema(name);
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Unable to preload JSON schema " + name, e);
+			}
+		}
+		logger.info("Preloaded " + schemas.size() + " JSON schemas");
+	}
+
+	private static Map<String, String> schemaMappingsFor(String resource) {
+		String directory = resource.substring(0, resource.lastIndexOf('/') + 1);
+		return schemaMappingsByDirectory.getOrDefault(directory, Map.of());
+	}
+
+	private static JsonSchema compile(Key key) {
+		JsonNode schemaNode;
+		try (InputStream inputStream = new ClassPathResource(key.resource).getInputStream()) {
+			schemaNode = mapper.readTree(inputStream);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		JsonSchemaFactory factory = JsonSchemaFactory.getInstance(SpecVersionDetector.detect(schemaNode), builder ->
+			builder.schemaMappers(schemaMappers -> key.schemaMappings.forEach(schemaMappers::mapPrefix))
+		);
+		JsonSchema schema = factory.getSchema(schemaNode);
+		// otherwise the validators (including any $refs to other schemas) are created by the first validation
+		schema.initializeValidators();
+		return schema;
+	}
+
+	private record Key(String resource, Map<String, String> schemaMappings) {
+	}
+}
@@ -0,0 +1,317 @@
+package net.openid.conformance.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.JWKGenerator;
+import com.nimbusds.jose.jwk.gen.OctetKeyPairGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.Provider;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of freshly generated key pairs, topped up in the background, so that conditions don't have to wait for (in
+ * particular) RSA key generation while a test is running.
+ *
+ * Keys in the pool have no metadata (kid, use, alg etc); the generators returned by rsaKeyGenerator(),
+ * ecKeyGenerator() and octetKeyPairGenerator() take a key from the pool and add whatever the caller configured, so
+ * they can be used in place of the nimbus generators. Each key is only ever handed out once.
+ *
+ * A pool for a particular key type is only created the first time a key of that type is asked for. If the pool is
+ * empty, the key is generated on the caller's thread, exactly as it would have been without the pool.
+ */
+public class KeyPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(KeyPool.class);
+
+	private static final KeyPool INSTANCE = new KeyPool();
+
+	public static final int DEFAULT_SIZE = 8;
+
+	private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+	private final ExecutorService filler = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+		.setNameFormat("key-pool-%d")
+		.setDaemon(true)
+		.setPriority(Thread.MIN_PRIORITY)
+		.build());
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private volatile int size = DEFAULT_SIZE;
+
+	KeyPool() {
+	}
+
+	public static KeyPool getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param size the number of keys of each type to keep ready; 0 disables the pool
+	 */
+	public void setSize(int size) {
+		this.size = size;
+	}
+
+	public void registerMetrics(MeterRegistry registry) {
+		FunctionCounter.builder("conformance.key_pool.hits", hits, AtomicLong::get)
+			.description("Keys taken from the pool of pre-generated keys")
+			.register(registry);
+		FunctionCounter.builder("conformance.key_pool.misses", misses, AtomicLong::get)
+			.description("Keys that had to be generated on demand because the pool was empty")
+			.register(registry);
+		Gauge.builder("conformance.key_pool.available", this, KeyPool::getAvailableCount)
+			.description("Pre-generated keys ready to be used")
+			.register(registry);
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public int getAvailableCount() {
+		int available = 0;
+		for (Pool pool : pools.values()) {
+			available += pool.keys.size();
+		}
+		return available;
+	}
+
+	/**
+	 * Start generating keys of the given RSA key size in the background, so that they're ready before the first test
+	 * needs one
+	 */
+	public void prefillRSA(int keySize) {
+		pool("RSA-" + keySize, () -> new RSAKeyGenerator(keySize)).fill();
+	}
+
+	public RSAKey takeRSAKey(int keySize) throws JOSEException {
+		return (RSAKey) pool("RSA-" + keySize, () -> new RSAKeyGenerator(keySize)).take();
+	}
+
+	public ECKey takeECKey(Curve curve) throws JOSEException {
+		return takeECKey(curve, null);
+	}
+
+	/**
+	 * @param provider the JCA provider the keys are generated with, or null for the default; each provider has its own
+	 *                 pool
+	 */
+	public ECKey takeECKey(Curve curve, Provider provider) throws JOSEException {
+		String name = provider == null ? "EC-" + curve.getName() : "EC-" + curve.getName() + "-" + provider.getName();
+		return (ECKey) pool(name, () -> new ECKeyGenerator(curve).provider(provider)).take();
+	}
+
+	public OctetKeyPair takeOctetKeyPair(Curve curve) throws JOSEException {
+		return (OctetKeyPair) pool("OKP-" + curve.getName(), () -> new OctetKeyPairGenerator(curve)).take();
+	}
+
+	public static RSAKeyGenerator rsaKeyGenerator(int keySize) {
+		return new PooledRSAKeyGenerator(INSTANCE, keySize);
+	}
+
+	public static ECKeyGenerator ecKeyGenerator(Curve curve) {
+		return new PooledECKeyGenerator(INSTANCE, curve, null);
+	}
+
+	/**
+	 * As ecKeyGenerator(curve), for curves that need a particular provider (e.g. BouncyCastle for secp256k1); setting
+	 * the provider on the returned generator as well would bypass the pool
+	 */
+	public static ECKeyGenerator ecKeyGenerator(Curve curve, Provider provider) {
+		return new PooledECKeyGenerator(INSTANCE, curve, provider);
+	}
+
+	public static OctetKeyPairGenerator octetKeyPairGenerator(Curve curve) {
+		return new PooledOctetKeyPairGenerator(INSTANCE, curve);
+	}
+
+	private Pool pool(String name, KeySource source) {
+		return pools.computeIfAbsent(name, n -> new Pool(n, source));
+	}
+
+	private interface KeySource {
+		JWKGenerator<? extends JWK> newGenerator();
+	}
+
+	private class Pool {
+
+		private final String name;
+
+		private final KeySource source;
+
+		private final BlockingQueue<JWK> keys = new LinkedBlockingQueue<>();
+
+		private final AtomicBoolean filling = new AtomicBoolean();
+
+		Pool(String name, KeySource source) {
+			this.name = name;
+			this.source = source;
+		}
+
+		JWK take() throws JOSEException {
+			JWK key = keys.poll();
+			fill();
+			if (key != null) {
+				hits.incrementAndGet();
+				return key;
+			}
+			misses.incrementAndGet();
+			return source.newGenerator().generate();
+		}
+
+		void fill() {
+			if (keys.size() < size && filling.compareAndSet(false, true)) {
+				filler.execute(this::topUp);
+			}
+		}
+
+		private void topUp() {
+			try {
+				while (keys.size() < size) {
+					keys.add(source.newGenerator().generate());
+				}
+			} catch (JOSEException | RuntimeException e) {
+				// callers will generate their own keys until the next attempt
+				logger.error("Failed to generate " + name + " key for pool", e);
+			} finally {
+				filling.set(false);
+			}
+		}
+	}
+
+	/*
+	 * These copy everything the caller configured onto a key from the pool, in the same way as the nimbus generators
+	 * do. If the caller wants control over how the key itself is generated (a provider other than the pool's, random
+	 * source, key store), the pool isn't used.
+	 */
+
+	private static class PooledRSAKeyGenerator extends RSAKeyGenerator {
+
+		private final KeyPool keyPool;
+
+		private final int keySize;
+
+		PooledRSAKeyGenerator(KeyPool keyPool, int keySize) {
+			super(keySize);
+			this.keyPool = keyPool;
+			this.keySize = keySize;
+		}
+
+		@Override
+		public RSAKey generate() throws JOSEException {
+			if (provider != null || secureRandom != null || keyStore != null) {
+				return super.generate();
+			}
+			RSAKey.Builder builder = new RSAKey.Builder(keyPool.takeRSAKey(keySize))
+				.keyUse(use)
+				.keyOperations(ops)
+				.algorithm(alg)
+				.expirationTime(exp)
+				.notBeforeTime(nbf)
+				.issueTime(iat);
+			if (tprKid) {
+				builder.keyIDFromThumbprint();
+			} else {
+				builder.keyID(kid);
+			}
+			return builder.build();
+		}
+	}
+
+	private static class PooledECKeyGenerator extends ECKeyGenerator {
+
+		private final KeyPool keyPool;
+
+		private final Curve curve;
+
+		private final Provider poolProvider;
+
+		PooledECKeyGenerator(KeyPool keyPool, Curve curve, Provider poolProvider) {
+			super(curve);
+			this.keyPool = keyPool;
+			this.curve = curve;
+			this.poolProvider = poolProvider;
+			this.provider = poolProvider;
+		}
+
+		@Override
+		public ECKey generate() throws JOSEException {
+			if (!Objects.equals(provider, poolProvider) || secureRandom != null || keyStore != null) {
+				return super.generate();
+			}
+			ECKey.Builder builder = new ECKey.Builder(keyPool.takeECKey(curve, poolProvider))
+				.keyUse(use)
+				.keyOperations(ops)
+				.algorithm(alg)
+				.expirationTime(exp)
+				.notBeforeTime(nbf)
+				.issueTime(iat);
+			if (tprKid) {
+				builder.keyIDFromThumbprint();
+			} else {
+				builder.keyID(kid);
+			}
+			return builder.build();
+		}
+	}
+
+	private static class PooledOctetKeyPairGenerator extends OctetKeyPairGenerator {
+
+		private final KeyPool keyPool;
+
+		private final Curve curve;
+
+		PooledOctetKeyPairGenerator(KeyPool keyPool, Curve curve) {
+			super(curve);
+			this.keyPool = keyPool;
+			this.curve = curve;
+		}
+
+		@Override
+		public OctetKeyPair generate() throws JOSEException {
+			if (provider != null || secureRandom != null || keyStore != null) {
+				return super.generate();
+			}
+			OctetKeyPair.Builder builder = new OctetKeyPair.Builder(keyPool.takeOctetKeyPair(curve))
+				.keyUse(use)
+				.keyOperations(ops)
+				.algorithm(alg)
+				.expirationTime(exp)
+				.notBeforeTime(nbf)
+				.issueTime(iat);
+			if (tprKid) {
+				builder.keyIDFromThumbprint();
+			} else {
+				builder.keyID(kid);
+			}
+			return builder.build();
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package net.openid.conformance.variant;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The classes with @PublishTestModule, @PublishTestPlan or @VariantParameter, as found at build time by
+ * {@link VariantIndexProcessor}
+ *
+ * The index is a resource with one 'annotation=class' line per class. When the processor writes it into a directory of
+ * classes, it also records a fingerprint of the class files there; if the index is later loaded from that directory
+ * and the class files have changed since (e.g. an IDE has recompiled some of them without running the processor), the
+ * index is ignored rather than missing any test modules that were added.
+ */
+public class VariantIndex {
+
+	public static final String RESOURCE = "META-INF/conformance/variant-index";
+
+	static final String PUBLISH_TEST_MODULE = "net.openid.conformance.testmodule.PublishTestModule";
+	static final String PUBLISH_TEST_PLAN = "net.openid.conformance.plan.PublishTestPlan";
+	static final String VARIANT_PARAMETER = "net.openid.conformance.variant.VariantParameter";
+
+	static final String FINGERPRINT = "fingerprint";
+
+	private final Map<String, List<String>> classNamesByAnnotation;
+
+	private VariantIndex(Map<String, List<String>> classNamesByAnnotation) {
+		this.classNamesByAnnotation = classNamesByAnnotation;
+	}
+
+	/**
+	 * @return the index, or null if there isn't one on the classpath (e.g. when the classes were built by an IDE that
+	 * didn't run the processor), or if it's out of date
+	 */
+	public static VariantIndex load(ClassLoader classLoader) {
+		Map<String, List<String>> classNames = new HashMap<>();
+		boolean found = false;
+		try {
+			Enumeration<URL> resources = classLoader.getResources(RESOURCE);
+			while (resources.hasMoreElements()) {
+				found = true;
+				if (!read(resources.nextElement(), classNames)) {
+					return null;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to read " + RESOURCE, e);
+		}
+		return found ? new VariantIndex(classNames) : null;
+	}
+
+	/**
+	 * @return false if the index is out of date
+	 */
+	private static boolean read(URL url, Map<String, List<String>> classNames) throws IOException {
+		String fingerprint = null;
+		try (InputStream in = url.openStream();
+			 BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				String entry = line.trim();
+				if (entry.isEmpty() || entry.startsWith("#")) {
+					continue;
+				}
+				int separator = entry.indexOf('=');
+				if (separator < 0) {
+					throw new IOException("Invalid line in " + url + ": " + entry);
+				}
+				String key = entry.substring(0, separator);
+				if (key.equals(FINGERPRINT)) {
+					fingerprint = entry.substring(separator + 1);
+				} else {
+					classNames.computeIfAbsent(key, k -> new ArrayList<>()).add(entry.substring(separator + 1));
+				}
+			}
+		}
+
+		// class files in a jar can't change after the index was written, but those in a directory can
+		if (fingerprint == null || !"file".equals(url.getProtocol())) {
+			return true;
+		}
+		try {
+			Path classesDirectory = Path.of(url.toURI());
+			for (int i = 0; i < RESOURCE.split("/").length; i++) {
+				classesDirectory = classesDirectory.getParent();
+			}
+			return fingerprint.equals(fingerprint(classesDirectory));
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid location for " + RESOURCE + ": " + url, e);
+		}
+	}
+
+	/**
+	 * @return the number of class files in the directory, and when the most recent of them was last modified
+	 */
+	static String fingerprint(Path classesDirectory) throws IOException {
+		try (Stream<Path> files = Files.walk(classesDirectory)) {
+			long[] countAndLastModified = new long[2];
+			files.filter(f -> f.toString().endsWith(".class")).forEach(f -> {
+				try {
+					countAndLastModified[0]++;
+					countAndLastModified[1] = Math.max(countAndLastModified[1], Files.getLastModifiedTime(f).toMillis());
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			return countAndLastModified[0] + "/" + countAndLastModified[1];
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	public List<String> getClassNames(Class<? extends Annotation> annotationClass) {
+		return Collections.unmodifiableList(classNamesByAnnotation.getOrDefault(annotationClass.getName(), List.of()));
+	}
+}
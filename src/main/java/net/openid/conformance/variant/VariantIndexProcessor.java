@@ -0,0 +1,118 @@
+package net.openid.conformance.variant;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Annotation processor that writes the {@link VariantIndex} at build time, so VariantService doesn't have to scan the
+ * classpath for test modules, test plans and variant parameters when the suite starts.
+ *
+ * It's run by a separate maven-compiler-plugin execution after the main compile (it can't be run by the compile that
+ * builds it); see pom.xml. That execution passes the directory to write the index to as an option, as its own output
+ * directory has to be somewhere the compiler will never find any classes - otherwise it would decide there was nothing
+ * to do.
+ *
+ * Only the classes that classpath scanning would find are listed, i.e. concrete top level or static nested classes.
+ * Along with them it records a fingerprint of the class files in the output directory, which VariantIndex uses to
+ * spot when the index is out of date.
+ */
+@SupportedAnnotationTypes({
+	VariantIndex.PUBLISH_TEST_MODULE,
+	VariantIndex.PUBLISH_TEST_PLAN,
+	VariantIndex.VARIANT_PARAMETER
+})
+@SupportedOptions(VariantIndexProcessor.OUTPUT_DIRECTORY_OPTION)
+public class VariantIndexProcessor extends AbstractProcessor {
+
+	public static final String OUTPUT_DIRECTORY_OPTION = "variantIndex.outputDirectory";
+
+	// annotation name -> binary names of the classes with it; sorted so the index is the same for every build
+	private final Map<String, Set<String>> index = new TreeMap<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (TypeElement annotation : annotations) {
+			Set<String> classes = index.computeIfAbsent(annotation.getQualifiedName().toString(), k -> new TreeSet<>());
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (isCandidate(element)) {
+					classes.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+				}
+			}
+		}
+
+		if (roundEnv.processingOver()) {
+			writeIndex();
+		}
+
+		return false;
+	}
+
+	private static boolean isCandidate(Element element) {
+		if (element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.ENUM) {
+			return false;
+		}
+		if (element.getModifiers().contains(Modifier.ABSTRACT)) {
+			return false;
+		}
+		NestingKind nesting = ((TypeElement) element).getNestingKind();
+		return nesting == NestingKind.TOP_LEVEL
+			|| (nesting == NestingKind.MEMBER && element.getModifiers().contains(Modifier.STATIC));
+	}
+
+	private void writeIndex() {
+		String outputDirectory = processingEnv.getOptions().get(OUTPUT_DIRECTORY_OPTION);
+		try {
+			if (outputDirectory != null) {
+				Path file = Path.of(outputDirectory, VariantIndex.RESOURCE);
+				Files.createDirectories(file.getParent());
+				// the main compile has already written the class files here, so they can be fingerprinted
+				String fingerprint = VariantIndex.fingerprint(Path.of(outputDirectory));
+				try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+					writeIndex(writer);
+					writer.write(VariantIndex.FINGERPRINT + "=" + fingerprint + "\n");
+				}
+			} else {
+				FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", VariantIndex.RESOURCE);
+				try (Writer writer = file.openWriter()) {
+					writeIndex(writer);
+				}
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + VariantIndex.RESOURCE + ": " + e);
+		}
+	}
+
+	private void writeIndex(Writer writer) throws IOException {
+		writer.write("# Generated by " + VariantIndexProcessor.class.getName() + "; do not edit\n");
+		for (Map.Entry<String, Set<String>> entry : index.entrySet()) {
+			for (String className : entry.getValue()) {
+				writer.write(entry.getKey() + "=" + className + "\n");
+			}
+		}
+	}
+}
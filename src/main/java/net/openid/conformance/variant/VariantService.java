@@ -6,6 +6,8 @@ import net.openid.conformance.plan.PublishTestPlan;
 import net.openid.conformance.plan.TestPlan;
 import net.openid.conformance.testmodule.PublishTestModule;
 import net.openid.conformance.testmodule.TestModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.BeanDefinition;
@@ -42,6 +44,8 @@ import static java.util.stream.Collectors.*;
 public class VariantService {
 	private static final String SEARCH_PACKAGE = "net.openid";
 
+	private static final Logger logger = LoggerFactory.getLogger(VariantService.class);
+
 	private final Map<Class<?>, ParameterHolder<? extends Enum<?>>> variantParametersByClass;
 	private final Map<Class<?>, TestModuleHolder> testModulesByClass;
 	private final SortedMap<String, TestModuleHolder> testModulesByName;
@@ -54,16 +58,21 @@ public class VariantService {
 
 	public VariantService(Predicate<? super TestPlanHolder> byProfile) {
 
-		this.variantParametersByClass = inClassesWithAnnotation(VariantParameter.class)
+		VariantIndex index = VariantIndex.load(Thread.currentThread().getContextClassLoader());
+		if (index == null) {
+			logger.warn(VariantIndex.RESOURCE + " not found or out of date (the build didn't run VariantIndexProcessor?); scanning the classpath instead");
+		}
+
+		this.variantParametersByClass = inClassesWithAnnotation(index, VariantParameter.class)
 				.collect(toMap(identity(), c -> wrapParameter(c)));
 
-		this.testModulesByClass = inClassesWithAnnotation(PublishTestModule.class)
+		this.testModulesByClass = inClassesWithAnnotation(index, PublishTestModule.class)
 				.collect(toMap(identity(), c -> wrapModule(c)));
 
 		this.testModulesByName = testModulesByClass.values().stream()
 				.collect(toSortedMap("test module", m -> m.info.testName(), identity()));
 
-		this.testPlansByName = inClassesWithAnnotation(PublishTestPlan.class)
+		this.testPlansByName = inClassesWithAnnotation(index, PublishTestPlan.class)
 				.map(c -> wrapPlan(c))
 				.filter(byProfile)
 				.collect(toSortedMap("test plan", holder -> holder.info.testPlanName(), identity()));
@@ -105,11 +114,18 @@ public class VariantService {
 				.collect(toOrderedMap(Map.Entry::getKey, Map.Entry::getValue));
 	}
 
-	private static Stream<Class<?>> inClassesWithAnnotation(Class<? extends Annotation> annotationClass) {
-		ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
-		scanner.addIncludeFilter(new AnnotationTypeFilter(annotationClass));
+	private static Stream<Class<?>> inClassesWithAnnotation(VariantIndex index, Class<? extends Annotation> annotationClass) {
 		Stream.Builder<Class<?>> builder = Stream.builder();
 		try {
+			if (index != null) {
+				for (String className : index.getClassNames(annotationClass)) {
+					builder.accept(Class.forName(className));
+				}
+				return builder.build();
+			}
+
+			ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+			scanner.addIncludeFilter(new AnnotationTypeFilter(annotationClass));
 			for (BeanDefinition bd : scanner.findCandidateComponents(SEARCH_PACKAGE)) {
 				builder.accept(Class.forName(bd.getBeanClassName()));
 			}
@@ -8,6 +8,8 @@ import com.networknt.schema.JsonSchema;
 import com.networknt.schema.JsonSchemaFactory;
 import com.networknt.schema.SpecVersionDetector;
 import com.networknt.schema.ValidationMessage;
+import net.openid.conformance.util.GsonJsonNodeAdapter;
+import net.openid.conformance.util.JsonSchemaRegistry;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 
@@ -51,21 +53,30 @@ public class JsonSchemaValidation {
 	}
 
 	public JsonSchemaValidationResult validate(JsonObject jsonObject) throws IOException {
-		return validate(jsonObject.toString());
+		return validate(GsonJsonNodeAdapter.toJsonNode(jsonObject));
 	}
 
 	public JsonSchemaValidationResult validate(String jsonInput) throws IOException {
+		return validate(mapper.readTree(jsonInput));
+	}
 
-		JsonNode schemaNode = mapper.readTree(schemaResource.getInputStream());
+	public JsonSchemaValidationResult validate(JsonNode inputNode) throws IOException {
 
-		JsonSchemaFactory factory = JsonSchemaFactory.getInstance(SpecVersionDetector.detect(schemaNode), schemaBuilderCustomizer);
-		JsonSchema schema = factory.getSchema(schemaNode);
+		Set<ValidationMessage> errors = getSchema().validate(inputNode);
+
+		return new JsonSchemaValidationResult(errors);
+	}
 
-		JsonNode inputNode = mapper.readTree(jsonInput);
+	private JsonSchema getSchema() throws IOException {
+		if (schemaBuilderCustomizer == null && schemaResource instanceof ClassPathResource classPathResource) {
+			return JsonSchemaRegistry.getSchema(classPathResource.getPath());
+		}
 
-		Set<ValidationMessage> errors = schema.validate(inputNode);
+		// a customized factory may give a different schema, so can't use the shared one
+		JsonNode schemaNode = mapper.readTree(schemaResource.getInputStream());
 
-		return new JsonSchemaValidationResult(errors);
+		JsonSchemaFactory factory = JsonSchemaFactory.getInstance(SpecVersionDetector.detect(schemaNode), schemaBuilderCustomizer);
+		return factory.getSchema(schemaNode);
 	}
 
 	/**
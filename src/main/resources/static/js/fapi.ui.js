@@ -376,7 +376,7 @@ var FAPI_UI = {
 			return Promise.allSettled(promises);
 		},
 		//when you add a new value to this list also update net.openid.conformance.export.LogEntryHelper
-		visibleFields : ["msg", "src", "time", "result", "requirements", "upload", "testOwner", "testId", "http", "blockId", "startBlock"],
+		visibleFields : ["msg", "src", "time", "seq", "result", "requirements", "upload", "img_hash", "testOwner", "testId", "http", "blockId", "startBlock"],
 
 		availableTests : {},
 
@@ -388,6 +388,12 @@ var FAPI_UI = {
 
 		latestTestEntry: undefined,
 
+		latestTestSequence: undefined,
+
+		latestStartBlock: '',
+
+		logStream: null,
+
 		reloadPause: 100,
 
 		maxReloadPause: 5000, // cap at ~5s
@@ -573,6 +579,29 @@ var FAPI_UI = {
 			}
 		},
 
+		// Keeps track of the 'next' cursor returned by /api/log and /api/plan, so that when a DataTable moves on to
+		// the following page (with the same search and sort) the server can seek straight to it rather than skipping
+		// over all the earlier entries. Any other page is still requested by position.
+		cursorPager : function() {
+			var last = {};
+			var pending = {};
+			return {
+				request: function(params) {
+					if (last.next && params.start === last.start + last.length && params.length === last.length
+						&& params.search === last.search && params.order === last.order) {
+						params.after = last.next;
+					}
+					pending = _.clone(params);
+					return params;
+				},
+				response: function(json) {
+					last = pending;
+					last.next = json.next;
+					return json.data;
+				}
+			};
+		},
+
 	    // Hash to map requirement strings onto url
 	    // Each url must have the fragment necessary to form a link to a particular section of document
 		// When you add a new value to this list, also update net.openid.conformance.export.LogEntryHelper
@@ -0,0 +1,83 @@
+package net.openid.conformance.condition;
+
+import net.openid.conformance.testmodule.Environment;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ConditionDescriptor_UnitTest {
+
+	public static class AnnotatedCondition extends AbstractCondition {
+		@Override
+		@PreEnvironment(required = { "server", "client" }, strings = "nonce")
+		@PostEnvironment(required = "token_endpoint_response")
+		public Environment evaluate(Environment env) {
+			return env;
+		}
+	}
+
+	public static class UnannotatedCondition extends AbstractCondition {
+		@Override
+		public Environment evaluate(Environment env) {
+			return env;
+		}
+	}
+
+	public static class FailingConstructorCondition extends AbstractCondition {
+		public FailingConstructorCondition() {
+			throw new IllegalStateException("can't construct");
+		}
+
+		@Override
+		public Environment evaluate(Environment env) {
+			return env;
+		}
+	}
+
+	@Test
+	public void descriptor_is_created_once_per_class() {
+		assertSame(ConditionDescriptor.forClass(AnnotatedCondition.class), ConditionDescriptor.forClass(AnnotatedCondition.class));
+	}
+
+	@Test
+	public void annotations_are_read() {
+		ConditionDescriptor descriptor = ConditionDescriptor.forClass(AnnotatedCondition.class);
+
+		assertArrayEquals(new String[] { "server", "client" }, descriptor.getPreRequired());
+		assertArrayEquals(new String[] { "nonce" }, descriptor.getPreStrings());
+		assertArrayEquals(new String[] { "token_endpoint_response" }, descriptor.getPostRequired());
+		assertArrayEquals(new String[0], descriptor.getPostStrings());
+	}
+
+	@Test
+	public void missing_annotations_mean_no_requirements() {
+		ConditionDescriptor descriptor = ConditionDescriptor.forClass(UnannotatedCondition.class);
+
+		assertArrayEquals(new String[0], descriptor.getPreRequired());
+		assertArrayEquals(new String[0], descriptor.getPostStrings());
+	}
+
+	@Test
+	public void newInstance_creates_new_condition_each_time() throws Exception {
+		ConditionDescriptor descriptor = ConditionDescriptor.forClass(UnannotatedCondition.class);
+
+		Condition first = descriptor.newInstance();
+
+		assertInstanceOf(UnannotatedCondition.class, first);
+		assertNotSame(first, descriptor.newInstance());
+	}
+
+	@Test
+	public void newInstance_wraps_constructor_exceptions() {
+		ConditionDescriptor descriptor = ConditionDescriptor.forClass(FailingConstructorCondition.class);
+
+		InvocationTargetException e = assertThrows(InvocationTargetException.class, descriptor::newInstance);
+		assertInstanceOf(IllegalStateException.class, e.getCause());
+	}
+}
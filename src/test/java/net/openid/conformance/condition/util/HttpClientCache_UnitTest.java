@@ -0,0 +1,60 @@
+package net.openid.conformance.condition.util;
+
+import com.google.gson.JsonObject;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.io.CloseMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class HttpClientCache_UnitTest {
+
+	private static final String TEST_ID = "HTTP-CLIENT-CACHE-UNIT-TEST";
+
+	@AfterEach
+	public void tearDown() {
+		HttpClientCache.evict(TEST_ID);
+	}
+
+	@Test
+	public void clients_are_cached_per_mtls_identity_and_tls_restriction() {
+		JsonObject mtls = new JsonObject();
+		mtls.addProperty("cert", "a certificate");
+		CloseableHttpClient client = mock(CloseableHttpClient.class);
+
+		HttpClientCache.add(TEST_ID, mtls, true, client);
+
+		assertSame(client, HttpClientCache.get(TEST_ID, mtls.deepCopy(), true));
+		assertNull(HttpClientCache.get(TEST_ID, mtls, false));
+		assertNull(HttpClientCache.get(TEST_ID, null, true));
+		assertNull(HttpClientCache.get("another-test", mtls, true));
+	}
+
+	@Test
+	public void add_keeps_existing_client_and_closes_new_one() {
+		CloseableHttpClient first = mock(CloseableHttpClient.class);
+		CloseableHttpClient second = mock(CloseableHttpClient.class);
+
+		assertSame(first, HttpClientCache.add(TEST_ID, null, false, first));
+		assertSame(first, HttpClientCache.add(TEST_ID, null, false, second));
+
+		verify(second).close(CloseMode.GRACEFUL);
+		verify(first, never()).close(CloseMode.GRACEFUL);
+	}
+
+	@Test
+	public void evict_closes_the_clients_for_the_test() {
+		CloseableHttpClient client = mock(CloseableHttpClient.class);
+		HttpClientCache.add(TEST_ID, null, false, client);
+
+		HttpClientCache.evict(TEST_ID);
+
+		verify(client).close(CloseMode.GRACEFUL);
+		assertNull(HttpClientCache.get(TEST_ID, null, false));
+	}
+}
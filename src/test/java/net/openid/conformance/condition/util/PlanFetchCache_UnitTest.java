@@ -0,0 +1,151 @@
+package net.openid.conformance.condition.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PlanFetchCache_UnitTest {
+
+	private static final String URL = "https://server.example.com/.well-known/openid-configuration";
+
+	private RestTemplate restTemplate;
+
+	// the cache is static, so keep each test's plan separate
+	private String planId;
+
+	@BeforeEach
+	public void setUp() {
+		restTemplate = mock(RestTemplate.class);
+		planId = UUID.randomUUID().toString();
+		PlanFetchCache.registerTest("test1", planId);
+		PlanFetchCache.registerTest("test2", planId);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		PlanFetchCache.unregisterTest("test1");
+		PlanFetchCache.unregisterTest("test2");
+		PlanFetchCache.evictPlan(planId);
+	}
+
+	private ResponseEntity<String> response(HttpStatus status, HttpHeaders headers, String body) {
+		return new ResponseEntity<>(body, headers, status);
+	}
+
+	private void willRespond(ResponseEntity<String> first, ResponseEntity<String> second) {
+		when(restTemplate.exchange(eq(URL), eq(HttpMethod.GET), any(HttpEntity.class), eq(String.class)))
+			.thenReturn(first)
+			.thenReturn(second);
+	}
+
+	private void willRespond(ResponseEntity<String> response) {
+		when(restTemplate.exchange(eq(URL), eq(HttpMethod.GET), any(HttpEntity.class), eq(String.class)))
+			.thenReturn(response);
+	}
+
+	@Test
+	public void second_test_in_plan_uses_cached_response() {
+		ResponseEntity<String> fetched = response(HttpStatus.OK, new HttpHeaders(), "{}");
+		willRespond(fetched);
+
+		PlanFetchCache.Fetch first = PlanFetchCache.get("test1", restTemplate, URL, new HttpHeaders());
+		PlanFetchCache.Fetch second = PlanFetchCache.get("test2", restTemplate, URL, new HttpHeaders());
+
+		assertFalse(first.isFromCache());
+		assertTrue(second.isFromCache());
+		assertFalse(second.revalidated());
+		assertSame(fetched, second.response());
+		verify(restTemplate, times(1)).exchange(eq(URL), eq(HttpMethod.GET), any(HttpEntity.class), eq(String.class));
+	}
+
+	@Test
+	public void unregistered_test_always_fetches() {
+		willRespond(response(HttpStatus.OK, new HttpHeaders(), "{}"));
+
+		PlanFetchCache.get("test1", restTemplate, URL, new HttpHeaders());
+		PlanFetchCache.Fetch fetch = PlanFetchCache.get("another-test", restTemplate, URL, new HttpHeaders());
+
+		assertFalse(fetch.isFromCache());
+		verify(restTemplate, times(2)).exchange(eq(URL), eq(HttpMethod.GET), any(HttpEntity.class), eq(String.class));
+	}
+
+	@Test
+	public void uncached_test_discards_plan_responses_when_created_and_finished() {
+		willRespond(response(HttpStatus.OK, new HttpHeaders(), "{}"));
+
+		PlanFetchCache.get("test1", restTemplate, URL, new HttpHeaders());
+		PlanFetchCache.registerUncachedTest("rotate-keys", planId);
+		assertFalse(PlanFetchCache.get("test2", restTemplate, URL, new HttpHeaders()).isFromCache());
+		assertFalse(PlanFetchCache.get("rotate-keys", restTemplate, URL, new HttpHeaders()).isFromCache());
+
+		PlanFetchCache.unregisterTest("rotate-keys");
+		assertFalse(PlanFetchCache.get("test1", restTemplate, URL, new HttpHeaders()).isFromCache());
+		assertTrue(PlanFetchCache.get("test2", restTemplate, URL, new HttpHeaders()).isFromCache());
+		verify(restTemplate, times(4)).exchange(eq(URL), eq(HttpMethod.GET), any(HttpEntity.class), eq(String.class));
+	}
+
+	@Test
+	public void no_store_response_is_not_cached() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setCacheControl("no-store");
+		willRespond(response(HttpStatus.OK, headers, "{}"));
+
+		PlanFetchCache.get("test1", restTemplate, URL, new HttpHeaders());
+		PlanFetchCache.Fetch fetch = PlanFetchCache.get("test2", restTemplate, URL, new HttpHeaders());
+
+		assertFalse(fetch.isFromCache());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void expired_response_is_revalidated_with_etag() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setCacheControl("max-age=0");
+		headers.setETag("\"v1\"");
+		ResponseEntity<String> fetched = response(HttpStatus.OK, headers, "{}");
+		willRespond(fetched, response(HttpStatus.NOT_MODIFIED, new HttpHeaders(), null));
+
+		PlanFetchCache.get("test1", restTemplate, URL, new HttpHeaders());
+		PlanFetchCache.Fetch fetch = PlanFetchCache.get("test2", restTemplate, URL, new HttpHeaders());
+
+		assertTrue(fetch.isFromCache());
+		assertTrue(fetch.revalidated());
+		assertSame(fetched, fetch.response());
+
+		ArgumentCaptor<HttpEntity<?>> request = ArgumentCaptor.forClass(HttpEntity.class);
+		verify(restTemplate, times(2)).exchange(eq(URL), eq(HttpMethod.GET), request.capture(), eq(String.class));
+		assertEquals("\"v1\"", request.getAllValues().get(1).getHeaders().getIfNoneMatch().get(0));
+	}
+
+	@Test
+	public void different_request_headers_are_cached_separately() {
+		willRespond(response(HttpStatus.OK, new HttpHeaders(), "{}"));
+		HttpHeaders accept = new HttpHeaders();
+		accept.set("Accept", "application/jwk-set+json");
+
+		PlanFetchCache.get("test1", restTemplate, URL, new HttpHeaders());
+		PlanFetchCache.Fetch fetch = PlanFetchCache.get("test2", restTemplate, URL, accept);
+
+		assertFalse(fetch.isFromCache());
+	}
+}
@@ -0,0 +1,71 @@
+package net.openid.conformance.export;
+
+import com.mongodb.client.DistinctIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import net.openid.conformance.info.DBTestPlanService;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DBRenderedExportCache_UnitTest {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void exports_of_other_versions_and_deleted_plans_are_removed() {
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+		MongoCollection<Document> files = mock(MongoCollection.class);
+		DistinctIterable<String> planIds = mock(DistinctIterable.class);
+		when(mongoTemplate.getCollection(DBRenderedExportCache.BUCKET + ".files")).thenReturn(files);
+		when(files.distinct("metadata.planId", String.class)).thenReturn(planIds);
+		when(planIds.into(any())).thenAnswer(invocation -> {
+			List<String> into = invocation.getArgument(0);
+			into.addAll(List.of("plan1", "plan2"));
+			return into;
+		});
+
+		// only plan1 still exists
+		MongoCollection<Document> plans = mock(MongoCollection.class);
+		FindIterable<Document> found = mock(FindIterable.class);
+		when(mongoTemplate.getCollection(DBTestPlanService.COLLECTION)).thenReturn(plans);
+		when(plans.find(any(Bson.class))).thenReturn(found);
+		when(found.projection(any())).thenReturn(found);
+		doAnswer(invocation -> {
+			((Consumer<Document>) invocation.getArgument(0)).accept(new Document("_id", "plan1"));
+			return null;
+		}).when(found).forEach(any());
+
+		GridFsTemplate gridFsTemplate = mock(GridFsTemplate.class);
+
+		DBRenderedExportCache cache = new DBRenderedExportCache();
+		ReflectionTestUtils.setField(cache, "mongoTemplate", mongoTemplate);
+		ReflectionTestUtils.setField(cache, "gridFsTemplate", gridFsTemplate);
+		ReflectionTestUtils.setField(cache, "version", "5.1.31");
+
+		cache.removeUnusableExports();
+
+		ArgumentCaptor<Query> deleted = ArgumentCaptor.forClass(Query.class);
+		verify(gridFsTemplate, times(2)).delete(deleted.capture());
+		assertEquals(new Document("metadata.version", new Document("$ne", "5.1.31")),
+			deleted.getAllValues().get(0).getQueryObject());
+		assertEquals(new Document("metadata.planId", new Document("$in", List.of("plan2"))),
+			deleted.getAllValues().get(1).getQueryObject());
+	}
+}
@@ -0,0 +1,107 @@
+package net.openid.conformance.export;
+
+import net.openid.conformance.security.KeyManager;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HtmlExportService_UnitTest {
+
+	private static final Map<String, String> DEVELOPER = Map.of("sub", "developer", "iss", "https://developer.com");
+
+	private HtmlExportService service;
+
+	private HtmlExportRenderer renderer;
+
+	private RenderedExportCache cache;
+
+	private KeyPair signingKey;
+
+	private final TestExportInfo export = new TestExportInfo("https://localhost.emobix.co.uk:8443", DEVELOPER, "5.1.0",
+		new Document("testId", "abc").append("testName", "oidcc-server"), List.of());
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		signingKey = generator.generateKeyPair();
+		KeyManager keyManager = mock(KeyManager.class);
+		when(keyManager.getSigningPrivateKey()).thenReturn(signingKey.getPrivate());
+
+		renderer = mock(HtmlExportRenderer.class);
+		when(renderer.createHtmlForTestLogs(any())).thenReturn("<html>abc</html>");
+		cache = mock(RenderedExportCache.class);
+
+		service = new HtmlExportService();
+		ReflectionTestUtils.setField(service, "htmlExportRenderer", renderer);
+		ReflectionTestUtils.setField(service, "keyManager", keyManager);
+		ReflectionTestUtils.setField(service, "renderedExportCache", cache);
+		service.startExecutor();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		service.stopExecutor();
+	}
+
+	@Test
+	public void rendered_html_is_signed() throws Exception {
+		SignedHtml html = service.renderTestLog(export, "plan1", null).get();
+
+		assertEquals("<html>abc</html>", new String(html.html(), StandardCharsets.UTF_8));
+		Signature verifier = Signature.getInstance("SHA1withRSA");
+		verifier.initVerify(signingKey.getPublic());
+		verifier.update(html.html());
+		assertTrue(verifier.verify(Base64.getUrlDecoder().decode(html.signature())));
+		verify(cache, never()).get(anyString());
+		verify(cache, never()).put(anyString(), anyString(), any());
+	}
+
+	@Test
+	public void cached_html_is_not_rendered_again() throws Exception {
+		SignedHtml cached = new SignedHtml("<html>cached</html>".getBytes(StandardCharsets.UTF_8), "sig");
+		when(cache.get("key1")).thenReturn(cached);
+
+		assertSame(cached, service.renderTestLog(export, "plan1", "key1").get());
+		verify(renderer, never()).createHtmlForTestLogs(any());
+	}
+
+	@Test
+	public void rendered_html_is_cached_when_a_key_is_given() throws Exception {
+		SignedHtml html = service.renderTestLog(export, "plan1", "key1").get();
+
+		verify(cache).put("key1", "plan1", html);
+	}
+
+	@Test
+	public void cache_key_depends_on_who_exported_it() {
+		String key = HtmlExportService.cacheKey("abc", false, DEVELOPER, "https://suite.example.com", "5.1.0");
+
+		assertEquals(key, HtmlExportService.cacheKey("abc", false, Map.of("iss", "https://developer.com", "sub", "developer"), "https://suite.example.com", "5.1.0"));
+		assertNotEquals(key, HtmlExportService.cacheKey("abc", true, DEVELOPER, "https://suite.example.com", "5.1.0"));
+		assertNotEquals(key, HtmlExportService.cacheKey("abc", false, Map.of("sub", "other", "iss", "https://developer.com"), "https://suite.example.com", "5.1.0"));
+		assertNotEquals(key, HtmlExportService.cacheKey("abc", false, DEVELOPER, "https://other.example.com", "5.1.0"));
+		assertNotEquals(key, HtmlExportService.cacheKey("abc", false, DEVELOPER, "https://suite.example.com", "5.1.1"));
+	}
+}
@@ -0,0 +1,145 @@
+package net.openid.conformance.frontchannel;
+
+import com.google.gson.JsonObject;
+import net.openid.conformance.info.ImageService;
+import net.openid.conformance.logging.TestInstanceEventLog;
+import net.openid.conformance.runner.TestExecutionManager;
+import org.htmlunit.MockWebConnection;
+import org.htmlunit.util.Cookie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class BrowserPool_UnitTest {
+
+	private BrowserPool pool;
+
+	private BrowserControl owner;
+
+	@BeforeEach
+	public void setUp() {
+		pool = new BrowserPool(BrowserControl.ResponseCodeHtmlUnitDriver::new);
+		owner = newBrowserControl();
+	}
+
+	private BrowserControl newBrowserControl() {
+		return new BrowserControl(new JsonObject(), "test", mock(TestInstanceEventLog.class), mock(TestExecutionManager.class), mock(ImageService.class));
+	}
+
+	@Test
+	public void released_browser_is_reused() throws Exception {
+		BrowserControl.ResponseCodeHtmlUnitDriver first = pool.acquire(owner, true, true);
+		pool.release(first);
+		BrowserControl.ResponseCodeHtmlUnitDriver second = pool.acquire(newBrowserControl(), true, true);
+		pool.release(second);
+
+		assertSame(first, second);
+		assertEquals(1, pool.getCreatedCount());
+		assertEquals(1, pool.getReusedCount());
+		assertEquals(0, pool.getActiveCount());
+	}
+
+	@Test
+	public void browsers_are_not_kept_when_size_is_zero() throws Exception {
+		pool.setSize(0);
+
+		BrowserControl.ResponseCodeHtmlUnitDriver first = pool.acquire(owner, true, true);
+		pool.release(first);
+		BrowserControl.ResponseCodeHtmlUnitDriver second = pool.acquire(owner, true, true);
+		pool.release(second);
+
+		assertNotSame(first, second);
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(2, pool.getCreatedCount());
+	}
+
+	@Test
+	public void acquire_waits_when_max_active_reached() throws Exception {
+		pool.setMaxActive(1);
+		BrowserControl.ResponseCodeHtmlUnitDriver first = pool.acquire(owner, true, true);
+
+		CompletableFuture<BrowserControl.ResponseCodeHtmlUnitDriver> second = CompletableFuture.supplyAsync(() -> {
+			try {
+				return pool.acquire(owner, true, true);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		for (int i = 0; i < 100 && pool.getWaitingCount() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, pool.getWaitingCount());
+		assertFalse(second.isDone());
+
+		pool.release(first);
+		pool.release(second.get(10, TimeUnit.SECONDS));
+		assertEquals(0, pool.getWaitingCount());
+	}
+
+	@Test
+	public void cookies_go_to_the_current_owner_only() throws Exception {
+		BrowserControl.ResponseCodeHtmlUnitDriver driver = pool.acquire(owner, true, true);
+		driver.getWebClient().getCookieManager().addCookie(new Cookie("example.com", "session", "1"));
+		pool.release(driver);
+
+		BrowserControl other = newBrowserControl();
+		BrowserControl.ResponseCodeHtmlUnitDriver reused = pool.acquire(other, true, true);
+		assertSame(driver, reused);
+		assertTrue(reused.getWebClient().getCookieManager().getCookies().isEmpty());
+		reused.getWebClient().getCookieManager().addCookie(new Cookie("example.com", "other", "2"));
+		pool.release(reused);
+
+		BrowserControl.ResponseCodeHtmlUnitDriver again = pool.acquire(owner, true, true);
+		assertEquals(1, again.getWebClient().getCookieManager().getCookies().size());
+		assertEquals("1", again.getWebClient().getCookieManager().getCookie("session").getValue());
+		pool.release(again);
+	}
+
+	@Test
+	public void javascript_and_css_can_be_disabled() throws Exception {
+		BrowserControl.ResponseCodeHtmlUnitDriver driver = pool.acquire(owner, false, false);
+		assertFalse(driver.getWebClient().getOptions().isJavaScriptEnabled());
+		assertFalse(driver.getWebClient().getOptions().isCssEnabled());
+		pool.release(driver);
+
+		BrowserControl.ResponseCodeHtmlUnitDriver reused = pool.acquire(owner, true, true);
+		assertTrue(reused.getWebClient().getOptions().isJavaScriptEnabled());
+		assertTrue(reused.getWebClient().getOptions().isCssEnabled());
+		pool.release(reused);
+	}
+
+	@Test
+	public void storage_is_not_passed_to_the_next_owner() throws Exception {
+		MockWebConnection connection = new MockWebConnection();
+		connection.setDefaultResponse("<html><body><script>"
+			+ "localStorage.setItem('local', '1'); sessionStorage.setItem('session', '1');"
+			+ "</script></body></html>");
+		BrowserControl.ResponseCodeHtmlUnitDriver driver = pool.acquire(owner, true, true);
+		driver.getWebClient().setWebConnection(connection);
+		driver.get("https://example.com/");
+		assertEquals("1", driver.executeScript("return localStorage.getItem('local')"));
+		assertEquals("1", driver.executeScript("return sessionStorage.getItem('session')"));
+		pool.release(driver);
+
+		MockWebConnection otherConnection = new MockWebConnection();
+		otherConnection.setDefaultResponse("<html><body></body></html>");
+		BrowserControl.ResponseCodeHtmlUnitDriver reused = pool.acquire(newBrowserControl(), true, true);
+		assertSame(driver, reused);
+		reused.getWebClient().setWebConnection(otherConnection);
+		reused.get("https://example.com/");
+		assertNull(reused.executeScript("return localStorage.getItem('local')"));
+		assertNull(reused.executeScript("return sessionStorage.getItem('session')"));
+		pool.release(reused);
+	}
+}
@@ -0,0 +1,73 @@
+package net.openid.conformance.info;
+
+import com.google.common.hash.Hashing;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DBImageService_UnitTest {
+
+	private static final byte[] IMAGE = "not really a png".getBytes(StandardCharsets.UTF_8);
+
+	private static final String ENCODED = "data:image/png;base64," + Base64.getEncoder().encodeToString(IMAGE);
+
+	private static final String HASH = Hashing.sha256().hashBytes(IMAGE).toString();
+
+	@Mock
+	private GridFsTemplate gridFsTemplate;
+
+	private DBImageService imageService;
+
+	@BeforeEach
+	public void setUp() {
+		imageService = new DBImageService();
+		ReflectionTestUtils.setField(imageService, "gridFsTemplate", gridFsTemplate);
+	}
+
+	@Test
+	public void storeImage_stores_new_image_by_hash() {
+		String hash = imageService.storeImage(ENCODED);
+
+		assertEquals(HASH, hash);
+		verify(gridFsTemplate).store(any(InputStream.class), eq(HASH), eq("image/png"));
+	}
+
+	@Test
+	public void storeImage_does_not_store_an_image_twice() {
+		when(gridFsTemplate.findOne(any(Query.class))).thenReturn(mock(GridFSFile.class));
+
+		String hash = imageService.storeImage(ENCODED);
+
+		assertEquals(HASH, hash);
+		verify(gridFsTemplate, never()).store(any(InputStream.class), anyString(), anyString());
+	}
+
+	@Test
+	public void inlineImage_leaves_entries_without_a_stored_image_alone() {
+		Document entry = new Document("_id", "abc-1").append("img", "data:image/png;base64,AAAA");
+
+		assertSame(entry, imageService.inlineImage(entry));
+	}
+}
@@ -0,0 +1,133 @@
+package net.openid.conformance.info;
+
+import net.openid.conformance.testmodule.TestModule.Status;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class DBTestResultSummaryService_UnitTest {
+
+	private static Document entry(String src, String result, String blockId) {
+		Document entry = new Document("testId", "abc").append("src", src).append("time", 1000L);
+		if (result != null) {
+			entry.append("result", result);
+		}
+		if (blockId != null) {
+			entry.append("blockId", blockId);
+		}
+		return entry;
+	}
+
+	private static Document startBlock(String blockId, String msg) {
+		return entry("-START-BLOCK-", null, blockId).append("msg", msg).append("startBlock", true);
+	}
+
+	private static List<Object> addedToSet(Document update, String field) {
+		Update.Modifier each = (Update.Modifier) update.get("$addToSet", Document.class).get(field);
+		return Arrays.asList((Object[]) each.getValue());
+	}
+
+	@Test
+	public void results_are_counted_and_failing_conditions_recorded() {
+		Document update = DBTestResultSummaryService.createUpdate(List.of(
+			startBlock("a1b2c3", "Fetch discovery"),
+			entry("CheckDiscEndpoint", "SUCCESS", "a1b2c3"),
+			entry("CheckIssuer", "FAILURE", "a1b2c3").append("requirements", Set.of("OIDCD-4.3", "OIDCD-3")),
+			entry("CheckIssuer", "FAILURE", "a1b2c3").append("requirements", List.of("OIDCD-3", "OIDCD-4.3")),
+			entry("CheckTls", "WARNING", null),
+			entry("SomeCondition", "NOT_A_RESULT", null),
+			entry("plain message", null, null)
+		)).getUpdateObject();
+
+		assertEquals(new Document("entries", 7).append("results.SUCCESS", 1).append("results.FAILURE", 2).append("results.WARNING", 1),
+			update.get("$inc"));
+
+		Document failure = new Document("src", "CheckIssuer").append("blockId", "a1b2c3").append("requirements", List.of("OIDCD-3", "OIDCD-4.3"));
+		assertEquals(List.of(failure), addedToSet(update, "failures"));
+		Document warning = new Document("src", "CheckTls").append("blockId", null).append("requirements", List.of());
+		assertEquals(List.of(warning), addedToSet(update, "warnings"));
+
+		Document set = update.get("$set", Document.class);
+		assertEquals("Fetch discovery", set.get("blocks.a1b2c3"));
+		assertEquals("Fetch discovery", set.get("lastBlock", Document.class).get("msg"));
+	}
+
+	@Test
+	public void entries_without_results_only_count_towards_the_total() {
+		Document update = DBTestResultSummaryService.createUpdate(List.of(entry("plain message", null, null))).getUpdateObject();
+
+		assertEquals(new Document("entries", 1), update.get("$inc"));
+		assertFalse(update.containsKey("$addToSet"));
+		assertEquals(Set.of("updated"), update.get("$set", Document.class).keySet());
+	}
+
+	@Test
+	public void unexpected_block_ids_are_not_used_as_field_names() {
+		Document update = DBTestResultSummaryService.createUpdate(List.of(startBlock("$where.x", "Odd"))).getUpdateObject();
+
+		assertEquals(Set.of("updated"), update.get("$set", Document.class).keySet());
+	}
+
+	@Test
+	public void api_summary_names_the_blocks_conditions_failed_in() {
+		Document summary = new Document("_id", "abc")
+			.append("entries", 12)
+			.append("results", new Document("SUCCESS", 9).append("FAILURE", 2))
+			.append("failures", List.of(
+				new Document("src", "CheckIssuer").append("blockId", "a1b2c3").append("requirements", List.of("OIDCD-3")),
+				new Document("src", "CheckTls").append("blockId", null).append("requirements", List.of())))
+			.append("blocks", new Document("a1b2c3", "Fetch discovery"))
+			.append("lastBlock", new Document("blockId", "a1b2c3").append("msg", "Fetch discovery"));
+
+		Map<String, Object> full = TestInfoApi.summaryForApi("abc", Status.FINISHED, "FAILED", summary, false);
+		assertEquals(true, full.get("summaryAvailable"));
+		assertEquals(12, full.get("entries"));
+		assertEquals(List.of(
+			Map.of("src", "CheckIssuer", "block", "Fetch discovery", "requirements", List.of("OIDCD-3")),
+			Map.of("src", "CheckTls", "block", "", "requirements", List.of())), full.get("failures"));
+		assertEquals(List.of(), full.get("warnings"));
+		assertEquals("Fetch discovery", full.get("lastBlock"));
+
+		Map<String, Object> summaryOnly = TestInfoApi.summaryForApi("abc", Status.FINISHED, "FAILED", summary, true);
+		assertEquals(List.of(
+			Map.of("src", "CheckIssuer", "requirements", List.of("OIDCD-3")),
+			Map.of("src", "CheckTls", "requirements", List.of())), summaryOnly.get("failures"));
+		assertFalse(summaryOnly.containsKey("lastBlock"));
+	}
+
+	@Test
+	public void api_summary_of_a_test_with_nothing_logged_is_empty() {
+		Map<String, Object> map = TestInfoApi.summaryForApi("abc", Status.CREATED, null, null, false);
+
+		assertEquals(false, map.get("summaryAvailable"));
+		assertEquals(0, map.get("entries"));
+		assertEquals(new Document(), map.get("results"));
+		assertEquals(List.of(), map.get("failures"));
+	}
+
+	@Test
+	public void summary_built_from_a_log_matches_one_kept_up_to_date() {
+		List<Document> entries = List.of(
+			startBlock("a1b2c3", "Fetch discovery"),
+			entry("CheckIssuer", "FAILURE", "a1b2c3").append("requirements", List.of("OIDCD-3")),
+			entry("CheckTls", "WARNING", null));
+
+		Document summary = DBTestResultSummaryService.toDocument(DBTestResultSummaryService.createUpdate(entries));
+
+		assertEquals(3, summary.get("entries"));
+		assertEquals(new Document("FAILURE", 1).append("WARNING", 1), summary.get("results"));
+		assertEquals(List.of(new Document("src", "CheckIssuer").append("blockId", "a1b2c3").append("requirements", List.of("OIDCD-3"))),
+			summary.get("failures"));
+		assertEquals(new Document("a1b2c3", "Fetch discovery"), summary.get("blocks"));
+		assertEquals("Fetch discovery", summary.get("lastBlock", Document.class).get("msg"));
+		assertEquals(1000L, summary.get("updated"));
+	}
+}
@@ -0,0 +1,185 @@
+package net.openid.conformance.logging;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import net.openid.conformance.info.TestResultSummaryService;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecConfigurationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AsyncDBEventLog_UnitTest {
+
+	private static final Map<String, String> OWNER = Map.of("sub", "developer", "iss", "https://developer.com");
+
+	private AsyncDBEventLog eventLog;
+
+	private List<String> written;
+
+	private TestResultSummaryService resultSummaryService;
+
+	private MongoCollection<Document> collection;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		written = Collections.synchronizedList(new ArrayList<>());
+
+		collection = Mockito.mock(MongoCollection.class);
+		doAnswer(invocation -> {
+			List<Document> batch = invocation.getArgument(0);
+			for (Document document : batch) {
+				written.add(document.getString("testId") + ":" + document.getString("msg"));
+			}
+			return null;
+		}).when(collection).insertMany(anyList(), any(InsertManyOptions.class));
+
+		MongoTemplate mongoTemplate = Mockito.mock(MongoTemplate.class);
+		when(mongoTemplate.getCollection(DBEventLog.COLLECTION)).thenReturn(collection);
+
+		eventLog = new AsyncDBEventLog();
+		ReflectionTestUtils.setField(eventLog, "mongoTemplate", mongoTemplate);
+		ReflectionTestUtils.setField(eventLog, "publisher", new LogEntryPublisher());
+		resultSummaryService = Mockito.mock(TestResultSummaryService.class);
+		ReflectionTestUtils.setField(eventLog, "resultSummaryService", resultSummaryService);
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		eventLog.flushAll();
+	}
+
+	private void startWriters(int maxQueuedEntries) {
+		ReflectionTestUtils.setField(eventLog, "maxQueuedEntries", maxQueuedEntries);
+		ReflectionTestUtils.setField(eventLog, "maxBatchSize", 10);
+		ReflectionTestUtils.setField(eventLog, "writerThreads", 2);
+		eventLog.startWriters();
+	}
+
+	private List<String> writtenFor(String testId) {
+		synchronized (written) {
+			return written.stream().filter(s -> s.startsWith(testId + ":")).toList();
+		}
+	}
+
+	@Test
+	public void flush_writes_all_entries_for_the_test_in_order() {
+		startWriters(1000);
+
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			eventLog.log("test1", "src", OWNER, "msg" + i);
+			eventLog.log("test2", "src", OWNER, "msg" + i);
+			expected.add("test1:msg" + i);
+		}
+		eventLog.flush("test1");
+
+		assertEquals(expected, writtenFor("test1"));
+	}
+
+	@Test
+	public void entries_are_written_by_the_caller_when_the_queue_is_full() {
+		startWriters(0);
+
+		eventLog.log("test1", "src", OWNER, "first");
+		eventLog.log("test1", "src", OWNER, "second");
+
+		// no flush needed, there's no capacity to queue anything
+		assertEquals(List.of("test1:first", "test1:second"), writtenFor("test1"));
+	}
+
+	@Test
+	public void flush_for_unknown_test_does_nothing() {
+		startWriters(1000);
+
+		eventLog.flush("not-a-test");
+
+		assertEquals(List.of(), written);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void written_batches_are_added_to_the_result_summary() {
+		startWriters(1000);
+
+		for (int i = 0; i < 25; i++) {
+			eventLog.log("test1", "src", OWNER, "msg" + i);
+		}
+		eventLog.flush("test1");
+
+		ArgumentCaptor<List<Document>> batches = ArgumentCaptor.forClass(List.class);
+		verify(resultSummaryService, atLeast(3)).addLogEntries(eq("test1"), batches.capture());
+		assertEquals(25, batches.getAllValues().stream().mapToInt(List::size).sum());
+	}
+
+	@Test
+	public void a_batch_that_cannot_be_written_is_written_one_entry_at_a_time() {
+		startWriters(1000);
+		doAnswer(invocation -> {
+			throw new CodecConfigurationException("Can't find a codec");
+		}).when(collection).insertMany(anyList(), any(InsertManyOptions.class));
+		doAnswer(invocation -> {
+			Document document = invocation.getArgument(0);
+			if ("bad".equals(document.getString("msg"))) {
+				throw new CodecConfigurationException("Can't find a codec");
+			}
+			written.add(document.getString("testId") + ":" + document.getString("msg"));
+			return null;
+		}).when(collection).insertOne(any(Document.class));
+
+		eventLog.log("test1", "src", OWNER, "before");
+		eventLog.log("test1", "src", OWNER, "bad");
+		eventLog.log("test1", "src", OWNER, "after");
+		eventLog.flush("test1");
+
+		assertEquals(List.of("test1:before", "test1:after"), writtenFor("test1"));
+		// all the queue's capacity is available again
+		assertEquals(1000, ((Semaphore) ReflectionTestUtils.getField(eventLog, "queueCapacity")).availablePermits());
+	}
+
+	@Test
+	public void flush_writes_entries_logged_by_other_threads_before_it_was_called() throws Exception {
+		startWriters(1000);
+
+		// e.g. a background task logging whilst the test finishes
+		AtomicInteger logged = new AtomicInteger();
+		Thread logger = new Thread(() -> {
+			for (int i = 0; i < 2000; i++) {
+				eventLog.log("test1", "src", OWNER, "msg" + i);
+				logged.incrementAndGet();
+			}
+		});
+		logger.start();
+		while (logger.isAlive()) {
+			int before = logged.get();
+			eventLog.flush("test1");
+			int after = writtenFor("test1").size();
+			assertTrue(after >= before, "only " + after + " of the " + before + " entries logged before the flush were written");
+		}
+		logger.join();
+		eventLog.flush("test1");
+		assertEquals(2000, writtenFor("test1").size());
+	}
+}
@@ -0,0 +1,107 @@
+package net.openid.conformance.logging;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GsonBsonEncoder_UnitTest {
+
+	private static final String JSON = "{"
+		+ "\"string\": \"value\","
+		+ "\"int\": 42,"
+		+ "\"long\": 12345678901,"
+		+ "\"double\": 1.5,"
+		+ "\"exponent\": 1e3,"
+		+ "\"bool\": true,"
+		+ "\"object\": {\"nested\": [1, \"two\", {\"three\": 3}]},"
+		+ "\"empty\": {}"
+		+ "}";
+
+	@Test
+	public void toDocument_matches_parsing_the_json() {
+		JsonObject source = JsonParser.parseString(JSON).getAsJsonObject();
+
+		assertEquals(Document.parse(JSON), GsonBsonEncoder.toDocument(source));
+	}
+
+	@Test
+	public void toDocument_matches_parsing_the_json_for_added_properties() {
+		JsonObject source = new JsonObject();
+		source.addProperty("int", 7);
+		source.addProperty("long", Long.MAX_VALUE);
+		source.addProperty("double", 2.0);
+		source.addProperty("float", 0.25f);
+
+		assertEquals(Document.parse(source.toString()), GsonBsonEncoder.toDocument(source));
+	}
+
+	@Test
+	public void toBsonDocument_matches_parsing_the_json() {
+		JsonObject source = JsonParser.parseString(JSON).getAsJsonObject();
+
+		assertEquals(BsonDocument.parse(JSON), GsonBsonEncoder.toBsonDocument(source));
+	}
+
+	@Test
+	public void nulls_are_replaced() {
+		JsonObject source = new JsonObject();
+		source.add("null", JsonNull.INSTANCE);
+		JsonArray array = new JsonArray();
+		array.add(JsonNull.INSTANCE);
+		source.add("array", array);
+
+		Document document = GsonBsonEncoder.toDocument(source);
+
+		assertEquals(GsonObjectToBsonDocumentConverter.CONFORMANCE_SUITE_JSON_NULL_CONSTANT, document.get("null"));
+		assertEquals(List.of(GsonObjectToBsonDocumentConverter.CONFORMANCE_SUITE_JSON_NULL_CONSTANT), document.get("array"));
+	}
+
+	@Test
+	public void problematic_keys_are_wrapped() {
+		JsonObject inner = new JsonObject();
+		inner.addProperty("$ref", "#/foo");
+		JsonObject source = new JsonObject();
+		source.add("a.b", inner);
+
+		Document document = GsonBsonEncoder.toDocument(source);
+
+		assertEquals(1, document.size());
+		String wrappedKey = document.keySet().iterator().next();
+		assertTrue(wrappedKey.startsWith(GsonBsonEncoder.WRAPPED_KEY_PREFIX));
+		Document wrap = document.get(wrappedKey, Document.class);
+		assertEquals("a.b", wrap.getString("key"));
+
+		Document value = wrap.get("value", Document.class);
+		String innerKey = value.keySet().iterator().next();
+		assertTrue(innerKey.startsWith(GsonBsonEncoder.WRAPPED_KEY_PREFIX));
+		assertEquals(new Document("key", "$ref").append("value", "#/foo"), value.get(innerKey));
+
+		// the source must not be changed
+		assertTrue(source.has("a.b"));
+		assertFalse(source.has(wrappedKey));
+	}
+
+	@Test
+	public void toBsonArray_converts_array() {
+		JsonArray source = JsonParser.parseString("[1, \"two\", null]").getAsJsonArray();
+
+		BsonArray expected = new BsonArray(List.of(
+			new BsonInt32(1),
+			new BsonString("two"),
+			new BsonString(GsonObjectToBsonDocumentConverter.CONFORMANCE_SUITE_JSON_NULL_CONSTANT)));
+		assertEquals(expected, GsonBsonEncoder.toBsonArray(source));
+	}
+}
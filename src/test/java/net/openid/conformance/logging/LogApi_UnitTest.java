@@ -4,16 +4,131 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import net.openid.conformance.CollapsingGsonHttpMessageConverter;
+import net.openid.conformance.export.TestExportInfo;
+import net.openid.conformance.info.ImageService;
+import net.openid.conformance.security.KeyManager;
+import net.openid.conformance.testmodule.OIDFJSON;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class LogApi_UnitTest {
 
+	@Mock
+	private KeyManager keyManager;
+
+	@Mock
+	private ImageService imageService;
+
+	private LogApi logApi;
+
+	private KeyPair signingKey;
+
 	@BeforeEach
 	public void setUp() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		signingKey = generator.generateKeyPair();
+
+		logApi = new LogApi();
+		ReflectionTestUtils.setField(logApi, "keyManager", keyManager);
+		ReflectionTestUtils.setField(logApi, "imageService", imageService);
+		lenient().when(imageService.inlineImage(any())).thenAnswer(invocation -> invocation.getArgument(0));
+	}
+
+	private String exportJson(TestExportInfo export) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(out)) {
+			logApi.addFilesToZip(zip, "test-log-abc.json", "test-log-abc.sig", export);
+		}
+		try (ZipArchiveInputStream zip = new ZipArchiveInputStream(new ByteArrayInputStream(out.toByteArray()), "UTF-8", true, true)) {
+			ZipArchiveEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				if (entry.getName().equals("test-log-abc.json")) {
+					return new String(zip.readAllBytes(), StandardCharsets.UTF_8);
+				}
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void addFilesToZip_includes_uploaded_images_in_the_export() throws Exception {
+		when(keyManager.getSigningPrivateKey()).thenReturn(signingKey.getPrivate());
+		Document withImage = new Document("_id", "abc-1").append("testId", "abc").append("img_hash", "0123abcd")
+			.append("img", "/api/log/abc/images/0123abcd");
+		when(imageService.inlineImage(withImage)).thenReturn(new Document(withImage).append("img", "data:image/png;base64,AAAA"));
+		TestExportInfo export = new TestExportInfo("https://localhost.emobix.co.uk:8443",
+			Map.of("sub", "developer", "iss", "https://developer.com"), "5.1.0",
+			new Document("testId", "abc").append("testName", "oidcc-server"), List.of(withImage));
+
+		JsonObject json = JsonParser.parseString(exportJson(export)).getAsJsonObject();
+
+		JsonObject entry = json.getAsJsonArray("results").get(0).getAsJsonObject();
+		assertEquals("data:image/png;base64,AAAA", OIDFJSON.getString(entry.get("img")));
+	}
+
+	@Test
+	public void addFilesToZip_streams_the_same_json_as_the_export_object() throws Exception {
+		when(keyManager.getSigningPrivateKey()).thenReturn(signingKey.getPrivate());
+
+		List<Document> results = List.of(
+			new Document("_id", "abc-1").append("testId", "abc").append("msg", "first").append("time", 1L),
+			new Document("_id", "abc-2").append("testId", "abc").append("result", "SUCCESS").append("nested", new Document("x", List.of(1, 2))));
+		TestExportInfo export = new TestExportInfo("https://localhost.emobix.co.uk:8443",
+			Map.of("sub", "developer", "iss", "https://developer.com"), "5.1.0",
+			new Document("testId", "abc").append("testName", "oidcc-server"), results);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(out)) {
+			logApi.addFilesToZip(zip, "test-log-abc.json", "test-log-abc.sig", export);
+		}
+
+		String json = null;
+		String sig = null;
+		try (ZipArchiveInputStream zip = new ZipArchiveInputStream(new ByteArrayInputStream(out.toByteArray()), "UTF-8", true, true)) {
+			ZipArchiveEntry entry;
+			while ((entry = zip.getNextEntry()) != null) {
+				String content = new String(zip.readAllBytes(), StandardCharsets.UTF_8);
+				if (entry.getName().equals("test-log-abc.json")) {
+					json = content;
+				} else {
+					sig = content;
+				}
+			}
+		}
+
+		assertEquals(CollapsingGsonHttpMessageConverter.getDbObjectCollapsingGson().toJson(export), json);
+
+		Signature verifier = Signature.getInstance("SHA1withRSA");
+		verifier.initVerify(signingKey.getPublic());
+		verifier.update(json.getBytes(StandardCharsets.UTF_8));
+		assertTrue(verifier.verify(Base64.getUrlDecoder().decode(sig)));
 	}
 
 	@Test
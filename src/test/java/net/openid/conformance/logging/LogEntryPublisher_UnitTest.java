@@ -0,0 +1,38 @@
+package net.openid.conformance.logging;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogEntryPublisher_UnitTest {
+
+	@Test
+	public void sequence_is_strictly_increasing() {
+		long last = LogEntryPublisher.nextSequence();
+		for (int i = 0; i < 10000; i++) {
+			long next = LogEntryPublisher.nextSequence();
+			assertTrue(next > last);
+			last = next;
+		}
+	}
+
+	@Test
+	public void entries_are_only_published_to_subscribers_for_the_test() {
+		LogEntryPublisher publisher = new LogEntryPublisher();
+		List<Object> received = new ArrayList<>();
+
+		Runnable unsubscribe = publisher.subscribe("test1", d -> received.add(d.get("msg")));
+
+		publisher.publish("test1", new Document("msg", "first"));
+		publisher.publish("test2", new Document("msg", "other test"));
+		unsubscribe.run();
+		publisher.publish("test1", new Document("msg", "after unsubscribing"));
+
+		assertEquals(List.of("first"), received);
+	}
+}
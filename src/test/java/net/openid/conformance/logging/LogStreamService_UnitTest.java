@@ -0,0 +1,185 @@
+package net.openid.conformance.logging;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import net.openid.conformance.info.TestInfoRepository;
+import net.openid.conformance.runner.TestRunnerSupport;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LogStreamService_UnitTest {
+
+	private static final Pattern EVENT_ID = Pattern.compile("^id:(\\d+)$", Pattern.MULTILINE);
+
+	private LogStreamService service;
+
+	private LogEntryPublisher publisher;
+
+	private MongoCollection<Document> collection;
+
+	// what the database returns for the stream's queries
+	private final List<Document> inDatabase = new ArrayList<>();
+
+	// released once the stream has subscribed to the publisher and is about to read the database
+	private final CountDownLatch subscribed = new CountDownLatch(1);
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		collection = mock(MongoCollection.class);
+		FindIterable<Document> found = mock(FindIterable.class);
+		when(collection.find(any(Bson.class))).thenReturn(found);
+		when(found.projection(any())).thenReturn(found);
+		when(found.sort(any())).thenReturn(found);
+		when(found.iterator()).thenAnswer(invocation -> {
+			Iterator<Document> iterator = List.copyOf(inDatabase).iterator();
+			MongoCursor<Document> cursor = mock(MongoCursor.class);
+			when(cursor.hasNext()).thenAnswer(i -> iterator.hasNext());
+			when(cursor.next()).thenAnswer(i -> iterator.next());
+			return cursor;
+		});
+		MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+		when(mongoTemplate.getCollection(DBEventLog.COLLECTION)).thenReturn(collection);
+
+		TestRunnerSupport testRunnerSupport = mock(TestRunnerSupport.class);
+		when(testRunnerSupport.hasTestId("test1")).thenReturn(true);
+		TestInfoRepository testInfos = mock(TestInfoRepository.class);
+		when(testInfos.findById("test1")).thenReturn(Optional.empty());
+		EventLog eventLog = mock(EventLog.class);
+		doAnswer(invocation -> {
+			subscribed.countDown();
+			return null;
+		}).when(eventLog).flush("test1");
+
+		publisher = new LogEntryPublisher();
+		service = new LogStreamService();
+		ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+		ReflectionTestUtils.setField(service, "testInfos", testInfos);
+		ReflectionTestUtils.setField(service, "testRunnerSupport", testRunnerSupport);
+		ReflectionTestUtils.setField(service, "eventLog", eventLog);
+		ReflectionTestUtils.setField(service, "publisher", publisher);
+	}
+
+	private static Document entry(long seq) {
+		return new Document("_id", "entry" + seq).append("testId", "test1").append("seq", seq);
+	}
+
+	/**
+	 * Records the ids of the events sent
+	 */
+	private static class RecordingEmitter extends SseEmitter {
+		private final List<Long> ids = new ArrayList<>();
+		private final CountDownLatch expected;
+
+		RecordingEmitter(int expected) {
+			this.expected = new CountDownLatch(expected);
+		}
+
+		@Override
+		public void send(SseEventBuilder builder) {
+			StringBuilder event = new StringBuilder();
+			builder.build().forEach(d -> event.append(d.getData()));
+			Matcher matcher = EVENT_ID.matcher(event);
+			if (matcher.find()) {
+				synchronized (ids) {
+					ids.add(Long.valueOf(matcher.group(1)));
+				}
+				expected.countDown();
+			}
+		}
+
+		List<Long> awaitIds() throws InterruptedException {
+			assertTrue(expected.await(10, TimeUnit.SECONDS));
+			// give anything that shouldn't have been sent a chance to be
+			Thread.sleep(100);
+			synchronized (ids) {
+				return List.copyOf(ids);
+			}
+		}
+	}
+
+	@Test
+	public void entries_published_out_of_order_are_not_dropped() throws Exception {
+		inDatabase.add(entry(1000));
+		RecordingEmitter emitter = new RecordingEmitter(4);
+		service.stream("test1", null, false, emitter);
+		assertTrue(subscribed.await(10, TimeUnit.SECONDS));
+
+		// e.g. two threads logging for the same test
+		publisher.publish("test1", entry(3000));
+		publisher.publish("test1", entry(2000));
+		publisher.publish("test1", entry(3000));
+		publisher.publish("test1", entry(1000));
+		publisher.publish("test1", entry(4000));
+
+		assertEquals(List.of(1000L, 3000L, 2000L, 4000L), emitter.awaitIds());
+	}
+
+	@Test
+	public void resumed_stream_looks_back_for_entries_that_reached_the_database_late() throws Exception {
+		RecordingEmitter emitter = new RecordingEmitter(0);
+		service.stream("test1", 5_000_000_000L, false, emitter);
+		assertTrue(subscribed.await(10, TimeUnit.SECONDS));
+		emitter.awaitIds();
+
+		ArgumentCaptor<Bson> query = ArgumentCaptor.forClass(Bson.class);
+		verify(collection, atLeastOnce()).find(query.capture());
+		Document seq = ((Document) query.getValue()).get("seq", Document.class);
+		assertEquals(5_000_000_000L - TimeUnit.SECONDS.toMicros(10), seq.get("$gt"));
+		// the entries already sent are skipped as they're read, rather than listed in the query
+		assertEquals(1, seq.size());
+	}
+
+	@Test
+	public void clients_that_are_not_reading_do_not_hold_up_other_streams() throws Exception {
+		inDatabase.add(entry(1000));
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			for (int i = 0; i < 8; i++) {
+				// a client whose connection has stalled
+				service.stream("test1", null, false, new SseEmitter() {
+					@Override
+					public void send(SseEventBuilder builder) {
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+				});
+			}
+
+			RecordingEmitter emitter = new RecordingEmitter(1);
+			service.stream("test1", null, false, emitter);
+
+			assertEquals(List.of(1000L), emitter.awaitIds());
+		} finally {
+			release.countDown();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package net.openid.conformance.logging;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestInstanceEventLog_UnitTest {
+
+	private static final Map<String, String> OWNER = Map.of("sub", "developer", "iss", "https://developer.com");
+
+	private EventLog eventLog;
+
+	private final AtomicLong time = new AtomicLong(1000);
+
+	@BeforeEach
+	public void setUp() {
+		eventLog = mock(EventLog.class);
+		when(eventLog.log(anyString(), anyString(), any(), anyString())).thenAnswer(invocation ->
+			new Document("time", time.getAndIncrement()).append("msg", invocation.getArgument(3)));
+		when(eventLog.log(anyString(), anyString(), any(), anyMap())).thenAnswer(invocation ->
+			new Document("time", time.getAndIncrement()).append("msg", ((Map<?, ?>) invocation.getArgument(3)).get("msg")));
+	}
+
+	private static List<Object> messages(List<Document> entries) {
+		return entries.stream().map(e -> e.get("msg")).toList();
+	}
+
+	@Test
+	public void recent_entries_are_returned_after_since() {
+		TestInstanceEventLog log = new TestInstanceEventLog("test1", OWNER, eventLog, 10);
+		log.log("src", "first");
+		log.log("src", "second");
+		log.logOutsideBlock("src", Map.of("msg", "third"));
+
+		assertEquals(List.of("first", "second", "third"), messages(log.getRecentEntries(null)));
+		assertEquals(List.of("second", "third"), messages(log.getRecentEntries(1000L)));
+		assertEquals(List.of(), messages(log.getRecentEntries(1002L)));
+	}
+
+	@Test
+	public void dropped_entries_are_not_returned() {
+		TestInstanceEventLog log = new TestInstanceEventLog("test1", OWNER, eventLog, 2);
+		log.log("src", "first");
+		log.log("src", "second");
+		log.log("src", "third");
+
+		// 'first' (time 1000) is no longer held, so only reads that start after it can be answered
+		assertNull(log.getRecentEntries(null));
+		assertNull(log.getRecentEntries(999L));
+		assertEquals(List.of("second", "third"), messages(log.getRecentEntries(1000L)));
+	}
+
+	@Test
+	public void image_placeholders_are_not_kept() {
+		TestInstanceEventLog log = new TestInstanceEventLog("test1", OWNER, eventLog, 10);
+		log.log("src", "first");
+		log.addRecentEntry(new Document("time", time.getAndIncrement()).append("upload", "placeholder"));
+		log.log("src", "third");
+
+		assertNull(log.getRecentEntries(null));
+		assertNull(log.getRecentEntries(1000L));
+		assertEquals(List.of("third"), messages(log.getRecentEntries(1001L)));
+	}
+
+	@Test
+	public void nothing_is_kept_by_default() {
+		TestInstanceEventLog log = new TestInstanceEventLog("test1", OWNER, eventLog);
+		log.log("src", "first");
+
+		assertNull(log.getRecentEntries(null));
+	}
+
+	@Test
+	public void entries_from_other_threads_wait_for_a_block_to_finish() throws Exception {
+		TestInstanceEventLog log = new TestInstanceEventLog("test1", OWNER, eventLog, 10);
+		CountDownLatch logged = new CountDownLatch(1);
+
+		log.runBlock("block", () -> {
+			Thread other = new Thread(() -> {
+				log.log("src", "other thread");
+				logged.countDown();
+			});
+			other.start();
+			try {
+				assertFalse(logged.await(200, TimeUnit.MILLISECONDS));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			log.log("src", "in block");
+		});
+
+		assertTrue(logged.await(10, TimeUnit.SECONDS));
+		assertEquals(List.of("block", "in block", "other thread"), messages(log.getRecentEntries(null)));
+	}
+}
@@ -0,0 +1,205 @@
+package net.openid.conformance.pagination;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PaginationService_UnitTest {
+
+	private static final String COLLECTION = "ITEMS";
+
+	private MongoTemplate mongoTemplate;
+
+	private PaginationService paginationService;
+
+	static class Item {
+		String _id;
+		String started;
+		String name;
+	}
+
+	@BeforeEach
+	public void setUp() {
+		mongoTemplate = mock(MongoTemplate.class);
+		when(mongoTemplate.getConverter()).thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+		when(mongoTemplate.estimatedCount(COLLECTION)).thenReturn(100L);
+		when(mongoTemplate.count(any(Query.class), eq(COLLECTION))).thenReturn(20L);
+
+		paginationService = new PaginationService();
+		ReflectionTestUtils.setField(paginationService, "mongoTemplate", mongoTemplate);
+		ReflectionTestUtils.setField(paginationService, "countCacheSeconds", 60L);
+		paginationService.createCountCache();
+	}
+
+	private static Document item(String id, String started) {
+		return new Document("_id", id).append("started", started).append("name", "item " + id);
+	}
+
+	private void willFind(Document... documents) {
+		when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(COLLECTION))).thenReturn(List.of(documents));
+	}
+
+	private Query findQuery() {
+		ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+		verify(mongoTemplate).find(query.capture(), eq(Document.class), eq(COLLECTION));
+		return query.getValue();
+	}
+
+	private static PaginationRequest request(int length) {
+		PaginationRequest page = new PaginationRequest();
+		page.setDraw(3);
+		page.setLength(length);
+		return page;
+	}
+
+	@Test
+	public void first_page_returns_cursor_for_next() {
+		willFind(item("b", "2024-01-02T00:00:00Z"), item("a", "2024-01-01T00:00:00Z"));
+
+		PaginationResponse<Item> response = paginationService.getResponse(request(2), COLLECTION, null, Item.class);
+
+		assertEquals(3, response.draw);
+		assertEquals(100, response.recordsTotal);
+		assertEquals(100, response.recordsFiltered);
+		assertEquals(2, response.data.size());
+		assertEquals("item b", response.data.get(0).name);
+		assertEquals(new PaginationService.Cursor("2024-01-01T00:00:00Z", "a"), PaginationService.Cursor.decode(response.next));
+
+		Query query = findQuery();
+		assertEquals(new Document("started", -1).append("_id", -1), query.getSortObject());
+		assertEquals(0, query.getSkip());
+		assertEquals(2, query.getLimit());
+	}
+
+	@Test
+	public void after_seeks_instead_of_skipping() {
+		willFind(item("a", "2024-01-01T00:00:00Z"));
+		PaginationRequest page = request(2);
+		page.setStart(2);
+		page.setAfter(new PaginationService.Cursor("2024-01-02T00:00:00Z", "b").encode());
+
+		PaginationResponse<Item> response = paginationService.getResponse(page, COLLECTION, Criteria.where("owner").is("me"), Item.class);
+
+		// last page
+		assertNull(response.next);
+
+		Query query = findQuery();
+		assertEquals(0, query.getSkip());
+		Document expected = new Criteria().andOperator(
+			Criteria.where("owner").is("me"),
+			new PaginationService.Cursor("2024-01-02T00:00:00Z", "b").seek(Sort.Direction.DESC)
+		).getCriteriaObject();
+		assertEquals(expected, query.getQueryObject());
+	}
+
+	@Test
+	public void other_sorts_are_fetched_by_position() {
+		willFind(item("a", "2024-01-01T00:00:00Z"), item("b", "2024-01-02T00:00:00Z"));
+		PaginationRequest page = request(2);
+		page.setStart(4);
+		page.setOrder("name,asc");
+		page.setAfter(new PaginationService.Cursor("2024-01-02T00:00:00Z", "b").encode());
+
+		PaginationResponse<Item> response = paginationService.getResponse(page, COLLECTION, null, Item.class);
+
+		assertNull(response.next);
+		Query query = findQuery();
+		assertEquals(new Document("name", 1), query.getSortObject());
+		assertEquals(4, query.getSkip());
+		assertTrue(query.getQueryObject().isEmpty());
+	}
+
+	@Test
+	public void counts_are_cached() {
+		willFind();
+		PaginationRequest page = request(10);
+		page.setSearch("example");
+
+		paginationService.getResponse(page, COLLECTION, null, Item.class);
+		PaginationResponse<Item> response = paginationService.getResponse(page, COLLECTION, null, Item.class);
+
+		assertEquals(100, response.recordsTotal);
+		assertEquals(20, response.recordsFiltered);
+		verify(mongoTemplate, times(1)).estimatedCount(COLLECTION);
+		verify(mongoTemplate, times(1)).count(any(Query.class), eq(COLLECTION));
+	}
+
+	@Test
+	public void filtered_total_is_counted_rather_than_estimated() {
+		willFind();
+
+		PaginationResponse<Item> response = paginationService.getResponse(request(10), COLLECTION, Criteria.where("owner").is("me"), Item.class);
+
+		assertEquals(20, response.recordsTotal);
+		verify(mongoTemplate, never()).estimatedCount(COLLECTION);
+	}
+
+	@Test
+	public void only_requested_fields_are_fetched() {
+		willFind();
+		PaginationRequest page = request(10);
+		page.setFields("name");
+
+		paginationService.getResponse(page, COLLECTION, null, Item.class);
+
+		assertEquals(new Document("name", 1).append("started", 1), findQuery().getFieldsObject());
+	}
+
+	@Test
+	public void only_fields_of_the_type_are_fetched_by_default() {
+		willFind();
+
+		paginationService.getResponse(request(10), COLLECTION, null, Item.class);
+
+		Document fields = findQuery().getFieldsObject();
+		assertNotNull(fields.get("name"));
+		assertNotNull(fields.get("started"));
+		assertEquals(3, fields.size());
+	}
+
+	@Test
+	public void invalid_field_is_rejected() {
+		PaginationRequest page = request(10);
+		page.setFields("name,$where");
+
+		ResponseStatusException e = assertThrows(ResponseStatusException.class,
+			() -> paginationService.getResponse(page, COLLECTION, null, Item.class));
+		assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+	}
+
+	@Test
+	public void invalid_cursor_is_rejected() {
+		PaginationRequest page = request(10);
+		page.setAfter("not a cursor");
+
+		ResponseStatusException e = assertThrows(ResponseStatusException.class,
+			() -> paginationService.getResponse(page, COLLECTION, null, Item.class));
+		assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+	}
+}
@@ -0,0 +1,117 @@
+package net.openid.conformance.runner;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BackgroundTaskExecutor_UnitTest {
+
+	private final List<Throwable> failures = new CopyOnWriteArrayList<>();
+
+	@Test
+	public void failures_are_passed_to_handler() throws Exception {
+		CountDownLatch handled = new CountDownLatch(1);
+		BackgroundTaskExecutor executor = new BackgroundTaskExecutor(false, e -> {
+			failures.add(e);
+			handled.countDown();
+		});
+		RuntimeException exception = new RuntimeException("failed");
+
+		Future<Object> future = executor.submit(() -> {
+			throw exception;
+		});
+
+		assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+		// the handler is called just after the future completes
+		assertTrue(handled.await(5, TimeUnit.SECONDS));
+		assertEquals(1, failures.size());
+		assertSame(exception, failures.get(0));
+	}
+
+	@Test
+	public void running_and_waiting_tasks_are_counted() throws Exception {
+		BackgroundTaskExecutor executor = new BackgroundTaskExecutor(true, failures::add);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Future<Object> future = executor.submit(() -> {
+			started.countDown();
+			release.await();
+			return "done";
+		});
+
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertEquals(1, executor.getActiveCount());
+		assertEquals(0, executor.getQueuedCount());
+
+		release.countDown();
+		assertEquals("done", future.get(5, TimeUnit.SECONDS));
+		assertEquals(0, failures.size());
+	}
+
+	@Test
+	public void cancelled_tasks_are_not_reported_as_failures() throws Exception {
+		BackgroundTaskExecutor executor = new BackgroundTaskExecutor(false, failures::add);
+		CountDownLatch started = new CountDownLatch(1);
+
+		Future<Object> future = executor.submit(() -> {
+			started.countDown();
+			Thread.sleep(60_000);
+			return "done";
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		// the task is now sleeping, but may not have got there yet
+		for (int i = 0; i < 50 && executor.getParkedCount() == 0; i++) {
+			Thread.sleep(100);
+		}
+		assertEquals(1, executor.getParkedCount());
+
+		future.cancel(true);
+
+		assertTrue(future.isCancelled());
+		assertEquals(0, failures.size());
+	}
+
+	@Test
+	public void scheduled_task_runs_after_delay() throws Exception {
+		BackgroundTaskExecutor executor = new BackgroundTaskExecutor(false, failures::add);
+		long start = System.nanoTime();
+
+		Future<Object> future = executor.schedule(Duration.ofMillis(200), () -> System.nanoTime());
+
+		assertEquals(1, executor.getScheduledCount());
+		long ranAt = (Long) future.get(5, TimeUnit.SECONDS);
+		assertTrue(ranAt - start >= TimeUnit.MILLISECONDS.toNanos(200));
+		assertEquals(0, executor.getScheduledCount());
+		assertEquals(0, executor.getQueuedCount());
+	}
+
+	@Test
+	public void scheduled_task_cancelled_before_delay_never_runs() throws Exception {
+		BackgroundTaskExecutor executor = new BackgroundTaskExecutor(false, failures::add);
+		CountDownLatch ran = new CountDownLatch(1);
+
+		Future<Object> future = executor.schedule(Duration.ofMillis(200), () -> {
+			ran.countDown();
+			return "done";
+		});
+		future.cancel(true);
+
+		assertFalse(ran.await(500, TimeUnit.MILLISECONDS));
+		assertEquals(0, executor.getScheduledCount());
+		assertEquals(0, executor.getQueuedCount());
+		assertEquals(0, failures.size());
+	}
+}
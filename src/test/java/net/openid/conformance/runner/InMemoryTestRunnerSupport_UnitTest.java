@@ -0,0 +1,103 @@
+package net.openid.conformance.runner;
+
+import com.google.common.collect.ImmutableMap;
+import net.openid.conformance.security.AuthenticationFacade;
+import net.openid.conformance.testmodule.TestModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InMemoryTestRunnerSupport_UnitTest {
+
+	private static final ImmutableMap<String, String> ALICE = ImmutableMap.of("sub", "alice", "iss", "https://example.com");
+
+	private static final ImmutableMap<String, String> BOB = ImmutableMap.of("sub", "bob", "iss", "https://example.com");
+
+	private InMemoryTestRunnerSupport support;
+
+	private AuthenticationFacade authenticationFacade;
+
+	@BeforeEach
+	public void setUp() {
+		authenticationFacade = mock(AuthenticationFacade.class);
+		support = new InMemoryTestRunnerSupport();
+		ReflectionTestUtils.setField(support, "authenticationFacade", authenticationFacade);
+	}
+
+	private TestModule addTest(String id, Map<String, String> owner, TestModule.Status status, Instant updated) {
+		TestModule test = mock(TestModule.class);
+		when(test.getId()).thenReturn(id);
+		when(test.getOwner()).thenReturn(owner);
+		when(test.getStatus()).thenReturn(status);
+		when(test.getStatusUpdated()).thenReturn(updated);
+		when(test.getCreated()).thenReturn(updated);
+		support.addRunningTest(id, test);
+		return test;
+	}
+
+	@Test
+	public void users_only_see_their_own_tests_newest_first() {
+		Instant now = Instant.now();
+		addTest("alice1", ALICE, TestModule.Status.RUNNING, now.minusSeconds(20));
+		addTest("bob1", BOB, TestModule.Status.RUNNING, now.minusSeconds(10));
+		addTest("alice2", ALICE, TestModule.Status.WAITING, now);
+
+		when(authenticationFacade.getPrincipal()).thenReturn(ALICE);
+		assertEquals(List.of("alice2", "alice1"), List.copyOf(support.getAllRunningTestIds()));
+		assertNull(support.getRunningTestById("bob1"));
+
+		when(authenticationFacade.getPrincipal()).thenReturn(null);
+		assertEquals(List.of("alice2", "bob1", "alice1"), List.copyOf(support.getAllRunningTestIds()));
+	}
+
+	@Test
+	public void removed_tests_are_removed_from_owner_index() {
+		addTest("alice1", ALICE, TestModule.Status.RUNNING, Instant.now());
+		support.removeRunningTest("alice1");
+
+		when(authenticationFacade.getPrincipal()).thenReturn(ALICE);
+		assertTrue(support.getAllRunningTestIds().isEmpty());
+		assertFalse(support.hasTestId("alice1"));
+	}
+
+	@Test
+	public void finished_tests_expire_after_closed_timeout() {
+		support.setClosedTestTimeout(Duration.ofMinutes(1));
+		TestModule recent = addTest("recent", ALICE, TestModule.Status.FINISHED, Instant.now());
+		addTest("old", ALICE, TestModule.Status.FINISHED, Instant.now().minusSeconds(120));
+
+		assertFalse(support.hasTestId("old"));
+		assertSame(recent, support.getRunningTestById("recent"));
+	}
+
+	@Test
+	public void sweeper_stops_idle_tests() {
+		TestModule idle = addTest("idle", ALICE, TestModule.Status.WAITING, Instant.now().minus(Duration.ofHours(7)));
+		TestExecutionManager executionManager = mock(TestExecutionManager.class);
+		when(idle.getTestExecutionManager()).thenReturn(executionManager);
+		TestModule active = addTest("active", ALICE, TestModule.Status.WAITING, Instant.now());
+
+		support.expireOldTests();
+
+		verify(executionManager).runInBackground(any());
+		verify(active, never()).getTestExecutionManager();
+		when(authenticationFacade.getPrincipal()).thenReturn(ALICE);
+		assertEquals(List.of("active"), List.copyOf(support.getAllRunningTestIds()));
+	}
+}
@@ -0,0 +1,138 @@
+package net.openid.conformance.runner;
+
+import com.google.common.collect.ImmutableMap;
+import com.mongodb.client.result.UpdateResult;
+import net.openid.conformance.security.AuthenticationFacade;
+import net.openid.conformance.testmodule.TestModule;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MongoTestRunnerSupport_UnitTest {
+
+	private static final ImmutableMap<String, String> ALICE = ImmutableMap.of("sub", "alice", "iss", "https://example.com");
+
+	private MongoTestRunnerSupport support;
+
+	private MongoTemplate mongoTemplate;
+
+	@BeforeEach
+	public void setUp() {
+		mongoTemplate = mock(MongoTemplate.class);
+		support = new MongoTestRunnerSupport();
+		ReflectionTestUtils.setField(support, "mongoTemplate", mongoTemplate);
+		ReflectionTestUtils.setField(support, "authenticationFacade", mock(AuthenticationFacade.class));
+		ReflectionTestUtils.setField(support, "nodeId", "node1");
+
+		when(mongoTemplate.upsert(any(Query.class), any(Update.class), eq(MongoTestRunnerSupport.NODES_COLLECTION)))
+			.thenReturn(UpdateResult.acknowledged(1, 1L, null));
+		// node3's lease has run out, so it's removed before the rest are read
+		when(mongoTemplate.find(support.expiredNodes(), Document.class, MongoTestRunnerSupport.NODES_COLLECTION)).thenReturn(List.of(
+			new Document("_id", "node3").append("url", "http://localhost:8082")));
+		when(mongoTemplate.findAll(Document.class, MongoTestRunnerSupport.NODES_COLLECTION)).thenReturn(List.of(
+			new Document("_id", "node1").append("url", "http://localhost:8080"),
+			new Document("_id", "node2").append("url", "http://localhost:8081")));
+
+		support.beat();
+	}
+
+	private TestModule addTest(String id) {
+		TestModule test = mock(TestModule.class);
+		when(test.getId()).thenReturn(id);
+		when(test.getOwner()).thenReturn(ALICE);
+		when(test.getStatus()).thenReturn(TestModule.Status.WAITING);
+		when(test.getStatusUpdated()).thenReturn(Instant.now());
+		when(test.getCreated()).thenReturn(Instant.now());
+		support.addRunningTest(id, test);
+		return test;
+	}
+
+	private void publishRemote(String collection, String id, Document record) {
+		when(mongoTemplate.findById(id, Document.class, collection)).thenReturn(record);
+	}
+
+	@Test
+	public void requests_are_only_forwarded_to_live_nodes() {
+		addTest("local");
+		publishRemote(MongoTestRunnerSupport.TESTS_COLLECTION, "remote", new Document("_id", "remote").append("node", "node2"));
+		publishRemote(MongoTestRunnerSupport.TESTS_COLLECTION, "orphaned", new Document("_id", "orphaned").append("node", "node3"));
+
+		assertNull(support.getRemoteNodeUrl("local"));
+		assertEquals("http://localhost:8081", support.getRemoteNodeUrl("remote"));
+		assertNull(support.getRemoteNodeUrl("orphaned"));
+		assertNull(support.getRemoteNodeUrl("unknown"));
+	}
+
+	@Test
+	public void dead_nodes_are_removed() {
+		verify(mongoTemplate).remove(new Query(Criteria.where("node").is("node3")), MongoTestRunnerSupport.TESTS_COLLECTION);
+		verify(mongoTemplate).remove(new Query(Criteria.where("node").is("node3")), MongoTestRunnerSupport.ALIASES_COLLECTION);
+		verify(mongoTemplate).remove(new Query(Criteria.where("_id").is("node3")), MongoTestRunnerSupport.NODES_COLLECTION);
+	}
+
+	@Test
+	public void leases_use_the_database_clock() {
+		ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+		verify(mongoTemplate).upsert(any(Query.class), update.capture(), eq(MongoTestRunnerSupport.NODES_COLLECTION));
+		assertEquals(new Document("heartbeat", true), update.getValue().getUpdateObject().get("$currentDate"));
+
+		Document expired = support.expiredNodes().getQueryObject();
+		assertEquals(new Document("$expr", new Document("$lt", List.of("$heartbeat",
+			new Document("$subtract", List.of("$$NOW", 30000L))))), expired);
+	}
+
+	@Test
+	public void aliases_can_move_to_other_nodes() {
+		addTest("local");
+		support.addAlias("mine", "local");
+		support.addAlias("taken", "local");
+		support.addAlias("orphaned", "local");
+		publishRemote(MongoTestRunnerSupport.ALIASES_COLLECTION, "mine", new Document("_id", "mine").append("testId", "local").append("node", "node1"));
+		publishRemote(MongoTestRunnerSupport.ALIASES_COLLECTION, "taken", new Document("_id", "taken").append("testId", "remote").append("node", "node2"));
+		publishRemote(MongoTestRunnerSupport.ALIASES_COLLECTION, "orphaned", new Document("_id", "orphaned").append("testId", "remote").append("node", "node3"));
+
+		assertEquals("local", support.getTestIdForAlias("mine"));
+		assertEquals("remote", support.getTestIdForAlias("taken"));
+		// the node that took it over has gone, so the alias is back to what this node knows about
+		assertEquals("local", support.getTestIdForAlias("orphaned"));
+		assertNull(support.getTestIdForAlias("unknown"));
+		assertNull(support.getRunningTestByAliasIgnoringLoggedInUser("taken"));
+	}
+
+	@Test
+	public void missing_records_are_published_again() {
+		addTest("local");
+		verify(mongoTemplate, times(1)).save(any(Document.class), eq(MongoTestRunnerSupport.TESTS_COLLECTION));
+
+		// the database doesn't have it (the default count is 0), e.g. because another node thought this one had gone
+		support.beat();
+
+		verify(mongoTemplate, times(2)).save(any(Document.class), eq(MongoTestRunnerSupport.TESTS_COLLECTION));
+	}
+
+	@Test
+	public void removed_tests_are_unpublished() {
+		addTest("local");
+		support.removeRunningTest("local");
+
+		verify(mongoTemplate).remove(new Query(Criteria.where("_id").is("local").and("node").is("node1")), MongoTestRunnerSupport.TESTS_COLLECTION);
+	}
+}
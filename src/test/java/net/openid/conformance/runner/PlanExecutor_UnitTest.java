@@ -0,0 +1,308 @@
+package net.openid.conformance.runner;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gson.JsonObject;
+import net.openid.conformance.info.Plan;
+import net.openid.conformance.info.TestInfo;
+import net.openid.conformance.info.TestInfoRepository;
+import net.openid.conformance.info.TestPlanService;
+import net.openid.conformance.security.AuthenticationFacade;
+import net.openid.conformance.testmodule.TestModule;
+import net.openid.conformance.variant.VariantSelection;
+import net.openid.conformance.variant.VariantService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PlanExecutor_UnitTest {
+
+	private static final ImmutableMap<String, String> ALICE = ImmutableMap.of("sub", "alice", "iss", "https://example.com");
+
+	private PlanExecutor executor;
+
+	private TestPlanService planService;
+
+	private TestRunner testRunner;
+
+	private TestRunnerSupport support;
+
+	private VariantService variantService;
+
+	private TestInfoRepository testInfos;
+
+	private TestForwardingInterceptor testForwarding;
+
+	// the test modules created, in order
+	private final List<String> created = new ArrayList<>();
+
+	@BeforeEach
+	public void setUp() {
+		planService = mock(TestPlanService.class);
+		testRunner = mock(TestRunner.class);
+		support = mock(TestRunnerSupport.class);
+		variantService = mock(VariantService.class);
+		testInfos = mock(TestInfoRepository.class);
+		testForwarding = mock(TestForwardingInterceptor.class);
+		AuthenticationFacade authenticationFacade = mock(AuthenticationFacade.class);
+		when(authenticationFacade.getPrincipal()).thenReturn(ALICE);
+		when(planService.getTestPlanVariant("plan1")).thenReturn(new VariantSelection(Map.of("server_metadata", "discovery")));
+
+		executor = new PlanExecutor();
+		ReflectionTestUtils.setField(executor, "planService", planService);
+		ReflectionTestUtils.setField(executor, "testRunner", testRunner);
+		ReflectionTestUtils.setField(executor, "support", support);
+		ReflectionTestUtils.setField(executor, "variantService", variantService);
+		ReflectionTestUtils.setField(executor, "testInfos", testInfos);
+		ReflectionTestUtils.setField(executor, "authenticationFacade", authenticationFacade);
+		ReflectionTestUtils.setField(executor, "testForwarding", testForwarding);
+		ReflectionTestUtils.setField(executor, "pollInterval", Duration.ZERO);
+		// run the plan on the calling thread, so start() returns once the run has finished
+		ReflectionTestUtils.setField(executor, "executor", MoreExecutors.newDirectExecutorService());
+	}
+
+	private Plan plan(String... modules) {
+		List<Plan.Module> planModules = new ArrayList<>();
+		for (String module : modules) {
+			planModules.add(new Plan.Module(module, Map.of()));
+		}
+		Plan plan = mock(Plan.class);
+		when(plan.getId()).thenReturn("plan1");
+		when(plan.getModules()).thenReturn(planModules);
+		return plan;
+	}
+
+	private void withAlias(String module, String alias) {
+		JsonObject config = new JsonObject();
+		config.addProperty("alias", alias);
+		when(planService.getModuleConfig("plan1", module)).thenReturn(config);
+	}
+
+	private VariantService.TestModuleHolder module(String name, boolean applicable) {
+		VariantService.TestModuleHolder holder = mock(VariantService.TestModuleHolder.class);
+		when(holder.isApplicableForVariant(any())).thenReturn(applicable);
+		when(variantService.getTestModule(name)).thenReturn(holder);
+		return holder;
+	}
+
+	/**
+	 * Creating the module gives a test which has finished by the time it's first checked on
+	 */
+	private void finishesStraightAway(String name) {
+		module(name, true);
+		String testId = name + "-id";
+		TestModule test = mock(TestModule.class);
+		when(test.getStatus()).thenReturn(TestModule.Status.FINISHED);
+		when(test.getResult()).thenReturn(TestModule.Result.PASSED);
+		when(support.getRunningTestById(testId)).thenReturn(test);
+		when(testRunner.createTest(eq(name), eq("plan1"), any(), isNull(), isNull())).thenAnswer(invocation -> {
+			created.add(name);
+			return new ResponseEntity<>(Map.of("id", testId), HttpStatus.CREATED);
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Integer> results(PlanRun run) {
+		return (Map<String, Integer>) run.toMap().get("results");
+	}
+
+	@Test
+	public void modules_sharing_an_alias_are_not_run_at_the_same_time() {
+		finishesStraightAway("test-a");
+		finishesStraightAway("test-b");
+		finishesStraightAway("test-c");
+		withAlias("test-a", "shared");
+		withAlias("test-b", "shared");
+
+		PlanRun run = executor.start(plan("test-a", "test-b", "test-c"), 3, null);
+
+		assertNotNull(run);
+		assertTrue(run.isFinished());
+		// test-b has to wait for test-a, so test-c (which has no alias) is started before it
+		assertEquals(List.of("test-a", "test-c", "test-b"), created);
+		assertEquals(Map.of("PASSED", 3), results(run));
+	}
+
+	@Test
+	public void parallel_limits_the_number_of_modules_run_at_once() {
+		finishesStraightAway("test-a");
+		finishesStraightAway("test-b");
+		finishesStraightAway("test-c");
+		TestModule test = mock(TestModule.class);
+		when(test.getStatus()).thenReturn(TestModule.Status.FINISHED);
+		List<Integer> runningWhenCreated = new ArrayList<>();
+		when(support.getRunningTestById("test-a-id")).thenAnswer(invocation -> {
+			runningWhenCreated.add(executor.getRun("plan1").getModules(PlanRun.State.RUNNING).size());
+			return test;
+		});
+
+		PlanRun run = executor.start(plan("test-a", "test-b", "test-c"), 1, null);
+
+		assertEquals(List.of(1), runningWhenCreated);
+		assertEquals(List.of("test-a", "test-b", "test-c"), created);
+		assertEquals(1, run.toMap().get("parallel"));
+	}
+
+	@Test
+	public void modules_not_applicable_to_the_plan_variant_are_skipped() {
+		finishesStraightAway("test-a");
+		module("test-b", false);
+
+		PlanRun run = executor.start(plan("test-a", "test-b"), null, null);
+
+		assertEquals(List.of("test-a"), created);
+		assertEquals(Map.of("PASSED", 1, "NOT_APPLICABLE", 1), results(run));
+	}
+
+	@Test
+	public void only_the_named_modules_are_run() {
+		finishesStraightAway("test-a");
+		finishesStraightAway("test-b");
+
+		executor.start(plan("test-a", "test-b"), null, List.of("test-b"));
+
+		assertEquals(List.of("test-b"), created);
+	}
+
+	@Test
+	public void tests_that_do_not_finish_in_time_are_stopped() throws Exception {
+		module("test-a", true);
+		when(testRunner.createTest(eq("test-a"), eq("plan1"), any(), isNull(), isNull()))
+			.thenReturn(new ResponseEntity<>(Map.of("id", "test-a-id"), HttpStatus.CREATED));
+		TestModule test = mock(TestModule.class);
+		TestExecutionManager executionManager = mock(TestExecutionManager.class);
+		when(test.getTestExecutionManager()).thenReturn(executionManager);
+		boolean[] stopped = new boolean[1];
+		when(test.getStatus()).thenAnswer(invocation -> stopped[0] ? TestModule.Status.INTERRUPTED : TestModule.Status.WAITING);
+		when(test.autoStart()).thenReturn(true);
+		doAnswer(invocation -> {
+			stopped[0] = true;
+			return ((Callable<?>) invocation.getArgument(0)).call();
+		}).when(executionManager).runInBackground(any());
+		when(support.getRunningTestById("test-a-id")).thenReturn(test);
+		ReflectionTestUtils.setField(executor, "moduleTimeoutSeconds", 0);
+
+		PlanRun run = executor.start(plan("test-a"), null, null);
+
+		verify(test).stop(any());
+		assertEquals(Map.of("UNKNOWN", 1), results(run));
+	}
+
+	@Test
+	public void modules_that_cannot_be_created_are_recorded_as_errors() {
+		module("test-a", true);
+		when(testRunner.createTest(eq("test-a"), eq("plan1"), any(), isNull(), isNull()))
+			.thenReturn(new ResponseEntity<>(Map.of("error", "Alias in use by another user"), HttpStatus.CONFLICT));
+
+		PlanRun run = executor.start(plan("test-a"), null, null);
+
+		assertEquals(Map.of("ERROR", 1), results(run));
+	}
+
+	@Test
+	public void tests_on_another_node_that_do_not_finish_in_time_are_stopped() {
+		module("test-a", true);
+		when(testRunner.createTest(eq("test-a"), eq("plan1"), any(), isNull(), isNull()))
+			.thenReturn(new ResponseEntity<>(Map.of("id", "test-a-id"), HttpStatus.CREATED));
+		boolean[] stopped = new boolean[1];
+		TestInfo testInfo = mock(TestInfo.class);
+		when(testInfo.getStatus()).thenAnswer(invocation -> stopped[0] ? TestModule.Status.INTERRUPTED : TestModule.Status.WAITING);
+		when(testInfos.findById("test-a-id")).thenReturn(Optional.of(testInfo));
+		when(testForwarding.stopRemoteTest("test-a-id", "Bearer api-token")).thenAnswer(invocation -> {
+			stopped[0] = true;
+			return true;
+		});
+		ReflectionTestUtils.setField(executor, "moduleTimeoutSeconds", 0);
+
+		// the test is stopped from the run's thread, using the token the run was started with
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/plan/plan1/run");
+		request.addHeader("Authorization", "Bearer api-token");
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+		PlanRun run;
+		try {
+			run = executor.start(plan("test-a"), null, null);
+		} finally {
+			RequestContextHolder.resetRequestAttributes();
+		}
+
+		verify(testForwarding).stopRemoteTest("test-a-id", "Bearer api-token");
+		assertEquals(Map.of("UNKNOWN", 1), results(run));
+	}
+
+	@Test
+	public void run_that_cannot_be_started_is_finished() {
+		ExecutorService shutDown = Executors.newSingleThreadExecutor();
+		shutDown.shutdown();
+		ReflectionTestUtils.setField(executor, "executor", shutDown);
+
+		assertThrows(RejectedExecutionException.class, () -> executor.start(plan("test-a"), null, null));
+
+		// so the plan can be run again
+		assertTrue(executor.getRun("plan1").isFinished());
+	}
+
+	@Test
+	public void stream_that_is_not_being_read_does_not_hold_up_the_run() throws Exception {
+		ExecutorService sender = Executors.newCachedThreadPool();
+		try {
+			PlanRun.Module module = new PlanRun.Module(0, "test-a", null, null);
+			PlanRun run = new PlanRun("plan1", ALICE, 1, List.of(module), sender);
+			CountDownLatch release = new CountDownLatch(1);
+			CountDownLatch sent = new CountDownLatch(2);
+			run.follow(new SseEmitter() {
+				@Override
+				public void send(SseEventBuilder builder) {
+					try {
+						// a client whose connection has stalled
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					sent.countDown();
+				}
+			}, null);
+
+			assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+				run.moduleCreated(module, "test-a-id");
+				run.moduleStatus(module, TestModule.Status.FINISHED, "PASSED");
+				run.toMap();
+			});
+
+			release.countDown();
+			assertTrue(sent.await(10, TimeUnit.SECONDS));
+		} finally {
+			sender.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package net.openid.conformance.runner;
+
+import com.google.common.collect.ImmutableMap;
+import com.sun.net.httpserver.HttpServer;
+import net.openid.conformance.security.AuthenticationFacade;
+import net.openid.conformance.security.ClusterForwardedUserFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestForwardingInterceptor_UnitTest {
+
+	private TestForwardingInterceptor interceptor;
+
+	private TestRunnerSupport support;
+
+	@BeforeEach
+	public void setUp() {
+		support = mock(TestRunnerSupport.class);
+		when(support.getTestIdForAlias("myalias")).thenReturn("test1");
+		interceptor = new TestForwardingInterceptor();
+		ReflectionTestUtils.setField(interceptor, "support", support);
+	}
+
+	@Test
+	public void test_id_is_found_from_test_path() {
+		assertEquals("test1", interceptor.findTestId(new MockHttpServletRequest("POST", "/test/test1/token")));
+		assertEquals("test1", interceptor.findTestId(new MockHttpServletRequest("POST", "/test-mtls/test1/token")));
+		assertEquals("test1", interceptor.findTestId(new MockHttpServletRequest("GET", "/test/a/myalias/.well-known/openid-configuration")));
+		assertNull(interceptor.findTestId(new MockHttpServletRequest("GET", "/test/a/otheralias/authorize")));
+	}
+
+	@Test
+	public void test_id_is_found_from_webfinger_resource() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/.well-known/webfinger");
+		request.addParameter("resource", "acct:myalias.oidcc-client-test@localhost:8443");
+		assertEquals("test1", interceptor.findTestId(request));
+
+		request = new MockHttpServletRequest("GET", "/.well-known/webfinger");
+		request.addParameter("resource", "https://localhost:8443/test2/oidcc-client-test");
+		assertEquals("test2", interceptor.findTestId(request));
+
+		request = new MockHttpServletRequest("GET", "/.well-known/webfinger");
+		request.addParameter("resource", "not a resource");
+		assertNull(interceptor.findTestId(request));
+	}
+
+	@Test
+	public void test_id_is_found_from_api_path() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/runner/test1");
+		request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, Map.of("id", "test1"));
+		assertEquals("test1", interceptor.findTestId(request));
+
+		assertNull(interceptor.findTestId(new MockHttpServletRequest("GET", "/api/runner/running")));
+	}
+
+	@Test
+	public void forwarded_requests_are_never_forwarded_again() throws Exception {
+		when(support.getRemoteNodeUrl(any())).thenReturn("http://localhost:1");
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/test/test1/token");
+		request.addHeader(TestForwardingInterceptor.FORWARDED_BY_HEADER, "127.0.0.1");
+
+		assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), null));
+		verify(support, never()).getRemoteNodeUrl(any());
+	}
+
+	@Test
+	public void local_tests_are_handled_here() throws Exception {
+		assertTrue(interceptor.preHandle(new MockHttpServletRequest("POST", "/test/test1/token"), new MockHttpServletResponse(), null));
+		verify(support).getRemoteNodeUrl("test1");
+	}
+
+	@Test
+	public void remote_test_is_stopped_as_the_current_user() throws Exception {
+		AuthenticationFacade authenticationFacade = mock(AuthenticationFacade.class);
+		when(authenticationFacade.getPrincipal()).thenReturn(ImmutableMap.of("sub", "alice", "iss", "https://example.com"));
+		ReflectionTestUtils.setField(interceptor, "authenticationFacade", authenticationFacade);
+		ReflectionTestUtils.setField(interceptor, "clusterSecret", "secret");
+
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer otherNode = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		otherNode.createContext("/", exchange -> {
+			requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI()
+				+ " " + exchange.getRequestHeaders().getFirst(ClusterForwardedUserFilter.SECRET_HEADER));
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+		});
+		otherNode.start();
+		try {
+			when(support.getRemoteNodeUrl("test2")).thenReturn("http://localhost:" + otherNode.getAddress().getPort());
+
+			assertTrue(interceptor.stopRemoteTest("test2", null));
+			assertFalse(interceptor.stopRemoteTest("test1", null));
+			assertEquals(List.of("DELETE /api/runner/test2 secret"), requests);
+		} finally {
+			otherNode.stop(0);
+		}
+	}
+
+	@Test
+	public void remote_alias_takeover_is_refused_with_the_other_nodes_reason() throws Exception {
+		AuthenticationFacade authenticationFacade = mock(AuthenticationFacade.class);
+		when(authenticationFacade.getPrincipal()).thenReturn(ImmutableMap.of("sub", "alice", "iss", "https://example.com"));
+		ReflectionTestUtils.setField(interceptor, "authenticationFacade", authenticationFacade);
+		ReflectionTestUtils.setField(interceptor, "clusterSecret", "secret");
+
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer otherNode = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		otherNode.createContext("/", exchange -> {
+			requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI());
+			if (exchange.getRequestURI().getPath().startsWith("/api/runner/test2/")) {
+				exchange.sendResponseHeaders(200, -1);
+			} else {
+				byte[] body = "{\"error\":\"alias 'myalias' is in use by a different user.\"}".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(409, body.length);
+				exchange.getResponseBody().write(body);
+			}
+			exchange.close();
+		});
+		otherNode.start();
+		try {
+			String nodeUrl = "http://localhost:" + otherNode.getAddress().getPort();
+			when(support.getRemoteNodeUrl("test2")).thenReturn(nodeUrl);
+			when(support.getRemoteNodeUrl("test3")).thenReturn(nodeUrl);
+			when(support.getRemoteNodeUrl("test4")).thenReturn("http://localhost:1");
+
+			interceptor.takeOverRemoteAlias("test2", "my alias", "new1");
+			assertEquals(List.of("DELETE /api/runner/test2/alias?alias=my+alias&new_test_id=new1"), requests);
+
+			RuntimeException e = assertThrows(RuntimeException.class, () -> interceptor.takeOverRemoteAlias("test3", "myalias", "new1"));
+			assertEquals("alias 'myalias' is in use by a different user.", e.getMessage());
+
+			// a node that can't be reached can't have stopped the test
+			assertThrows(RuntimeException.class, () -> interceptor.takeOverRemoteAlias("test4", "myalias", "new1"));
+
+			// nor can a test that isn't running anywhere
+			interceptor.takeOverRemoteAlias("test1", "myalias", "new1");
+		} finally {
+			otherNode.stop(0);
+		}
+	}
+}
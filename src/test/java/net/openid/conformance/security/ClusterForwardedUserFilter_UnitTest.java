@@ -0,0 +1,63 @@
+package net.openid.conformance.security;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClusterForwardedUserFilter_UnitTest {
+
+	private static final ImmutableMap<String, String> ALICE = ImmutableMap.of("sub", "alice", "iss", "https://example.com");
+
+	@AfterEach
+	public void clearContext() {
+		SecurityContextHolder.clearContext();
+	}
+
+	private MockHttpServletRequest forwardedRequest(String secret) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/runner/test1");
+		request.addHeader(ClusterForwardedUserFilter.SECRET_HEADER, secret);
+		request.addHeader(ClusterForwardedUserFilter.USER_HEADER, ClusterForwardedUserFilter.encodeUser(ALICE, "Alice", false));
+		return request;
+	}
+
+	private ClusterForwardedUserFilter filter(String secret) {
+		ClusterForwardedUserFilter filter = new ClusterForwardedUserFilter();
+		ReflectionTestUtils.setField(filter, "secret", secret);
+		return filter;
+	}
+
+	@Test
+	public void forwarded_user_is_authenticated() throws Exception {
+		filter("s3cret").doFilter(forwardedRequest("s3cret"), new MockHttpServletResponse(), new MockFilterChain());
+
+		OIDCAuthenticationFacade facade = new OIDCAuthenticationFacade();
+		assertEquals(ALICE, facade.getPrincipal());
+		assertEquals("Alice", facade.getDisplayName());
+		assertTrue(facade.isUser());
+		assertFalse(facade.isAdmin());
+	}
+
+	@Test
+	public void wrong_secret_is_ignored() throws Exception {
+		filter("s3cret").doFilter(forwardedRequest("guess"), new MockHttpServletResponse(), new MockFilterChain());
+
+		assertNull(SecurityContextHolder.getContext().getAuthentication());
+	}
+
+	@Test
+	public void nothing_is_trusted_without_a_secret() throws Exception {
+		filter("").doFilter(forwardedRequest(""), new MockHttpServletResponse(), new MockFilterChain());
+
+		assertNull(SecurityContextHolder.getContext().getAuthentication());
+	}
+}
@@ -7,6 +7,9 @@ import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -404,4 +407,84 @@ public class Environment_UnitTest {
 		assertEquals(altObject, env.getObject(altKey));
 	}
 
+	@Test
+	public void testSnapshotIsNotAffectedByChangesToEnvironment() {
+		env.putObject(altKey, altObject);
+		env.mapKey(mappedKey, testKey);
+		env.putString(testStringKey, testStringValue);
+
+		Environment snapshot = env.snapshot();
+
+		env.getObject(testKey).addProperty("added", "after snapshot");
+		env.putString(testKey, "path.added", "after snapshot");
+		env.putString(testStringKey, altStringValue);
+		env.removeObject(altKey);
+		env.unmapKey(mappedKey);
+
+		assertNull(snapshot.getString(testKey, "added"));
+		assertNull(snapshot.getString(testKey, "path.added"));
+		assertEquals(testStringValue, snapshot.getString(testStringKey));
+		assertEquals(altObject, snapshot.getObject(altKey));
+		assertEquals(testKey, snapshot.getEffectiveKey(mappedKey));
+	}
+
+	@Test
+	public void testEnvironmentIsNotAffectedByChangesToSnapshot() {
+		env.putObject(altKey, altObject);
+		Environment snapshot = env.snapshot();
+
+		snapshot.getObject(testKey).addProperty("added", "in snapshot");
+		snapshot.putObject(altKey, new JsonObject());
+
+		assertNull(env.getString(testKey, "added"));
+		assertEquals(altObject, env.getObject(altKey));
+	}
+
+	@Test
+	public void testSnapshotSharesObjectsUntilModified() {
+		env.putObject(altKey, altObject);
+		Environment snapshot = env.snapshot();
+
+		// objects that aren't accessed again aren't copied
+		assertSame(altObject, ((Map<?, ?>) ReflectionTestUtils.getField(snapshot, "store")).get(altKey));
+
+		JsonObject fromEnv = env.getObject(testKey);
+		assertEquals(testObject, fromEnv);
+		assertNotSame(testObject, fromEnv);
+		// only copied once
+		assertSame(fromEnv, env.getObject(testKey));
+	}
+
+	@Test
+	public void testCopyObject() {
+		env.copyObject(testKey, altKey);
+
+		env.getObject(altKey).addProperty("added", "in copy");
+
+		assertEquals("in copy", env.getString(altKey, "added"));
+		assertNull(env.getString(testKey, "added"));
+		assertEquals(testObject, env.getObject(testKey));
+
+		env.copyObject("not_there", altKey);
+		assertNull(env.getObject(altKey));
+	}
+
+	@Test
+	public void testEnvPathAccessors() {
+		EnvPath compiled = EnvPath.of(path);
+
+		assertSame(compiled, EnvPath.of(path));
+		assertEquals(env.getString(testKey, path), env.getString(testKey, compiled));
+		assertEquals(env.getElementFromObject(testKey, path), env.getElementFromObject(testKey, compiled));
+		assertNull(env.getString(testKey, EnvPath.of(pathNotFound)));
+
+		EnvPath newPath = EnvPath.of("new.nested.value");
+		env.putString(testKey, newPath, testStringValue);
+		assertEquals(testStringValue, env.getString(testKey, "new.nested.value"));
+
+		env.removeElement(testKey, newPath);
+		assertNull(env.getString(testKey, newPath));
+		assertNotNull(env.getElementFromObject(testKey, "new.nested"));
+	}
+
 }
@@ -0,0 +1,109 @@
+package net.openid.conformance.token;
+
+import com.google.common.collect.ImmutableMap;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.result.DeleteResult;
+import net.openid.conformance.security.AuthenticationFacade;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DBTokenService_UnitTest {
+
+	private static final String TOKEN = "secret-token-value";
+
+	private MongoCollection<Document> collection;
+
+	private MongoTemplate mongoTemplate;
+
+	private FindIterable<Document> found;
+
+	private DBTokenService tokenService;
+
+	@BeforeEach
+	@SuppressWarnings("unchecked")
+	public void setUp() {
+		collection = mock(MongoCollection.class);
+		found = mock(FindIterable.class);
+		when(collection.find(any(Bson.class))).thenReturn(found);
+
+		mongoTemplate = mock(MongoTemplate.class);
+		when(mongoTemplate.getCollection(DBTokenService.COLLECTION)).thenReturn(collection);
+		when(mongoTemplate.remove(any(Query.class), eq(DBTokenService.COLLECTION))).thenReturn(DeleteResult.acknowledged(1));
+
+		AuthenticationFacade authenticationFacade = mock(AuthenticationFacade.class);
+		when(authenticationFacade.getPrincipal()).thenReturn(ImmutableMap.of("sub", "developer", "iss", "https://developer.com"));
+
+		tokenService = new DBTokenService();
+		ReflectionTestUtils.setField(tokenService, "mongoTemplate", mongoTemplate);
+		ReflectionTestUtils.setField(tokenService, "authenticationFacade", authenticationFacade);
+		ReflectionTestUtils.setField(tokenService, "tokenCacheSeconds", 60L);
+		ReflectionTestUtils.setField(tokenService, "tokenCacheSize", 100L);
+		tokenService.createTokenCache();
+	}
+
+	private Document tokenDocument(Long expires) {
+		return new Document("_id", "token-id")
+			.append("token", TOKEN)
+			.append("expires", expires);
+	}
+
+	@Test
+	public void findToken_caches_token() {
+		Document token = tokenDocument(System.currentTimeMillis() + 60_000);
+		when(found.first()).thenReturn(token);
+
+		assertSame(token, tokenService.findToken(TOKEN));
+		assertSame(token, tokenService.findToken(TOKEN));
+
+		verify(collection, times(1)).find(any(Bson.class));
+	}
+
+	@Test
+	public void findToken_does_not_keep_the_token_itself() {
+		when(found.first()).thenReturn(tokenDocument(null));
+
+		Map<?, ?> tokenInfo = tokenService.findToken(TOKEN);
+
+		assertEquals("token-id", tokenInfo.get("_id"));
+		assertFalse(tokenInfo.containsKey("token"));
+	}
+
+	@Test
+	public void findToken_does_not_cache_expired_token() {
+		when(found.first()).thenReturn(tokenDocument(System.currentTimeMillis() - 1));
+
+		tokenService.findToken(TOKEN);
+		tokenService.findToken(TOKEN);
+
+		verify(collection, times(2)).find(any(Bson.class));
+	}
+
+	@Test
+	public void deleteToken_removes_token_from_cache() {
+		when(found.first()).thenReturn(tokenDocument(null));
+
+		tokenService.findToken(TOKEN);
+		tokenService.deleteToken("token-id");
+		tokenService.findToken(TOKEN);
+
+		verify(collection, times(2)).find(any(Bson.class));
+	}
+}
@@ -0,0 +1,37 @@
+package net.openid.conformance.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class GsonJsonNodeAdapter_UnitTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private void assertSameAsParsed(String json) throws Exception {
+		JsonNode expected = mapper.readTree(json);
+		JsonNode actual = GsonJsonNodeAdapter.toJsonNode(JsonParser.parseString(json));
+		assertEquals(expected, actual);
+		assertEquals(expected.toString(), actual.toString());
+	}
+
+	@Test
+	public void converts_objects_and_arrays() throws Exception {
+		assertSameAsParsed("{\"a\":{\"b\":[1,\"two\",true,null,{\"c\":[]}]},\"d\":{}}");
+	}
+
+	@Test
+	public void converts_numbers_to_same_types_as_jackson() throws Exception {
+		assertSameAsParsed("{\"int\":1,\"negative\":-7,\"long\":12345678901,\"big\":123456789012345678901234567890,\"double\":1.5,\"exponent\":1e3,\"whole_double\":2.0}");
+		assertEquals(mapper.readTree("12345678901").getNodeType(),
+			GsonJsonNodeAdapter.toJsonNode(JsonParser.parseString("12345678901")).getNodeType());
+	}
+
+	@Test
+	public void converts_strings_with_special_characters() throws Exception {
+		assertSameAsParsed("{\"a.b\":\"quote \\\" and \\u00e9\"}");
+	}
+}
@@ -0,0 +1,65 @@
+package net.openid.conformance.util;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JWKCache_UnitTest {
+
+	@Test
+	public void same_jwks_is_only_parsed_once() throws Exception {
+		ECKey key = new ECKeyGenerator(Curve.P_256).keyID("1").generate();
+		String jwks = new JWKSet(key.toPublicJWK()).toString();
+
+		JWKSet first = JWKCache.parseJWKSet(jwks);
+		JWKSet second = JWKCache.parseJWKSet(jwks);
+		JWKSet other = JWKCache.parseJWKSet(new JWKSet(new ECKeyGenerator(Curve.P_256).keyID("2").generate().toPublicJWK()).toString());
+
+		assertSame(first, second);
+		assertNotSame(first, other);
+		assertEquals("1", first.getKeys().get(0).getKeyID());
+	}
+
+	@Test
+	public void invalid_jwks_is_rejected() {
+		assertThrows(ParseException.class, () -> JWKCache.parseJWKSet("{\"keys\":"));
+	}
+
+	@Test
+	public void verifier_is_reused_for_the_same_key_and_alg() throws Exception {
+		ECKey key = new ECKeyGenerator(Curve.P_256).generate();
+		SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.ES256), new JWTClaimsSet.Builder().subject("user").build());
+		jwt.sign(new ECDSASigner(key));
+
+		JWSVerifier verifier = JWKCache.getVerifier(JWSAlgorithm.ES256, key.toPublicJWK());
+
+		assertSame(verifier, JWKCache.getVerifier(JWSAlgorithm.ES256, ECKey.parse(key.toPublicJWK().toJSONString())));
+		assertTrue(jwt.verify(verifier));
+		assertFalse(SignedJWT.parse(jwt.serialize()).verify(JWKCache.getVerifier(JWSAlgorithm.ES256, new ECKeyGenerator(Curve.P_256).generate().toPublicJWK())));
+	}
+
+	@Test
+	public void no_verifier_for_unusable_key() throws Exception {
+		ECKey key = new ECKeyGenerator(Curve.P_256).generate();
+
+		assertNull(JWKCache.getVerifier(JWSAlgorithm.RS256, key.toPublicJWK()));
+	}
+}
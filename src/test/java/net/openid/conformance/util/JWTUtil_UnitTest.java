@@ -10,6 +10,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 
 @ExtendWith(MockitoExtension.class)
 public class JWTUtil_UnitTest {
@@ -236,4 +237,18 @@ public class JWTUtil_UnitTest {
 			throw new RuntimeException(e);
 		}
 	}
+
+	@Test
+	public void jwtStringToJsonObjectForEnvironment_returns_a_new_copy_each_time() throws Exception {
+		// {"alg":"none"}.{"sub":"user"}
+		String jwt = "eyJhbGciOiJub25lIn0.eyJzdWIiOiJ1c2VyIn0.";
+
+		JsonObject first = JWTUtil.jwtStringToJsonObjectForEnvironment(jwt);
+		first.getAsJsonObject("claims").addProperty("sub", "modified");
+		JsonObject second = JWTUtil.jwtStringToJsonObjectForEnvironment(jwt);
+
+		assertNotSame(first, second);
+		assertEquals(new JsonPrimitive("user"), second.getAsJsonObject("claims").get("sub"));
+		assertEquals(second, JWTUtil.jwtStringToJsonObjectForEnvironment(jwt, null, null));
+	}
 }
@@ -0,0 +1,52 @@
+package net.openid.conformance.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.networknt.schema.JsonSchema;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JsonSchemaRegistry_UnitTest {
+
+	private static final String VERIFIED_CLAIMS = "json-schemas/ekyc-ida/12/verified_claims.json";
+
+	@Test
+	public void schema_is_compiled_once() throws Exception {
+		JsonSchema first = JsonSchemaRegistry.getSchema(VERIFIED_CLAIMS);
+		JsonSchema second = JsonSchemaRegistry.getSchema(VERIFIED_CLAIMS, JsonSchemaRegistry.EKYC_IDA_12_SCHEMA_MAPPINGS);
+
+		assertSame(first, second);
+	}
+
+	@Test
+	public void different_mappings_are_compiled_separately() throws Exception {
+		String schema = "json-schemas/rfc8414/oauth_authorization_server_metadata.json";
+
+		assertNotSame(JsonSchemaRegistry.getSchema(schema),
+			JsonSchemaRegistry.getSchema(schema, Map.of("https://example.com/", "resource:json-schemas/")));
+	}
+
+	@Test
+	public void validates_using_referenced_schemas() throws Exception {
+		JsonSchema schema = JsonSchemaRegistry.getSchema(VERIFIED_CLAIMS);
+		ObjectMapper mapper = new ObjectMapper();
+
+		String valid = "{\"verified_claims\":{\"verification\":{\"trust_framework\":\"de_aml\"},\"claims\":{\"given_name\":\"Max\"}}}";
+		String invalid = "{\"verified_claims\":{\"verification\":{\"trust_framework\":\"de_aml\"},\"claims\":{\"given_name\":1}}}";
+
+		assertTrue(schema.validate(mapper.readTree(valid)).isEmpty());
+		assertFalse(schema.validate(mapper.readTree(invalid)).isEmpty());
+	}
+
+	@Test
+	public void missing_schema_throws_ioexception() {
+		assertThrows(IOException.class, () -> JsonSchemaRegistry.getSchema("json-schemas/does-not-exist.json"));
+	}
+}
@@ -0,0 +1,123 @@
+package net.openid.conformance.util;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.crypto.bc.BouncyCastleProviderSingleton;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.jwk.RSAKey;
+import org.junit.jupiter.api.Test;
+
+import java.security.Provider;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeyPool_UnitTest {
+
+	private void waitForPool(KeyPool pool, int available) throws InterruptedException {
+		for (int i = 0; i < 100 && pool.getAvailableCount() < available; i++) {
+			Thread.sleep(100);
+		}
+		assertEquals(available, pool.getAvailableCount());
+	}
+
+	@Test
+	public void empty_pool_generates_key_and_fills_in_background() throws Exception {
+		KeyPool pool = new KeyPool();
+		pool.setSize(2);
+
+		ECKey first = pool.takeECKey(Curve.P_256);
+		assertEquals(0, pool.getHitCount());
+		assertEquals(1, pool.getMissCount());
+
+		waitForPool(pool, 2);
+
+		ECKey second = pool.takeECKey(Curve.P_256);
+		assertEquals(1, pool.getHitCount());
+		assertEquals(1, pool.getMissCount());
+		assertEquals(Curve.P_256, second.getCurve());
+		assertTrue(second.isPrivate());
+		assertNotEquals(first.getD(), second.getD());
+	}
+
+	@Test
+	public void keys_are_only_handed_out_once() throws Exception {
+		KeyPool pool = new KeyPool();
+		pool.setSize(2);
+		pool.takeOctetKeyPair(Curve.Ed25519);
+		waitForPool(pool, 2);
+
+		OctetKeyPair first = pool.takeOctetKeyPair(Curve.Ed25519);
+		OctetKeyPair second = pool.takeOctetKeyPair(Curve.Ed25519);
+
+		assertNotEquals(first.getD(), second.getD());
+	}
+
+	@Test
+	public void zero_size_disables_pool() throws Exception {
+		KeyPool pool = new KeyPool();
+		pool.setSize(0);
+
+		pool.takeECKey(Curve.P_256);
+		pool.takeECKey(Curve.P_256);
+
+		assertEquals(0, pool.getHitCount());
+		assertEquals(2, pool.getMissCount());
+		assertEquals(0, pool.getAvailableCount());
+	}
+
+	@Test
+	public void generator_applies_configuration_to_pooled_key() throws Exception {
+		RSAKey key = KeyPool.rsaKeyGenerator(2048)
+			.keyUse(KeyUse.SIGNATURE)
+			.algorithm(JWSAlgorithm.PS256)
+			.keyID("my-key")
+			.generate();
+
+		assertEquals(2048, key.size());
+		assertTrue(key.isPrivate());
+		assertEquals(KeyUse.SIGNATURE, key.getKeyUse());
+		assertEquals(JWSAlgorithm.PS256, key.getAlgorithm());
+		assertEquals("my-key", key.getKeyID());
+	}
+
+	@Test
+	public void generator_can_use_thumbprint_as_key_id() throws Exception {
+		ECKey key = KeyPool.ecKeyGenerator(Curve.P_256)
+			.keyIDFromThumbprint(true)
+			.generate();
+
+		assertEquals(key.computeThumbprint().toString(), key.getKeyID());
+		assertNull(key.getKeyUse());
+	}
+
+	@Test
+	public void generator_with_provider_takes_key_from_pool() throws Exception {
+		KeyPool pool = KeyPool.getInstance();
+		// secp256k1 isn't supported by the JDK's own provider
+		Provider provider = BouncyCastleProviderSingleton.getInstance();
+
+		// the first key is generated on demand, and starts filling the pool
+		ECKey key = null;
+		boolean fromPool = false;
+		for (int i = 0; i < 100 && !fromPool; i++) {
+			long hits = pool.getHitCount();
+			key = KeyPool.ecKeyGenerator(Curve.SECP256K1, provider)
+				.keyUse(KeyUse.SIGNATURE)
+				.generate();
+			fromPool = pool.getHitCount() == hits + 1;
+			if (!fromPool) {
+				Thread.sleep(100);
+			}
+		}
+
+		assertTrue(fromPool);
+		assertEquals(Curve.SECP256K1, key.getCurve());
+		assertEquals(KeyUse.SIGNATURE, key.getKeyUse());
+		assertTrue(key.isPrivate());
+	}
+}
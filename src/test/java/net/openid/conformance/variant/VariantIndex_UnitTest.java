@@ -0,0 +1,70 @@
+package net.openid.conformance.variant;
+
+import net.openid.conformance.plan.PublishTestPlan;
+import net.openid.conformance.testmodule.PublishTestModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class VariantIndex_UnitTest {
+
+	private static Set<String> scan(Class<? extends Annotation> annotationClass) {
+		ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+		scanner.addIncludeFilter(new AnnotationTypeFilter(annotationClass));
+		Set<String> classNames = new TreeSet<>();
+		for (BeanDefinition bd : scanner.findCandidateComponents("net.openid")) {
+			classNames.add(bd.getBeanClassName());
+		}
+		return classNames;
+	}
+
+	private static void assertIndexMatchesScan(VariantIndex index, Class<? extends Annotation> annotationClass) {
+		assertEquals(scan(annotationClass), new TreeSet<>(index.getClassNames(annotationClass)));
+	}
+
+	@Test
+	public void index_lists_same_classes_as_classpath_scanning() {
+		VariantIndex index = VariantIndex.load(Thread.currentThread().getContextClassLoader());
+		assertNotNull(index, VariantIndex.RESOURCE + " was not generated by the build");
+
+		assertIndexMatchesScan(index, PublishTestModule.class);
+		assertIndexMatchesScan(index, PublishTestPlan.class);
+		assertIndexMatchesScan(index, VariantParameter.class);
+	}
+
+	@Test
+	public void index_is_ignored_when_class_files_have_changed(@TempDir Path classes) throws IOException {
+		Files.createDirectories(classes.resolve("net/openid"));
+		Files.write(classes.resolve("net/openid/ExistingModule.class"), new byte[0]);
+		Path indexFile = classes.resolve(VariantIndex.RESOURCE);
+		Files.createDirectories(indexFile.getParent());
+		Files.writeString(indexFile, VariantIndex.PUBLISH_TEST_MODULE + "=net.openid.ExistingModule\n"
+			+ VariantIndex.FINGERPRINT + "=" + VariantIndex.fingerprint(classes) + "\n");
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { classes.toUri().toURL() }, null)) {
+			VariantIndex index = VariantIndex.load(classLoader);
+			assertNotNull(index);
+			assertEquals(List.of("net.openid.ExistingModule"), index.getClassNames(PublishTestModule.class));
+
+			// e.g. an IDE compiling a new test module without running the processor
+			Files.write(classes.resolve("net/openid/NewModule.class"), new byte[0]);
+			assertNull(VariantIndex.load(classLoader));
+		}
+	}
+}